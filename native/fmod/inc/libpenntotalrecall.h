@@ -53,6 +53,8 @@ extern "C" {
 #endif
 
 /* define library's exposed API */
+EXPORT_DLL int openSession(char* filename);
+EXPORT_DLL void closeSession(void);
 EXPORT_DLL int startPlayback(char* filename, long long startFrame, long long endFrame);
 EXPORT_DLL long long stopPlayback(void);
 EXPORT_DLL long long streamPosition(void);
@@ -21,6 +21,11 @@
  *
  * WARNING streamPosition() must be called frequently in order to cause FMOD's system to update.
  *
+ * The FMOD system and the stream of the file stay open between plays, so starting playback only seeks and unpauses a channel.
+ * They are created by openSession(), or by startPlayback() when given another file, and released by closeSession().
+ *
+ * Define LIBPENNTOTALRECALL_NOSOUND when compiling to render to FMOD's no-sound output, e.g. to measure latency on a machine without a sound card.
+ *
  * See Apache Ant build.xml that came with this project to see which compilers this has been tested on.
  */
  
@@ -32,19 +37,30 @@
 #include "../inc/fmod_errors.h"
 
 #include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
 //needed on Windows to get memset()
 #include <memory.h>
 
+//file buffer of streams, in bytes
+//seeking a stream whose decode buffer (400 ms by default) does not fit in the file buffer waits for FMOD's stream thread, 10-30 ms
+const unsigned int streamBufferBytes = 256 * 1024;
+
 //library info
-const unsigned int revisionNumber = 1;
+const unsigned int revisionNumber = 2;
 const char* libName = "FMOD implementation of LibPennTotalRecall";
 
-//playback state
+//session state, kept between plays of the same file
 FMOD_SYSTEM *fmsystem = NULL;
 FMOD_SOUND *sound = NULL;
+char *sessionFile = NULL;
+float inputRate = 0;
+int outputRate = 0;
+unsigned int startDelayFrames = 0;
+
+//playback state
 FMOD_CHANNEL *channel = NULL;
-FMOD_CREATESOUNDEXINFO soundInfo;
-int lastStartFrame = 0;
+long long lastStartFrame = 0;
 
 
 static void printError(FMOD_RESULT result);
@@ -52,69 +68,151 @@ static void printError(FMOD_RESULT result);
 
 
 
-EXPORT_DLL int startPlayback(char* filename, long long startFrame, long long endFrame)
+EXPORT_DLL int openSession(char* filename)
 {
-    unsigned int hiclock = 0, loclock = 0, hitime, lotime, startDelayFrames, endDelayFrames;
-    int outputRate;
-    float inputRate;
 	FMOD_RESULT result = FMOD_OK;
+	FMOD_CREATESOUNDEXINFO soundInfo;
 
-	if (fmsystem != NULL || sound != NULL || channel != NULL || lastStartFrame != 0) {
-		fprintf(stderr, "startPlayback() called in inconsistent state, trying to correct\n");
-		stopPlayback();
-		return -4;
-	}
-
-    if (startFrame < 0) {
-      fprintf(stderr, "startPlayback() given a negative startFrame (%lld)! Correcting to 0\n", startFrame);
-      startFrame = 0;
-    }
+	closeSession();
 
-    if (endFrame <= startFrame) {
-    	fprintf(stderr, "startPlayback() given an endFrame (%lld) <= startFrame (%lld)", endFrame, startFrame);
-		stopPlayback();
+	result = FMOD_System_Create(&fmsystem);
+	if (result != FMOD_OK) {
+		fprintf(stderr, "exceptional return value for FMOD::System_Create() in openSession()\n");
+		printError(result);
+		closeSession();
 		return -1;
-    }
+	}
 
-	lastStartFrame = startFrame;
+#ifdef LIBPENNTOTALRECALL_NOSOUND
+	FMOD_System_SetOutput(fmsystem, FMOD_OUTPUTTYPE_NOSOUND);
+#endif
 
-	result = FMOD_System_Create(&fmsystem);
+	result = FMOD_System_SetStreamBufferSize(fmsystem, streamBufferBytes, FMOD_TIMEUNIT_RAWBYTES);
 	if (result != FMOD_OK) {
-		fprintf(stderr, "exceptional return value for FMOD::System_Create() in startPlayback()\n");
+		fprintf(stderr, "exceptional return value for FMOD::System.setStreamBufferSize() in openSession()\n");
 		printError(result);
-		stopPlayback();
+		closeSession();
 		return -1;
 	}
 
 	result = FMOD_System_Init(fmsystem, 32, FMOD_INIT_NORMAL, NULL);
 	if (result != FMOD_OK) {
-		fprintf(stderr, "exceptional return value for FMOD::System.init() in startPlayback()\n");
+		fprintf(stderr, "exceptional return value for FMOD::System.init() in openSession()\n");
 		printError(result);
-		stopPlayback();
-		return -1;
+		closeSession();
+		return result == FMOD_ERR_OUTPUT_INIT ? -2 : -1;
 	}
 
 	memset(&soundInfo, 0, sizeof(FMOD_CREATESOUNDEXINFO));
 	soundInfo.cbsize = sizeof(FMOD_CREATESOUNDEXINFO);
-	soundInfo.initialseekposition = startFrame;
-	soundInfo.initialseekpostype = FMOD_TIMEUNIT_PCM;
 
 	result = FMOD_System_CreateSound(fmsystem, filename, FMOD_SOFTWARE | FMOD_CREATESTREAM | FMOD_LOOP_OFF, &soundInfo, &sound);
 	if (result != FMOD_OK) {
-		fprintf(stderr, "exceptional return value for FMOD::System.createSound() in startPlayback()\n");
+		fprintf(stderr, "exceptional return value for FMOD::System.createSound() in openSession()\n");
 		printError(result);
-		stopPlayback();
+		closeSession();
 		return -3;
 	}
 
-    result = FMOD_Sound_GetDefaults(sound, &inputRate, NULL, NULL, NULL);
+	result = FMOD_Sound_GetDefaults(sound, &inputRate, NULL, NULL, NULL);
 	if (result != FMOD_OK) {
-		fprintf(stderr, "exceptional return value for FMOD::System.getDefaults() in startPlayback()\n");
+		fprintf(stderr, "exceptional return value for FMOD::Sound.getDefaults() in openSession()\n");
 		printError(result);
-		stopPlayback();
+		closeSession();
 		return -3;
 	}
 
+	result = FMOD_System_GetDSPBufferSize(fmsystem, &startDelayFrames, 0);
+	if (result != FMOD_OK) {
+		fprintf(stderr, "cannot determine buffer size in openSession()\n");
+		printError(result);
+		closeSession();
+		return -1;
+	}
+	startDelayFrames *= 2;
+
+	result = FMOD_System_GetSoftwareFormat(fmsystem, &outputRate, NULL, NULL, NULL, NULL, NULL);
+	if (result != FMOD_OK) {
+		fprintf(stderr, "cannot determine output format in openSession()\n");
+		printError(result);
+		closeSession();
+		return -1;
+	}
+
+	sessionFile = malloc(strlen(filename) + 1);
+	if (sessionFile == NULL) {
+		fprintf(stderr, "out of memory in openSession()\n");
+		closeSession();
+		return -1;
+	}
+	strcpy(sessionFile, filename);
+
+	return 0;
+}
+
+EXPORT_DLL void closeSession(void)
+{
+	FMOD_RESULT result = FMOD_OK;
+
+	if (channel != NULL) {
+		stopPlayback();
+	}
+
+	if (sound != NULL) {
+		result = FMOD_Sound_Release(sound);
+		if (result != FMOD_OK) {
+			fprintf(stderr, "exceptional return value for FMOD::Sound.release() in closeSession()\n");
+			printError(result);
+		}
+	}
+
+	if (fmsystem != NULL) {
+		result = FMOD_System_Close(fmsystem);
+		if (result != FMOD_OK) {
+			fprintf(stderr, "exceptional return value for FMOD::System.close() in closeSession()\n");
+			printError(result);
+		}
+		result = FMOD_System_Release(fmsystem);
+		if (result != FMOD_OK) {
+			fprintf(stderr, "exceptional return value for FMOD::System.release() in closeSession()\n");
+			printError(result);
+		}
+	}
+
+	free(sessionFile);
+	fmsystem = NULL;
+	sound = NULL;
+	sessionFile = NULL;
+}
+
+EXPORT_DLL int startPlayback(char* filename, long long startFrame, long long endFrame)
+{
+	unsigned int hiclock = 0, loclock = 0, hitime, lotime, endDelayFrames;
+	int openResult;
+	FMOD_RESULT result = FMOD_OK;
+
+	if (channel != NULL || lastStartFrame != 0) {
+		fprintf(stderr, "startPlayback() called in inconsistent state, trying to correct\n");
+		stopPlayback();
+		return -4;
+	}
+
+	if (startFrame < 0) {
+		fprintf(stderr, "startPlayback() given a negative startFrame (%lld)! Correcting to 0\n", startFrame);
+		startFrame = 0;
+	}
+
+	if (endFrame <= startFrame) {
+		fprintf(stderr, "startPlayback() given an endFrame (%lld) <= startFrame (%lld)", endFrame, startFrame);
+		return -1;
+	}
+
+	if (sessionFile == NULL || strcmp(sessionFile, filename) != 0) {
+		openResult = openSession(filename);
+		if (openResult < 0) {
+			return openResult;
+		}
+	}
 
 	result = FMOD_System_PlaySound(fmsystem, FMOD_CHANNEL_FREE, sound, TRUE, &channel);
 	if (result != FMOD_OK) {
@@ -124,47 +222,41 @@ EXPORT_DLL int startPlayback(char* filename, long long startFrame, long long end
 		return -1;
 	}
 
-    result = FMOD_System_GetDSPBufferSize(fmsystem, &startDelayFrames, 0);
-    if (result != FMOD_OK) {
-      fprintf(stderr, "FMOD error: (%d) %s\n", result, FMOD_ErrorString(result));
-      fprintf(stderr, "cannot determine buffer size\n");
-      return -1;
-    }
-    startDelayFrames *= 2;
-
-    result = FMOD_System_GetSoftwareFormat(fmsystem, &outputRate, NULL, NULL, NULL, NULL, NULL);
-    if (result != FMOD_OK) {
-      fprintf(stderr, "FMOD error: (%d) %s\n", result, FMOD_ErrorString(result));
-      fprintf(stderr, "cannot determine output format\n");
-      return -1;
-    }
-
-    FMOD_System_GetDSPClock(fmsystem, &hitime, &lotime);
-
-    hiclock = hitime;
-    loclock = lotime;
-    FMOD_64BIT_ADD(hiclock, loclock, 0, startDelayFrames);
-    result = FMOD_Channel_SetDelay(channel, FMOD_DELAYTYPE_DSPCLOCK_START, hiclock, loclock);
+	//refills the stream's buffer from the new position before returning
+	result = FMOD_Channel_SetPosition(channel, (unsigned int)startFrame, FMOD_TIMEUNIT_PCM);
 	if (result != FMOD_OK) {
-        fprintf(stderr, "exceptional return value for FMOD::Chanel.setDelay() [start] in startPlayback()\n");
-        printError(result);
+		fprintf(stderr, "exceptional return value for FMOD::Channel.setPosition() in startPlayback()\n");
+		printError(result);
 		stopPlayback();
-        return -1;
-    }
+		return -5;
+	}
+	lastStartFrame = startFrame;
+
+	FMOD_System_GetDSPClock(fmsystem, &hitime, &lotime);
 
-    endDelayFrames = startDelayFrames + (int) (outputRate * ((endFrame - startFrame) / (double)(inputRate)));
-    /* endDelayFrames = startDelayFrames + (endFrame - startFrame); */
+	hiclock = hitime;
+	loclock = lotime;
+	FMOD_64BIT_ADD(hiclock, loclock, 0, startDelayFrames);
+	result = FMOD_Channel_SetDelay(channel, FMOD_DELAYTYPE_DSPCLOCK_START, hiclock, loclock);
+	if (result != FMOD_OK) {
+		fprintf(stderr, "exceptional return value for FMOD::Chanel.setDelay() [start] in startPlayback()\n");
+		printError(result);
+		stopPlayback();
+		return -1;
+	}
 
-    hiclock = hitime;
-    loclock = lotime;
-    FMOD_64BIT_ADD(hiclock, loclock, 0, endDelayFrames);
-    result = FMOD_Channel_SetDelay(channel, FMOD_DELAYTYPE_DSPCLOCK_END, hiclock, loclock);
-    if (result != FMOD_OK) {
-      fprintf(stderr, "FMOD error: (%d) %s\n", result, FMOD_ErrorString(result));
-      fprintf(stderr, "exceptional return value for FMOD::Chanel.setDelay() [end] in startPlayback()\n");
-      return -1;
-    }
+	endDelayFrames = startDelayFrames + (int) (outputRate * ((endFrame - startFrame) / (double)(inputRate)));
 
+	hiclock = hitime;
+	loclock = lotime;
+	FMOD_64BIT_ADD(hiclock, loclock, 0, endDelayFrames);
+	result = FMOD_Channel_SetDelay(channel, FMOD_DELAYTYPE_DSPCLOCK_END, hiclock, loclock);
+	if (result != FMOD_OK) {
+		fprintf(stderr, "exceptional return value for FMOD::Chanel.setDelay() [end] in startPlayback()\n");
+		printError(result);
+		stopPlayback();
+		return -1;
+	}
 
 	result = FMOD_Channel_SetVolume(channel, 1);
 	if ((result != FMOD_OK) && (result != FMOD_ERR_INVALID_HANDLE) && (result != FMOD_ERR_CHANNEL_STOLEN)) {
@@ -184,7 +276,7 @@ EXPORT_DLL int startPlayback(char* filename, long long startFrame, long long end
 
 	FMOD_System_Update(fmsystem);
 
-    return 0;
+	return 0;
 }
 
 EXPORT_DLL long long stopPlayback(void)
@@ -198,40 +290,21 @@ EXPORT_DLL long long stopPlayback(void)
 
 	toReturn = streamPosition();
 
-    if(sound != NULL) {
-      result = FMOD_Sound_Release(sound);
-    
-      if (result != FMOD_OK) {
-		fprintf(stderr, "exceptional return value for FMOD::Sound.release() in stopPlayback()\n");
-		printError(result);
-		return -1;
-      }
-    }
-
-    if(fmsystem != NULL) {
-      result = FMOD_System_Close(fmsystem);
-      if (result != FMOD_OK) {
-		fprintf(stderr, "exceptional return value for FMOD::System.close() in stopPlayback()\n");
-		printError(result);
-		return -1;
-      }
-    }
-
-    if(fmsystem != NULL) {
-      result = FMOD_System_Release(fmsystem);
-      if (result != FMOD_OK) {
-		fprintf(stderr, "exceptional return value for FMOD::System.release() in stopPlayback()\n");
-		printError(result);
-		return -1;
-      }
-    }
+	//the session stays open, only the channel is stopped
+	if (channel != NULL) {
+		result = FMOD_Channel_Stop(channel);
+		//the channel is already invalid if it reached its end delay
+		if ((result != FMOD_OK) && (result != FMOD_ERR_INVALID_HANDLE) && (result != FMOD_ERR_CHANNEL_STOLEN)) {
+			fprintf(stderr, "exceptional return value for FMOD::Channel.stop() in stopPlayback()\n");
+			printError(result);
+		}
+		FMOD_System_Update(fmsystem);
+	}
 
-	fmsystem = NULL;
-	sound = NULL;
 	channel = NULL;
 	lastStartFrame = 0;
 
-	return toReturn - lastStartFrame;
+	return toReturn;
 }
 
 EXPORT_DLL long long streamPosition(void)
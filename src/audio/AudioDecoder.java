@@ -0,0 +1,64 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package audio;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Service interface for decoding an audio format into PCM samples.
+ *
+ * <p>The program only reads 16-bit PCM WAV files directly. Anything else is decoded once by an <code>AudioDecoder</code> into a transcode that it reads instead, see {@link PcmTranscoder}.
+ * Decoders are found by {@link AudioDecoders}, which besides the built-in ones loads any listed in a <code>META-INF/services/audio.AudioDecoder</code> file on the class path.
+ * Implementations need a public no-argument constructor and must be safe to use from several threads at once, on different files.
+ */
+public interface AudioDecoder {
+
+	/**
+	 * Returns a name for the decoder, stored in the transcodes it makes.
+	 *
+	 * Changing the name, e.g. by adding a version number after fixing a bug, makes the program decode the files again.
+	 *
+	 * @return The name
+	 */
+	public String name();
+
+	/**
+	 * @return The extensions of the files this decoder reads, in lower case and without the dot
+	 */
+	public String[] extensions();
+
+	/**
+	 * Decides whether this decoder can read a file, from its first bytes.
+	 *
+	 * @param file The file
+	 * @param head The first bytes of the file, fewer than usual if the file is short
+	 * @return <code>true</code> if the decoder recognizes the format
+	 */
+	public boolean canDecode(File file, byte[] head);
+
+	/**
+	 * Opens a file for decoding from its beginning.
+	 *
+	 * @param file The file
+	 * @return The decoded samples
+	 * @throws UnsupportedAudioFileException If the file uses a variant of the format this decoder does not handle
+	 * @throws IOException If the file cannot be read or is damaged
+	 */
+	public DecodedStream open(File file) throws UnsupportedAudioFileException, IOException;
+}
@@ -0,0 +1,130 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package audio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * The <code>AudioDecoder</code>s available to the program.
+ *
+ * Decoders listed in <code>META-INF/services/audio.AudioDecoder</code> files on the class path come first, so a plugin can take over a format from a built-in decoder.
+ * Then come the built-in decoders for WAV and FLAC, and last Java Sound.
+ */
+public class AudioDecoders {
+
+	private static final int HEAD_BYTES = 64;
+
+	private static final List<AudioDecoder> decoders = loadDecoders();
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private AudioDecoders() {
+	}
+
+	/**
+	 * @return All decoders, in the order they are tried
+	 */
+	public static List<AudioDecoder> all() {
+		return decoders;
+	}
+
+	/**
+	 * Finds the first decoder that recognizes a file.
+	 *
+	 * @param file The audio file
+	 * @return The decoder, or <code>null</code> if none recognizes the file
+	 * @throws IOException If the file cannot be read
+	 */
+	public static AudioDecoder forFile(File file) throws IOException {
+		byte[] head = readHead(file);
+		for(AudioDecoder decoder: decoders) {
+			if(decoder.canDecode(file, head)) {
+				return decoder;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Decides whether a file name has the extension of a format some decoder reads, ignoring case.
+	 *
+	 * The program does not guarantee that every file with one of these extensions is supported.
+	 *
+	 * @param name The name of the file, from <code>File.getName()</code>
+	 * @return <code>true</code> iff the name ends with a supported extension
+	 */
+	public static boolean isSupportedName(String name) {
+		String lowerName = name.toLowerCase();
+		for(AudioDecoder decoder: decoders) {
+			for(String ext: decoder.extensions()) {
+				if(lowerName.endsWith("." + ext)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static List<AudioDecoder> loadDecoders() {
+		List<AudioDecoder> found = new ArrayList<AudioDecoder>();
+		try {
+			for(AudioDecoder decoder: ServiceLoader.load(AudioDecoder.class)) {
+				found.add(decoder);
+			}
+		}
+		catch(ServiceConfigurationError e) {
+			//a broken plugin must not take the built-in formats with it
+			System.err.println("could not load audio decoder plugins: " + e.getMessage());
+		}
+		found.add(new WavDecoder());
+		found.add(new FlacDecoder());
+		found.add(new JavaSoundDecoder());
+		return Collections.unmodifiableList(found);
+	}
+
+	private static byte[] readHead(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] head = new byte[HEAD_BYTES];
+			int numRead = 0;
+			while(numRead < head.length) {
+				int n = in.read(head, numRead, head.length - numRead);
+				if(n < 0) {
+					break;
+				}
+				numRead += n;
+			}
+			if(numRead < head.length) {
+				byte[] shorter = new byte[numRead];
+				System.arraycopy(head, 0, shorter, 0, numRead);
+				return shorter;
+			}
+			return head;
+		}
+		finally {
+			in.close();
+		}
+	}
+}
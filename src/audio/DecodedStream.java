@@ -0,0 +1,61 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package audio;
+
+import java.io.IOException;
+
+/**
+ * The samples of an audio file as an <code>AudioDecoder</code> produces them, read once from beginning to end.
+ *
+ * Samples are signed integers of {@link #bitsPerSample()} bits, whatever the encoding of the file.
+ */
+public interface DecodedStream {
+
+	/**
+	 * @return The number of interleaved channels in each frame
+	 */
+	public int numChannels();
+
+	/**
+	 * @return Frames per second
+	 */
+	public double frameRate();
+
+	/**
+	 * @return The number of significant bits of each sample, at most 32
+	 */
+	public int bitsPerSample();
+
+	/**
+	 * @return The number of frames in the file, or -1 if the format does not say before it is decoded
+	 */
+	public long numFrames();
+
+	/**
+	 * Decodes the next frames.
+	 *
+	 * @param dest Array that receives the interleaved samples, <code>numFrames * numChannels()</code> of them
+	 * @param numFrames Maximum number of frames to decode
+	 * @return The number of frames decoded, at least one, or -1 at the end of the file
+	 * @throws IOException If the file cannot be read or is damaged
+	 */
+	public int read(int[] dest, int numFrames) throws IOException;
+
+	/**
+	 * Releases the underlying file.
+	 */
+	public void close();
+}
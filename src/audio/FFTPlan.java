@@ -0,0 +1,130 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package audio;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precomputed tables for in-place radix-2 complex FFTs of one size.
+ *
+ * The bit-reversal permutation and twiddle factors are computed once per size, so repeated transforms only do arithmetic.
+ * Plans are immutable and may be shared by any number of threads, use {@link #forSize(int)} to get the shared plan of a size.
+ */
+public class FFTPlan {
+
+	private static final Map<Integer, FFTPlan> plans = new HashMap<Integer, FFTPlan>();
+
+	private final int size;
+	private final int[] bitReversal;
+	private final double[] cosTable;
+	private final double[] sinTable;
+
+	private FFTPlan(int size) {
+		if(size < 2 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+		}
+		this.size = size;
+		int bits = Integer.numberOfTrailingZeros(size);
+		bitReversal = new int[size];
+		for(int i = 0; i < size; i++) {
+			bitReversal[i] = Integer.reverse(i) >>> (32 - bits);
+		}
+		cosTable = new double[size / 2];
+		sinTable = new double[size / 2];
+		for(int i = 0; i < size / 2; i++) {
+			cosTable[i] = Math.cos(2 * Math.PI * i / size);
+			sinTable[i] = Math.sin(2 * Math.PI * i / size);
+		}
+	}
+
+	/**
+	 * Returns the shared plan for transforms of the provided size, creating it the first time.
+	 *
+	 * @param size The number of points, a power of two
+	 * @return The plan
+	 */
+	public static FFTPlan forSize(int size) {
+		synchronized(plans) {
+			FFTPlan plan = plans.get(size);
+			if(plan == null) {
+				plan = new FFTPlan(size);
+				plans.put(size, plan);
+			}
+			return plan;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Replaces the provided signal with its discrete Fourier transform.
+	 *
+	 * @param re Real parts, of length <code>size()</code>
+	 * @param im Imaginary parts, of length <code>size()</code>
+	 */
+	public void transform(double[] re, double[] im) {
+		run(re, im, false);
+	}
+
+	/**
+	 * Replaces the provided spectrum with its inverse discrete Fourier transform, including the 1/n scaling.
+	 *
+	 * @param re Real parts, of length <code>size()</code>
+	 * @param im Imaginary parts, of length <code>size()</code>
+	 */
+	public void inverse(double[] re, double[] im) {
+		run(re, im, true);
+		final double scale = 1.0 / size;
+		for(int i = 0; i < size; i++) {
+			re[i] *= scale;
+			im[i] *= scale;
+		}
+	}
+
+	private void run(double[] re, double[] im, boolean inverse) {
+		for(int i = 0; i < size; i++) {
+			int j = bitReversal[i];
+			if(j > i) {
+				double tmp = re[i];
+				re[i] = re[j];
+				re[j] = tmp;
+				tmp = im[i];
+				im[i] = im[j];
+				im[j] = tmp;
+			}
+		}
+		final double sign = inverse ? 1 : -1;
+		for(int half = 1; half < size; half <<= 1) {
+			final int tableStep = size / (2 * half);
+			for(int start = 0; start < size; start += 2 * half) {
+				for(int k = 0; k < half; k++) {
+					final double wr = cosTable[k * tableStep];
+					final double wi = sign * sinTable[k * tableStep];
+					final int a = start + k;
+					final int b = a + half;
+					final double tr = wr * re[b] - wi * im[b];
+					final double ti = wr * im[b] + wi * re[b];
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,604 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package audio;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Decodes native FLAC files of up to 24 bits per sample and 8 channels.
+ *
+ * <p>Implements the whole of the format's audio coding: constant, verbatim, fixed and linear predictive subframes, wasted bits,
+ * Rice coded residuals with escape codes, and the three stereo decorrelation modes.
+ * Metadata other than the <code>STREAMINFO</code> block is skipped, as is an ID3v2 tag in front of the stream.
+ * Checksums are not verified, a damaged frame shows up as a lost sync code instead.
+ */
+public class FlacDecoder implements AudioDecoder {
+
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private static final int MAX_BITS_PER_SAMPLE = 24;
+
+	private static final int STREAMINFO = 0;
+
+	private static final int LEFT_SIDE = 8;
+	private static final int RIGHT_SIDE = 9;
+	private static final int MID_SIDE = 10;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String name() {
+		return "flac/1";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String[] extensions() {
+		return new String[] {"flac"};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean canDecode(File file, byte[] head) {
+		if(head.length >= 4 && head[0] == 'f' && head[1] == 'L' && head[2] == 'a' && head[3] == 'C') {
+			return true;
+		}
+		//taggers sometimes put an ID3v2 tag in front of the stream
+		return head.length >= 3 && head[0] == 'I' && head[1] == 'D' && head[2] == '3' && file.getName().toLowerCase().endsWith(".flac");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public DecodedStream open(File file) throws UnsupportedAudioFileException, IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_BYTES);
+		try {
+			return new FlacStream(file, in);
+		}
+		catch(UnsupportedAudioFileException e) {
+			in.close();
+			throw e;
+		}
+		catch(IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	private static class FlacStream implements DecodedStream {
+
+		private final BitReader bits;
+		private final int numChannels;
+		private final int frameRate;
+		private final int bitsPerSample;
+		private final long numFrames;
+
+		private int[][] block;
+		private int blockSize;
+		private int blockPos;
+		private long framesDecoded;
+
+		private FlacStream(File file, InputStream in) throws UnsupportedAudioFileException, IOException {
+			bits = new BitReader(in);
+			int b0 = bits.readBits(8), b1 = bits.readBits(8), b2 = bits.readBits(8);
+			if(b0 == 'I' && b1 == 'D' && b2 == '3') {
+				//version, flags, then a size of four 7-bit bytes
+				bits.readBits(16);
+				bits.readBits(8);
+				int size = 0;
+				for(int i = 0; i < 4; i++) {
+					size = (size << 7) | (bits.readBits(8) & 0x7F);
+				}
+				bits.skipBytes(size);
+				b0 = bits.readBits(8);
+				b1 = bits.readBits(8);
+				b2 = bits.readBits(8);
+			}
+			if(b0 != 'f' || b1 != 'L' || b2 != 'a' || bits.readBits(8) != 'C') {
+				throw new UnsupportedAudioFileException(file + " is not a FLAC file");
+			}
+
+			int channels = -1;
+			int rate = -1;
+			int sampleBits = -1;
+			long totalFrames = -1;
+			boolean last = false;
+			while(last == false) {
+				last = bits.readBits(1) == 1;
+				int type = bits.readBits(7);
+				int length = bits.readBits(24);
+				if(type == STREAMINFO) {
+					bits.readBits(16); //minimum block size
+					bits.readBits(16); //maximum block size
+					bits.readBits(24); //minimum frame size
+					bits.readBits(24); //maximum frame size
+					rate = bits.readBits(20);
+					channels = bits.readBits(3) + 1;
+					sampleBits = bits.readBits(5) + 1;
+					totalFrames = ((long)bits.readBits(4) << 32) | (bits.readBits(32) & 0xFFFFFFFFL);
+					bits.skipBytes(length - 18);
+				}
+				else {
+					bits.skipBytes(length);
+				}
+			}
+			if(channels < 0) {
+				throw new UnsupportedAudioFileException(file + " has no STREAMINFO block");
+			}
+			if(sampleBits > MAX_BITS_PER_SAMPLE) {
+				throw new UnsupportedAudioFileException(file + " has " + sampleBits + "-bit samples");
+			}
+			if(rate == 0) {
+				throw new UnsupportedAudioFileException(file + " does not give its sample rate");
+			}
+			numChannels = channels;
+			frameRate = rate;
+			bitsPerSample = sampleBits;
+			//0 means the encoder did not know the length
+			numFrames = totalFrames == 0 ? -1 : totalFrames;
+			block = new int[numChannels][0];
+		}
+
+		public int numChannels() {
+			return numChannels;
+		}
+
+		public double frameRate() {
+			return frameRate;
+		}
+
+		public int bitsPerSample() {
+			return bitsPerSample;
+		}
+
+		public long numFrames() {
+			return numFrames;
+		}
+
+		public int read(int[] dest, int maxFrames) throws IOException {
+			if(blockPos == blockSize) {
+				if(decodeFrame() == false) {
+					return -1;
+				}
+			}
+			int n = Math.min(maxFrames, blockSize - blockPos);
+			for(int i = 0; i < n; i++) {
+				for(int ch = 0; ch < numChannels; ch++) {
+					dest[i * numChannels + ch] = block[ch][blockPos + i];
+				}
+			}
+			blockPos += n;
+			return n;
+		}
+
+		public void close() {
+			bits.close();
+		}
+
+		/**
+		 * Decodes the next frame into <code>block</code>.
+		 *
+		 * @return <code>false</code> at the end of the stream
+		 */
+		private boolean decodeFrame() throws IOException {
+			if(numFrames >= 0 && framesDecoded >= numFrames) {
+				return false;
+			}
+			int sync = bits.readBitsOrEnd(15);
+			if(sync < 0) {
+				return false;
+			}
+			if(sync != 0x7FFC) {
+				throw new IOException("lost FLAC frame sync after " + framesDecoded + " frames");
+			}
+			bits.readBits(1); //blocking strategy, the frame or sample number is not needed
+			int blockSizeCode = bits.readBits(4);
+			int rateCode = bits.readBits(4);
+			int channelAssignment = bits.readBits(4);
+			int sampleSizeCode = bits.readBits(3);
+			bits.readBits(1);
+			bits.readUtf8Number();
+
+			int size;
+			if(blockSizeCode == 1) {
+				size = 192;
+			}
+			else if(blockSizeCode >= 2 && blockSizeCode <= 5) {
+				size = 576 << (blockSizeCode - 2);
+			}
+			else if(blockSizeCode == 6) {
+				size = bits.readBits(8) + 1;
+			}
+			else if(blockSizeCode == 7) {
+				size = bits.readBits(16) + 1;
+			}
+			else if(blockSizeCode >= 8) {
+				size = 256 << (blockSizeCode - 8);
+			}
+			else {
+				throw new IOException("reserved FLAC block size");
+			}
+			if(rateCode == 12) {
+				bits.readBits(8);
+			}
+			else if(rateCode == 13 || rateCode == 14) {
+				bits.readBits(16);
+			}
+			else if(rateCode == 15) {
+				throw new IOException("invalid FLAC sample rate");
+			}
+			int frameBits = sampleBitsOf(sampleSizeCode);
+			bits.readBits(8); //header CRC
+
+			int frameChannels = channelAssignment < LEFT_SIDE ? channelAssignment + 1 : 2;
+			if(frameChannels != numChannels) {
+				throw new IOException("FLAC frame with " + frameChannels + " channels in a stream of " + numChannels);
+			}
+			if(block[0].length < size) {
+				block = new int[numChannels][size];
+			}
+			for(int ch = 0; ch < numChannels; ch++) {
+				boolean side = (channelAssignment == LEFT_SIDE && ch == 1) || (channelAssignment == RIGHT_SIDE && ch == 0) || (channelAssignment == MID_SIDE && ch == 1);
+				decodeSubframe(block[ch], size, side ? frameBits + 1 : frameBits);
+			}
+			decorrelate(channelAssignment, size);
+
+			bits.alignToByte();
+			bits.readBits(16); //frame CRC
+			blockSize = size;
+			blockPos = 0;
+			if(numFrames >= 0 && framesDecoded + size > numFrames) {
+				//never hand out more than the stream says it holds
+				blockSize = (int)(numFrames - framesDecoded);
+			}
+			framesDecoded += size;
+			return true;
+		}
+
+		private int sampleBitsOf(int code) throws IOException {
+			switch(code) {
+				case 0:
+					return bitsPerSample;
+				case 1:
+					return 8;
+				case 2:
+					return 12;
+				case 4:
+					return 16;
+				case 5:
+					return 20;
+				case 6:
+					return 24;
+				default:
+					throw new IOException("unsupported FLAC sample size code " + code);
+			}
+		}
+
+		private void decodeSubframe(int[] dest, int size, int sampleBits) throws IOException {
+			if(bits.readBits(1) != 0) {
+				throw new IOException("bad FLAC subframe padding");
+			}
+			int type = bits.readBits(6);
+			int wasted = 0;
+			if(bits.readBits(1) == 1) {
+				wasted = bits.readUnary() + 1;
+				sampleBits -= wasted;
+			}
+
+			if(type == 0) {
+				int val = bits.readSignedBits(sampleBits);
+				for(int i = 0; i < size; i++) {
+					dest[i] = val;
+				}
+			}
+			else if(type == 1) {
+				for(int i = 0; i < size; i++) {
+					dest[i] = bits.readSignedBits(sampleBits);
+				}
+			}
+			else if(type >= 8 && type <= 12) {
+				int order = type - 8;
+				for(int i = 0; i < order; i++) {
+					dest[i] = bits.readSignedBits(sampleBits);
+				}
+				readResidual(dest, size, order);
+				restoreFixed(dest, size, order);
+			}
+			else if(type >= 32) {
+				int order = type - 31;
+				for(int i = 0; i < order; i++) {
+					dest[i] = bits.readSignedBits(sampleBits);
+				}
+				int precision = bits.readBits(4) + 1;
+				if(precision == 16) {
+					throw new IOException("invalid FLAC coefficient precision");
+				}
+				int shift = bits.readSignedBits(5);
+				if(shift < 0) {
+					throw new IOException("negative FLAC coefficient shift");
+				}
+				int[] coefs = new int[order];
+				for(int i = 0; i < order; i++) {
+					coefs[i] = bits.readSignedBits(precision);
+				}
+				readResidual(dest, size, order);
+				restoreLpc(dest, size, coefs, shift);
+			}
+			else {
+				throw new IOException("reserved FLAC subframe type " + type);
+			}
+
+			if(wasted > 0) {
+				for(int i = 0; i < size; i++) {
+					dest[i] <<= wasted;
+				}
+			}
+		}
+
+		/**
+		 * Reads the residual of a predicted subframe into <code>dest</code> after its warm-up samples.
+		 */
+		private void readResidual(int[] dest, int size, int predictorOrder) throws IOException {
+			int method = bits.readBits(2);
+			if(method > 1) {
+				throw new IOException("reserved FLAC residual coding method");
+			}
+			int paramBits = method == 0 ? 4 : 5;
+			int escape = (1 << paramBits) - 1;
+			int partitionOrder = bits.readBits(4);
+			int numPartitions = 1 << partitionOrder;
+			int partitionSize = size >> partitionOrder;
+			if(partitionSize << partitionOrder != size || partitionSize < predictorOrder) {
+				throw new IOException("bad FLAC residual partition order");
+			}
+			int i = predictorOrder;
+			for(int p = 0; p < numPartitions; p++) {
+				int end = (p + 1) * partitionSize;
+				int param = bits.readBits(paramBits);
+				if(param == escape) {
+					int rawBits = bits.readBits(5);
+					for(; i < end; i++) {
+						dest[i] = rawBits == 0 ? 0 : bits.readSignedBits(rawBits);
+					}
+				}
+				else {
+					for(; i < end; i++) {
+						dest[i] = bits.readRice(param);
+					}
+				}
+			}
+		}
+
+		private static void restoreFixed(int[] s, int size, int order) {
+			switch(order) {
+				case 0:
+					break;
+				case 1:
+					for(int i = 1; i < size; i++) {
+						s[i] += s[i - 1];
+					}
+					break;
+				case 2:
+					for(int i = 2; i < size; i++) {
+						s[i] += 2 * s[i - 1] - s[i - 2];
+					}
+					break;
+				case 3:
+					for(int i = 3; i < size; i++) {
+						s[i] += 3 * s[i - 1] - 3 * s[i - 2] + s[i - 3];
+					}
+					break;
+				default:
+					for(int i = 4; i < size; i++) {
+						s[i] += 4 * s[i - 1] - 6 * s[i - 2] + 4 * s[i - 3] - s[i - 4];
+					}
+					break;
+			}
+		}
+
+		private static void restoreLpc(int[] s, int size, int[] coefs, int shift) {
+			final int order = coefs.length;
+			for(int i = order; i < size; i++) {
+				long sum = 0;
+				for(int j = 0; j < order; j++) {
+					sum += (long)coefs[j] * s[i - 1 - j];
+				}
+				s[i] += (int)(sum >> shift);
+			}
+		}
+
+		private void decorrelate(int channelAssignment, int size) {
+			int[] a = block[0];
+			int[] b = numChannels > 1 ? block[1] : null;
+			switch(channelAssignment) {
+				case LEFT_SIDE:
+					for(int i = 0; i < size; i++) {
+						b[i] = a[i] - b[i];
+					}
+					break;
+				case RIGHT_SIDE:
+					for(int i = 0; i < size; i++) {
+						a[i] += b[i];
+					}
+					break;
+				case MID_SIDE:
+					for(int i = 0; i < size; i++) {
+						int side = b[i];
+						int mid = (a[i] << 1) | (side & 1);
+						a[i] = (mid + side) >> 1;
+						b[i] = (mid - side) >> 1;
+					}
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Reads a stream as big-endian bit fields.
+	 */
+	private static class BitReader {
+
+		private final InputStream in;
+		private long buffer;
+		private int numBuffered;
+
+		private BitReader(InputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * @param n Number of bits, at most 32
+		 * @return The bits as an unsigned number, the lowest 32 bits of which are returned when <code>n</code> is 32
+		 */
+		int readBits(int n) throws IOException {
+			int val = readBitsOrEnd(n);
+			if(val == -1 && n < 32) {
+				throw new EOFException();
+			}
+			return val;
+		}
+
+		/**
+		 * Like {@link #readBits(int)}, but returns -1 instead of throwing at the end of the stream, for fewer than 32 bits.
+		 */
+		int readBitsOrEnd(int n) throws IOException {
+			if(n == 0) {
+				return 0;
+			}
+			while(numBuffered < n) {
+				int b = in.read();
+				if(b < 0) {
+					if(n == 32) {
+						throw new EOFException();
+					}
+					return -1;
+				}
+				buffer = (buffer << 8) | b;
+				numBuffered += 8;
+			}
+			numBuffered -= n;
+			return (int)((buffer >>> numBuffered) & ((1L << n) - 1));
+		}
+
+		int readSignedBits(int n) throws IOException {
+			if(n == 0) {
+				return 0;
+			}
+			int val = readBits(n);
+			return (val << (32 - n)) >> (32 - n);
+		}
+
+		/**
+		 * @return The number of 0 bits before the next 1 bit
+		 */
+		int readUnary() throws IOException {
+			int count = 0;
+			while(true) {
+				if(numBuffered == 0) {
+					int b = in.read();
+					if(b < 0) {
+						throw new EOFException();
+					}
+					buffer = b;
+					numBuffered = 8;
+				}
+				int bit = (int)((buffer >>> (numBuffered - 1)) & 1);
+				numBuffered--;
+				if(bit == 1) {
+					return count;
+				}
+				count++;
+			}
+		}
+
+		int readRice(int param) throws IOException {
+			int high = readUnary();
+			int low = readBits(param);
+			int folded = (high << param) | low;
+			return (folded >>> 1) ^ -(folded & 1);
+		}
+
+		/**
+		 * Reads the UTF-8 style number in a frame header.
+		 */
+		long readUtf8Number() throws IOException {
+			int first = readBits(8);
+			if((first & 0x80) == 0) {
+				return first;
+			}
+			int numMore = 0;
+			int mask = 0x40;
+			while((first & mask) != 0) {
+				numMore++;
+				mask >>= 1;
+			}
+			if(numMore == 0 || numMore > 6) {
+				throw new IOException("bad FLAC frame number");
+			}
+			long val = first & (mask - 1);
+			for(int i = 0; i < numMore; i++) {
+				int next = readBits(8);
+				if((next & 0xC0) != 0x80) {
+					throw new IOException("bad FLAC frame number");
+				}
+				val = (val << 6) | (next & 0x3F);
+			}
+			return val;
+		}
+
+		void alignToByte() {
+			numBuffered -= numBuffered % 8;
+		}
+
+		void skipBytes(long n) throws IOException {
+			alignToByte();
+			while(n > 0 && numBuffered > 0) {
+				numBuffered -= 8;
+				n--;
+			}
+			while(n > 0) {
+				long skipped = in.skip(n);
+				if(skipped <= 0) {
+					if(in.read() < 0) {
+						throw new EOFException();
+					}
+					skipped = 1;
+				}
+				n -= skipped;
+			}
+		}
+
+		void close() {
+			try {
+				in.close();
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
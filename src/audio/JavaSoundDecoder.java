@@ -0,0 +1,144 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package audio;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Decodes whatever Java Sound can convert to 16-bit PCM, such as AIFF and AU files, and any format a Java Sound plugin on the class path adds.
+ *
+ * Tried after the other decoders, since it can only tell whether it reads a file by trying.
+ */
+public class JavaSoundDecoder implements AudioDecoder {
+
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String name() {
+		return "javasound/1";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String[] extensions() {
+		return new String[] {"aif", "aiff", "aifc", "au", "snd"};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean canDecode(File file, byte[] head) {
+		try {
+			AudioSystem.getAudioFileFormat(file);
+			return true;
+		}
+		catch(UnsupportedAudioFileException e) {
+			return false;
+		}
+		catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public DecodedStream open(File file) throws UnsupportedAudioFileException, IOException {
+		AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_BYTES));
+		AudioFormat sourceFormat = source.getFormat();
+		final AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sourceFormat.getSampleRate(), 16,
+				sourceFormat.getChannels(), 2 * sourceFormat.getChannels(), sourceFormat.getSampleRate(), false);
+		final AudioInputStream in;
+		if(sourceFormat.matches(format)) {
+			in = source;
+		}
+		else {
+			try {
+				in = AudioSystem.getAudioInputStream(format, source);
+			}
+			catch(IllegalArgumentException e) {
+				source.close();
+				throw new UnsupportedAudioFileException("Java Sound cannot convert " + sourceFormat + " to 16-bit PCM");
+			}
+		}
+		final long frameLength = source.getFrameLength();
+		return new DecodedStream() {
+			private byte[] bytes = new byte[0];
+
+			public int numChannels() {
+				return format.getChannels();
+			}
+
+			public double frameRate() {
+				return format.getFrameRate();
+			}
+
+			public int bitsPerSample() {
+				return 16;
+			}
+
+			public long numFrames() {
+				return frameLength == AudioSystem.NOT_SPECIFIED ? -1 : frameLength;
+			}
+
+			public int read(int[] dest, int numFrames) throws IOException {
+				final int frameSize = format.getFrameSize();
+				int numBytes = numFrames * frameSize;
+				if(bytes.length < numBytes) {
+					bytes = new byte[numBytes];
+				}
+				int numRead = 0;
+				//Java Sound only reads whole frames, but may read fewer than asked for
+				while(numRead == 0 || numRead % frameSize != 0) {
+					int n = in.read(bytes, numRead, numBytes - numRead);
+					if(n < 0) {
+						break;
+					}
+					numRead += n;
+				}
+				int framesRead = numRead / frameSize;
+				if(framesRead == 0) {
+					return -1;
+				}
+				int numSamples = framesRead * format.getChannels();
+				for(int i = 0, b = 0; i < numSamples; i++, b += 2) {
+					dest[i] = (bytes[b] & 0xFF) | (bytes[b + 1] << 8);
+				}
+				return framesRead;
+			}
+
+			public void close() {
+				try {
+					in.close();
+				}
+				catch(IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+	}
+}
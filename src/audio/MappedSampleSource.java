@@ -0,0 +1,282 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <code>SampleSource</code> backed by read-only memory mappings of a 16-bit PCM WAV file's data chunk.
+ *
+ * <p>A <code>MappedByteBuffer</code> cannot exceed 2 GB, so the data chunk is mapped as a series of segments.
+ * Neighboring segments overlap by {@link #maxViewFrames()} frames, so that every view lies inside a single segment and never needs copying.
+ * The overlap is address space only, the operating system pages each part of the file in once.
+ *
+ * <p>Mappings are released by the garbage collector, not by {@link #close()}, since Java offers no way to unmap a buffer explicitly.
+ */
+public class MappedSampleSource implements SampleSource {
+
+	private static final long SEGMENT_BYTES = 1 << 30;
+	private static final int MAX_VIEW_BYTES = 1 << 26;
+
+	private static final int WAVE_FORMAT_PCM = 1;
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	private final File file;
+	private final RandomAccessFile raf;
+
+	private final int numChannels;
+	private final double frameRate;
+	private final int frameSizeInBytes;
+	private final long numFrames;
+	private final long segmentStride;
+	private final int maxViewFrames;
+
+	private volatile MappedByteBuffer[] segments;
+
+	/**
+	 * Maps the data chunk of the provided WAV file.
+	 *
+	 * @param file The WAV file
+	 * @throws IOException If the file cannot be read, is not a RIFF WAVE file, or does not hold 16-bit PCM samples
+	 */
+	public MappedSampleSource(File file) throws IOException {
+		this.file = file;
+		raf = new RandomAccessFile(file, "r");
+		try {
+			if(readFourCC(raf).equals("RIFF") == false) {
+				throw new IOException(file + " is not a RIFF file");
+			}
+			readIntLE(raf);
+			if(readFourCC(raf).equals("WAVE") == false) {
+				throw new IOException(file + " is not a WAVE file");
+			}
+
+			int channels = -1;
+			double rate = -1;
+			int blockAlign = -1;
+			long dataOffset = -1;
+			long dataBytes = -1;
+			final long fileLength = raf.length();
+			while(raf.getFilePointer() + 8 <= fileLength) {
+				String id = readFourCC(raf);
+				long size = readIntLE(raf) & 0xFFFFFFFFL;
+				long bodyStart = raf.getFilePointer();
+				if(id.equals("fmt ")) {
+					int formatTag = readShortLE(raf);
+					channels = readShortLE(raf);
+					rate = readIntLE(raf) & 0xFFFFFFFFL;
+					readIntLE(raf);
+					blockAlign = readShortLE(raf);
+					int bitsPerSample = readShortLE(raf);
+					if(formatTag != WAVE_FORMAT_PCM && formatTag != WAVE_FORMAT_EXTENSIBLE) {
+						throw new IOException(file + " is not uncompressed PCM");
+					}
+					if(bitsPerSample != 16 || channels < 1 || blockAlign != 2 * channels) {
+						throw new IOException(file + " does not hold 16-bit samples");
+					}
+				}
+				else if(id.equals("data")) {
+					dataOffset = bodyStart;
+					//recorders that were interrupted leave the size unset or too large
+					dataBytes = Math.min(size, fileLength - bodyStart);
+					break;
+				}
+				raf.seek(bodyStart + size + (size & 1));
+			}
+			if(channels < 0) {
+				throw new IOException(file + " has no fmt chunk");
+			}
+			if(dataOffset < 0) {
+				throw new IOException(file + " has no data chunk");
+			}
+
+			numChannels = channels;
+			frameRate = rate;
+			frameSizeInBytes = blockAlign;
+			numFrames = dataBytes / frameSizeInBytes;
+			maxViewFrames = MAX_VIEW_BYTES / frameSizeInBytes;
+			segmentStride = (SEGMENT_BYTES / frameSizeInBytes) * frameSizeInBytes;
+
+			final long usableBytes = numFrames * frameSizeInBytes;
+			final long overlapBytes = (long)maxViewFrames * frameSizeInBytes;
+			int numSegments = (int)((usableBytes + segmentStride - 1) / segmentStride);
+			MappedByteBuffer[] tmpSegments = new MappedByteBuffer[numSegments];
+			FileChannel channel = raf.getChannel();
+			for(int i = 0; i < numSegments; i++) {
+				long start = i * segmentStride;
+				long length = Math.min(segmentStride + overlapBytes, usableBytes - start);
+				tmpSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start, length);
+				tmpSegments[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+			segments = tmpSegments;
+		}
+		catch(IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	public long numFrames() {
+		return numFrames;
+	}
+
+	public int numChannels() {
+		return numChannels;
+	}
+
+	public double frameRate() {
+		return frameRate;
+	}
+
+	public int maxViewFrames() {
+		return maxViewFrames;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public short getSample(long frame, int channel) {
+		if(frame < 0 || frame >= numFrames || channel < 0 || channel >= numChannels) {
+			throw new IndexOutOfBoundsException("frame " + frame + ", channel " + channel);
+		}
+		long byteIndex = frame * frameSizeInBytes;
+		int segment = (int)(byteIndex / segmentStride);
+		return segments[segment].getShort((int)(byteIndex - segment * segmentStride) + 2 * channel);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public ByteBuffer byteView(long firstFrame, int numFrames) {
+		if(numFrames > maxViewFrames) {
+			throw new IllegalArgumentException("views are limited to " + maxViewFrames + " frames");
+		}
+		if(firstFrame < 0 || numFrames < 0) {
+			throw new IndexOutOfBoundsException("frame " + firstFrame);
+		}
+		firstFrame = Math.min(firstFrame, this.numFrames);
+		numFrames = (int)Math.min(numFrames, this.numFrames - firstFrame);
+		if(numFrames == 0) {
+			return ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN).asReadOnlyBuffer();
+		}
+		long byteIndex = firstFrame * frameSizeInBytes;
+		int segment = (int)(byteIndex / segmentStride);
+		int position = (int)(byteIndex - segment * segmentStride);
+		ByteBuffer dup = segments[segment].duplicate();
+		dup.limit(position + numFrames * frameSizeInBytes);
+		dup.position(position);
+		return dup.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public ShortBuffer view(long firstFrame, int numFrames) {
+		return byteView(firstFrame, numFrames).asShortBuffer();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int read(long firstFrame, int channel, double[] dest, int offset, int numFrames) {
+		if(channel < 0 || channel >= numChannels) {
+			throw new IndexOutOfBoundsException("channel " + channel);
+		}
+		int numRead = 0;
+		while(numRead < numFrames) {
+			ShortBuffer samples = view(firstFrame + numRead, Math.min(numFrames - numRead, maxViewFrames));
+			int framesInView = samples.remaining() / numChannels;
+			if(framesInView == 0) {
+				break;
+			}
+			for(int i = 0; i < framesInView; i++) {
+				dest[offset + numRead + i] = samples.get(i * numChannels + channel) / 32768.0;
+			}
+			numRead += framesInView;
+		}
+		return numRead;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int readChannels(long firstFrame, double[][] dest, int offset, int numFrames) {
+		if(dest.length < numChannels) {
+			throw new IndexOutOfBoundsException(dest.length + " arrays for " + numChannels + " channels");
+		}
+		int numRead = 0;
+		while(numRead < numFrames) {
+			ShortBuffer samples = view(firstFrame + numRead, Math.min(numFrames - numRead, maxViewFrames));
+			int framesInView = samples.remaining() / numChannels;
+			if(framesInView == 0) {
+				break;
+			}
+			if(numChannels == 1) {
+				final double[] mono = dest[0];
+				for(int i = 0; i < framesInView; i++) {
+					mono[offset + numRead + i] = samples.get(i) / 32768.0;
+				}
+			}
+			else {
+				for(int i = 0, index = 0; i < framesInView; i++) {
+					for(int c = 0; c < numChannels; c++, index++) {
+						dest[c][offset + numRead + i] = samples.get(index) / 32768.0;
+					}
+				}
+			}
+			numRead += framesInView;
+		}
+		return numRead;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void close() {
+		segments = null;
+		try {
+			raf.close();
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MappedSampleSource[" + file + ", " + numFrames + " frames, " + numChannels + " channel(s)]";
+	}
+
+	private static String readFourCC(RandomAccessFile raf) throws IOException {
+		byte[] id = new byte[4];
+		raf.readFully(id);
+		return new String(id, "US-ASCII");
+	}
+
+	private static int readIntLE(RandomAccessFile raf) throws IOException {
+		return Integer.reverseBytes(raf.readInt());
+	}
+
+	private static int readShortLE(RandomAccessFile raf) throws IOException {
+		return Short.reverseBytes(raf.readShort()) & 0xFFFF;
+	}
+}
@@ -0,0 +1,365 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package audio;
+
+import info.Constants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Gives the rest of the program a 16-bit PCM WAV file for every audio file, whatever its format.
+ *
+ * <p>Files the program reads directly are used as they are. Anything else is decoded once, by the first {@link AudioDecoder} that recognizes it,
+ * into a transcode next to it, which the waveform, seeking and playback then read instead, with the same fast random access as a plain WAV file.
+ * The transcode is an ordinary WAV file, so Java Sound and the native player read it too.
+ * Between its format and its samples it has a <code>trsc</code> chunk indexing it back to its source: the source's size and modification time, and the decoder's name.
+ * A transcode is only trusted if all of them still match, otherwise the source is decoded again.
+ *
+ * <p>The channels are kept as they are and the samples rounded to 16 bits, the format the rest of the program handles.
+ *
+ * <p>Decoding in the background is done by a single thread, so transcodes do not compete for the disk.
+ * A file is never decoded by two threads at once, asking for a file already being decoded waits for that decoding.
+ */
+public class PcmTranscoder {
+
+	private static final int MAGIC = 0x54525343;
+	private static final int VERSION = 2;
+
+	private static final String INDEX_CHUNK = "trsc";
+	private static final String partialFileSuffix = ".part";
+
+	private static final int BLOCK_FRAMES = 1 << 14;
+
+	private static final ConcurrentMap<String, FutureTask<File>> pending = new ConcurrentHashMap<String, FutureTask<File>>();
+
+	private static final ExecutorService background = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "PcmTranscoder");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private PcmTranscoder() {
+	}
+
+	/**
+	 * Decides whether the program reads an audio file directly, without a transcode.
+	 *
+	 * @param file The audio file
+	 * @return <code>true</code> iff the file is a plain 16-bit PCM WAV file
+	 */
+	public static boolean readsDirectly(File file) {
+		try {
+			WavDecoder.Header header = WavDecoder.readHeader(file);
+			return header.formatTag == WavDecoder.WAVE_FORMAT_PCM && header.extensible == false && header.bitsPerSample == 16;
+		}
+		catch(UnsupportedAudioFileException e) {
+			return false;
+		}
+		catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the file that holds the transcode of an audio file, whether or not it exists.
+	 */
+	public static File transcodeFor(File source) {
+		return new File(source.getAbsolutePath() + "." + Constants.pcmTranscodeFileExtension);
+	}
+
+	/**
+	 * Returns the file to read the samples of an audio file from, if it is ready.
+	 *
+	 * @param source The audio file
+	 * @return The audio file itself if the program reads it directly, its transcode if that is up to date, otherwise <code>null</code>
+	 */
+	public static File readySampleFile(File source) {
+		if(readsDirectly(source)) {
+			return source;
+		}
+		File transcode = transcodeFor(source);
+		if(isFresh(source, transcode)) {
+			return transcode;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the file to read the samples of an audio file from, decoding it on the calling thread if needed.
+	 *
+	 * If the file is waiting to be decoded in the background, the calling thread decodes it right away instead.
+	 *
+	 * @param source The audio file
+	 * @return The audio file itself, or its transcode
+	 * @throws UnsupportedAudioFileException If no decoder can read the file
+	 * @throws IOException If the file cannot be read, or the transcode cannot be written
+	 */
+	public static File sampleFileFor(File source) throws UnsupportedAudioFileException, IOException {
+		try {
+			return schedule(source, false).get();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for " + source + " to be decoded");
+		}
+		catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof UnsupportedAudioFileException) {
+				throw (UnsupportedAudioFileException)cause;
+			}
+			if(cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Queues an audio file for decoding in the background, if it needs decoding, e.g. as soon as it is listed, so it is ready when the user opens it.
+	 *
+	 * @param source The audio file
+	 * @return The file to read the samples from, as {@link #sampleFileFor(File)} returns it
+	 */
+	public static Future<File> sampleFileInBackground(File source) {
+		return schedule(source, true);
+	}
+
+	private static Future<File> schedule(final File source, boolean inBackground) {
+		final String key = source.getAbsolutePath();
+		FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+			public File call() throws UnsupportedAudioFileException, IOException {
+				if(readsDirectly(source)) {
+					return source;
+				}
+				File transcode = transcodeFor(source);
+				if(isFresh(source, transcode) == false) {
+					transcode(source, transcode);
+				}
+				return transcode;
+			}
+		}) {
+			@Override
+			protected void done() {
+				pending.remove(key, this);
+			}
+		};
+		FutureTask<File> existing = pending.putIfAbsent(key, task);
+		if(existing != null) {
+			if(inBackground == false) {
+				//does nothing if the background thread has already started it
+				existing.run();
+			}
+			return existing;
+		}
+		if(inBackground) {
+			background.execute(task);
+		}
+		else {
+			task.run();
+		}
+		return task;
+	}
+
+	/**
+	 * Decides whether a transcode was made from the current contents of its source, by a decoder of the same name as would decode it now.
+	 */
+	private static boolean isFresh(File source, File transcode) {
+		if(transcode.exists() == false) {
+			return false;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(transcode)));
+			//RIFF header, then the 16-byte fmt chunk
+			in.skipBytes(12 + 8 + 16);
+			byte[] id = new byte[4];
+			in.readFully(id);
+			if(new String(id, "US-ASCII").equals(INDEX_CHUNK) == false) {
+				return false;
+			}
+			in.readInt();
+			if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return false;
+			}
+			if(in.readLong() != source.length() || in.readLong() != source.lastModified()) {
+				return false;
+			}
+			AudioDecoder decoder = AudioDecoders.forFile(source);
+			return decoder != null && decoder.name().equals(in.readUTF());
+		}
+		catch(IOException e) {
+			return false;
+		}
+		finally {
+			if(in != null) {
+				try {
+					in.close();
+				}
+				catch(IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes an audio file into a transcode.
+	 *
+	 * The transcode is written to a temporary file first, so a reader never sees a partial transcode.
+	 */
+	private static void transcode(File source, File transcode) throws UnsupportedAudioFileException, IOException {
+		AudioDecoder decoder = AudioDecoders.forFile(source);
+		if(decoder == null) {
+			throw new UnsupportedAudioFileException("no decoder recognizes " + source);
+		}
+		DecodedStream in = decoder.open(source);
+		File tmp = new File(transcode.getAbsolutePath() + partialFileSuffix);
+		long dataSizeOffset;
+		long numFrames = 0;
+		final int numChannels = in.numChannels();
+		try {
+			if(in.frameRate() != Math.rint(in.frameRate())) {
+				throw new UnsupportedAudioFileException(source + " has a fractional sample rate");
+			}
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+			try {
+				out.writeBytes("RIFF");
+				out.writeInt(0); //patched below
+				out.writeBytes("WAVE");
+
+				out.writeBytes("fmt ");
+				out.writeInt(Integer.reverseBytes(16));
+				out.writeShort(Short.reverseBytes((short)WavDecoder.WAVE_FORMAT_PCM));
+				out.writeShort(Short.reverseBytes((short)numChannels));
+				out.writeInt(Integer.reverseBytes((int)in.frameRate()));
+				out.writeInt(Integer.reverseBytes(2 * numChannels * (int)in.frameRate()));
+				out.writeShort(Short.reverseBytes((short)(2 * numChannels)));
+				out.writeShort(Short.reverseBytes((short)16));
+
+				byte[] index = indexChunk(source, decoder);
+				out.writeBytes(INDEX_CHUNK);
+				out.writeInt(Integer.reverseBytes(index.length));
+				out.write(index);
+				if(index.length % 2 == 1) {
+					out.writeByte(0);
+				}
+
+				out.writeBytes("data");
+				dataSizeOffset = out.size();
+				out.writeInt(0); //patched below
+
+				final int shift = in.bitsPerSample() - 16;
+				int[] samples = new int[BLOCK_FRAMES * numChannels];
+				int n;
+				while((n = in.read(samples, BLOCK_FRAMES)) > 0) {
+					for(int i = 0; i < n * numChannels; i++) {
+						out.writeShort(Short.reverseBytes(toShort(samples[i], shift)));
+					}
+					numFrames += n;
+				}
+			}
+			finally {
+				out.close();
+			}
+		}
+		catch(IOException e) {
+			tmp.delete();
+			throw e;
+		}
+		catch(UnsupportedAudioFileException e) {
+			tmp.delete();
+			throw e;
+		}
+		finally {
+			in.close();
+		}
+
+		long dataBytes = 2L * numChannels * numFrames;
+		if(dataSizeOffset + 4 + dataBytes - 8 > 0xFFFFFFFFL) {
+			tmp.delete();
+			throw new IOException(source + " is too long for a WAV transcode");
+		}
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			raf.seek(4);
+			raf.writeInt(Integer.reverseBytes((int)(dataSizeOffset + 4 + dataBytes - 8)));
+			raf.seek(dataSizeOffset);
+			raf.writeInt(Integer.reverseBytes((int)dataBytes));
+		}
+		finally {
+			raf.close();
+		}
+		transcode.delete();
+		if(tmp.renameTo(transcode) == false) {
+			tmp.delete();
+			throw new IOException("could not rename " + tmp + " to " + transcode);
+		}
+	}
+
+	private static byte[] indexChunk(File source, AudioDecoder decoder) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(source.length());
+		out.writeLong(source.lastModified());
+		out.writeUTF(decoder.name());
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Rounds a sample of any size to 16 bits.
+	 *
+	 * @param sample The sample
+	 * @param shift The number of bits the sample has more than 16, negative if it has fewer
+	 */
+	private static short toShort(long sample, int shift) {
+		if(shift > 0) {
+			sample = (sample + (1L << (shift - 1))) >> shift;
+		}
+		else if(shift < 0) {
+			sample <<= -shift;
+		}
+		return (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+	}
+}
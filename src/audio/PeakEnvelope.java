@@ -0,0 +1,95 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package audio;
+
+/**
+ * Sliding-window peak envelope, replacing every sample with the largest absolute value near it.
+ *
+ * Sample <i>i</i> becomes the largest |x[j]| for <code>i - halfWidth <= j < i + halfWidth</code>, clipped to the array.
+ * A monotonic deque of candidate maxima makes the cost O(n) regardless of the window size, since every sample enters and leaves the deque once.
+ *
+ * The deque is allocated once, so an instance can be reused for any number of arrays, but not by two threads at once.
+ */
+public class PeakEnvelope {
+
+	private final int halfWidth;
+
+	//ring buffer of candidates, values decreasing from head to tail, with a power of two capacity so wrapping is a mask
+	private final double[] dequeVals;
+	private final int[] dequeIndexes;
+	private final int mask;
+
+	/**
+	 * @param halfWidth Number of samples on either side of a sample that contribute to its envelope
+	 */
+	public PeakEnvelope(int halfWidth) {
+		if(halfWidth < 1) {
+			throw new IllegalArgumentException("half width must be positive: " + halfWidth);
+		}
+		this.halfWidth = halfWidth;
+		int capacity = Integer.highestOneBit(2 * halfWidth) << 1;
+		dequeVals = new double[capacity];
+		dequeIndexes = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Creates an envelope whose window spans the provided duration.
+	 *
+	 * @param windowMillis Length of the whole window, in milliseconds
+	 * @param frameRate Frames per second of the samples the envelope will be applied to
+	 * @return The envelope, with a window of at least one sample on either side
+	 */
+	public static PeakEnvelope forWindow(double windowMillis, double frameRate) {
+		return new PeakEnvelope(Math.max(1, (int)Math.round(windowMillis * frameRate / 2000)));
+	}
+
+	public int getHalfWidth() {
+		return halfWidth;
+	}
+
+	/**
+	 * Replaces the first <code>length</code> samples with their envelope, in place.
+	 *
+	 * @param samples The samples
+	 * @param length The number of samples to process
+	 */
+	public void apply(double[] samples, int length) {
+		//head and tail only ever grow, the deque holds the slots head..tail-1 (masked)
+		int head = 0;
+		int tail = 0;
+		int nextIn = 0;
+		for(int i = 0; i < length; i++) {
+			//admit samples up to the end of i's window, they are read before anything at or after them is overwritten
+			final int windowEnd = Math.min(length, i + halfWidth);
+			while(nextIn < windowEnd) {
+				final double val = Math.abs(samples[nextIn]);
+				//drop candidates that can never be the maximum again
+				while(tail > head && dequeVals[(tail - 1) & mask] <= val) {
+					tail--;
+				}
+				dequeVals[tail & mask] = val;
+				dequeIndexes[tail & mask] = nextIn;
+				tail++;
+				nextIn++;
+			}
+			//retire samples that slid out of the front of the window
+			while(tail > head && dequeIndexes[head & mask] < i - halfWidth) {
+				head++;
+			}
+			samples[i] = tail > head ? dequeVals[head & mask] : 0;
+		}
+	}
+}
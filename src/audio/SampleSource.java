@@ -0,0 +1,107 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Random access to the 16-bit PCM frames of an audio file.
+ *
+ * Frames are addressed by index, so reading from the middle of a long file costs the same as reading from its beginning.
+ * Implementations must be safe for concurrent reads from multiple threads.
+ */
+public interface SampleSource {
+
+	/**
+	 * @return The number of frames in the source
+	 */
+	public long numFrames();
+
+	/**
+	 * @return The number of interleaved channels in each frame
+	 */
+	public int numChannels();
+
+	/**
+	 * @return Frames per second
+	 */
+	public double frameRate();
+
+	/**
+	 * Returns one sample.
+	 *
+	 * @param frame Index of the frame
+	 * @param channel Channel within the frame, starting at 0
+	 * @return The raw 16-bit sample value
+	 * @throws IndexOutOfBoundsException If the frame or channel does not exist
+	 */
+	public short getSample(long frame, int channel);
+
+	/**
+	 * Returns a read-only view of consecutive frames, without copying.
+	 *
+	 * The view's position is 0 and it holds <code>numFrames * numChannels()</code> interleaved samples, in native sample order.
+	 *
+	 * @param firstFrame Index of the first frame in the view
+	 * @param numFrames Number of frames in the view, which may be truncated at the end of the source
+	 * @return The view
+	 * @throws IllegalArgumentException If <code>numFrames</code> is larger than {@link #maxViewFrames()}
+	 */
+	public ShortBuffer view(long firstFrame, int numFrames);
+
+	/**
+	 * Returns a read-only view of the bytes of consecutive frames, without copying, as signed little-endian samples.
+	 *
+	 * @see #view(long, int)
+	 */
+	public ByteBuffer byteView(long firstFrame, int numFrames);
+
+	/**
+	 * @return The largest number of frames that a single view may span
+	 */
+	public int maxViewFrames();
+
+	/**
+	 * Reads one channel of consecutive frames as doubles in [-1, 1), the same scale <code>AudioDoubleDataSource</code> produces.
+	 *
+	 * @param firstFrame Index of the first frame to read
+	 * @param channel Channel to read
+	 * @param dest Array that receives the samples
+	 * @param offset First index of <code>dest</code> to fill
+	 * @param numFrames Maximum number of frames to read
+	 * @return The number of frames actually read, which is smaller than <code>numFrames</code> only at the end of the source
+	 */
+	public int read(long firstFrame, int channel, double[] dest, int offset, int numFrames);
+
+	/**
+	 * Reads every channel of consecutive frames as doubles in [-1, 1), de-interleaving them in a single pass over the frames.
+	 *
+	 * @param firstFrame Index of the first frame to read
+	 * @param dest One array per channel, at least <code>numChannels()</code> of them, that receive the samples
+	 * @param offset First index of each array of <code>dest</code> to fill
+	 * @param numFrames Maximum number of frames to read
+	 * @return The number of frames actually read, which is smaller than <code>numFrames</code> only at the end of the source
+	 * @see #read(long, int, double[], int, int)
+	 */
+	public int readChannels(long firstFrame, double[][] dest, int offset, int numFrames);
+
+	/**
+	 * Releases the underlying file.
+	 *
+	 * Views handed out earlier must not be used afterwards.
+	 */
+	public void close();
+}
@@ -0,0 +1,144 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package audio;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Short-time Fourier transform engine, computing the power spectrum of a window of frames centered on any frame of a <code>SampleSource</code>.
+ *
+ * <p>Frames are pre-emphasized by 6 dB per octave, as speech spectrograms usually are, so fricatives and high formants are not lost below the low frequencies.
+ * They are then shaped by a Hann window and zero-padded to the transform size, at least {@link #MIN_FFT_SIZE}.
+ * Power is reported in decibels relative to a full-scale sine wave.
+ *
+ * <p>The FFT plans and window tables are shared by all instances, see {@link FFTPlan#forSize(int)}.
+ * An instance only holds scratch buffers, so it is cheap to create, but must not be used by two threads at once.
+ */
+public class ShortTimeFFT {
+
+	/**
+	 * The smallest transform used, so that short windows still give a smooth spectrum.
+	 */
+	public static final int MIN_FFT_SIZE = 512;
+
+	private static final double PRE_EMPHASIS = 0.97;
+
+	//-200 dB, so silence doesn't turn into negative infinity
+	private static final double POWER_FLOOR = 1e-20;
+
+	private static final Map<Integer, double[]> windows = new HashMap<Integer, double[]>();
+
+	private final int windowFrames;
+	private final FFTPlan plan;
+	private final double[] window;
+	private final double fullScalePower;
+
+	private final double[] frames;
+	private final double[] re;
+	private final double[] im;
+
+	/**
+	 * @param windowFrames The number of frames in a window
+	 */
+	public ShortTimeFFT(int windowFrames) {
+		if(windowFrames < 2) {
+			throw new IllegalArgumentException("window too short: " + windowFrames);
+		}
+		this.windowFrames = windowFrames;
+		plan = FFTPlan.forSize(Math.max(MIN_FFT_SIZE, Integer.highestOneBit(windowFrames - 1) << 1));
+		window = hannWindow(windowFrames);
+		double windowSum = 0;
+		for(int i = 0; i < window.length; i++) {
+			windowSum += window[i];
+		}
+		//a full-scale sine puts half the window's sum into its bin
+		fullScalePower = (windowSum / 2) * (windowSum / 2);
+		frames = new double[windowFrames + 1];
+		re = new double[plan.size()];
+		im = new double[plan.size()];
+	}
+
+	/**
+	 * @return The number of frequency bins in a spectrum, from 0 Hz up to just below the Nyquist frequency
+	 */
+	public int numBins() {
+		return plan.size() / 2;
+	}
+
+	/**
+	 * @param frameRate Frames per second of the audio
+	 * @return The width of a frequency bin in Hz
+	 */
+	public double binHz(double frameRate) {
+		return frameRate / plan.size();
+	}
+
+	/**
+	 * Computes the power spectrum of the window centered on a frame.
+	 *
+	 * Frames outside of the source are taken as silence.
+	 *
+	 * @param source The samples
+	 * @param channel The channel to analyze
+	 * @param centerFrame The frame in the middle of the window
+	 * @param dest Array of at least <code>numBins()</code> values, receiving the power of each bin in dB relative to full scale
+	 */
+	public void powerDb(SampleSource source, int channel, long centerFrame, double[] dest) {
+		//one extra frame in front, for the pre-emphasis of the first frame
+		long firstFrame = centerFrame - windowFrames / 2 - 1;
+		int numBefore = (int)Math.min(frames.length, Math.max(0, -firstFrame));
+		for(int i = 0; i < numBefore; i++) {
+			frames[i] = 0;
+		}
+		int numRead = 0;
+		if(numBefore < frames.length) {
+			numRead = source.read(firstFrame + numBefore, channel, frames, numBefore, frames.length - numBefore);
+		}
+		for(int i = numBefore + numRead; i < frames.length; i++) {
+			frames[i] = 0;
+		}
+
+		for(int i = 0; i < windowFrames; i++) {
+			re[i] = (frames[i + 1] - PRE_EMPHASIS * frames[i]) * window[i];
+			im[i] = 0;
+		}
+		for(int i = windowFrames; i < re.length; i++) {
+			re[i] = 0;
+			im[i] = 0;
+		}
+		plan.transform(re, im);
+
+		final int numBins = numBins();
+		for(int i = 0; i < numBins; i++) {
+			double power = (re[i] * re[i] + im[i] * im[i]) / fullScalePower;
+			dest[i] = 10 * Math.log10(Math.max(POWER_FLOOR, power));
+		}
+	}
+
+	private static double[] hannWindow(int length) {
+		synchronized(windows) {
+			double[] window = windows.get(length);
+			if(window == null) {
+				window = new double[length];
+				for(int i = 0; i < length; i++) {
+					window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * (i + 0.5) / length);
+				}
+				windows.put(length, window);
+			}
+			return window;
+		}
+	}
+}
@@ -0,0 +1,232 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package audio;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.upenn.psych.memory.precisionplayer.SilenceSkipper;
+
+/**
+ * Streaming energy detector that finds the long pauses of a recording just ahead of the playhead, so playback can jump over them.
+ *
+ * <p>The audio is measured in 10 ms windows, like {@link SpeechIndex}: the energy of a window is that of its loudest channel, after removing each channel's DC offset.
+ * Since the whole file is not seen in advance, the noise floor is tracked as the quietest window of the last few seconds scanned, primed by scanning a few seconds before the frame playback starts at.
+ * A window is silent if it is less than 9 dB above the floor, a little more than <code>SpeechIndex</code> allows above its percentile floor since the quietest window is lower,
+ * or if it is quieter than -61 dB, the lowest threshold <code>SpeechIndex</code> uses.
+ *
+ * <p>A run of silent windows at least as long as the configured threshold is skipped, except for 150 ms at either end, so that the end of one word and the start of the next are still heard, and the pause is shortened rather than removed.
+ * Scanning stays about a second ahead of the playhead, except that a silence long enough to skip is followed to its end.
+ * No call scans more than 30 s of audio, so a longer silence is returned in parts: each part ends where the scan stopped,
+ * and when playback resumes at the end of a part the next call carries on from there, skipping the rest of the silence without another pad.
+ *
+ * <p>Instances are used by one playback at a time, and can be closed from another thread, after which nothing more is skipped.
+ */
+public class SilenceDetector implements SilenceSkipper {
+
+	private static final double WINDOW_SECONDS = 0.01;
+	private static final double PAD_SECONDS = 0.15;
+	private static final double LOOKAHEAD_SECONDS = 1;
+	//bounds the time a call holds the playback thread and this detector's monitor, about 2 ms
+	private static final double MAX_SCAN_SECONDS_PER_CALL = 30;
+	//the floor is the quietest window of the current and previous blocks of this length
+	private static final double FLOOR_BLOCK_SECONDS = 2.5;
+	private static final double SILENCE_DB = 9;
+	//windows quieter than this are always silent, so a digitally silent stretch is skipped
+	private static final double MIN_SILENCE_DB = -61;
+
+	/**
+	 * The shortest silence that can be skipped, which is more than the two pads kept.
+	 */
+	public static final int MIN_SKIPPED_MILLIS = 500;
+
+	//-200 dB, so silence doesn't turn into negative infinity
+	private static final double POWER_FLOOR = 1e-20;
+
+	private final SampleSource samples;
+	private final int windowFrames;
+	private final int padFrames;
+	private final long lookaheadFrames;
+	private final int maxWindowsPerCall;
+	private final int floorBlockWindows;
+	private final long minSilenceFrames;
+	private final double[][] window;
+
+	private boolean closed;
+
+	//the scan in progress, which continues as long as playback asks from the same frame
+	private long fromFrame;
+	private long scanFrame;
+	private long silenceStart;
+	//the end of the part of a silence last returned, while the silence may continue past it
+	private long partEnd;
+	private double floorDb;
+	private double blockMinDb;
+	private double previousBlockMinDb;
+	private int windowsInBlock;
+
+	/**
+	 * @param audioFile The 16-bit PCM WAV file that is played
+	 * @param minSilenceMillis The length of the shortest silence to skip, at least {@link #MIN_SKIPPED_MILLIS}
+	 * @throws IOException If the audio file cannot be read
+	 */
+	public SilenceDetector(File audioFile, int minSilenceMillis) throws IOException {
+		if(minSilenceMillis < MIN_SKIPPED_MILLIS) {
+			throw new IllegalArgumentException("silences shorter than " + MIN_SKIPPED_MILLIS + " ms are never skipped: " + minSilenceMillis);
+		}
+		samples = new MappedSampleSource(audioFile);
+		final double frameRate = samples.frameRate();
+		windowFrames = Math.max(1, (int)Math.round(WINDOW_SECONDS * frameRate));
+		padFrames = (int)Math.round(PAD_SECONDS * frameRate);
+		lookaheadFrames = Math.round(LOOKAHEAD_SECONDS * frameRate);
+		maxWindowsPerCall = (int)Math.round(MAX_SCAN_SECONDS_PER_CALL / WINDOW_SECONDS);
+		floorBlockWindows = (int)Math.round(FLOOR_BLOCK_SECONDS / WINDOW_SECONDS);
+		minSilenceFrames = Math.round(minSilenceMillis / 1000.0 * frameRate);
+		window = new double[samples.numChannels()][windowFrames];
+		fromFrame = -1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized long[] nextSkip(long fromFrame, long playheadFrame) {
+		if(closed) {
+			return null;
+		}
+		if(fromFrame != this.fromFrame) {
+			if(fromFrame == partEnd && silenceStart >= 0) {
+				//playback jumped over the part, the rest of the silence is skipped from where it resumed
+				this.fromFrame = fromFrame;
+				silenceStart = fromFrame - padFrames;
+				partEnd = -1;
+			}
+			else {
+				restart(fromFrame);
+			}
+		}
+		final long numFrames = samples.numFrames();
+		int windowsScanned = 0;
+		while(scanFrame < numFrames) {
+			final boolean longEnough = silenceStart >= 0 && scanFrame - silenceStart >= minSilenceFrames;
+			if(windowsScanned == maxWindowsPerCall) {
+				if(longEnough) {
+					long[] skip = skipFor(silenceStart, scanFrame);
+					partEnd = skip[1];
+					return skip;
+				}
+				return null;
+			}
+			if(scanFrame >= playheadFrame + lookaheadFrames && longEnough == false) {
+				return null;
+			}
+			windowsScanned++;
+			final long windowStart = scanFrame;
+			final boolean silent = scanWindow();
+			if(windowStart < fromFrame) {
+				//still priming the floor
+				continue;
+			}
+			if(silent) {
+				if(silenceStart < 0) {
+					silenceStart = windowStart;
+				}
+			}
+			else if(silenceStart >= 0) {
+				long[] skip = skipFor(silenceStart, windowStart);
+				silenceStart = -1;
+				partEnd = -1;
+				if(skip != null) {
+					return skip;
+				}
+			}
+		}
+		if(silenceStart >= 0) {
+			long[] skip = skipFor(silenceStart, numFrames);
+			silenceStart = -1;
+			partEnd = -1;
+			return skip;
+		}
+		return null;
+	}
+
+	/**
+	 * Releases the audio file. Safe to call while a playback is using this detector.
+	 */
+	public synchronized void close() {
+		if(closed == false) {
+			closed = true;
+			samples.close();
+		}
+	}
+
+	private void restart(long fromFrame) {
+		this.fromFrame = fromFrame;
+		scanFrame = Math.max(0, fromFrame - 2L * floorBlockWindows * windowFrames);
+		silenceStart = -1;
+		partEnd = -1;
+		floorDb = Double.POSITIVE_INFINITY;
+		blockMinDb = Double.POSITIVE_INFINITY;
+		previousBlockMinDb = Double.POSITIVE_INFINITY;
+		windowsInBlock = 0;
+	}
+
+	/**
+	 * Measures the window at <code>scanFrame</code>, moves the floor, and advances <code>scanFrame</code> past it.
+	 *
+	 * @return Whether the window is silent
+	 */
+	private boolean scanWindow() {
+		int length = samples.readChannels(scanFrame, window, 0, windowFrames);
+		if(length <= 0) {
+			scanFrame = samples.numFrames();
+			return true;
+		}
+		scanFrame += length;
+
+		double power = 0;
+		for(int c = 0; c < window.length; c++) {
+			final double[] frames = window[c];
+			double sum = 0;
+			double sumSquare = 0;
+			for(int i = 0; i < length; i++) {
+				sum += frames[i];
+				sumSquare += frames[i] * frames[i];
+			}
+			double mean = sum / length;
+			power = Math.max(power, sumSquare / length - mean * mean);
+		}
+		//relative to a full-scale sine wave, whose mean square is one half
+		final double db = 10 * Math.log10(Math.max(POWER_FLOOR, 2 * power));
+
+		blockMinDb = Math.min(blockMinDb, db);
+		floorDb = Math.min(blockMinDb, previousBlockMinDb);
+		if(++windowsInBlock == floorBlockWindows) {
+			previousBlockMinDb = blockMinDb;
+			blockMinDb = Double.POSITIVE_INFINITY;
+			windowsInBlock = 0;
+		}
+		return db < Math.max(floorDb + SILENCE_DB, MIN_SILENCE_DB);
+	}
+
+	/**
+	 * @return The part of a silence to skip, or <code>null</code> if it is too short
+	 */
+	private long[] skipFor(long start, long end) {
+		if(end - start < minSilenceFrames) {
+			return null;
+		}
+		return new long[] {start + padFrames, end - padFrames};
+	}
+}
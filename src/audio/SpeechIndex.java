@@ -0,0 +1,310 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package audio;
+
+import info.Constants;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import util.SidecarFile;
+
+/**
+ * Sorted index of the stretches of an audio file that hold speech, for jumping over the silence between them.
+ *
+ * <p>The index is built by a {@link Builder} in one streaming pass over the file, from the energy of 10 ms windows.
+ * The noise floor is taken to be the 10th percentile of the windows' energies, since most of a free-recall recording is silence.
+ * A segment starts at a window at least 12 dB above the floor, reaching back over the windows just before it that are at least 6 dB above the floor,
+ * and ends once the energy has stayed below that for 250 ms, so the pauses inside a word or between two words said together do not split it.
+ * Segments shorter than 60 ms, e.g. clicks, are dropped.
+ *
+ * <p>Onsets and offsets are kept in two sorted arrays, so finding the segment nearest any frame is a binary search.
+ * The index is persisted in a {@link SidecarFile} next to the audio file, which is only trusted if the audio file's size and modification time still match.
+ */
+public class SpeechIndex {
+
+	private static final int MAGIC = 0x53504348;
+	private static final int VERSION = 1;
+
+	private final long[] onsets;
+	private final long[] offsets;
+
+	private SpeechIndex(long[] onsets, long[] offsets) {
+		this.onsets = onsets;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * @return The number of speech segments
+	 */
+	public int numSegments() {
+		return onsets.length;
+	}
+
+	/**
+	 * @param segment The segment, counting from 0 in order of time
+	 * @return The first frame of the segment
+	 */
+	public long onset(int segment) {
+		return onsets[segment];
+	}
+
+	/**
+	 * @param segment The segment, counting from 0 in order of time
+	 * @return The frame after the last frame of the segment
+	 */
+	public long offset(int segment) {
+		return offsets[segment];
+	}
+
+	/**
+	 * Finds the first speech onset after a frame.
+	 *
+	 * @param frame The frame
+	 * @return The onset, or -1 if no segment starts after <code>frame</code>
+	 */
+	public long nextOnset(long frame) {
+		int index = Arrays.binarySearch(onsets, frame);
+		index = index >= 0 ? index + 1 : -(index + 1);
+		return index < onsets.length ? onsets[index] : -1;
+	}
+
+	/**
+	 * Finds the last speech onset before a frame.
+	 *
+	 * @param frame The frame
+	 * @return The onset, or -1 if no segment starts before <code>frame</code>
+	 */
+	public long previousOnset(long frame) {
+		int index = Arrays.binarySearch(onsets, frame);
+		index = index >= 0 ? index - 1 : -(index + 1) - 1;
+		return index >= 0 ? onsets[index] : -1;
+	}
+
+	/**
+	 * Returns the sidecar file used to store the index of the provided audio file.
+	 */
+	public static File sidecarFor(File audioFile) {
+		return SidecarFile.of(audioFile, 0, Constants.speechIndexFileExtension);
+	}
+
+	/**
+	 * Reads the index stored in the sidecar of the provided audio file.
+	 *
+	 * @return The stored index, or <code>null</code> if there is no sidecar, it cannot be read, or it is stale
+	 */
+	public static SpeechIndex load(File audioFile) {
+		File sidecar = sidecarFor(audioFile);
+		DataInputStream in = null;
+		try {
+			in = SidecarFile.openForReading(sidecar, MAGIC, VERSION, audioFile);
+			if(in == null) {
+				return null;
+			}
+			int numSegments = in.readInt();
+			long[] onsets = new long[numSegments];
+			long[] offsets = new long[numSegments];
+			for(int i = 0; i < numSegments; i++) {
+				onsets[i] = in.readLong();
+				offsets[i] = in.readLong();
+			}
+			return new SpeechIndex(onsets, offsets);
+		}
+		catch(IOException e) {
+			System.err.println("could not read speech index " + sidecar + ": " + e.getMessage());
+			return null;
+		}
+		finally {
+			SidecarFile.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Writes this index to the sidecar of the provided audio file, through a temporary file.
+	 *
+	 * @throws IOException If the sidecar cannot be written, e.g. because the audio file's directory is read-only
+	 */
+	public void save(File audioFile) throws IOException {
+		SidecarFile.write(sidecarFor(audioFile), MAGIC, VERSION, audioFile, new SidecarFile.Body() {
+			public void write(DataOutputStream out) throws IOException {
+				out.writeInt(onsets.length);
+				for(int i = 0; i < onsets.length; i++) {
+					out.writeLong(onsets[i]);
+					out.writeLong(offsets[i]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "SpeechIndex: " + onsets.length + " segments";
+	}
+
+
+
+	/**
+	 * Accumulates the energy of the frames of a file, fed to it in order, and finds the speech segments once the whole file has been seen.
+	 *
+	 * Only one float per 10 ms window is kept, about 1.4 MB for an hour.
+	 * The energy of a window is that of its loudest channel, after removing each channel's DC offset.
+	 */
+	public static class Builder {
+
+		private static final double WINDOW_SECONDS = 0.01;
+		private static final double FLOOR_PERCENTILE = 10;
+		private static final double ONSET_DB = 12;
+		private static final double OFFSET_DB = 6;
+		//the onset threshold is never lower than this, so a digitally silent file is not all speech
+		private static final double MIN_ONSET_DB = -55;
+		private static final double HANGOVER_SECONDS = 0.25;
+		private static final double MIN_SPEECH_SECONDS = 0.06;
+
+		//-200 dB, so silence doesn't turn into negative infinity
+		private static final double POWER_FLOOR = 1e-20;
+
+		private final int windowFrames;
+
+		//sums of the current window, per channel
+		private final double[] sums;
+		private final double[] sumSquares;
+		private int framesInWindow;
+
+		private float[] windowDb;
+		private int numWindows;
+		private long numFrames;
+
+		/**
+		 * @param numChannels The number of channels of the audio
+		 * @param frameRate Frames per second of the audio
+		 */
+		public Builder(int numChannels, double frameRate) {
+			windowFrames = Math.max(1, (int)Math.round(WINDOW_SECONDS * frameRate));
+			sums = new double[numChannels];
+			sumSquares = new double[numChannels];
+			windowDb = new float[1 << 12];
+		}
+
+		/**
+		 * Adds the next frames of the file.
+		 *
+		 * @param channels The frames, one array per channel, e.g. from {@link SampleSource#readChannels(long, double[][], int, int)}
+		 * @param length The number of frames to add from the start of each array
+		 */
+		public void add(double[][] channels, int length) {
+			for(int done = 0; done < length; ) {
+				final int n = Math.min(length - done, windowFrames - framesInWindow);
+				for(int c = 0; c < sums.length; c++) {
+					final double[] frames = channels[c];
+					double sum = 0;
+					double sumSquare = 0;
+					for(int i = done; i < done + n; i++) {
+						sum += frames[i];
+						sumSquare += frames[i] * frames[i];
+					}
+					sums[c] += sum;
+					sumSquares[c] += sumSquare;
+				}
+				framesInWindow += n;
+				done += n;
+				if(framesInWindow == windowFrames) {
+					endWindow();
+				}
+			}
+			numFrames += length;
+		}
+
+		/**
+		 * Finds the speech segments of all the frames added.
+		 *
+		 * @return The index
+		 */
+		public SpeechIndex build() {
+			if(framesInWindow > 0) {
+				endWindow();
+			}
+			if(numWindows == 0) {
+				return new SpeechIndex(new long[0], new long[0]);
+			}
+
+			float[] sorted = Arrays.copyOf(windowDb, numWindows);
+			Arrays.sort(sorted);
+			final double floorDb = sorted[(int)(FLOOR_PERCENTILE / 100 * (numWindows - 1))];
+			final double onsetDb = Math.max(floorDb + ONSET_DB, MIN_ONSET_DB);
+			final double offsetDb = onsetDb - (ONSET_DB - OFFSET_DB);
+			final int hangoverWindows = (int)Math.ceil(HANGOVER_SECONDS / WINDOW_SECONDS);
+			final int minSpeechWindows = (int)Math.ceil(MIN_SPEECH_SECONDS / WINDOW_SECONDS);
+
+			long[] onsets = new long[16];
+			long[] offsets = new long[16];
+			int numSegments = 0;
+			int previousEnd = 0;
+			int w = 0;
+			while(w < numWindows) {
+				if(windowDb[w] < onsetDb) {
+					w++;
+					continue;
+				}
+				int start = w;
+				while(start > previousEnd && windowDb[start - 1] >= offsetDb) {
+					start--;
+				}
+				int lastLoud = w;
+				while(w < numWindows && w - lastLoud <= hangoverWindows) {
+					if(windowDb[w] >= offsetDb) {
+						lastLoud = w;
+					}
+					w++;
+				}
+				int end = lastLoud + 1;
+				previousEnd = end;
+				w = end;
+				if(end - start < minSpeechWindows) {
+					continue;
+				}
+				if(numSegments == onsets.length) {
+					onsets = Arrays.copyOf(onsets, 2 * numSegments);
+					offsets = Arrays.copyOf(offsets, 2 * numSegments);
+				}
+				onsets[numSegments] = (long)start * windowFrames;
+				offsets[numSegments] = Math.min(numFrames, (long)end * windowFrames);
+				numSegments++;
+			}
+			return new SpeechIndex(Arrays.copyOf(onsets, numSegments), Arrays.copyOf(offsets, numSegments));
+		}
+
+		private void endWindow() {
+			double power = 0;
+			for(int c = 0; c < sums.length; c++) {
+				double mean = sums[c] / framesInWindow;
+				power = Math.max(power, sumSquares[c] / framesInWindow - mean * mean);
+				sums[c] = 0;
+				sumSquares[c] = 0;
+			}
+			if(numWindows == windowDb.length) {
+				windowDb = Arrays.copyOf(windowDb, 2 * numWindows);
+			}
+			//relative to a full-scale sine wave, whose mean square is one half
+			windowDb[numWindows++] = (float)(10 * Math.log10(Math.max(POWER_FLOOR, 2 * power)));
+			framesInWindow = 0;
+		}
+	}
+}
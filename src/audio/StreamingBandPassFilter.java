@@ -0,0 +1,239 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package audio;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.dfki.lt.signalproc.filter.BandPassFilter;
+
+/**
+ * Band-pass filter that keeps its state between calls, so consecutive ranges of a <code>SampleSource</code> are filtered as one stream.
+ *
+ * <p>The filter uses the same kernel as the signalproc library's <code>BandPassFilter</code> and, like it, is causal:
+ * output frame <i>n</i> is the kernel applied to input frames <i>n - kernelLength + 1</i> through <i>n</i>, with frames before the start of the file taken as silence.
+ * Since the kernel is finite, reading <code>kernelLength - 1</code> frames ahead of a range is enough to filter it exactly.
+ * So a range that continues the previous one costs no extra work, and any other range only needs that short warm-up,
+ * never a fraction of a second of pre-data, and never leaves a seam.
+ *
+ * <p>Filtering is done by FFT overlap-save, two blocks per transform.
+ * Kernels and their spectra are cached by (minBand, maxBand, sampleRate) and shared between instances.
+ * An instance holds per-stream state and must not be used by two threads at once.
+ */
+public class StreamingBandPassFilter {
+
+	private static final Map<KernelKey, Kernel> kernels = new HashMap<KernelKey, Kernel>();
+
+	private final Kernel kernel;
+	private final int historyLength;
+	private final int blockStep;
+
+	//input stream, history of the previous call first, then two blocks worth of new frames
+	private final double[] in;
+	private final double[] re;
+	private final double[] im;
+
+	private long nextFrame;
+
+	/**
+	 * @param minBand Lower band edge, as a fraction of the sample rate, as in <code>BandPassFilter</code>
+	 * @param maxBand Upper band edge, as a fraction of the sample rate, as in <code>BandPassFilter</code>
+	 * @param sampleRate Frames per second of the audio that will be filtered
+	 */
+	public StreamingBandPassFilter(double minBand, double maxBand, double sampleRate) {
+		kernel = kernelFor(minBand, maxBand, sampleRate);
+		historyLength = kernel.length - 1;
+		blockStep = kernel.plan.size() - historyLength;
+		in = new double[historyLength + 2 * blockStep];
+		re = new double[kernel.plan.size()];
+		im = new double[kernel.plan.size()];
+		nextFrame = -1;
+	}
+
+	/**
+	 * Filters one channel of a range of frames.
+	 *
+	 * @param source The samples
+	 * @param channel The channel to filter
+	 * @param firstFrame The first frame of the range
+	 * @param dest Array receiving the filtered frames, starting at index 0
+	 * @param numFrames The number of frames in the range
+	 * @return The number of frames filtered, which is smaller than <code>numFrames</code> only at the end of the source
+	 */
+	public int filter(SampleSource source, int channel, long firstFrame, double[] dest, int numFrames) {
+		return filter(source, channel, firstFrame, null, dest, numFrames);
+	}
+
+	/**
+	 * Filters one channel of a range of frames that has already been read, e.g. by {@link SampleSource#readChannels(long, double[][], int, int)}.
+	 *
+	 * The source is only read for the warm-up, if the range does not continue the previous one.
+	 * <code>frames</code> and <code>dest</code> may be the same array, to filter in place.
+	 *
+	 * @param source The samples
+	 * @param channel The channel to filter
+	 * @param firstFrame The first frame of the range
+	 * @param frames The unfiltered frames of the range, starting at index 0, or <code>null</code> to read them from <code>source</code>
+	 * @param dest Array receiving the filtered frames, starting at index 0
+	 * @param numFrames The number of frames in the range
+	 * @return The number of frames filtered, which is smaller than <code>numFrames</code> only at the end of the source
+	 */
+	public int filter(SampleSource source, int channel, long firstFrame, double[] frames, double[] dest, int numFrames) {
+		numFrames = (int)Math.max(0, Math.min(numFrames, source.numFrames() - firstFrame));
+		if(firstFrame != nextFrame) {
+			warmUp(source, channel, firstFrame);
+		}
+		int done = 0;
+		while(done < numFrames) {
+			final int numNew = Math.min(2 * blockStep, numFrames - done);
+			if(frames != null) {
+				System.arraycopy(frames, done, in, historyLength, numNew);
+			}
+			else {
+				source.read(firstFrame + done, channel, in, historyLength, numNew);
+			}
+			for(int i = historyLength + numNew; i < in.length; i++) {
+				in[i] = 0;
+			}
+
+			//the real part carries the first block and the imaginary part the second, since the kernel is real they don't mix
+			System.arraycopy(in, 0, re, 0, re.length);
+			System.arraycopy(in, blockStep, im, 0, im.length);
+			kernel.plan.transform(re, im);
+			for(int i = 0; i < re.length; i++) {
+				final double r = re[i] * kernel.spectrumRe[i] - im[i] * kernel.spectrumIm[i];
+				im[i] = re[i] * kernel.spectrumIm[i] + im[i] * kernel.spectrumRe[i];
+				re[i] = r;
+			}
+			kernel.plan.inverse(re, im);
+
+			//the first historyLength outputs of each block are wrapped around, the rest are exact
+			final int fromFirst = Math.min(blockStep, numNew);
+			System.arraycopy(re, historyLength, dest, done, fromFirst);
+			if(numNew > blockStep) {
+				System.arraycopy(im, historyLength, dest, done + blockStep, numNew - blockStep);
+			}
+			System.arraycopy(in, numNew, in, 0, historyLength);
+			done += numNew;
+		}
+		nextFrame = firstFrame + numFrames;
+		return numFrames;
+	}
+
+	/**
+	 * Returns the frame that a call to {@link #filter(SampleSource, int, long, double[], int)} can start at without warming up.
+	 *
+	 * @return The frame after the last one filtered, or -1 if nothing has been filtered yet
+	 */
+	public long nextFrame() {
+		return nextFrame;
+	}
+
+	/**
+	 * @return The number of frames read ahead of a range that does not continue the previous one
+	 */
+	public int warmUpFrames() {
+		return historyLength;
+	}
+
+	private void warmUp(SampleSource source, int channel, long firstFrame) {
+		long historyStart = firstFrame - historyLength;
+		int numSilent = (int)Math.min(historyLength, Math.max(0, -historyStart));
+		for(int i = 0; i < numSilent; i++) {
+			in[i] = 0;
+		}
+		int numRead = source.read(historyStart + numSilent, channel, in, numSilent, historyLength - numSilent);
+		for(int i = numSilent + numRead; i < historyLength; i++) {
+			in[i] = 0;
+		}
+	}
+
+	private static Kernel kernelFor(double minBand, double maxBand, double sampleRate) {
+		KernelKey key = new KernelKey(minBand, maxBand, sampleRate);
+		synchronized(kernels) {
+			Kernel kernel = kernels.get(key);
+			if(kernel == null) {
+				kernel = new Kernel(KernelDesign.taps(minBand, maxBand));
+				kernels.put(key, kernel);
+			}
+			return kernel;
+		}
+	}
+
+
+
+	/**
+	 * A kernel with its spectrum at the block size used to filter with it.
+	 */
+	private static class Kernel {
+
+		private final int length;
+		private final FFTPlan plan;
+		private final double[] spectrumRe;
+		private final double[] spectrumIm;
+
+		private Kernel(double[] taps) {
+			length = taps.length;
+			//blocks of about 8 kernel lengths keep the wrapped-around part of each transform small
+			plan = FFTPlan.forSize(Math.max(256, Integer.highestOneBit(8 * length - 1) << 1));
+			spectrumRe = new double[plan.size()];
+			spectrumIm = new double[plan.size()];
+			System.arraycopy(taps, 0, spectrumRe, 0, taps.length);
+			plan.transform(spectrumRe, spectrumIm);
+		}
+	}
+
+	private static class KernelKey {
+
+		private final double minBand;
+		private final double maxBand;
+		private final double sampleRate;
+
+		private KernelKey(double minBand, double maxBand, double sampleRate) {
+			this.minBand = minBand;
+			this.maxBand = maxBand;
+			this.sampleRate = sampleRate;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(o instanceof KernelKey) {
+				KernelKey other = (KernelKey)o;
+				return minBand == other.minBand && maxBand == other.maxBand && sampleRate == other.sampleRate;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(minBand) + 31 * Double.doubleToLongBits(maxBand) + 961 * Double.doubleToLongBits(sampleRate);
+			return (int)(bits ^ (bits >>> 32));
+		}
+	}
+
+	/**
+	 * Gives access to <code>BandPassFilter</code>'s protected kernel design, so the output matches the library's filter.
+	 */
+	private static class KernelDesign extends BandPassFilter {
+
+		private KernelDesign() {
+			super(0.1, 0.2);
+		}
+
+		private static double[] taps(double minBand, double maxBand) {
+			return getKernel(minBand, maxBand, bandwidth2kernelLength(DEFAULT_TRANSITIONBANDWIDTH));
+		}
+	}
+}
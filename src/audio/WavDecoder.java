@@ -0,0 +1,312 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package audio;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Decodes RIFF WAVE files of integer PCM samples of 8 to 32 bits, or 32 or 64-bit floating point samples, including the <code>WAVE_FORMAT_EXTENSIBLE</code> variants recorders write for more than 16 bits or 2 channels.
+ */
+public class WavDecoder implements AudioDecoder {
+
+	static final int WAVE_FORMAT_PCM = 1;
+	static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+	static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String name() {
+		return "wav/1";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String[] extensions() {
+		return new String[] {"wav", "wave"};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean canDecode(File file, byte[] head) {
+		return head.length >= 12 && fourCC(head, 0).equals("RIFF") && fourCC(head, 8).equals("WAVE");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public DecodedStream open(File file) throws UnsupportedAudioFileException, IOException {
+		final Header header = readHeader(file);
+		if(header.formatTag == WAVE_FORMAT_PCM) {
+			if(header.bitsPerSample < 8 || header.bitsPerSample > 32 || header.bitsPerSample % 8 != 0) {
+				throw new UnsupportedAudioFileException(file + " has " + header.bitsPerSample + "-bit samples");
+			}
+		}
+		else if(header.formatTag == WAVE_FORMAT_IEEE_FLOAT) {
+			if(header.bitsPerSample != 32 && header.bitsPerSample != 64) {
+				throw new UnsupportedAudioFileException(file + " has " + header.bitsPerSample + "-bit floating point samples");
+			}
+		}
+		else {
+			throw new UnsupportedAudioFileException(file + " is neither PCM nor floating point audio");
+		}
+		if(header.blockAlign != header.numChannels * header.bitsPerSample / 8) {
+			throw new UnsupportedAudioFileException(file + " has padded samples");
+		}
+
+		final InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_BYTES);
+		try {
+			skipFully(in, header.dataOffset);
+		}
+		catch(IOException e) {
+			in.close();
+			throw e;
+		}
+		return new DecodedStream() {
+			private final int bytesPerSample = header.bitsPerSample / 8;
+			private final boolean isFloat = header.formatTag == WAVE_FORMAT_IEEE_FLOAT;
+			private byte[] bytes = new byte[0];
+			private long framesLeft = header.numFrames();
+
+			public int numChannels() {
+				return header.numChannels;
+			}
+
+			public double frameRate() {
+				return header.frameRate;
+			}
+
+			public int bitsPerSample() {
+				//floating point samples are scaled to 32-bit integers
+				return isFloat ? 32 : header.bitsPerSample;
+			}
+
+			public long numFrames() {
+				return header.numFrames();
+			}
+
+			public int read(int[] dest, int numFrames) throws IOException {
+				numFrames = (int)Math.min(numFrames, framesLeft);
+				if(numFrames <= 0) {
+					return -1;
+				}
+				int numBytes = numFrames * header.blockAlign;
+				if(bytes.length < numBytes) {
+					bytes = new byte[numBytes];
+				}
+				int numRead = 0;
+				while(numRead < numBytes) {
+					int n = in.read(bytes, numRead, numBytes - numRead);
+					if(n < 0) {
+						break;
+					}
+					numRead += n;
+				}
+				//a recorder that was interrupted may leave the file shorter than its header says
+				numFrames = numRead / header.blockAlign;
+				if(numFrames == 0) {
+					framesLeft = 0;
+					return -1;
+				}
+				framesLeft -= numFrames;
+				int numSamples = numFrames * header.numChannels;
+				for(int i = 0, b = 0; i < numSamples; i++, b += bytesPerSample) {
+					dest[i] = isFloat ? floatSample(bytes, b, bytesPerSample) : intSample(bytes, b, bytesPerSample);
+				}
+				return numFrames;
+			}
+
+			public void close() {
+				try {
+					in.close();
+				}
+				catch(IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+	}
+
+	/**
+	 * The format of a WAV file, from its <code>fmt </code> chunk, and the position of its samples.
+	 */
+	static class Header {
+
+		/**
+		 * <code>WAVE_FORMAT_PCM</code> or <code>WAVE_FORMAT_IEEE_FLOAT</code>, also when the file uses <code>WAVE_FORMAT_EXTENSIBLE</code>.
+		 */
+		final int formatTag;
+		final boolean extensible;
+		final int numChannels;
+		final double frameRate;
+		final int blockAlign;
+		final int bitsPerSample;
+		final long dataOffset;
+		final long dataBytes;
+
+		private Header(int formatTag, boolean extensible, int numChannels, double frameRate, int blockAlign, int bitsPerSample, long dataOffset, long dataBytes) {
+			this.formatTag = formatTag;
+			this.extensible = extensible;
+			this.numChannels = numChannels;
+			this.frameRate = frameRate;
+			this.blockAlign = blockAlign;
+			this.bitsPerSample = bitsPerSample;
+			this.dataOffset = dataOffset;
+			this.dataBytes = dataBytes;
+		}
+
+		long numFrames() {
+			return dataBytes / blockAlign;
+		}
+	}
+
+	/**
+	 * Reads the format and the position of the samples of a WAV file.
+	 *
+	 * @param file The WAV file
+	 * @return The header
+	 * @throws UnsupportedAudioFileException If the file is not a RIFF WAVE file, or lacks a format or data chunk
+	 * @throws IOException If the file cannot be read
+	 */
+	static Header readHeader(File file) throws UnsupportedAudioFileException, IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if(readFourCC(raf).equals("RIFF") == false) {
+				throw new UnsupportedAudioFileException(file + " is not a RIFF file");
+			}
+			raf.readInt();
+			if(readFourCC(raf).equals("WAVE") == false) {
+				throw new UnsupportedAudioFileException(file + " is not a WAVE file");
+			}
+			int formatTag = -1;
+			boolean extensible = false;
+			int channels = -1;
+			double rate = -1;
+			int blockAlign = -1;
+			int bitsPerSample = -1;
+			final long fileLength = raf.length();
+			while(raf.getFilePointer() + 8 <= fileLength) {
+				String id = readFourCC(raf);
+				long size = readIntLE(raf) & 0xFFFFFFFFL;
+				long bodyStart = raf.getFilePointer();
+				if(id.equals("fmt ")) {
+					formatTag = readShortLE(raf);
+					channels = readShortLE(raf);
+					rate = readIntLE(raf) & 0xFFFFFFFFL;
+					readIntLE(raf);
+					blockAlign = readShortLE(raf);
+					bitsPerSample = readShortLE(raf);
+					if(formatTag == WAVE_FORMAT_EXTENSIBLE && size >= 26) {
+						extensible = true;
+						//cbSize, valid bits per sample, channel mask, then the real format tag as the start of the subformat GUID
+						readShortLE(raf);
+						readShortLE(raf);
+						readIntLE(raf);
+						formatTag = readShortLE(raf);
+					}
+				}
+				else if(id.equals("data")) {
+					if(formatTag < 0) {
+						throw new UnsupportedAudioFileException(file + " has no fmt chunk before its data");
+					}
+					if(channels < 1 || blockAlign < 1) {
+						throw new UnsupportedAudioFileException(file + " has no channels");
+					}
+					//recorders that were interrupted leave the size unset or too large
+					long dataBytes = Math.min(size, fileLength - bodyStart);
+					return new Header(formatTag, extensible, channels, rate, blockAlign, bitsPerSample, bodyStart, dataBytes);
+				}
+				raf.seek(bodyStart + size + (size & 1));
+			}
+			throw new UnsupportedAudioFileException(file + " has no data chunk");
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private static int intSample(byte[] bytes, int offset, int numBytes) {
+		switch(numBytes) {
+			case 1:
+				//8-bit WAV samples are unsigned
+				return (bytes[offset] & 0xFF) - 128;
+			case 2:
+				return (bytes[offset] & 0xFF) | (bytes[offset + 1] << 8);
+			case 3:
+				return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8) | (bytes[offset + 2] << 16);
+			default:
+				return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8) | ((bytes[offset + 2] & 0xFF) << 16) | (bytes[offset + 3] << 24);
+		}
+	}
+
+	private static int floatSample(byte[] bytes, int offset, int numBytes) {
+		double val;
+		if(numBytes == 4) {
+			val = Float.intBitsToFloat(intSample(bytes, offset, 4));
+		}
+		else {
+			long bits = (intSample(bytes, offset, 4) & 0xFFFFFFFFL) | ((long)intSample(bytes, offset + 4, 4) << 32);
+			val = Double.longBitsToDouble(bits);
+		}
+		return (int)Math.round(Math.max(-1, Math.min(1, val)) * Integer.MAX_VALUE);
+	}
+
+	private static void skipFully(InputStream in, long numBytes) throws IOException {
+		while(numBytes > 0) {
+			long n = in.skip(numBytes);
+			if(n <= 0) {
+				throw new EOFException();
+			}
+			numBytes -= n;
+		}
+	}
+
+	private static String fourCC(byte[] bytes, int offset) {
+		try {
+			return new String(bytes, offset, 4, "US-ASCII");
+		}
+		catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String readFourCC(RandomAccessFile raf) throws IOException {
+		byte[] id = new byte[4];
+		raf.readFully(id);
+		return fourCC(id, 0);
+	}
+
+	private static int readIntLE(RandomAccessFile raf) throws IOException {
+		return Integer.reverseBytes(raf.readInt());
+	}
+
+	private static int readShortLE(RandomAccessFile raf) throws IOException {
+		return Short.reverseBytes(raf.readShort()) & 0xFFFF;
+	}
+}
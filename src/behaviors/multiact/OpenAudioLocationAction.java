@@ -14,7 +14,6 @@
 
 package behaviors.multiact;
 
-import info.Constants;
 import info.SysInfo;
 import info.UserPrefs;
 
@@ -26,6 +25,8 @@ import java.io.FilenameFilter;
 import javax.swing.JFileChooser;
 import javax.swing.filechooser.FileFilter;
 
+import audio.AudioDecoders;
+
 import components.MyFrame;
 import components.audiofiles.AudioFileDisplay;
 
@@ -75,12 +76,7 @@ public class OpenAudioLocationAction extends IdentifiedMultiAction {
 						return name == null;
 					}
 					else {
-						for(String ext: Constants.audioFormatsLowerCase) {
-							if(name.toLowerCase().endsWith(ext)) {
-								return true;
-							}
-						}
-						return false;
+						return AudioDecoders.isSupportedName(name);
 					}
 				}				
 			});
@@ -107,12 +103,7 @@ public class OpenAudioLocationAction extends IdentifiedMultiAction {
 						return true;
 					}
 					else {
-						for(String ext: Constants.audioFormatsLowerCase) {
-							if(f.getName().toLowerCase().endsWith(ext)) {
-								return true;
-							}
-						}
-						return false;
+						return AudioDecoders.isSupportedName(f.getName());
 					}
 				}
 				@Override
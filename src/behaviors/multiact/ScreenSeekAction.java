@@ -1,6 +1,5 @@
 package behaviors.multiact;
 
-import info.GUIConstants;
 import info.SysInfo;
 
 import java.awt.event.ActionEvent;
@@ -26,7 +25,7 @@ public class ScreenSeekAction extends IdentifiedMultiAction {
 	public void actionPerformed(ActionEvent e) {
 		super.actionPerformed(e);
 		
-		int shift = (int) (((double)WaveformDisplay.getInstance().getWidth() / (double)GUIConstants.zoomlessPixelsPerSecond) * 1000);
+		int shift = (int) (((double)WaveformDisplay.getInstance().getWidth() / CurAudio.getZoom().pixelsPerSecond()) * 1000);
 		shift -= shift/5;
 		if(dir == Dir.BACKWARD) {
 			shift *= -1;
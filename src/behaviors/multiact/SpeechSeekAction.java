@@ -0,0 +1,115 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package behaviors.multiact;
+
+import info.SysInfo;
+
+import java.awt.event.ActionEvent;
+
+import audio.SpeechIndex;
+
+import components.MyFrame;
+
+import control.CurAudio;
+import edu.upenn.psych.memory.precisionplayer.PrecisionPlayer;
+
+/**
+ * Sets the audio position to just before the next/previous onset of speech, skipping the silence in between, in response to user request.
+ * 
+ * Onsets are looked up in the current file's {@link SpeechIndex}, so the action is disabled until the index has been built.
+ * The position is set a little ahead of the onset, so the start of the speech is heard.
+ * 
+ * Afterward sends update to all <code>UpdatingActions</code>.
+ */
+public class SpeechSeekAction extends IdentifiedMultiAction {
+
+	public static enum Direction {FORWARD, BACKWARD};
+
+	//how far ahead of an onset the position is set
+	private static final int PRE_ROLL_MILLIS = 100;
+
+	private Direction dir;
+
+	public SpeechSeekAction(Direction dir) {
+		super(dir);
+		this.dir = dir;
+	}
+
+	/**
+	 * Performs the <code>SpeechSeekAction</code>, doing nothing if there is no speech onset in the action's direction.
+	 * 
+	 * @param e The <code>ActionEvent</code> provided by the trigger
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		super.actionPerformed(e);
+		long target = findTarget();
+		if(target < 0) {
+			return;
+		}
+		if(SysInfo.sys.forceListen) {
+			target = Math.min(target, CurAudio.getListener().getGreatestProgress());
+		}
+
+		CurAudio.setAudioProgressAndUpdateActions(target);
+		CurAudio.getPlayer().queuePlayAt(target);
+		MyFrame.getInstance().requestFocusInWindow();
+	}
+
+	/**
+	 * Finds the position just ahead of the next (previous) onset.
+	 * 
+	 * Onsets are compared with the position shifted by the pre-roll, so jumping from the position the action itself set moves on to the following onset.
+	 * 
+	 * @return The position, or -1 if there is no onset in the action's direction or no index yet
+	 */
+	private long findTarget() {
+		SpeechIndex index = CurAudio.getSpeechIndex();
+		if(index == null) {
+			return -1;
+		}
+		long preRoll = CurAudio.getMaster().millisToFrames(PRE_ROLL_MILLIS);
+		long shiftedFrame = CurAudio.getAudioProgress() + preRoll;
+		long onset = dir == Direction.FORWARD ? index.nextOnset(shiftedFrame) : index.previousOnset(shiftedFrame);
+		if(onset < 0) {
+			return -1;
+		}
+		return Math.max(0, onset - preRoll);
+	}
+
+	/**
+	 * A <code>SpeechSeekAction</code> should be enabled only when audio is open, not playing, and there is an onset to jump to.
+	 * 
+	 * With forced listening, a forward action is also disabled when the position is already at the furthest point listened to.
+	 */
+	@Override
+	public void update() {
+		if(CurAudio.audioOpen()) {
+			if(CurAudio.getPlayer().getStatus() == PrecisionPlayer.Status.PLAYING) {
+				setEnabled(false);
+			}
+			else {
+				boolean canSkip = findTarget() >= 0;
+				if(dir == Direction.FORWARD && SysInfo.sys.forceListen) {
+					canSkip = canSkip && CurAudio.getAudioProgress() < CurAudio.getListener().getGreatestProgress();
+				}
+				setEnabled(canSkip);
+			}
+		}
+		else {
+			setEnabled(false);
+		}
+	}
+}
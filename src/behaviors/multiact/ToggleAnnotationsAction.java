@@ -21,6 +21,7 @@ import util.GiveMessage;
 import components.MyFrame;
 import components.annotations.Annotation;
 import components.annotations.AnnotationDisplay;
+import components.annotations.AnnotationIndex;
 
 import control.CurAudio;
 import edu.upenn.psych.memory.precisionplayer.PrecisionPlayer;
@@ -114,19 +115,19 @@ public class ToggleAnnotationsAction extends IdentifiedMultiAction {
 	 * @return In principle, the <code>Annotation</code> after/before <code>curTimeMillis</code>
 	 */
 	private Annotation findAnnotation(Direction dir, double curTimeMillis) {
-		Annotation[] anns = AnnotationDisplay.getAnnotationsInOrder();
+		AnnotationIndex anns = AnnotationDisplay.getAnnotationIndex();
 		if(myDir == Direction.FORWARD) {
-			for(int i = 0; i < anns.length; i++) {
-				if(anns[i].getTime() - curTimeMillis > 1) {
-					return anns[i];
-				}
+			//first annotation more than 1 ms after
+			int i = anns.lastAtOrBefore(curTimeMillis + 1) + 1;
+			if(i < anns.size()) {
+				return anns.get(i);
 			}
 		}
 		else {
-			for(int i = anns.length - 1; i >= 0; i--) {
-				if(curTimeMillis - anns[i].getTime() > 1) {
-					return anns[i];
-				}
+			//last annotation more than 1 ms before
+			int i = anns.firstAtOrAfter(curTimeMillis - 1) - 1;
+			if(i >= 0) {
+				return anns.get(i);
 			}
 		}
 		return null;
@@ -24,7 +24,7 @@ import edu.upenn.psych.memory.precisionplayer.PrecisionPlayer;
 /**
  * Zooms the waveform display in/out.
  * 
- * It only changes the pixelsPerSecond value that the waveform display will utilize on its next repaint.
+ * It only changes the zoom level in <code>CurAudio</code>, the waveform display switches to it once the waveform buffer has rendered the new level's chunks.
  * 
  * @author Yuvi Masory
  */
@@ -43,7 +43,7 @@ public class ZoomAction extends IdentifiedMultiAction {
 	}
 
 	/**
-	 * Performs the zoom, increasing/decreasing the pixelsPerSecond by calling {@link components.waveform.WaveformDisplay#zoomX(boolean)}. 
+	 * Performs the zoom, halving/doubling the frames in each pixel by calling {@link components.waveform.WaveformDisplay#zoomX(boolean)}. 
 	 * 
 	 * Since the waveform display autonomously decides when to paint itself, this action may not result in an instant visual change.
 	 * 
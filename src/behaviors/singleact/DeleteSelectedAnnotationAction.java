@@ -17,8 +17,8 @@ package behaviors.singleact;
 import java.awt.event.ActionEvent;
 
 import components.MySplitPane;
-import components.annotations.Annotation;
 import components.annotations.AnnotationDisplay;
+import components.annotations.AnnotationIndex;
 import components.waveform.WaveformDisplay;
 
 import control.CurAudio;
@@ -32,9 +32,13 @@ public class DeleteSelectedAnnotationAction extends IdentifiedSingleAction {
 		long curFrame = CurAudio.getAudioProgress();
 		int progX = WaveformDisplay.frameToAbsoluteXPixel(curFrame);
 
-		Annotation[] anns = AnnotationDisplay.getAnnotationsInOrder();
-		for(int i = 0; i < anns.length; i++) {
-			int annX = WaveformDisplay.frameToAbsoluteXPixel(CurAudio.getMaster().millisToFrames(anns[i].getTime()));
+		//only annotations within a pixel or two of the progress bar can be on it
+		AnnotationIndex anns = AnnotationDisplay.getAnnotationIndex();
+		long framesNearby = (long)(2 * CurAudio.getZoom().framesPerPixel()) + 1;
+		double firstMillis = CurAudio.getMaster().framesToMillis(Math.max(0, curFrame - framesNearby)) - 1;
+		double lastMillis = CurAudio.getMaster().framesToMillis(curFrame + framesNearby) + 1;
+		for(int i = anns.firstAtOrAfter(firstMillis); i < anns.size() && anns.timeAt(i) <= lastMillis; i++) {
+			int annX = WaveformDisplay.frameToAbsoluteXPixel(CurAudio.getMaster().millisToFrames(anns.timeAt(i)));
 			if(progX == annX) {
 				new DeleteAnnotationAction(i).actionPerformed(
 						new ActionEvent(MySplitPane.getInstance(), ActionEvent.ACTION_PERFORMED, null, System.currentTimeMillis(), 0));
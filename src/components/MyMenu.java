@@ -31,6 +31,7 @@ import behaviors.multiact.Last200PlusMoveAction;
 import behaviors.multiact.OpenAudioLocationAction;
 import behaviors.multiact.ScreenSeekAction;
 import behaviors.multiact.SeekAction;
+import behaviors.multiact.SpeechSeekAction;
 import behaviors.multiact.ToggleAnnotationsAction;
 import behaviors.multiact.ZoomAction;
 import behaviors.singleact.AboutAction;
@@ -87,7 +88,7 @@ public class MyMenu extends JMenuBar {
 		initFileMenu();
 		initControlsMenu();
 		initAnnotationMenu();
-//		initViewMenu();
+		initViewMenu();
 		initHelpMenu();
 	}
 
@@ -169,6 +170,8 @@ public class MyMenu extends JMenuBar {
 				new Last200PlusMoveAction(Last200PlusMoveAction.Direction.BACKWARD));
 		JMenuItem jmiScreenForward = new JMenuItem(new ScreenSeekAction(ScreenSeekAction.Dir.FORWARD));
 		JMenuItem jmiScreenBackward = new JMenuItem(new ScreenSeekAction(ScreenSeekAction.Dir.BACKWARD));
+		JMenuItem jmiNextSpeech = new JMenuItem(new SpeechSeekAction(SpeechSeekAction.Direction.FORWARD));
+		JMenuItem jmiPreviousSpeech = new JMenuItem(new SpeechSeekAction(SpeechSeekAction.Direction.BACKWARD));
 		jmSeek.add(jmiSeekForwardSmall);
 		jmSeek.add(jmiSeekSmallBackward);
 		jmSeek.add(jmiSeekForwardMedium);
@@ -179,6 +182,8 @@ public class MyMenu extends JMenuBar {
 		jmSeek.add(jmiLast200MoveLeft);
 		jmSeek.add(jmiScreenForward);
 		jmSeek.add(jmiScreenBackward);
+		jmSeek.add(jmiNextSpeech);
+		jmSeek.add(jmiPreviousSpeech);
 
 		jmAudio.add(jmiPlayPause);
 		jmAudio.add(jmiStop);
@@ -209,7 +214,6 @@ public class MyMenu extends JMenuBar {
 	/**
 	 * Creates the View menu, which controls aspects of the waveform's appearance.
 	 */
-	@SuppressWarnings("unused")
 	private void initViewMenu() {
 		JMenu jmView = new JMenu("View");
 		JMenuItem jmiZoomIn = new JMenuItem(
@@ -76,6 +76,17 @@ public class AnnotationDisplay extends JScrollPane {
 	public static Annotation[] getAnnotationsInOrder() {
 		return table.getModel().toArray();
 	}
+
+	/**
+	 * Returns the annotations as they are now, for finding those in a range of time without copying them.
+	 * 
+	 * May be called from any thread, the index is replaced rather than changed when annotations change.
+	 * 
+	 * @return The current <code>AnnotationIndex</code>
+	 */
+	public static AnnotationIndex getAnnotationIndex() {
+		return table.getModel().getIndex();
+	}
 	
 	public static void addAnnotation(Annotation ann) {
 		if(ann == null) {
@@ -0,0 +1,120 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.annotations;
+
+import java.util.List;
+
+/**
+ * Immutable snapshot of the annotations of the open audio file, sorted by time, for finding the annotations in a range of time without looking at the others.
+ * 
+ * <p>The annotation table publishes a new index whenever its annotations change, see {@link AnnotationDisplay#getAnnotationIndex()}.
+ * An index never changes after it is published, so it can be read without locking, e.g. on every repaint, and queries allocate nothing.
+ */
+public class AnnotationIndex {
+
+	/**
+	 * The index of a file without annotations.
+	 */
+	public static final AnnotationIndex EMPTY = new AnnotationIndex(new Annotation[0]);
+
+	private final Annotation[] anns;
+	private final double[] times;
+
+	private AnnotationIndex(Annotation[] sortedAnns) {
+		anns = sortedAnns;
+		times = new double[anns.length];
+		for(int i = 0; i < anns.length; i++) {
+			times[i] = anns[i].getTime();
+		}
+	}
+
+	/**
+	 * Creates an index of annotations that are already sorted by time.
+	 * 
+	 * @param sortedAnns The annotations, which are copied
+	 */
+	static AnnotationIndex of(List<Annotation> sortedAnns) {
+		return new AnnotationIndex(sortedAnns.toArray(new Annotation[sortedAnns.size()]));
+	}
+
+	public int size() {
+		return anns.length;
+	}
+
+	/**
+	 * Returns the annotation in the provided position, which is also its row in the annotation table.
+	 */
+	public Annotation get(int index) {
+		return anns[index];
+	}
+
+	/**
+	 * Returns the time of the annotation in the provided position, in milliseconds.
+	 */
+	public double timeAt(int index) {
+		return times[index];
+	}
+
+	/**
+	 * Finds the first annotation at or after a time, by binary search.
+	 * 
+	 * Iterating from there until <code>timeAt(i)</code> passes the end of a range visits exactly the annotations in the range.
+	 * 
+	 * @param millis The time in milliseconds
+	 * @return The position of the annotation, or <code>size()</code> if every annotation is earlier
+	 */
+	public int firstAtOrAfter(double millis) {
+		int low = 0;
+		int high = times.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(times[mid] < millis) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the last annotation at or before a time, by binary search.
+	 * 
+	 * @param millis The time in milliseconds
+	 * @return The position of the annotation, or -1 if every annotation is later
+	 */
+	public int lastAtOrBefore(double millis) {
+		int low = 0;
+		int high = times.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(times[mid] <= millis) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low - 1;
+	}
+
+	/**
+	 * @return A copy of the annotations, in order
+	 */
+	public Annotation[] toArray() {
+		return anns.clone();
+	}
+}
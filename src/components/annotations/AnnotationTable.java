@@ -23,7 +23,9 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.swing.BorderFactory;
@@ -32,11 +34,17 @@ import javax.swing.JComponent;
 import javax.swing.JTable;
 import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.JTableHeader;
 
 import behaviors.singleact.JumpToAnnotationAction;
 
+import components.waveform.WaveformBuffer;
+
+import control.CurAudio;
+
 /**
  * <code>JTable</code> that stores the annotations of the open audio file.
  * 
@@ -73,6 +81,13 @@ public class AnnotationTable extends JTable implements FocusListener {
 			}
 		});
 		addFocusListener(this);
+		getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+			public void valueChanged(ListSelectionEvent e) {
+				if(e.getValueIsAdjusting() == false) {
+					updateJumpTargets();
+				}
+			}
+		});
 		
 		getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0, false), "jump to annotation");
 		getActionMap().put("jump to annotation", new JumpToAnnotationAction());
@@ -141,6 +156,31 @@ public class AnnotationTable extends JTable implements FocusListener {
 		if(e.isTemporary() == false) {
 			clearSelection();
 		}
+		updateJumpTargets();
+	}
+
+	/**
+	 * Tells the waveform buffer which annotations the user may jump to while the table has focus, the selected one first, then its neighbors.
+	 */
+	private void updateJumpTargets() {
+		WaveformBuffer buffer = CurAudio.getWaveformBuffer();
+		if(buffer == null) {
+			return;
+		}
+		List<Long> frames = new ArrayList<Long>();
+		int row = getSelectedRow();
+		if(isFocusOwner() && row >= 0) {
+			for(int i: new int[] {row, row + 1, row - 1}) {
+				if(i >= 0 && i < model.getRowCount()) {
+					frames.add(CurAudio.getMaster().millisToFrames(model.getAnnotationAt(i).getTime()));
+				}
+			}
+		}
+		long[] targets = new long[frames.size()];
+		for(int i = 0; i < targets.length; i++) {
+			targets[i] = frames.get(i);
+		}
+		buffer.annotationTargetsChanged(targets);
 	}
 	
 	protected static AnnotationTable getInstance() {
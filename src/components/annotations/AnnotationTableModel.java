@@ -22,6 +22,8 @@ import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.TableModel;
 
+import components.waveform.WaveformDisplay;
+
 /**
  * Custom <code>TableModel</code> for storing annotations of the open audio file.
  * 
@@ -32,6 +34,9 @@ public class AnnotationTableModel implements TableModel {
 	private HashSet<TableModelListener> listeners;
 	
 	private ArrayList<Annotation> sortedAnns;
+
+	//republished after every change, for readers that must not see the list mid-change
+	private volatile AnnotationIndex index;
 	
 	//editing the table layout (e.g., adding a new column, switching the order of two columns) involves more than changing the next three lines
 	//some of the methods below make assumptions about the number of columns and the Annotation methods they hook up to
@@ -50,6 +55,7 @@ public class AnnotationTableModel implements TableModel {
 		}
 		listeners = new HashSet<TableModelListener>();
 		sortedAnns = new ArrayList<Annotation>();
+		index = AnnotationIndex.EMPTY;
 	}
 
 	public int getColumnCount() {
@@ -118,7 +124,16 @@ public class AnnotationTableModel implements TableModel {
 	}
 
 	protected Annotation[] toArray() {
-		return sortedAnns.toArray(new Annotation[sortedAnns.size()]);
+		return index.toArray();
+	}
+
+	protected AnnotationIndex getIndex() {
+		return index;
+	}
+
+	private void setIndex(AnnotationIndex index) {
+		this.index = index;
+		WaveformDisplay.requestFrame();
 	}
 	
 	
@@ -127,6 +142,7 @@ public class AnnotationTableModel implements TableModel {
 		sortedAnns.add(ann);
 		//then remove batch adding option below
 		Collections.sort(sortedAnns);
+		setIndex(AnnotationIndex.of(sortedAnns));
 		for(TableModelListener tml: listeners) {
 			tml.tableChanged(new TableModelEvent(this));
 		}
@@ -138,6 +154,7 @@ public class AnnotationTableModel implements TableModel {
 			sortedAnns.add(el);
 		}
 		Collections.sort(sortedAnns);
+		setIndex(AnnotationIndex.of(sortedAnns));
 		for(TableModelListener tml: listeners) {
 			tml.tableChanged(new TableModelEvent(this));
 		}
@@ -148,6 +165,7 @@ public class AnnotationTableModel implements TableModel {
 			throw new IllegalArgumentException(rowErr);
 		}
 		sortedAnns.remove(index);
+		setIndex(AnnotationIndex.of(sortedAnns));
 		for(TableModelListener tml: listeners) {
 			tml.tableChanged(new TableModelEvent(this, Math.min(index, sortedAnns.size()), sortedAnns.size()));
 		}
@@ -155,6 +173,7 @@ public class AnnotationTableModel implements TableModel {
 
 	protected void removeAllElements() {
 		sortedAnns.clear();
+		setIndex(AnnotationIndex.EMPTY);
 	}
 
 	public int size() {
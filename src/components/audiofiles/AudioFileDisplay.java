@@ -14,7 +14,6 @@
 
 package components.audiofiles;
 
-import info.Constants;
 import info.GUIConstants;
 import info.MyShapes;
 import info.UserPrefs;
@@ -32,6 +31,8 @@ import javax.swing.JScrollPane;
 import javax.swing.KeyStroke;
 
 import util.GiveMessage;
+import audio.AudioDecoders;
+import audio.PcmTranscoder;
 
 import components.MyFrame;
 import components.audiofiles.AudioFile.AudioFilePathException;
@@ -113,6 +114,10 @@ public class AudioFileDisplay extends JScrollPane {
 		}
 		if(supportedFiles.size() > 0) {
 			list.getModel().addElements(supportedFiles);
+			//start decoding formats the program doesn't read directly, so they are ready when opened
+			for(AudioFile af: supportedFiles) {
+				PcmTranscoder.sampleFileInBackground(af);
+			}
 			return true;
 		}
 		else {
@@ -170,17 +175,12 @@ public class AudioFileDisplay extends JScrollPane {
 	}
 
 	/**
-	 * Decides whether a <code>File</code> is supported by comparing its extension to the collection of supported extensions in {@link Constants#audioFormatsLowerCase}, ignoring case.
+	 * Decides whether a <code>File</code> is supported by comparing its extension to those of the formats the {@link AudioDecoders} read, ignoring case.
 	 * 
 	 * @param name The name of the file, from <code>File.getName()</code>
 	 * @return <code>true</code> iff the the <code>name</code> parameter ends with a supported extension
 	 */
 	private static boolean extensionSupported(String name) {
-		for(String ext: Constants.audioFormatsLowerCase) {
-			if(name.toLowerCase().endsWith(ext)) {
-				return true;
-			}
-		}
-		return false;
+		return AudioDecoders.isSupportedName(name);
 	}
 }
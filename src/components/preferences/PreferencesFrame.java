@@ -135,6 +135,11 @@ public class PreferencesFrame extends JFrame implements WindowListener {
 		prefPanel.add(new SeekSizePreference("Large Seek (ms)", SeekSizePreference.ShiftSize.LARGE_SHIFT));		
 		BandPassFilterPreference bandPref = new BandPassFilterPreference("Band-Pass Filter Range");
 		prefPanel.add(bandPref);
+		SpectrogramPreference spectrogramPref = new SpectrogramPreference("Waveform Display");
+		prefPanel.add(spectrogramPref);
+		SkipSilencePreference skipSilencePref = new SkipSilencePreference("Skip Long Silences in Playback");
+		prefPanel.add(skipSilencePref);
+		prefPanel.add(new SkippedSilencePreference("Shortest Silence Skipped (ms)"));
 		BooleanPreference warnExitPref = new BooleanPreference("Warn on Exit", UserPrefs.warnExit, "Yes", "No",	UserPrefs.defaultWarnExit);	
 		prefPanel.add(warnExitPref);
 		BooleanPreference warnSwitchPref = new BooleanPreference("Warn on File Switch", UserPrefs.warnFileSwitch, "Yes", "No", UserPrefs.defaultWarnFileSwitch);
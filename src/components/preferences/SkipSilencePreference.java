@@ -0,0 +1,48 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.preferences;
+
+import info.UserPrefs;
+
+import control.CurAudio;
+
+/**
+ * A <code>BooleanPreference</code> for whether playback jumps over long silences, which takes effect at the next play.
+ */
+public class SkipSilencePreference extends BooleanPreference {
+
+	protected SkipSilencePreference(String prefTitle) {
+		super(prefTitle, UserPrefs.skipSilence, "Yes", "No", UserPrefs.defaultSkipSilence);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean save() {
+		boolean saved = super.save();
+		CurAudio.updateSilenceSkipping();
+		return saved;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void restoreDefault() {
+		super.restoreDefault();
+		CurAudio.updateSilenceSkipping();
+	}
+}
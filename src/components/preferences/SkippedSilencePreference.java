@@ -0,0 +1,94 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.preferences;
+
+import info.UserPrefs;
+
+import java.text.DecimalFormat;
+import java.text.ParseException;
+
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+
+import audio.SilenceDetector;
+
+import control.CurAudio;
+
+/**
+ * Preference for the length of the shortest silence that playback jumps over, when it skips silence.
+ * 
+ * Takes effect at the next play.
+ */
+public class SkippedSilencePreference extends AbstractPreferenceDisplay {
+
+	private static final int step = 100;
+
+	private JSpinner spinner;
+
+	protected SkippedSilencePreference(String title) {
+		super(title);
+		spinner = new JSpinner();
+		SpinnerNumberModel model = new SpinnerNumberModel();
+		model.setStepSize(step);
+		model.setMinimum(SilenceDetector.MIN_SKIPPED_MILLIS);
+		model.setMaximum(Integer.MAX_VALUE);
+		model.setValue(getCurrentVal());
+		spinner.setModel(model);
+
+		add(spinner);
+	}
+
+	private int getCurrentVal() {
+		return Math.max(SilenceDetector.MIN_SKIPPED_MILLIS, UserPrefs.prefs.getInt(UserPrefs.minSkippedSilence, UserPrefs.defaultMinSkippedSilence));
+	}
+
+	@Override
+	protected void graphicallyRevert() {
+		spinner.setValue(getCurrentVal());
+	}
+
+	@Override
+	protected boolean isChanged() {
+		JSpinner.NumberEditor editor = (JSpinner.NumberEditor)spinner.getEditor();
+		String curContents = editor.getTextField().getText();
+		DecimalFormat format = editor.getFormat();
+		Number num = null;
+		try {
+			num = format.parse(curContents);
+		} 
+		catch (ParseException e) {
+		}
+		if(num == null) {
+			return true;
+		}
+		else {
+			return num.intValue() != getCurrentVal();
+		}
+	}
+
+	@Override
+	protected void restoreDefault() {
+		spinner.setValue(UserPrefs.defaultMinSkippedSilence);
+		UserPrefs.prefs.putInt(UserPrefs.minSkippedSilence, UserPrefs.defaultMinSkippedSilence);
+		CurAudio.updateSilenceSkipping();
+	}
+
+	@Override
+	protected boolean save() throws BadPreferenceException {
+		UserPrefs.prefs.putInt(UserPrefs.minSkippedSilence, (Integer)spinner.getValue());
+		CurAudio.updateSilenceSkipping();
+		return true;
+	}
+}
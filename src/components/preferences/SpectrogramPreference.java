@@ -0,0 +1,39 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.preferences;
+
+import info.UserPrefs;
+
+import components.waveform.WaveformDisplay;
+
+/**
+ * A <code>BooleanPreference</code> for choosing between the waveform and the spectrogram, which takes effect as soon as it is saved.
+ */
+public class SpectrogramPreference extends BooleanPreference {
+
+	protected SpectrogramPreference(String prefTitle) {
+		super(prefTitle, UserPrefs.showSpectrogram, "Spectrogram", "Waveform", UserPrefs.defaultShowSpectrogram);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean save() {
+		boolean saved = super.save();
+		WaveformDisplay.viewChanged();
+		return saved;
+	}
+}
@@ -0,0 +1,273 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import info.Constants;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import util.SidecarFile;
+
+/**
+ * Amplitude statistics of a whole audio file's (filtered) samples, for drawing every chunk of the waveform at the same scale.
+ *
+ * <p>Besides the peak and RMS of the samples, the statistics keep a histogram of pixel peaks.
+ * A pixel peak is the smaller of the peaks of two neighboring zoomless pixels, which is the value the waveform was always scaled by,
+ * so that spikes too short to be meaningfully drawn do not shrink the rest of the waveform.
+ * The first half second is left out, due to the loud beep that often starts psychology experiments.
+ * The histogram has 16 logarithmic bins per octave, so percentiles are accurate to about 4%.
+ *
+ * <p>Statistics are persisted in a {@link SidecarFile} next to the audio file, validated the same way as a <code>PeakPyramid</code>'s.
+ */
+public class AmplitudeStats {
+
+	private static final int MAGIC = 0x50544153;
+	private static final int VERSION = 1;
+
+	private static final int BINS_PER_OCTAVE = 16;
+	private static final int LOWEST_OCTAVE = -16;
+	private static final int HIGHEST_OCTAVE = 1;
+	private static final int NUM_BINS = 1 + (HIGHEST_OCTAVE - LOWEST_OCTAVE) * BINS_PER_OCTAVE;
+
+	/**
+	 * Percentile of the pixel peaks drawn at full height.
+	 */
+	private static final double SCALE_PERCENTILE = 99.9;
+
+	private final long numFrames;
+	private final double peak;
+	private final double rms;
+	private final long[] pixelPeakCounts;
+
+	private AmplitudeStats(long numFrames, double peak, double rms, long[] pixelPeakCounts) {
+		this.numFrames = numFrames;
+		this.peak = peak;
+		this.rms = rms;
+		this.pixelPeakCounts = pixelPeakCounts;
+	}
+
+	public long numFrames() {
+		return numFrames;
+	}
+
+	/**
+	 * @return The largest absolute sample value, on a 0-1 scale
+	 */
+	public double peak() {
+		return peak;
+	}
+
+	/**
+	 * @return The root-mean-square of all samples, on a 0-1 scale
+	 */
+	public double rms() {
+		return rms;
+	}
+
+	/**
+	 * Finds the pixel peak that the provided percentage of pixels do not exceed.
+	 *
+	 * @param percentile The percentage, from 0 to 100
+	 * @return The upper edge of the histogram bin holding that pixel peak, on a 0-1 scale, or 0 if no pixels were counted
+	 */
+	public double pixelPeakPercentile(double percentile) {
+		long total = 0;
+		for(int i = 0; i < pixelPeakCounts.length; i++) {
+			total += pixelPeakCounts[i];
+		}
+		if(total == 0) {
+			return 0;
+		}
+		double wanted = Math.max(1, Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for(int i = 0; i < pixelPeakCounts.length; i++) {
+			seen += pixelPeakCounts[i];
+			if(seen >= wanted) {
+				return Math.min(peak, binTop(i));
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Returns the value drawn at full height, which is the same for every chunk of the file.
+	 *
+	 * @return The value, or 0 if the file is silent
+	 */
+	public double scaleBasis() {
+		return pixelPeakPercentile(SCALE_PERCENTILE);
+	}
+
+	/**
+	 * Returns the sidecar file used to store the statistics of one channel of the provided audio file.
+	 *
+	 * The first channel's sidecar is named after the audio file alone, the others also carry the channel's number, counting from 1.
+	 */
+	public static File sidecarFor(File audioFile, int channel) {
+		return SidecarFile.of(audioFile, channel, Constants.amplitudeStatsFileExtension);
+	}
+
+	/**
+	 * Reads the statistics of one channel stored in the sidecar of the provided audio file.
+	 *
+	 * @return The stored statistics, or <code>null</code> if there is no sidecar, it cannot be read, or it is stale
+	 */
+	public static AmplitudeStats load(File audioFile, int channel, PeakPyramid.FilterSettings settings) {
+		File sidecar = sidecarFor(audioFile, channel);
+		DataInputStream in = null;
+		try {
+			in = SidecarFile.openForReading(sidecar, MAGIC, VERSION, audioFile);
+			if(in == null || settings.equals(PeakPyramid.FilterSettings.read(in)) == false) {
+				return null;
+			}
+			long numFrames = in.readLong();
+			double peak = in.readDouble();
+			double rms = in.readDouble();
+			int numBins = in.readInt();
+			if(numBins != NUM_BINS) {
+				return null;
+			}
+			long[] counts = new long[numBins];
+			for(int i = 0; i < numBins; i++) {
+				counts[i] = in.readLong();
+			}
+			return new AmplitudeStats(numFrames, peak, rms, counts);
+		}
+		catch(IOException e) {
+			System.err.println("could not read amplitude statistics " + sidecar + ": " + e.getMessage());
+			return null;
+		}
+		finally {
+			SidecarFile.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Writes these statistics to the sidecar of one channel of the provided audio file, through a temporary file.
+	 *
+	 * @throws IOException If the sidecar cannot be written, e.g. because the audio file's directory is read-only
+	 */
+	public void save(File audioFile, int channel, final PeakPyramid.FilterSettings settings) throws IOException {
+		SidecarFile.write(sidecarFor(audioFile, channel), MAGIC, VERSION, audioFile, new SidecarFile.Body() {
+			public void write(DataOutputStream out) throws IOException {
+				settings.write(out);
+				out.writeLong(numFrames);
+				out.writeDouble(peak);
+				out.writeDouble(rms);
+				out.writeInt(pixelPeakCounts.length);
+				for(int i = 0; i < pixelPeakCounts.length; i++) {
+					out.writeLong(pixelPeakCounts[i]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "AmplitudeStats: peak " + peak + ", rms " + rms + ", scale " + scaleBasis();
+	}
+
+	private static int binOf(double val) {
+		if(val <= 0) {
+			return 0;
+		}
+		double octaves = Math.log(val) / Math.log(2) - LOWEST_OCTAVE;
+		if(octaves <= 0) {
+			return 0;
+		}
+		return (int)Math.min(NUM_BINS - 1, 1 + Math.floor(octaves * BINS_PER_OCTAVE));
+	}
+
+	private static double binTop(int bin) {
+		return Math.pow(2, LOWEST_OCTAVE + bin / (double)BINS_PER_OCTAVE);
+	}
+
+
+
+	/**
+	 * Accumulates samples in order into new <code>AmplitudeStats</code>.
+	 */
+	public static class Builder {
+
+		private final int framesPerPixel;
+		private final long framesSkipped;
+
+		private final long[] counts;
+
+		private long numFrames;
+		private double peak;
+		private double sumOfSquares;
+
+		private int framesInPixel;
+		private double pixelPeak;
+		private double previousPixelPeak;
+
+		/**
+		 * @param frameRate Frames per second of the audio
+		 * @param pixelsPerSecond Pixels per second of the zoomless waveform
+		 */
+		public Builder(double frameRate, int pixelsPerSecond) {
+			framesPerPixel = Math.max(1, (int)Math.round(frameRate / pixelsPerSecond));
+			framesSkipped = (long)(frameRate / 2);
+			counts = new long[NUM_BINS];
+			previousPixelPeak = -1;
+		}
+
+		/**
+		 * Adds the next <code>length</code> samples, in file order.
+		 */
+		public void add(double[] samples, int length) {
+			for(int i = 0; i < length; i++) {
+				final double val = Math.abs(samples[i]);
+				if(val > peak) {
+					peak = val;
+				}
+				sumOfSquares += val * val;
+				if(val > pixelPeak) {
+					pixelPeak = val;
+				}
+				numFrames++;
+				framesInPixel++;
+				if(framesInPixel == framesPerPixel) {
+					closePixel();
+				}
+			}
+		}
+
+		/**
+		 * @return The statistics of all samples added
+		 */
+		public AmplitudeStats build() {
+			return new AmplitudeStats(numFrames, peak, numFrames > 0 ? Math.sqrt(sumOfSquares / numFrames) : 0, counts.clone());
+		}
+
+		private void closePixel() {
+			if(numFrames > framesSkipped) {
+				if(previousPixelPeak >= 0) {
+					counts[binOf(Math.min(pixelPeak, previousPixelPeak))]++;
+				}
+				previousPixelPeak = pixelPeak;
+			}
+			framesInPixel = 0;
+			pixelPeak = 0;
+		}
+	}
+}
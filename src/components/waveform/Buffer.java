@@ -30,28 +30,21 @@ public abstract class Buffer extends Thread {
 	/**
 	 * Tries for period of time to terminate the thread.
 	 * 
-	 * @param millis The minimum number of milliseconds to try terminating the thread for
+	 * Calls <code>finish()</code> and interrupts the thread, so a thread blocked waiting for work wakes up right away,
+	 * then waits for it to die.
+	 * 
+	 * @param millis The maximum number of milliseconds to wait for the thread to die
 	 * @return Whether or not the thread was successfully terminated in the provided period
-	 * @throws InterruptedException If an attempt at sleeping the thread is unsuccessful
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
 	 */
 	public final boolean terminateThread(int millis) throws InterruptedException {
 		if (millis <= 0) {
 			throw new IllegalArgumentException();
 		}
 		finish();
-		final int iterationLength = 25;
-		int counter = 0;
-		while (true) {
-			if (counter > millis) {
-				break;
-			}
-			Thread.sleep(iterationLength);
-			counter += iterationLength;
-			if (isAlive() == false) {
-				return true;
-			}
-		}
-		return false;
+		interrupt();
+		join(millis);
+		return isAlive() == false;
 	}
 	
 	/**
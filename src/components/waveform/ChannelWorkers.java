@@ -0,0 +1,150 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the same work on every channel of a block of audio at once, so several channels take about as long as one on a multi-core machine.
+ *
+ * The calling thread always takes the first channel itself, and the other channels go to a pool of daemon threads.
+ * With a single channel or a single processor there is no pool, and the channels simply run one after another on the calling thread.
+ * Several threads may hand work to the same instance at once, their channels share the pool.
+ */
+class ChannelWorkers {
+
+	private final int numChannels;
+
+	//null if every channel runs on the calling thread
+	private final ExecutorService pool;
+
+	/**
+	 * @param numChannels The number of channels of the audio
+	 * @param numCallers The number of threads that may hand work to this instance at once
+	 * @param name Prefix of the names of the pool's threads
+	 */
+	ChannelWorkers(int numChannels, int numCallers, final String name) {
+		this.numChannels = numChannels;
+		final int numThreads = Math.min(Runtime.getRuntime().availableProcessors() - 1, numCallers * (numChannels - 1));
+		if(numThreads > 0) {
+			pool = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		else {
+			pool = null;
+		}
+	}
+
+	/**
+	 * @return The number of channels each call to {@link #forEachChannel(Task)} covers
+	 */
+	int numChannels() {
+		return numChannels;
+	}
+
+	/**
+	 * Runs a task for every channel and waits until all of them are done.
+	 *
+	 * @param task The work, which must only touch its own channel's data
+	 * @throws RuntimeException If the task threw one for any channel, the first such exception is rethrown once all channels are done
+	 */
+	void forEachChannel(final Task task) {
+		if(pool == null) {
+			for(int channel = 0; channel < numChannels; channel++) {
+				task.run(channel);
+			}
+			return;
+		}
+		List<Future<?>> others = new ArrayList<Future<?>>(numChannels - 1);
+		for(int channel = 1; channel < numChannels; channel++) {
+			final int myChannel = channel;
+			others.add(pool.submit(new Runnable() {
+				public void run() {
+					task.run(myChannel);
+				}
+			}));
+		}
+		RuntimeException failure = null;
+		try {
+			task.run(0);
+		}
+		catch(RuntimeException e) {
+			failure = e;
+		}
+		boolean interrupted = false;
+		for(Future<?> other: others) {
+			while(true) {
+				try {
+					other.get();
+					break;
+				}
+				catch(InterruptedException e) {
+					//the other channels are still writing into the caller's buffers, they must finish first
+					interrupted = true;
+				}
+				catch(ExecutionException e) {
+					if(failure == null) {
+						failure = e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new RuntimeException(e.getCause());
+					}
+					break;
+				}
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if(failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Stops the pool's threads once the work already handed in is done.
+	 */
+	void shutdown() {
+		if(pool != null) {
+			pool.shutdown();
+		}
+	}
+
+
+
+	/**
+	 * Work on one channel.
+	 */
+	interface Task {
+
+		/**
+		 * @param channel The channel to work on, counting from 0
+		 */
+		void run(int channel);
+	}
+}
@@ -0,0 +1,171 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of rendered waveform data, bounded by an estimate of the bytes its values occupy.
+ *
+ * Adding a value evicts the least recently used values until the total is back within budget.
+ * A value larger than the whole budget is not stored.
+ * All methods are synchronized, so render workers and the buffer thread can share one cache.
+ *
+ * @param <K> Key type, which must implement <code>equals</code> and <code>hashCode</code>
+ * @param <V> Value type
+ */
+public class ChunkCache<K, V> {
+
+	private final long budgetBytes;
+
+	private final LinkedHashMap<K, Entry<V>> entries;
+
+	private long usedBytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param budgetMegabytes Maximum total size of the cached values, in megabytes
+	 */
+	public ChunkCache(int budgetMegabytes) {
+		budgetBytes = budgetMegabytes * 1024L * 1024L;
+		//access order, so iteration starts at the least recently used entry
+		entries = new LinkedHashMap<K, Entry<V>>(64, 0.75F, true);
+	}
+
+	/**
+	 * Looks up a value, counting a hit or a miss, and marks it as the most recently used.
+	 *
+	 * @param key The key
+	 * @return The value, or <code>null</code> if it is not cached
+	 */
+	public synchronized V get(K key) {
+		Entry<V> entry = entries.get(key);
+		if(entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	/**
+	 * Stores a value as the most recently used, evicting others as needed.
+	 *
+	 * @param key The key
+	 * @param value The value
+	 * @param sizeBytes Estimated memory occupied by <code>value</code>
+	 */
+	public synchronized void put(K key, V value, long sizeBytes) {
+		Entry<V> old = entries.remove(key);
+		if(old != null) {
+			usedBytes -= old.sizeBytes;
+		}
+		if(sizeBytes > budgetBytes) {
+			return;
+		}
+		Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+		while(usedBytes + sizeBytes > budgetBytes && it.hasNext()) {
+			usedBytes -= it.next().getValue().sizeBytes;
+			it.remove();
+			evictions++;
+		}
+		entries.put(key, new Entry<V>(value, sizeBytes));
+		usedBytes += sizeBytes;
+	}
+
+	/**
+	 * Empties the cache, without resetting the counters.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		usedBytes = 0;
+	}
+
+	/**
+	 * Removes the values whose keys match, without counting evictions.
+	 *
+	 * @param matcher Decides which keys to remove
+	 * @return The number of values removed
+	 */
+	public synchronized int removeMatching(KeyMatcher<? super K> matcher) {
+		int removed = 0;
+		Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<K, Entry<V>> entry = it.next();
+			if(matcher.matches(entry.getKey())) {
+				usedBytes -= entry.getValue().sizeBytes;
+				it.remove();
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long usedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized String toString() {
+		return "ChunkCache: " + entries.size() + " entries, " + (usedBytes / 1024) + "/" + (budgetBytes / 1024) + " KB, "
+			+ hits + " hits, " + misses + " misses, " + evictions + " evictions";
+	}
+
+
+
+	/**
+	 * Selects keys for {@link ChunkCache#removeMatching(KeyMatcher)}.
+	 *
+	 * @param <K> Key type
+	 */
+	public static interface KeyMatcher<K> {
+
+		public boolean matches(K key);
+	}
+
+	private static class Entry<V> {
+
+		private final V value;
+		private final long sizeBytes;
+
+		private Entry(V value, long sizeBytes) {
+			this.value = value;
+			this.sizeBytes = sizeBytes;
+		}
+	}
+}
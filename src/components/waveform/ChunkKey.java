@@ -0,0 +1,103 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+/**
+ * Identifies one rendering of one chunk of waveform, for looking it up in a <code>ChunkCache</code>.
+ *
+ * Two keys are equal only if everything that affects the rendered chunk is equal.
+ */
+public class ChunkKey {
+
+	private final String audioFilePath;
+	private final int chunkNum;
+	private final int height;
+	private final int zoomLevel;
+	private final PeakPyramid.FilterSettings filterSettings;
+	private final WaveformBuffer.View view;
+
+	/**
+	 * @param audioFilePath Absolute path of the audio file
+	 * @param chunkNum The chunk number
+	 * @param height Height of the rendered image
+	 * @param zoomLevel Horizontal zoom of the rendered image, see {@link ZoomLevel#level()}
+	 * @param filterSettings Filter the samples were drawn with
+	 * @param view Whether the waveform or the spectrogram was drawn
+	 */
+	public ChunkKey(String audioFilePath, int chunkNum, int height, int zoomLevel, PeakPyramid.FilterSettings filterSettings, WaveformBuffer.View view) {
+		this.audioFilePath = audioFilePath;
+		this.chunkNum = chunkNum;
+		this.height = height;
+		this.zoomLevel = zoomLevel;
+		this.filterSettings = filterSettings;
+		this.view = view;
+	}
+
+	/**
+	 * Returns the key of the data this chunk is drawn from, which is the same at every height.
+	 *
+	 * @return An equal key, except that its height is 0
+	 */
+	public ChunkKey forAnyHeight() {
+		return new ChunkKey(audioFilePath, chunkNum, 0, zoomLevel, filterSettings, view);
+	}
+
+	public String getAudioFilePath() {
+		return audioFilePath;
+	}
+
+	public int getChunkNum() {
+		return chunkNum;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if(o instanceof ChunkKey) {
+			ChunkKey other = (ChunkKey)o;
+			return chunkNum == other.chunkNum && height == other.height && zoomLevel == other.zoomLevel
+				&& view == other.view && audioFilePath.equals(other.audioFilePath) && filterSettings.equals(other.filterSettings);
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		int hash = audioFilePath.hashCode();
+		hash = 31 * hash + chunkNum;
+		hash = 31 * hash + height;
+		hash = 31 * hash + zoomLevel;
+		hash = 31 * hash + filterSettings.hashCode();
+		hash = 31 * hash + view.ordinal();
+		return hash;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "ChunkKey[" + audioFilePath + " #" + chunkNum + ", " + height + "px high, zoom level " + zoomLevel + ", " + filterSettings + ", " + view + "]";
+	}
+}
@@ -0,0 +1,179 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package components.waveform;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Paces the refreshes of the waveform display to the screen.
+ *
+ * <p>While the display is animating, i.e. the audio is playing, a frame is posted to the event dispatch thread once per refresh of the screen.
+ * Otherwise the pacer sleeps until {@link #request()} says something on the display changed, and posts one frame at the next tick.
+ * A tick that comes while the previous frame is still waiting for or running on the event dispatch thread is dropped, so a loaded machine falls behind by one frame at most, instead of by a queue of them.
+ *
+ * <p>Every frame is timed in a {@link FrameTelemetry}.
+ */
+class FramePacer extends Thread {
+
+	/**
+	 * Used when the screen does not report its refresh rate.
+	 */
+	private static final int DEFAULT_REFRESH_RATE = 60;
+
+	/**
+	 * One refresh of the waveform display.
+	 */
+	interface Frame {
+
+		/**
+		 * Refreshes the display, called on the event dispatch thread.
+		 *
+		 * @return Whether the display is animating, and wants the next tick whether or not anything is requested
+		 */
+		boolean refresh();
+	}
+
+	private final Frame frame;
+	private final long periodNanos;
+	private final FrameTelemetry telemetry;
+
+	private final AtomicBoolean posted = new AtomicBoolean();
+	private volatile boolean animating;
+	private volatile boolean finish;
+
+	//guarded by this
+	private boolean requested;
+
+	/**
+	 * @param frame The refresh to run at every tick
+	 */
+	FramePacer(Frame frame) {
+		super("FramePacer");
+		setDaemon(true);
+		this.frame = frame;
+		periodNanos = TimeUnit.SECONDS.toNanos(1) / refreshRate();
+		telemetry = new FrameTelemetry(periodNanos);
+	}
+
+	/**
+	 * Asks for a frame at the next tick, because something on the display changed.
+	 *
+	 * Cheap enough to call on every progress update, from any thread.
+	 */
+	void request() {
+		synchronized(this) {
+			if(requested == false) {
+				requested = true;
+				notify();
+			}
+		}
+	}
+
+	FrameTelemetry getTelemetry() {
+		return telemetry;
+	}
+
+	/**
+	 * Stops posting frames. A frame already posted returns without refreshing, like a stopped Swing <code>Timer</code>.
+	 */
+	void finish() {
+		finish = true;
+		interrupt();
+	}
+
+	@Override
+	public void run() {
+		long nextTick = System.nanoTime();
+		while(finish == false) {
+			synchronized(this) {
+				while(requested == false && animating == false && finish == false) {
+					try {
+						wait();
+					}
+					catch(InterruptedException e) {
+						//finish() sets the flag before interrupting
+					}
+				}
+				requested = false;
+			}
+			long now = System.nanoTime();
+			if(now - nextTick > periodNanos) {
+				//coming back from idle, the first frame is due right away
+				nextTick = now;
+			}
+			while(finish == false && (now = System.nanoTime()) < nextTick) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(nextTick - now);
+				}
+				catch(InterruptedException e) {
+					//finish() sets the flag before interrupting
+				}
+			}
+			if(finish) {
+				return;
+			}
+			if(posted.compareAndSet(false, true)) {
+				final long tickNanos = System.nanoTime();
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if(finish) {
+							//the display may already have been torn down
+							posted.set(false);
+							return;
+						}
+						long begin = System.nanoTime();
+						telemetry.beginFrame(tickNanos, begin);
+						boolean wasAnimating = animating;
+						try {
+							animating = frame.refresh();
+						}
+						finally {
+							telemetry.refreshed(System.nanoTime() - begin);
+							posted.set(false);
+						}
+						if(animating && wasAnimating == false) {
+							//the pacer may have gone idle while this frame was waiting
+							request();
+						}
+					}
+				});
+			}
+			else {
+				telemetry.tickDropped();
+			}
+			nextTick += periodNanos;
+		}
+	}
+
+	/**
+	 * @return The refresh rate of the screen in Hz, or {@link #DEFAULT_REFRESH_RATE} if it is unknown
+	 */
+	private static int refreshRate() {
+		if(GraphicsEnvironment.isHeadless()) {
+			return DEFAULT_REFRESH_RATE;
+		}
+		DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode();
+		if(mode == null || mode.getRefreshRate() == DisplayMode.REFRESH_RATE_UNKNOWN) {
+			return DEFAULT_REFRESH_RATE;
+		}
+		return mode.getRefreshRate();
+	}
+}
@@ -0,0 +1,174 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package components.waveform;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the timing of the last few minutes of waveform display frames, for finding out why playback looks jerky on some machine.
+ *
+ * <p>For each frame: when its tick was due, how long it waited for the event dispatch thread, how long the refresh and the paints it caused took,
+ * the interpolation error of the progress bar, and how many ticks were dropped just before it because the previous frame was still unfinished.
+ * A frame whose wait, refresh and paints together outlast the frame period missed its deadline.
+ *
+ * <p>Everything but {@link #tickDropped()} is called on the event dispatch thread only.
+ */
+class FrameTelemetry {
+
+	//a little over four minutes at 60 Hz
+	private static final int CAPACITY = 1 << 14;
+
+	private final long periodNanos;
+	private final long startNanos;
+
+	private final long[] tick = new long[CAPACITY];
+	private final int[] latency = new int[CAPACITY];
+	private final int[] refresh = new int[CAPACITY];
+	private final int[] paint = new int[CAPACITY];
+	private final long[] interpolationError = new long[CAPACITY];
+	private final int[] dropped = new int[CAPACITY];
+
+	private final AtomicInteger droppedSinceLastFrame = new AtomicInteger();
+
+	//number of frames ever begun, the current one is at (numFrames - 1) % CAPACITY
+	private long numFrames;
+
+	/**
+	 * @param periodNanos The time between ticks while the display is animating
+	 */
+	FrameTelemetry(long periodNanos) {
+		this.periodNanos = periodNanos;
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Notes a tick that was not posted because the previous frame had not finished yet.
+	 *
+	 * May be called from any thread.
+	 */
+	void tickDropped() {
+		droppedSinceLastFrame.incrementAndGet();
+	}
+
+	/**
+	 * Starts the record of a frame.
+	 *
+	 * @param tickNanos When the frame was posted
+	 * @param beginNanos When the frame began running
+	 */
+	void beginFrame(long tickNanos, long beginNanos) {
+		int i = (int)(numFrames++ % CAPACITY);
+		tick[i] = tickNanos - startNanos;
+		latency[i] = micros(beginNanos - tickNanos);
+		refresh[i] = 0;
+		paint[i] = 0;
+		interpolationError[i] = 0;
+		dropped[i] = droppedSinceLastFrame.getAndSet(0);
+	}
+
+	/**
+	 * Records how long the current frame's refresh took, not counting the paints it requested.
+	 *
+	 * @param nanos How long the refresh took, including any paints it ran immediately, which were already recorded by {@link #painted(long)}
+	 */
+	void refreshed(long nanos) {
+		if(numFrames > 0) {
+			int i = current();
+			refresh[i] = Math.max(0, micros(nanos) - paint[i]);
+		}
+	}
+
+	/**
+	 * Adds a paint to the current frame, since paints run after the refresh that requested them.
+	 *
+	 * @param nanos How long the paint took
+	 */
+	void painted(long nanos) {
+		if(numFrames > 0) {
+			paint[current()] += micros(nanos);
+		}
+	}
+
+	/**
+	 * @param frames How far the interpolated position of the progress bar, or the player's clock when it is advancing, was from the last progress reported by the player, positive when ahead
+	 */
+	void interpolationError(long frames) {
+		if(numFrames > 0) {
+			interpolationError[current()] = frames;
+		}
+	}
+
+	/**
+	 * Writes the recorded frames as comma separated values, oldest first, with a header line.
+	 *
+	 * @param file The file to write, replaced if it exists
+	 * @throws FileNotFoundException If the file cannot be created
+	 */
+	void dump(File file) throws FileNotFoundException {
+		PrintWriter out = new PrintWriter(file);
+		try {
+			out.println("tick_us,latency_us,refresh_us,paint_us,interpolation_error_frames,dropped_ticks,missed_deadline");
+			long first = Math.max(0, numFrames - CAPACITY);
+			for(long n = first; n < numFrames; n++) {
+				int i = (int)(n % CAPACITY);
+				out.println(tick[i] / 1000 + "," + latency[i] + "," + refresh[i] + "," + paint[i] + "," + interpolationError[i] + "," + dropped[i] + "," + (missedDeadline(i) ? 1 : 0));
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		int count = (int)Math.min(numFrames, CAPACITY);
+		if(count == 0) {
+			return "FrameTelemetry[no frames]";
+		}
+		int[] busy = new int[count];
+		int numMissed = 0;
+		long numDropped = 0;
+		for(int i = 0; i < count; i++) {
+			busy[i] = latency[i] + refresh[i] + paint[i];
+			if(missedDeadline(i)) {
+				numMissed++;
+			}
+			numDropped += dropped[i];
+		}
+		Arrays.sort(busy);
+		return "FrameTelemetry[" + count + " frames, period " + periodNanos / 1000 + " us, frame time median " + busy[count / 2] + " us, 99th percentile " + busy[(int)(count * 0.99)] + " us, " +
+				numMissed + " missed deadlines, " + numDropped + " dropped ticks]";
+	}
+
+	private boolean missedDeadline(int i) {
+		return latency[i] + refresh[i] + paint[i] > periodNanos / 1000;
+	}
+
+	private int current() {
+		return (int)((numFrames - 1) % CAPACITY);
+	}
+
+	private static int micros(long nanos) {
+		return (int)Math.min(Integer.MAX_VALUE, Math.max(0, nanos / 1000));
+	}
+}
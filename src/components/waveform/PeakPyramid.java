@@ -0,0 +1,409 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import info.Constants;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import util.SidecarFile;
+
+/**
+ * Multi-resolution summary of an audio file's (filtered) samples, for drawing the waveform without decoding PCM.
+ *
+ * <p>Level 0 stores the minimum, maximum, and RMS of every bucket of <code>baseBucketFrames</code> consecutive frames.
+ * Each following level halves the number of buckets by merging neighbors, so level <i>k</i> buckets span <code>baseBucketFrames * 2^k</code> frames.
+ * Values are stored as 16-bit fractions of full scale, the same scale <code>AudioDoubleDataSource</code> produces.
+ *
+ * <p>Pyramids are persisted in a {@link SidecarFile} next to the audio file.
+ * A sidecar is only trusted if the audio file's size and modification time, and the filter settings used to build it, all match.
+ */
+public class PeakPyramid {
+
+	private static final int MAGIC = 0x50545250;
+	private static final int VERSION = 1;
+
+	private static final double FULL_SCALE = Short.MAX_VALUE;
+
+	private final long numFrames;
+	private final int baseBucketFrames;
+
+	private final short[][] mins;
+	private final short[][] maxs;
+	private final short[][] rmss;
+
+	private PeakPyramid(long numFrames, int baseBucketFrames, short[][] mins, short[][] maxs, short[][] rmss) {
+		this.numFrames = numFrames;
+		this.baseBucketFrames = baseBucketFrames;
+		this.mins = mins;
+		this.maxs = maxs;
+		this.rmss = rmss;
+	}
+
+	/**
+	 * Chooses the finest bucket size worth storing for audio of the provided frame rate.
+	 *
+	 * The bucket is the largest power of two that is no larger than the number of frames in one zoomless pixel,
+	 * so that every pixel of the zoomless waveform covers at least one bucket.
+	 *
+	 * @param frameRate Frames per second of the audio
+	 * @param pixelsPerSecond Pixels per second of the finest waveform that will be drawn from the pyramid
+	 * @return The number of frames in a level 0 bucket
+	 */
+	public static int chooseBaseBucketFrames(double frameRate, int pixelsPerSecond) {
+		int framesPerPixel = Math.max(1, (int)(frameRate / pixelsPerSecond));
+		return Integer.highestOneBit(framesPerPixel);
+	}
+
+	/**
+	 * Finds the largest absolute sample value in the provided range of frames.
+	 *
+	 * The coarsest level whose buckets are no larger than the range is used, so the cost is a few bucket lookups regardless of zoom.
+	 * The answer is rounded outward to bucket boundaries.
+	 *
+	 * @param firstFrame First frame of the range, inclusive
+	 * @param endFrame Last frame of the range, exclusive
+	 * @return The peak absolute value, on a 0-1 scale, or 0 if the range is empty
+	 */
+	public double peak(long firstFrame, long endFrame) {
+		firstFrame = Math.max(0, firstFrame);
+		endFrame = Math.min(numFrames, endFrame);
+		if(endFrame <= firstFrame) {
+			return 0;
+		}
+		long span = endFrame - firstFrame;
+		int level = 0;
+		while(level < mins.length - 1 && ((long)baseBucketFrames << (level + 1)) <= span) {
+			level++;
+		}
+		long bucketFrames = (long)baseBucketFrames << level;
+		int firstBucket = (int)(firstFrame / bucketFrames);
+		int lastBucket = (int)Math.min((endFrame - 1) / bucketFrames, mins[level].length - 1);
+		int biggest = 0;
+		for(int i = firstBucket; i <= lastBucket; i++) {
+			biggest = Math.max(biggest, Math.max(-mins[level][i], maxs[level][i]));
+		}
+		return biggest / FULL_SCALE;
+	}
+
+	/**
+	 * Finds the root-mean-square of the samples in the provided range of frames, using the same level selection as {@link #peak(long, long)}.
+	 *
+	 * @param firstFrame First frame of the range, inclusive
+	 * @param endFrame Last frame of the range, exclusive
+	 * @return The RMS, on a 0-1 scale, or 0 if the range is empty
+	 */
+	public double rms(long firstFrame, long endFrame) {
+		firstFrame = Math.max(0, firstFrame);
+		endFrame = Math.min(numFrames, endFrame);
+		if(endFrame <= firstFrame) {
+			return 0;
+		}
+		long span = endFrame - firstFrame;
+		int level = 0;
+		while(level < rmss.length - 1 && ((long)baseBucketFrames << (level + 1)) <= span) {
+			level++;
+		}
+		long bucketFrames = (long)baseBucketFrames << level;
+		int firstBucket = (int)(firstFrame / bucketFrames);
+		int lastBucket = (int)Math.min((endFrame - 1) / bucketFrames, rmss[level].length - 1);
+		double sumOfSquares = 0;
+		for(int i = firstBucket; i <= lastBucket; i++) {
+			double val = rmss[level][i] / FULL_SCALE;
+			sumOfSquares += val * val;
+		}
+		return Math.sqrt(sumOfSquares / (lastBucket - firstBucket + 1));
+	}
+
+	public long numFrames() {
+		return numFrames;
+	}
+
+	public int baseBucketFrames() {
+		return baseBucketFrames;
+	}
+
+	public int numLevels() {
+		return mins.length;
+	}
+
+	/**
+	 * Returns the sidecar file used to store the pyramid of one channel of the provided audio file.
+	 *
+	 * The first channel's sidecar is named after the audio file alone, the others also carry the channel's number, counting from 1.
+	 */
+	public static File sidecarFor(File audioFile, int channel) {
+		return SidecarFile.of(audioFile, channel, Constants.peakPyramidFileExtension);
+	}
+
+	/**
+	 * Reads the pyramid of one channel stored in the sidecar of the provided audio file.
+	 *
+	 * @return The stored pyramid, or <code>null</code> if there is no sidecar, it cannot be read, or it is stale
+	 */
+	public static PeakPyramid load(File audioFile, int channel, FilterSettings settings) {
+		File sidecar = sidecarFor(audioFile, channel);
+		DataInputStream in = null;
+		try {
+			in = SidecarFile.openForReading(sidecar, MAGIC, VERSION, audioFile);
+			if(in == null || settings.equals(FilterSettings.read(in)) == false) {
+				return null;
+			}
+			long numFrames = in.readLong();
+			int baseBucketFrames = in.readInt();
+			int numLevels = in.readInt();
+			short[][] mins = new short[numLevels][];
+			short[][] maxs = new short[numLevels][];
+			short[][] rmss = new short[numLevels][];
+			for(int level = 0; level < numLevels; level++) {
+				int numBuckets = in.readInt();
+				mins[level] = readShorts(in, numBuckets);
+				maxs[level] = readShorts(in, numBuckets);
+				rmss[level] = readShorts(in, numBuckets);
+			}
+			return new PeakPyramid(numFrames, baseBucketFrames, mins, maxs, rmss);
+		}
+		catch(IOException e) {
+			System.err.println("could not read peak pyramid " + sidecar + ": " + e.getMessage());
+			return null;
+		}
+		finally {
+			SidecarFile.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Writes this pyramid to the sidecar of one channel of the provided audio file.
+	 *
+	 * The data is written to a temporary file first, so a reader never sees a partial sidecar.
+	 *
+	 * @throws IOException If the sidecar cannot be written, e.g. because the audio file's directory is read-only
+	 */
+	public void save(File audioFile, int channel, final FilterSettings settings) throws IOException {
+		SidecarFile.write(sidecarFor(audioFile, channel), MAGIC, VERSION, audioFile, new SidecarFile.Body() {
+			public void write(DataOutputStream out) throws IOException {
+				settings.write(out);
+				out.writeLong(numFrames);
+				out.writeInt(baseBucketFrames);
+				out.writeInt(mins.length);
+				for(int level = 0; level < mins.length; level++) {
+					out.writeInt(mins[level].length);
+					writeShorts(out, mins[level]);
+					writeShorts(out, maxs[level]);
+					writeShorts(out, rmss[level]);
+				}
+			}
+		});
+	}
+
+	private static short[] readShorts(DataInputStream in, int length) throws IOException {
+		short[] vals = new short[length];
+		for(int i = 0; i < length; i++) {
+			vals[i] = in.readShort();
+		}
+		return vals;
+	}
+
+	private static void writeShorts(DataOutputStream out, short[] vals) throws IOException {
+		for(int i = 0; i < vals.length; i++) {
+			out.writeShort(vals[i]);
+		}
+	}
+
+	private static short toShort(double val) {
+		long scaled = Math.round(val * FULL_SCALE);
+		if(scaled > Short.MAX_VALUE) {
+			return Short.MAX_VALUE;
+		}
+		if(scaled < -Short.MAX_VALUE) {
+			return -Short.MAX_VALUE;
+		}
+		return (short)scaled;
+	}
+
+
+
+	/**
+	 * The filter settings a pyramid was built with, stored in the sidecar so a change of preferences invalidates it.
+	 */
+	public static class FilterSettings {
+
+		private final boolean filtered;
+		private final int minBandHz;
+		private final int maxBandHz;
+
+		public FilterSettings(boolean filtered, int minBandHz, int maxBandHz) {
+			this.filtered = filtered;
+			this.minBandHz = filtered ? minBandHz : 0;
+			this.maxBandHz = filtered ? maxBandHz : 0;
+		}
+
+		static FilterSettings read(DataInputStream in) throws IOException {
+			boolean filtered = in.readBoolean();
+			int minBandHz = in.readInt();
+			int maxBandHz = in.readInt();
+			return new FilterSettings(filtered, minBandHz, maxBandHz);
+		}
+
+		public boolean isFiltered() {
+			return filtered;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeBoolean(filtered);
+			out.writeInt(minBandHz);
+			out.writeInt(maxBandHz);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(o instanceof FilterSettings) {
+				FilterSettings other = (FilterSettings)o;
+				return filtered == other.filtered && minBandHz == other.minBandHz && maxBandHz == other.maxBandHz;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return (filtered ? 1 : 0) + 31 * minBandHz + 961 * maxBandHz;
+		}
+
+		@Override
+		public String toString() {
+			return filtered ? (minBandHz + "-" + maxBandHz + " Hz") : "unfiltered";
+		}
+	}
+
+
+
+	/**
+	 * Accumulates samples in order into a new <code>PeakPyramid</code>.
+	 */
+	public static class Builder {
+
+		private final long numFrames;
+		private final int baseBucketFrames;
+
+		private final short[] baseMins;
+		private final short[] baseMaxs;
+		private final short[] baseRmss;
+
+		private int bucket;
+		private int framesInBucket;
+		private double bucketMin;
+		private double bucketMax;
+		private double bucketSumOfSquares;
+
+		/**
+		 * @param numFrames The number of frames that will be added
+		 * @param baseBucketFrames The number of frames in a level 0 bucket, must be a power of two
+		 */
+		public Builder(long numFrames, int baseBucketFrames) {
+			if(Integer.bitCount(baseBucketFrames) != 1) {
+				throw new IllegalArgumentException("bucket size must be a power of two: " + baseBucketFrames);
+			}
+			this.numFrames = numFrames;
+			this.baseBucketFrames = baseBucketFrames;
+			int numBuckets = (int)Math.max(1, (numFrames + baseBucketFrames - 1) / baseBucketFrames);
+			baseMins = new short[numBuckets];
+			baseMaxs = new short[numBuckets];
+			baseRmss = new short[numBuckets];
+			bucket = 0;
+			resetBucket();
+		}
+
+		/**
+		 * Adds the next <code>length</code> samples, in file order.
+		 */
+		public void add(double[] samples, int length) {
+			for(int i = 0; i < length; i++) {
+				if(bucket >= baseMins.length) {
+					return;
+				}
+				double val = samples[i];
+				if(val < bucketMin) {
+					bucketMin = val;
+				}
+				if(val > bucketMax) {
+					bucketMax = val;
+				}
+				bucketSumOfSquares += val * val;
+				framesInBucket++;
+				if(framesInBucket == baseBucketFrames) {
+					closeBucket();
+				}
+			}
+		}
+
+		/**
+		 * Finishes the final partial bucket and derives the coarser levels.
+		 *
+		 * @return The completed pyramid
+		 */
+		public PeakPyramid build() {
+			if(framesInBucket > 0) {
+				closeBucket();
+			}
+			int numLevels = 1;
+			for(int len = baseMins.length; len > 1; len = (len + 1) / 2) {
+				numLevels++;
+			}
+			short[][] mins = new short[numLevels][];
+			short[][] maxs = new short[numLevels][];
+			short[][] rmss = new short[numLevels][];
+			mins[0] = baseMins;
+			maxs[0] = baseMaxs;
+			rmss[0] = baseRmss;
+			for(int level = 1; level < numLevels; level++) {
+				short[] childMins = mins[level - 1];
+				short[] childMaxs = maxs[level - 1];
+				short[] childRmss = rmss[level - 1];
+				int len = (childMins.length + 1) / 2;
+				mins[level] = new short[len];
+				maxs[level] = new short[len];
+				rmss[level] = new short[len];
+				for(int i = 0; i < len; i++) {
+					int left = 2 * i;
+					int right = Math.min(left + 1, childMins.length - 1);
+					mins[level][i] = (short)Math.min(childMins[left], childMins[right]);
+					maxs[level][i] = (short)Math.max(childMaxs[left], childMaxs[right]);
+					double leftRms = childRmss[left];
+					double rightRms = childRmss[right];
+					rmss[level][i] = (short)Math.round(Math.sqrt((leftRms * leftRms + rightRms * rightRms) / 2));
+				}
+			}
+			return new PeakPyramid(numFrames, baseBucketFrames, mins, maxs, rmss);
+		}
+
+		private void closeBucket() {
+			baseMins[bucket] = toShort(bucketMin);
+			baseMaxs[bucket] = toShort(bucketMax);
+			baseRmss[bucket] = toShort(Math.sqrt(bucketSumOfSquares / framesInBucket));
+			bucket++;
+			resetBucket();
+		}
+
+		private void resetBucket() {
+			framesInBucket = 0;
+			bucketMin = 0;
+			bucketMax = 0;
+			bucketSumOfSquares = 0;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import info.GUIConstants;
+
+import java.io.File;
+import java.io.IOException;
+
+import audio.SampleSource;
+import audio.StreamingBandPassFilter;
+
+/**
+ * Background thread that provides the {@link PeakPyramid} and {@link AmplitudeStats} of every channel of one audio file.
+ *
+ * Valid sidecars are loaded if there are any. Otherwise the whole file is filtered in a single sequential pass that accumulates whatever is missing,
+ * and the results are published and saved for the next time the file is opened.
+ * Each block of the pass is de-interleaved once, then its channels are filtered and summarized in parallel.
+ */
+public class PeakPyramidBuilder extends Buffer {
+
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	private final File audioFile;
+	private final int numChannels;
+	private final SampleSource samples;
+	private final double minBand;
+	private final double maxBand;
+	private final PeakPyramid.FilterSettings settings;
+
+	//one per channel, published once all channels are available
+	private volatile PeakPyramid[] pyramids;
+	private volatile AmplitudeStats[] stats;
+
+	private volatile boolean finish;
+
+	/**
+	 * @param audioFile The audio file to summarize, next to which the sidecars are stored
+	 * @param numChannels The number of channels of <code>audioFile</code>
+	 * @param samples The samples of <code>audioFile</code>, or <code>null</code> if they could not be read, in which case only sidecars can be used
+	 * @param minBand Lower band of the bandpass filter, as a fraction of the frame rate, ignored if <code>settings</code> is unfiltered
+	 * @param maxBand Upper band of the bandpass filter, as a fraction of the frame rate, ignored if <code>settings</code> is unfiltered
+	 * @param settings The filter settings, for validating and writing the sidecars
+	 */
+	public PeakPyramidBuilder(File audioFile, int numChannels, SampleSource samples, double minBand, double maxBand, PeakPyramid.FilterSettings settings) {
+		this.audioFile = audioFile;
+		this.numChannels = numChannels;
+		this.samples = samples;
+		this.minBand = minBand;
+		this.maxBand = maxBand;
+		this.settings = settings;
+		//the statistics sidecars are small, loading them right away lets the very first chunk use them
+		stats = loadStats();
+		finish = false;
+		setPriority(Thread.MIN_PRIORITY);
+	}
+
+	@Override
+	public void run() {
+		pyramids = loadPyramids();
+		if((pyramids != null && stats != null) || samples == null) {
+			return;
+		}
+
+		PeakPyramid.Builder[] pyramidBuilders = null;
+		if(pyramids == null) {
+			pyramidBuilders = new PeakPyramid.Builder[numChannels];
+			for(int channel = 0; channel < numChannels; channel++) {
+				pyramidBuilders[channel] = new PeakPyramid.Builder(samples.numFrames(), PeakPyramid.chooseBaseBucketFrames(samples.frameRate(), GUIConstants.zoomlessPixelsPerSecond));
+			}
+		}
+		AmplitudeStats.Builder[] statsBuilders = null;
+		if(stats == null) {
+			statsBuilders = new AmplitudeStats.Builder[numChannels];
+			for(int channel = 0; channel < numChannels; channel++) {
+				statsBuilders[channel] = new AmplitudeStats.Builder(samples.frameRate(), GUIConstants.zoomlessPixelsPerSecond);
+			}
+		}
+		if(build(pyramidBuilders, statsBuilders) == false) {
+			return;
+		}
+
+		if(statsBuilders != null) {
+			AmplitudeStats[] built = new AmplitudeStats[numChannels];
+			for(int channel = 0; channel < numChannels; channel++) {
+				built[channel] = statsBuilders[channel].build();
+			}
+			stats = built;
+			try {
+				for(int channel = 0; channel < numChannels; channel++) {
+					built[channel].save(audioFile, channel, settings);
+				}
+			}
+			catch(IOException e) {
+				System.err.println("could not save amplitude statistics, they will be recomputed next time: " + e.getMessage());
+			}
+		}
+		if(pyramidBuilders != null) {
+			PeakPyramid[] built = new PeakPyramid[numChannels];
+			for(int channel = 0; channel < numChannels; channel++) {
+				built[channel] = pyramidBuilders[channel].build();
+			}
+			pyramids = built;
+			try {
+				for(int channel = 0; channel < numChannels; channel++) {
+					built[channel].save(audioFile, channel, settings);
+				}
+			}
+			catch(IOException e) {
+				System.err.println("could not save peak pyramid, it will be rebuilt next time: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Streams the audio file through the filter once, feeding every block of every channel to the provided builders.
+	 *
+	 * @param pyramidBuilders Builders of the pyramids, one per channel, or <code>null</code> if they are not needed
+	 * @param statsBuilders Builders of the statistics, one per channel, or <code>null</code> if they are not needed
+	 * @return <code>false</code> if the thread was asked to finish first
+	 */
+	private boolean build(final PeakPyramid.Builder[] pyramidBuilders, final AmplitudeStats.Builder[] statsBuilders) {
+		final long numFrames = samples.numFrames();
+		final StreamingBandPassFilter[] filters;
+		if(settings.isFiltered()) {
+			filters = new StreamingBandPassFilter[numChannels];
+			for(int channel = 0; channel < numChannels; channel++) {
+				filters[channel] = new StreamingBandPassFilter(minBand, maxBand, samples.frameRate());
+			}
+		}
+		else {
+			filters = null;
+		}
+		final double[][] block = new double[numChannels][BLOCK_SIZE];
+		ChannelWorkers workers = new ChannelWorkers(numChannels, 1, "PeakPyramidBuilder");
+		try {
+			long nextFrame = 0;
+			while(nextFrame < numFrames) {
+				if(finish) {
+					return false;
+				}
+				final long blockStart = nextFrame;
+				final int numRead = samples.readChannels(blockStart, block, 0, (int)Math.min(BLOCK_SIZE, numFrames - nextFrame));
+				if(numRead <= 0) {
+					break;
+				}
+				workers.forEachChannel(new ChannelWorkers.Task() {
+					public void run(int channel) {
+						double[] frames = block[channel];
+						if(filters != null) {
+							filters[channel].filter(samples, channel, blockStart, frames, frames, numRead);
+						}
+						if(pyramidBuilders != null) {
+							pyramidBuilders[channel].add(frames, numRead);
+						}
+						if(statsBuilders != null) {
+							statsBuilders[channel].add(frames, numRead);
+						}
+					}
+				});
+				nextFrame += numRead;
+			}
+		}
+		finally {
+			workers.shutdown();
+		}
+		return true;
+	}
+
+	/**
+	 * @return The pyramids of every channel, or <code>null</code> if any of them has no valid sidecar
+	 */
+	private PeakPyramid[] loadPyramids() {
+		PeakPyramid[] loaded = new PeakPyramid[numChannels];
+		for(int channel = 0; channel < numChannels; channel++) {
+			loaded[channel] = PeakPyramid.load(audioFile, channel, settings);
+			if(loaded[channel] == null) {
+				return null;
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * @return The statistics of every channel, or <code>null</code> if any of them has no valid sidecar
+	 */
+	private AmplitudeStats[] loadStats() {
+		AmplitudeStats[] loaded = new AmplitudeStats[numChannels];
+		for(int channel = 0; channel < numChannels; channel++) {
+			loaded[channel] = AmplitudeStats.load(audioFile, channel, settings);
+			if(loaded[channel] == null) {
+				return null;
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * @return The number of channels summarized
+	 */
+	public int numChannels() {
+		return numChannels;
+	}
+
+	/**
+	 * Returns the pyramid of one channel of the audio file.
+	 *
+	 * @param channel The channel, counting from 0
+	 * @return The pyramid, or <code>null</code> if the pyramids are not available yet
+	 */
+	public PeakPyramid getPyramid(int channel) {
+		PeakPyramid[] tmpPyramids = pyramids;
+		return tmpPyramids == null ? null : tmpPyramids[channel];
+	}
+
+	/**
+	 * Returns the amplitude statistics of one channel of the audio file.
+	 *
+	 * @param channel The channel, counting from 0
+	 * @return The statistics, or <code>null</code> if the statistics are not available yet
+	 */
+	public AmplitudeStats getStats(int channel) {
+		AmplitudeStats[] tmpStats = stats;
+		return tmpStats == null ? null : tmpStats[channel];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void finish() {
+		finish = true;
+	}
+}
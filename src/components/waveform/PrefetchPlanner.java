@@ -0,0 +1,176 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ranks the chunks worth rendering before the display needs them, from how the user has been moving through the file.
+ *
+ * <p>The last few seeks show which way, and how far, the user tends to jump, and the chunks one and two jumps away in that direction are ranked.
+ * While playing, the chunks ahead of the playhead are ranked instead, as far as {@link #PLAY_AHEAD_SECONDS}.
+ * While the annotation table has focus, the chunks of the annotations the user may jump to come first.
+ * The chunk that returning to the last play position would show is always ranked last.
+ *
+ * <p>The current chunk and its neighbors are never ranked, the buffer keeps those anyway.
+ * Seeks and annotation targets are reported on the event dispatch thread, plans are made on the buffer thread.
+ */
+class PrefetchPlanner {
+
+	/**
+	 * How far ahead of the playhead chunks are rendered while playing.
+	 */
+	static final double PLAY_AHEAD_SECONDS = 20;
+
+	private static final int MAX_SEEKS = 8;
+	private static final int MAX_RANKED = 4;
+
+	private final double frameRate;
+
+	//the most recent seeks, in frames, oldest first once full
+	private final long[] seeks;
+	private int numSeeks;
+	private int nextSeek;
+
+	private long[] annotationFrames;
+
+	/**
+	 * @param frameRate Frames per second of the audio
+	 */
+	PrefetchPlanner(double frameRate) {
+		this.frameRate = frameRate;
+		seeks = new long[MAX_SEEKS];
+		numSeeks = 0;
+		nextSeek = 0;
+		annotationFrames = new long[0];
+	}
+
+	/**
+	 * Remembers a move made by the user, as opposed to playback.
+	 *
+	 * @param fromFrame The frame before the move
+	 * @param toFrame The frame after the move
+	 */
+	synchronized void seeked(long fromFrame, long toFrame) {
+		if(fromFrame == toFrame) {
+			return;
+		}
+		seeks[nextSeek] = toFrame - fromFrame;
+		nextSeek = (nextSeek + 1) % MAX_SEEKS;
+		numSeeks = Math.min(numSeeks + 1, MAX_SEEKS);
+	}
+
+	/**
+	 * Sets the frames the user is about to jump to from the annotation table.
+	 *
+	 * @param frames The frames of the annotations, empty once the table loses focus
+	 */
+	synchronized void setAnnotationTargets(long[] frames) {
+		annotationFrames = frames.clone();
+	}
+
+	/**
+	 * Ranks the chunks to render ahead of need, most likely first.
+	 *
+	 * @param zoom The zoom level of the chunks
+	 * @param curFrame The current frame
+	 * @param playing Whether the audio is playing
+	 * @param lastPlayFrame The frame returning to the last play position would go to, or -1 if there is none
+	 * @return Chunk numbers at <code>zoom</code>, none within one of the current chunk, at most a few
+	 */
+	synchronized List<Integer> plan(ZoomLevel zoom, long curFrame, boolean playing, long lastPlayFrame) {
+		final int curChunkNum = zoom.lookupChunkNum(curFrame);
+		Set<Integer> ranked = new LinkedHashSet<Integer>();
+
+		for(long frame: annotationFrames) {
+			ranked.add(zoom.lookupChunkNum(frame));
+		}
+
+		if(playing) {
+			int chunksAhead = (int)Math.ceil(PLAY_AHEAD_SECONDS * frameRate / zoom.framesPerChunk());
+			for(int i = 2; i <= chunksAhead + 1; i++) {
+				ranked.add(curChunkNum + i);
+			}
+		}
+		else if(numSeeks > 0) {
+			int direction = seekDirection();
+			int step = (int)Math.max(2, Math.round(typicalSeek(direction) / (double)zoom.framesPerChunk()));
+			ranked.add(curChunkNum + direction * step);
+			ranked.add(curChunkNum + direction * (step + 1));
+			if(step > 2) {
+				//one jump may land on the far side of a chunk boundary, or short of it
+				ranked.add(curChunkNum + direction * (step - 1));
+			}
+		}
+
+		if(lastPlayFrame >= 0) {
+			ranked.add(zoom.lookupChunkNum(lastPlayFrame));
+		}
+
+		List<Integer> plan = new ArrayList<Integer>();
+		for(int chunkNum: ranked) {
+			if(Math.abs(chunkNum - curChunkNum) <= 1 || chunkNum < 0 || chunkNum > zoom.lastChunkNum()) {
+				continue;
+			}
+			plan.add(chunkNum);
+			if(plan.size() == MAX_RANKED) {
+				break;
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Finds the direction of the recent seeks, later seeks counting more.
+	 *
+	 * @return 1 for forward, -1 for backward
+	 */
+	private int seekDirection() {
+		long weighted = 0;
+		for(int i = 0; i < numSeeks; i++) {
+			long seek = seeks[(nextSeek - numSeeks + i + MAX_SEEKS) % MAX_SEEKS];
+			weighted += (i + 1) * Long.signum(seek);
+		}
+		if(weighted == 0) {
+			weighted = seeks[(nextSeek - 1 + MAX_SEEKS) % MAX_SEEKS];
+		}
+		return weighted > 0 ? 1 : -1;
+	}
+
+	/**
+	 * Finds the median length of the recent seeks in a direction.
+	 *
+	 * @param direction 1 for forward, -1 for backward
+	 * @return The length in frames, or 0 if there were none
+	 */
+	private long typicalSeek(int direction) {
+		long[] lengths = new long[numSeeks];
+		int numLengths = 0;
+		for(int i = 0; i < numSeeks; i++) {
+			if(Long.signum(seeks[i]) == direction) {
+				lengths[numLengths++] = Math.abs(seeks[i]);
+			}
+		}
+		if(numLengths == 0) {
+			return 0;
+		}
+		Arrays.sort(lengths, 0, numLengths);
+		return lengths[numLengths / 2];
+	}
+}
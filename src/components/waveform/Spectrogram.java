@@ -0,0 +1,142 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import info.MyColors;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import audio.SampleSource;
+import audio.ShortTimeFFT;
+
+/**
+ * Draws wide-band spectrograms of speech, one image column per waveform pixel.
+ *
+ * Each column is the spectrum of a 5 ms window centered on the column, short enough to show formants as bands and onsets sharply.
+ * Frequencies from 0 Hz at the bottom to 8 kHz (or the Nyquist frequency if lower) at the top are shown.
+ * Power is shaded from the waveform background color, at 70 dB below the top of the scale, to the waveform color at the top of the scale.
+ *
+ * The spectra are computed and drawn in separate steps, so a chunk can be redrawn at another height without analyzing the audio again.
+ */
+class Spectrogram {
+
+	private static final double WINDOW_SECONDS = 0.005;
+	private static final double MAX_HZ = 8000;
+	private static final double DYNAMIC_RANGE_DB = 70;
+	//the lowest top of the scale, so a silent lane, whose scale is -Infinity dB, is drawn quiet rather than loud
+	private static final double MIN_TOP_DB = -55;
+
+	private static final int[] palette = makePalette(MyColors.waveformBackground, MyColors.firstChannelWaveformColor, 256);
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private Spectrogram() {
+	}
+
+	/**
+	 * Computes the spectra of a range of frames, one per image column, which do not depend on the height they are drawn at.
+	 *
+	 * @param source The samples
+	 * @param channel The channel to analyze
+	 * @param firstFrame The frame at the left edge of the image
+	 * @param framesPerPixel The number of frames each column covers
+	 * @param width The number of columns
+	 * @return The power of each column's frequency bins up to the top of the scale, in dB relative to full scale, <code>null</code> for columns past the end of the source
+	 */
+	static float[][] analyze(SampleSource source, int channel, long firstFrame, double framesPerPixel, int width) {
+		final double frameRate = source.frameRate();
+		ShortTimeFFT stft = new ShortTimeFFT(Math.max(2, (int)Math.round(WINDOW_SECONDS * frameRate)));
+		final double maxHz = Math.min(MAX_HZ, frameRate / 2);
+		final int numBins = Math.min(stft.numBins(), (int)Math.ceil(maxHz / stft.binHz(frameRate)));
+
+		float[][] columns = new float[width][];
+		double[] spectrum = new double[stft.numBins()];
+		for(int x = 0; x < width; x++) {
+			long centerFrame = firstFrame + (long)((x + 0.5) * framesPerPixel);
+			if(centerFrame >= source.numFrames()) {
+				break;
+			}
+			stft.powerDb(source, channel, centerFrame, spectrum);
+			columns[x] = new float[numBins];
+			for(int bin = 0; bin < numBins; bin++) {
+				columns[x][bin] = (float)spectrum[bin];
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Draws spectra from {@link #analyze(SampleSource, int, long, double, int)} over a band of rows of the image, stretching the frequencies to the band's height.
+	 *
+	 * @param image The image, one column per spectrum
+	 * @param top The top row of the band, e.g. of a channel's lane
+	 * @param height The number of rows in the band
+	 * @param columns The spectra
+	 * @param topDb The power drawn in the darkest shade, in dB relative to full scale, raised to -55 dB if it is lower or not a number
+	 */
+	static void draw(BufferedImage image, int top, int height, float[][] columns, double topDb) {
+		final int width = Math.min(image.getWidth(), columns.length);
+		if(height <= 0 || width <= 0 || columns[0] == null) {
+			return;
+		}
+		final int numBins = columns[0].length;
+
+		//the range of bins each row covers, the lowest frequency row is at the bottom
+		final double binsPerRow = numBins / (double)height;
+		int[] rowFirstBin = new int[height];
+		int[] rowLastBin = new int[height];
+		for(int y = 0; y < height; y++) {
+			int row = height - 1 - y;
+			rowFirstBin[y] = Math.min(numBins - 1, (int)(row * binsPerRow));
+			rowLastBin[y] = Math.min(numBins - 1, Math.max(rowFirstBin[y], (int)((row + 1) * binsPerRow) - 1));
+		}
+
+		if(topDb < MIN_TOP_DB || Double.isNaN(topDb)) {
+			topDb = MIN_TOP_DB;
+		}
+		final double bottomDb = topDb - DYNAMIC_RANGE_DB;
+		final double shadesPerDb = (palette.length - 1) / DYNAMIC_RANGE_DB;
+		int[] column = new int[height];
+		for(int x = 0; x < width; x++) {
+			float[] spectrum = columns[x];
+			if(spectrum == null) {
+				break;
+			}
+			for(int y = 0; y < height; y++) {
+				double db = spectrum[rowFirstBin[y]];
+				for(int bin = rowFirstBin[y] + 1; bin <= rowLastBin[y]; bin++) {
+					db = Math.max(db, spectrum[bin]);
+				}
+				int shade = (int)((db - bottomDb) * shadesPerDb);
+				column[y] = palette[Math.max(0, Math.min(palette.length - 1, shade))];
+			}
+			WaveformRenderer.setColumn(image, x, top, column);
+		}
+	}
+
+	private static int[] makePalette(Color quiet, Color loud, int numShades) {
+		int[] shades = new int[numShades];
+		for(int i = 0; i < numShades; i++) {
+			double t = i / (double)(numShades - 1);
+			int r = (int)Math.round(quiet.getRed() + t * (loud.getRed() - quiet.getRed()));
+			int g = (int)Math.round(quiet.getGreen() + t * (loud.getGreen() - quiet.getGreen()));
+			int b = (int)Math.round(quiet.getBlue() + t * (loud.getBlue() - quiet.getBlue()));
+			shades[i] = (r << 16) | (g << 8) | b;
+		}
+		return shades;
+	}
+}
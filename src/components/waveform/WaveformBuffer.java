@@ -14,78 +14,183 @@
 
 package components.waveform;
 
-import info.GUIConstants;
 import info.MyColors;
 import info.MyShapes;
 import info.SysInfo;
 import info.UserPrefs;
 
-import java.awt.AlphaComposite;
-import java.awt.Composite;
+import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.UnsupportedAudioFileException;
-
+import audio.MappedSampleSource;
+import audio.PeakEnvelope;
+import audio.SampleSource;
+import audio.StreamingBandPassFilter;
 import control.CurAudio;
-import de.dfki.lt.signalproc.filter.BandPassFilter;
-import de.dfki.lt.signalproc.util.AudioDoubleDataSource;
+import control.Start;
+import edu.upenn.psych.memory.precisionplayer.PrecisionPlayer;
 
 /**
  * Handler for buffered portions of the waveform image.
  * 
- * Represents the waveform image as an array of <code>WaveformChunks</code> each containing a portion of the waveform image.
+ * Represents the waveform image as a table of <code>WaveformChunks</code> each containing a portion of the waveform image.
  * The chunk size is stored in {@link info.Constants#chunkSizeInSec}, and the current chunk is reported by {@link control.CurAudio}.
  * 
- * This class aims to keep the current chunk as well as the next/previous chunks (when available) stored in the array.
- * All other members of the array will be null, to save memory.
+ * This class aims to keep the current chunk as well as the next/previous chunks (when available) stored in the table.
+ * All other members of the table will be null, to save memory.
+ * 
+ * Chunks are rendered concurrently on a small pool of worker threads, the current chunk always being scheduled first.
+ * Every slot of the table is stamped with the generation its chunk was requested in, and the generation changes whenever the file or the image height does.
+ * A render that finishes after its generation has passed is not displayed, so no locking is needed between the workers and the display.
+ * 
+ * The buffer thread sleeps until it is told of an {@link Update}, so it costs nothing while nothing changes.
+ * Progress updates are only posted when the audio progress enters a different chunk, whether by playback or by a seek.
+ * 
+ * Every rendered chunk is also kept in a <code>ChunkCache</code>, bounded by {@link info.SysInfo#waveformCacheMegabytes}, until its file is closed.
+ * Returning to a chunk that is still cached, e.g. when going back and forth between two places, takes it from the cache instead of rendering it again.
+ * The pixel values (and spectra) the images are drawn from are cached separately, since they do not depend on the image height, so a resize only redraws the images.
+ * 
+ * All chunks are drawn at one scale, taken from the file's {@link AmplitudeStats} when they are available, so the scale does not depend on where the file is first viewed.
+ * 
+ * Every channel of the audio is drawn in its own lane, the lanes stacked from the first channel at the top, each lane at its own channel's scale.
+ * The frames of a chunk are de-interleaved once into one buffer per channel, then the channels are filtered and reduced to pixels in parallel by {@link ChannelWorkers},
+ * so a stereo file renders in about the time a mono file does on a multi-core machine.
+ * 
+ * Chunks are rendered at the {@link ZoomLevel} in <code>CurAudio</code>, from the <code>PeakPyramid</code> level that fits it, or from the samples once zoomed in further than the pyramid's finest level.
+ * After a zoom, the chunk at the next level in the same direction is rendered into the cache when a worker is free, so zooming again is immediate.
+ * Chunks further away that the user is likely to want next, as ranked by a {@link PrefetchPlanner}, are rendered into the cache the same way.
  * 
  * @author Yuvi Masory
  */
 public class WaveformBuffer extends Buffer {
 
-	private final AlphaComposite antiAliasingComposite = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, /* larger is darker */ 0.5F);
+	private static final int MAX_IDLE_FILTERS = 4;
+
+	//the narrowest gap between seconds lines
+	private static final int MIN_TICK_PIXELS = 150;
 
-	private final double preDataSeconds = 0.25;
+	//frames read from the audio file at a time when zoomed in past the pyramid
+	private static final int AUDIO_BLOCK_FRAMES = 1 << 16;
 
-	private final int numChunks;
 	private final int chunkWidthInPixels;
 
 	private final double minBand;
 	private final double maxBand;
 
-	private final DecimalFormat secFormat = new DecimalFormat("0.00s");
+	private final int numChannels;
+	private final SampleSource sampleSource;
+	private final PeakPyramidBuilder pyramidBuilder;
+
+	private static final AtomicInteger generation = new AtomicInteger();
+
+	private static volatile AtomicReferenceArray<Slot> chunkSlots;
+
+	private static final ChunkCache<ChunkKey, WaveformChunk> chunkCache = new ChunkCache<ChunkKey, WaveformChunk>(SysInfo.sys.waveformCacheMegabytes);
+	private static final ChunkCache<ChunkKey, ChunkData> dataCache = new ChunkCache<ChunkKey, ChunkData>(SysInfo.sys.waveformDataCacheMegabytes);
+
+	private final String audioFilePath;
+	private final PeakPyramid.FilterSettings filterSettings;
 
-	private static volatile WaveformChunk[] chunkArray;
+	private final ThreadPoolExecutor renderPool;
+	private final ChannelWorkers channelWorkers;
+
+	//each entry holds one filter per channel, all at the same frame
+	private final List<StreamingBandPassFilter[]> idleFilters;
+
+	private final PrefetchPlanner planner;
+	private final AtomicInteger planNum;
 
 	private volatile boolean finish;
 
+	private final BlockingQueue<Update> updates;
+	private volatile int postedChunkNum;
+
+	private volatile int wantedChunkNum;
+
 	private int bufferedChunkNum;
 	private int bufferedHeight;
+	private View bufferedView;
+	private ZoomLevel bufferedZoom;
 
-	private double biggestConsecutivePixelVals;
+	//one per channel
+	private final double[] biggestConsecutivePixelVals;
 
 	/**
 	 * Creates a buffer thread using the audio information that <code>CurAudio</code> provides at the time the constructor runs.
 	 */
 	public WaveformBuffer() {
 		finish = false;
-		numChunks = CurAudio.lastChunkNum() + 1;
-		chunkWidthInPixels = GUIConstants.zoomlessPixelsPerSecond * SysInfo.sys.chunkSizeInSeconds;
-		chunkArray = new WaveformChunk[numChunks];
+		bufferedZoom = CurAudio.getZoom();
+		chunkWidthInPixels = bufferedZoom.pixelsPerChunk();
+		generation.incrementAndGet();
+		idleFilters = new ArrayList<StreamingBandPassFilter[]>();
+		updates = new LinkedBlockingQueue<Update>();
+		planner = new PrefetchPlanner(CurAudio.getMaster().frameRate());
+		planNum = new AtomicInteger();
+		postedChunkNum = -1;
+		chunkSlots = new AtomicReferenceArray<Slot>(bufferedZoom.lastChunkNum() + 1);
 		bufferedChunkNum = -1;
 		bufferedHeight = -1;
+		bufferedView = View.current();
 
 		//bandpass filter ranges
 		double minPref = UserPrefs.prefs.getInt(UserPrefs.minBandPass,UserPrefs.defaultMinBandPass);
 		double maxPref = UserPrefs.prefs.getInt(UserPrefs.maxBandPass,UserPrefs.defaultMaxBandPass);
-		double sampleRate = CurAudio.getMaster().frameRate();
+		double[] bands = bandsFor(minPref, maxPref, CurAudio.getMaster().frameRate());
+		minBand = bands[0];
+		maxBand = bands[1];
 
+		numChannels = CurAudio.getMaster().numChannels();
+		biggestConsecutivePixelVals = new double[numChannels];
+		audioFilePath = CurAudio.getCurrentAudioFileAbsolutePath();
+		File audioFile = CurAudio.getMaster().getSampleFile();
+		SampleSource tmpSamples = null;
+		try {
+			tmpSamples = new MappedSampleSource(audioFile);
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+		sampleSource = tmpSamples;
+
+		filterSettings = new PeakPyramid.FilterSettings(SysInfo.sys.bandpassFilter, (int)minPref, (int)maxPref);
+		pyramidBuilder = new PeakPyramidBuilder(audioFile, numChannels, sampleSource, minBand, maxBand, filterSettings);
+
+		//three workers cover the current chunk and both of its neighbors, more would only compete for the same cores
+		int numWorkers = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors()));
+		renderPool = new ThreadPoolExecutor(numWorkers, numWorkers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(2 * numWorkers), new RenderThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+		//the buffer thread itself renders when the pool is full
+		channelWorkers = new ChannelWorkers(numChannels, numWorkers + 1, "WaveformChannel");
+	}
+
+	/**
+	 * Converts the bandpass filter preferences to the fractions of the sample rate the filter takes, keeping them below the Nyquist frequency.
+	 * 
+	 * @param minPref Lower band in Hz
+	 * @param maxPref Upper band in Hz
+	 * @param sampleRate Frames per second of the audio
+	 * @return The lower and upper bands
+	 */
+	static double[] bandsFor(double minPref, double maxPref, double sampleRate) {
 		double tmpMinBand = minPref / sampleRate;
 		double tmpMaxBand = maxPref / sampleRate;
 
@@ -109,24 +214,58 @@ public class WaveformBuffer extends Buffer {
 				+ format.format(tmpMaxBand * sampleRate) + " Hz instead.";
 			System.err.println(message);
 		}
-		minBand = tmpMinBand;
-		maxBand = tmpMaxBand;	
+		return new double[] {tmpMinBand, tmpMaxBand};
 	}
 
 	/**
-	 * Monitors audio position and makes sure buffers are maintained for the current audio chunk along with the previous and next (if available).
+	 * Waits for updates and makes sure buffers are maintained for the current audio chunk along with the previous and next (if available).
 	 */
 	@Override
 	public void run() {
+		pyramidBuilder.start();
+		updates.offer(Update.PROGRESS);
 		while(finish == false) {
-			final int curChunkNum = CurAudio.lookupChunkNum((int) CurAudio.getAudioProgress());
+			boolean repopulate = false;
+			try {
+				//take the first update and everything that piled up behind it, they are all handled at once
+				updates.take();
+				updates.clear();
+			}
+			catch(InterruptedException e) {
+				break;
+			}
+
+			final ZoomLevel curZoom = CurAudio.getZoom();
+			if(curZoom == null) {
+				//the file is being closed
+				continue;
+			}
+			final long curFrame = CurAudio.getAudioProgress();
+			final int curChunkNum = curZoom.lookupChunkNum(curFrame);
 			final int curHeight = WaveformDisplay.height();
+			if(curHeight <= 0) {
+				//not laid out yet, a resize update will follow
+				continue;
+			}
+			final View curView = View.current();
+			if(curView != bufferedView) {
+				bufferedView = curView;
+				repopulate = true;
+			}
+			int zoomDirection = 0;
+			if(curZoom.equals(bufferedZoom) == false) {
+				zoomDirection = curZoom.level() - bufferedZoom.level();
+				bufferedZoom = curZoom;
+				//the chunk numbers are different at every level
+				chunkSlots = new AtomicReferenceArray<Slot>(curZoom.lastChunkNum() + 1);
+				repopulate = true;
+			}
 
 			if(bufferedChunkNum < 0 || bufferedHeight <= 0) {
 				//first run
 				populateChunks(curChunkNum, curHeight);
 			}
-			else if(curHeight != bufferedHeight) {
+			else if(curHeight != bufferedHeight || repopulate) {
 				populateChunks(curChunkNum, curHeight);
 			}
 			else if(curChunkNum != bufferedChunkNum) {
@@ -141,31 +280,134 @@ public class WaveformBuffer extends Buffer {
 				//nothing has changed, nothing to do
 			}
 
+			//render ahead of need, the most likely chunks first, replacing the previous plan
+			final int myPlan = planNum.incrementAndGet();
+			if(zoomDirection != 0) {
+				//the user is likely to keep zooming the same way
+				ZoomLevel nextZoom = zoomDirection > 0 ? curZoom.in() : curZoom.out();
+				if(nextZoom.equals(curZoom) == false) {
+					prefetchChunk(nextZoom, nextZoom.lookupChunkNum(curFrame), curHeight, myPlan);
+				}
+			}
+			for(int chunkNum: planner.plan(curZoom, curFrame, isPlaying(), CurAudio.peekLastPlayPos())) {
+				prefetchChunk(curZoom, chunkNum, curHeight, myPlan);
+			}
+
 			bufferedChunkNum = curChunkNum;
 			bufferedHeight = curHeight;
+		}
+		//clear the interrupt from terminateThread(), since the clean up below waits for other threads
+		Thread.interrupted();
 
-			try {
-				Thread.sleep(25); 
+		renderPool.shutdownNow();
+		try {
+			if(renderPool.awaitTermination(250, TimeUnit.MILLISECONDS) == false) {
+				System.err.println("could not stop waveform render workers");
 			}
-			catch(InterruptedException e) {
-				e.printStackTrace();
+		}
+		catch(InterruptedException e) {
+			e.printStackTrace();
+		}
+		channelWorkers.shutdown();
+		clearSlots();
+		if(Start.developerMode()) {
+			System.out.println(chunkCache);
+			System.out.println(dataCache);
+		}
+		//the closed file's chunks would only crowd the next file's out of the budget
+		ChunkCache.KeyMatcher<ChunkKey> ofThisFile = new ChunkCache.KeyMatcher<ChunkKey>() {
+			public boolean matches(ChunkKey key) {
+				return key.getAudioFilePath().equals(audioFilePath);
 			}
+		};
+		chunkCache.removeMatching(ofThisFile);
+		dataCache.removeMatching(ofThisFile);
+
+		boolean builderStopped = false;
+		try {
+			builderStopped = pyramidBuilder.terminateThread(250);
+			if(builderStopped == false) {
+				System.err.println("could not stop peak pyramid builder: " + pyramidBuilder);
+			}
+		}
+		catch(InterruptedException e) {
+			e.printStackTrace();
+		}
+		//a builder that is still running keeps the samples, which are then released by the garbage collector
+		if(builderStopped && sampleSource != null) {
+			sampleSource.close();
+		}
+	}
+
+	/**
+	 * Returns the finished chunk with the provided number, if it belongs to the current generation and was rendered at the provided zoom level.
+	 * 
+	 * All but two or three of the chunks will be <code>null</code> at any given time.
+	 * 
+	 * @param chunkNum The chunk number
+	 * @param zoom The zoom level the chunk number refers to
+	 * @return The <code>WaveformChunk</code>, or <code>null</code> if it is not buffered or not rendered yet
+	 */
+	public static WaveformChunk getChunk(int chunkNum, ZoomLevel zoom) {
+		AtomicReferenceArray<Slot> slots = chunkSlots;
+		if(slots == null || chunkNum < 0 || chunkNum >= slots.length()) {
+			return null;
+		}
+		Slot slot = slots.get(chunkNum);
+		if(slot == null || slot.generation != generation.get() || slot.chunk.zoom.level() != zoom.level()) {
+			return null;
 		}
+		return slot.chunk;
+	}
 
-		for (int i = 0; i < chunkArray.length; i++) {
-			chunkArray[i] = null;
+	/**
+	 * Tells the buffer the audio progress has changed, waking it if the progress is now in a different chunk.
+	 * 
+	 * Cheap enough to be called on every progress update during playback.
+	 * 
+	 * @param frame The new "hearing frame"
+	 */
+	public void audioProgressChanged(long frame) {
+		ZoomLevel zoom = CurAudio.getZoom();
+		if(zoom == null) {
+			return;
+		}
+		int chunkNum = zoom.lookupChunkNum(frame);
+		if(chunkNum != postedChunkNum) {
+			postedChunkNum = chunkNum;
+			updates.offer(Update.PROGRESS);
 		}
 	}
 
 	/**
-	 * Returns the array containing the <code>WaveformChunks</code>.
+	 * Tells the buffer the user moved the audio progress, e.g. by seeking or jumping to an annotation, as opposed to playback moving it.
+	 * 
+	 * Must be called before the corresponding <code>audioProgressChanged(long)</code>, so the move is known when the buffer plans its prefetches.
+	 * 
+	 * @param fromFrame The "hearing frame" before the move
+	 * @param toFrame The "hearing frame" after the move
+	 */
+	public void audioSeeked(long fromFrame, long toFrame) {
+		planner.seeked(fromFrame, toFrame);
+	}
+
+	/**
+	 * Tells the buffer which annotations the user may jump to from the annotation table.
 	 * 
-	 * All but two or three of the chunks will be <code>null</code>.
+	 * @param frames The frames of the annotations, empty if the table does not have focus
+	 */
+	public void annotationTargetsChanged(long[] frames) {
+		planner.setAnnotationTargets(frames);
+		updates.offer(Update.TARGETS);
+	}
+
+	/**
+	 * Tells the buffer the waveform display has changed in a way that may invalidate the buffered chunks.
 	 * 
-	 * @return The array of <code>WaveformChunks</code>
+	 * @param update The kind of change
 	 */
-	public static WaveformChunk[] getWaveformChunks() {
-		return chunkArray;
+	public void displayChanged(Update update) {
+		updates.offer(update);
 	}
 
 	/**
@@ -181,49 +423,54 @@ public class WaveformBuffer extends Buffer {
 	 * 
 	 * |lastChunkNum - curChunkNum| = 1
 	 * 
-	 * @param lastChunkNum The chunk number for which the chunk array is already valid
-	 * @param curChunkNum The new chunk number that the chunk array needs to be updated for
+	 * @param lastChunkNum The chunk number for which the chunk table is already valid
+	 * @param curChunkNum The new chunk number that the chunk table needs to be updated for
 	 * @param curHeight The height of the image to be made
 	 */
 	private void intelligentlyPopulateChunks(int lastChunkNum, int curChunkNum, int curHeight) {
+		wantedChunkNum = curChunkNum;
+		final int myGeneration = generation.get();
 		if(lastChunkNum < curChunkNum) {
 			if(curChunkNum - 2 >= 0) {
-				chunkArray[curChunkNum - 2] = null;
+				chunkSlots.set(curChunkNum - 2, null);
 			}
-			if(curChunkNum + 1 <= chunkArray.length - 1) {
-				chunkArray[curChunkNum + 1] = new WaveformChunk(curChunkNum + 1, curHeight);
+			if(curChunkNum + 1 <= bufferedZoom.lastChunkNum()) {
+				scheduleChunk(curChunkNum + 1, curHeight, myGeneration);
 			}
 		}
 		else {
-			if(curChunkNum + 2 <= chunkArray.length - 1) {
-				chunkArray[curChunkNum + 2] = null;
+			if(curChunkNum + 2 <= bufferedZoom.lastChunkNum()) {
+				chunkSlots.set(curChunkNum + 2, null);
 			}
 			if(curChunkNum - 1 >= 0) {
-				chunkArray[curChunkNum - 1] = new WaveformChunk(curChunkNum - 1, curHeight);
+				scheduleChunk(curChunkNum - 1, curHeight, myGeneration);
 			}
 		}
 	}
 
 	/**
-	 * Called when the waveform chunk array will need to be revalidated from scratch.
+	 * Called when the waveform chunk table will need to be revalidated from scratch.
 	 * 
-	 * Disposes of any data currently in the chunk array.
+	 * Starts a new generation, so renders still in progress are discarded, and disposes of any data currently in the chunk table.
 	 * 
-	 * @param curChunkNum The chunk number that the chunk array needs to be updated for
+	 * @param curChunkNum The chunk number that the chunk table needs to be updated for
 	 * @param curHeight The height of the image to be made
 	 */
 	private void populateChunks(int curChunkNum, int curHeight) {
+		wantedChunkNum = curChunkNum;
+		final int myGeneration = generation.incrementAndGet();
+		//renders that have not started yet are already stale
+		renderPool.getQueue().clear();
 		//free resources
-		for(int i = 0; i < chunkArray.length; i++) {
-			chunkArray[i] = null;
-		}
+		clearSlots();
+
 		//fill current chunk
-		chunkArray[curChunkNum] = new WaveformChunk(curChunkNum, curHeight);
+		scheduleChunk(curChunkNum, curHeight, myGeneration);
 
 		int firstPriority;
 		int secondPriority;
 
-		long lastFrame = CurAudio.lastFrameOfChunk(curChunkNum - 1);
+		long lastFrame = bufferedZoom.lastFrameOfChunk(curChunkNum - 1);
 		if(lastFrame >= 0 && WaveformDisplay.frameToDisplayXPixel(lastFrame) >= 0) {
 			firstPriority = curChunkNum - 1;
 			secondPriority = curChunkNum + 1;
@@ -234,208 +481,657 @@ public class WaveformBuffer extends Buffer {
 		}
 
 		//fill first priority chunk, if it exists
-		if(firstPriority >= 0 && firstPriority <= chunkArray.length - 1) {
-			chunkArray[firstPriority] = new WaveformChunk(firstPriority, curHeight);
+		if(firstPriority >= 0 && firstPriority <= bufferedZoom.lastChunkNum()) {
+			scheduleChunk(firstPriority, curHeight, myGeneration);
 		}
 
 		//fill second priority chunk, if it exists
-		if(secondPriority >= 0 && secondPriority <= chunkArray.length - 1) {
-			chunkArray[secondPriority] = new WaveformChunk(secondPriority, curHeight);
+		if(secondPriority >= 0 && secondPriority <= bufferedZoom.lastChunkNum()) {
+			scheduleChunk(secondPriority, curHeight, myGeneration);
+		}
+	}
+
+	private void clearSlots() {
+		for(int i = 0; i < chunkSlots.length(); i++) {
+			chunkSlots.set(i, null);
 		}
 	}
 
 	/**
-	 * Wrapper class for a chunk of waveform image.
+	 * Fills a slot from the cache if possible, otherwise queues the rendering of the chunk on the worker pool.
+	 * 
+	 * If the queue is full the calling thread renders the chunk itself, which slows down the buffer thread rather than losing the chunk.
+	 * 
+	 * @param chunkNum The chunk number whose image will be created
+	 * @param height The height of the image
+	 * @param myGeneration The generation the chunk is requested for
 	 */
-	public class WaveformChunk {
+	private void scheduleChunk(final int chunkNum, final int height, final int myGeneration) {
+		final View view = bufferedView;
+		final ZoomLevel zoom = bufferedZoom;
+		//a zoom replaces the table, a late render must not land in the new one
+		final AtomicReferenceArray<Slot> slots = chunkSlots;
+		final ChunkKey key = new ChunkKey(audioFilePath, chunkNum, height, zoom.level(), filterSettings, view);
+		WaveformChunk cached = chunkCache.get(key);
+		if(cached != null && adoptScale(cached.scaleBasis)) {
+			slots.set(chunkNum, new Slot(myGeneration, cached));
+			WaveformDisplay.requestFrame();
+			return;
+		}
+		renderPool.execute(new Runnable() {
+			public void run() {
+				if(isWanted(chunkNum, myGeneration) == false) {
+					return;
+				}
+				WaveformChunk chunk = renderChunk(key, chunkNum, height, view, zoom);
+				if(finish) {
+					return;
+				}
+				//worth keeping even if the playhead has moved on, it may come back
+				chunkCache.put(key, chunk, chunk.sizeInBytes());
+				if(isWanted(chunkNum, myGeneration)) {
+					slots.set(chunkNum, new Slot(myGeneration, chunk));
+					WaveformDisplay.requestFrame();
+				}
+			}
+		});
+	}
 
-		private final int myNum;
-		private final Image image;
+	/**
+	 * Renders a chunk the display does not need yet into the cache only, if it is not there yet.
+	 * 
+	 * Never delays the displayed chunks: the prefetch is queued behind them, skipped if the queue has no room to spare,
+	 * and abandoned if the generation or the plan changes before it starts, so a stale prefetch costs nothing.
+	 * 
+	 * @param zoom The zoom level of the chunk
+	 * @param chunkNum The chunk number at that zoom level
+	 * @param height The height of the image
+	 * @param myPlan The plan the prefetch belongs to
+	 */
+	private void prefetchChunk(final ZoomLevel zoom, final int chunkNum, final int height, final int myPlan) {
+		final View view = bufferedView;
+		final ChunkKey key = new ChunkKey(audioFilePath, chunkNum, height, zoom.level(), filterSettings, view);
+		//keep a place in the queue for the next displayed chunk, which would otherwise be rendered on the buffer thread
+		if(renderPool.getQueue().remainingCapacity() <= 1 || chunkCache.get(key) != null) {
+			return;
+		}
+		final int myGeneration = generation.get();
+		renderPool.execute(new Runnable() {
+			public void run() {
+				if(finish || myGeneration != generation.get() || myPlan != planNum.get()) {
+					return;
+				}
+				WaveformChunk chunk = renderChunk(key, chunkNum, height, view, zoom);
+				if(finish == false) {
+					chunkCache.put(key, chunk, chunk.sizeInBytes());
+				}
+			}
+		});
+	}
 
-		/**
-		 * Creates the <code>Image</code> of a chunk of waveform.
-		 * 
-		 * @param chunkNum The chunk number whose image will be created
-		 * @param height The height of the image
-		 */
-		private WaveformChunk(int chunkNum, int height) {
-			myNum = chunkNum;			
+	/**
+	 * Draws a chunk at this buffer's scale.
+	 * 
+	 * @param key The chunk's cache key
+	 * @param chunkNum The chunk number
+	 * @param height The height of the image
+	 * @param view Whether to draw the waveform or the spectrogram
+	 * @param zoom The zoom level to draw at
+	 * @return The chunk
+	 */
+	private WaveformChunk renderChunk(ChunkKey key, int chunkNum, int height, View view, ZoomLevel zoom) {
+		ChunkData data = chunkData(key, chunkNum, view, zoom);
+		double[] scaleBasis = biggestConsecutivePixelVals(data.valsToDraw, zoom.pixelsPerSecond());
+		return new WaveformChunk(chunkNum, height, view, zoom, data, scaleBasis, chunkWidthInPixels);
+	}
 
-			double[] valsToDraw = getValsToDraw(chunkNum);
-			if(biggestConsecutivePixelVals <= 0) {
+	private static boolean isPlaying() {
+		try {
+			return CurAudio.getPlayer().getStatus() == PrecisionPlayer.Status.PLAYING;
+		}
+		catch(IllegalStateException e) {
+			//the file was closed while the buffer was working
+			return false;
+		}
+	}
+
+	/**
+	 * Determines whether a chunk of the provided generation may still be displayed.
+	 * 
+	 * This is only an optimization, <code>getChunk(int)</code> makes the final check, so that a chunk stored just as the generation changes is never shown.
+	 */
+	private boolean isWanted(int chunkNum, int myGeneration) {
+		return finish == false && myGeneration == generation.get() && Math.abs(chunkNum - wantedChunkNum) <= 1;
+	}
+
+	/**
+	 * Finds filters for rendering a chunk, one per channel.
+	 * 
+	 * Prefers the filters that last rendered the chunk before <code>firstFrame</code>, so sequential chunks are filtered as one stream.
+	 * Otherwise idle filters are reused, or new ones created, and they warm up on the frames just before <code>firstFrame</code>.
+	 * 
+	 * @param firstFrame The first frame that will be filtered
+	 * @return Filters no other thread is using
+	 */
+	private StreamingBandPassFilter[] takeFilters(long firstFrame) {
+		synchronized(idleFilters) {
+			for(int i = 0; i < idleFilters.size(); i++) {
+				if(idleFilters.get(i)[0].nextFrame() == firstFrame) {
+					return idleFilters.remove(i);
+				}
+			}
+			if(idleFilters.isEmpty() == false) {
+				return idleFilters.remove(0);
+			}
+		}
+		StreamingBandPassFilter[] filters = new StreamingBandPassFilter[numChannels];
+		for(int channel = 0; channel < numChannels; channel++) {
+			filters[channel] = new StreamingBandPassFilter(minBand, maxBand, sampleSource.frameRate());
+		}
+		return filters;
+	}
+
+	private void releaseFilters(StreamingBandPassFilter[] filters) {
+		synchronized(idleFilters) {
+			if(idleFilters.size() < MAX_IDLE_FILTERS) {
+				idleFilters.add(filters);
+			}
+		}
+	}
+
+	/**
+	 * Returns the part of a chunk that does not depend on the image height, from the cache if possible.
+	 * 
+	 * Resizing the display therefore only redraws the chunks, without reading or filtering the audio again.
+	 * 
+	 * @param key The key of the chunk's image
+	 * @param chunkNum The chunk number
+	 * @param view Whether the waveform or the spectrogram will be drawn
+	 * @param zoom The zoom level of the chunk
+	 * @return The data
+	 */
+	private ChunkData chunkData(ChunkKey key, int chunkNum, View view, ZoomLevel zoom) {
+		ChunkKey dataKey = key.forAnyHeight();
+		ChunkData data = dataCache.get(dataKey);
+		if(data == null) {
+			final long firstFrame = zoom.firstFrameOfChunk(chunkNum);
+			final double framesPerPixel = zoom.framesPerPixel();
+			float[][][] spectra = null;
+			if(view == View.SPECTROGRAM && sampleSource != null) {
+				final float[][][] channelSpectra = new float[numChannels][][];
+				channelWorkers.forEachChannel(new ChannelWorkers.Task() {
+					public void run(int channel) {
+						channelSpectra[channel] = Spectrogram.analyze(sampleSource, channel, firstFrame, framesPerPixel, chunkWidthInPixels);
+					}
+				});
+				spectra = channelSpectra;
+			}
+			data = new ChunkData(getValsToDraw(firstFrame, framesPerPixel), spectra);
+			dataCache.put(dataKey, data, data.sizeInBytes());
+		}
+		return data;
+	}
+
+	/**
+	 * @return The pixel values of every channel, one array per channel
+	 */
+	private double[][] getValsToDraw(final long firstFrame, final double framesPerPixel) {
+		final double[][] valsToDraw;
+		final PeakPyramid firstPyramid = pyramidBuilder.getPyramid(0);
+		if(firstPyramid != null && framesPerPixel >= firstPyramid.baseBucketFrames()) {
+			valsToDraw = new double[numChannels][];
+			channelWorkers.forEachChannel(new ChannelWorkers.Task() {
+				public void run(int channel) {
+					valsToDraw[channel] = getValsFromPyramid(pyramidBuilder.getPyramid(channel), firstFrame, framesPerPixel);
+				}
+			});
+		}
+		else {
+			//zoomed in past the pyramid's finest level, or the pyramid is not built yet
+			valsToDraw = getValsFromAudio(firstFrame, framesPerPixel);
+		}
+
+		if(SysInfo.sys.useWaveformImageDataSmoothing) {
+			for(double[] channelVals: valsToDraw) {
+				smoothPixels(channelVals);
+			}
+		}
+
+		return valsToDraw;
+	}
+
+	/**
+	 * Reads the peak of each pixel's frames from the pyramid, without touching the audio file.
+	 */
+	private double[] getValsFromPyramid(PeakPyramid pyramid, long firstFrame, double framesPerPixel) {
+		double[] valsToDraw = new double[chunkWidthInPixels];
+		for(int i = 0; i < valsToDraw.length; i++) {
+			long start = firstFrame + (long)(i * framesPerPixel);
+			long end = firstFrame + (long)((i + 1) * framesPerPixel);
+			if(start >= pyramid.numFrames()) {
+				break;
+			}
+			valsToDraw[i] = pyramid.peak(start, end);
+		}
+		return valsToDraw;
+	}
+
+	/**
+	 * Reads the peak of each pixel's frames from the audio file, a block at a time.
+	 * 
+	 * Each block is de-interleaved in one pass, then its channels are filtered and reduced to pixels in parallel.
+	 * Zoomed in to less than a frame per pixel, each pixel shows the frame under it.
+	 */
+	private double[][] getValsFromAudio(final long firstFrame, final double framesPerPixel) {
+		final double[][] valsToDraw = new double[numChannels][chunkWidthInPixels];
+		if(sampleSource == null) {
+			return valsToDraw;
+		}
+
+		final long numFrames = Math.min(sampleSource.numFrames() - firstFrame, (long)Math.ceil(chunkWidthInPixels * framesPerPixel));
+		if(numFrames <= 0) {
+			return valsToDraw;
+		}
+		final int blockSize = (int)Math.min(numFrames, AUDIO_BLOCK_FRAMES);
+		final double[][] samples = new double[numChannels][blockSize];
+		final PeakEnvelope[] envelopes = new PeakEnvelope[numChannels];
+		if(SysInfo.sys.useAudioDataSmoothingForWaveform) {
+			//make the waveform prettier by smoothing the audio data (linear in the block size, whatever the window)
+			for(int channel = 0; channel < numChannels; channel++) {
+				envelopes[channel] = PeakEnvelope.forWindow(SysInfo.sys.waveformSmoothingWindowMillis, sampleSource.frameRate());
+			}
+		}
+		//bandpass filters, continuing the previous chunk's filter state when there is one
+		StreamingBandPassFilter[] tmpFilters = null;
+		if(SysInfo.sys.bandpassFilter) {
+			tmpFilters = takeFilters(firstFrame);
+		}
+		final StreamingBandPassFilter[] filters = tmpFilters;
+		try {
+			for(long offset = 0; offset < numFrames; offset += blockSize) {
+				final long blockOffset = offset;
+				final int numRead = sampleSource.readChannels(firstFrame + offset, samples, 0, (int)Math.min(blockSize, numFrames - offset));
+				if(numRead <= 0) {
+					break;
+				}
+				channelWorkers.forEachChannel(new ChannelWorkers.Task() {
+					public void run(int channel) {
+						double[] frames = samples[channel];
+						if(filters != null) {
+							filters[channel].filter(sampleSource, channel, firstFrame + blockOffset, frames, frames, numRead);
+						}
+						if(envelopes[channel] != null) {
+							envelopes[channel].apply(frames, numRead);
+						}
+						decimate(frames, numRead, blockOffset, framesPerPixel, valsToDraw[channel]);
+					}
+				});
+			}
+		}
+		finally {
+			if(filters != null) {
+				releaseFilters(filters);
+			}
+		}
+
+		return valsToDraw;
+	}
+
+	/**
+	 * Reduces a block of one channel's frames to the pixels they cover.
+	 * 
+	 * @param frames The frames of the block
+	 * @param numFrames The number of frames in the block
+	 * @param offset The frame of the block's first frame, counting from the chunk's first frame
+	 * @param framesPerPixel The zoom
+	 * @param valsToDraw The channel's pixel values, which are raised to the peaks of the block
+	 */
+	private static void decimate(double[] frames, int numFrames, long offset, double framesPerPixel, double[] valsToDraw) {
+		if(framesPerPixel >= 1) {
+			for(int j = 0; j < numFrames; j++) {
+				int pixel = (int)((offset + j) / framesPerPixel);
+				if(pixel >= valsToDraw.length) {
+					break;
+				}
+				valsToDraw[pixel] = Math.max(valsToDraw[pixel], Math.abs(frames[j]));
+			}
+		}
+		else {
+			int firstPixel = (int)Math.ceil(offset / framesPerPixel);
+			for(int pixel = firstPixel; pixel < valsToDraw.length; pixel++) {
+				long index = (long)(pixel * framesPerPixel) - offset;
+				if(index >= numFrames) {
+					break;
+				}
+				if(index >= 0) {
+					valsToDraw[pixel] = Math.abs(frames[(int)index]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes the waveform prettier by smoothing the pixels, flattening single-pixel peaks and troughs in place.
+	 * 
+	 * @param valsToDraw The pixel values of a waveform
+	 */
+	static void smoothPixels(double[] valsToDraw) {
+		for(int j = 0; j < 1; j++) {
+			double[] copy2 = new double[valsToDraw.length];
+			System.arraycopy(valsToDraw, 0, copy2, 0, valsToDraw.length);
+			for(int i = 1; i < copy2.length - 1; i++) {
+				if(copy2[i] > copy2[i - 1]) {
+					if(copy2[i] > copy2[i + 1]) {
+						valsToDraw[i] = Math.max(copy2[i + 1], copy2[i - 1]);
+					}
+				}
+			}
+			for(int i = 1; i < copy2.length - 1; i++) {
+				if(copy2[i] < copy2[i - 1]) {
+					if(copy2[i] < copy2[i + 1]) {
+						valsToDraw[i] = Math.min(copy2[i + 1], copy2[i - 1]);
+					}
+				}
+			}
+			copy2 = null;
+		}
+	}
+
+	/**
+	 * Returns the scale of each channel of the waveform, fixing it the first time a chunk is rendered so every chunk is drawn at the same scale.
+	 * 
+	 * The whole file's <code>AmplitudeStats</code> fix the scale if they are available by then, which they are whenever the file was opened before.
+	 * Otherwise the first chunk rendered fixes it, and statistics arriving later are not used until the file is opened again, so no chunk is ever rendered twice.
+	 * 
+	 * Synchronized since chunks are rendered concurrently.
+	 * 
+	 * @param valsToDraw The pixel values of a chunk, one array per channel
+	 * @param pixelsPerSecond The zoom the chunk was drawn at
+	 * @return The value that is drawn at full height in each channel's lane
+	 */
+	private synchronized double[] biggestConsecutivePixelVals(double[][] valsToDraw, double pixelsPerSecond) {
+		scaleFromStats();
+		for(int channel = 0; channel < numChannels; channel++) {
+			if(biggestConsecutivePixelVals[channel] <= 0) {
 				//determine yScale by finding largest value that 2 consecutive pixels will actually draw at
 				//larger values might exist in the audio, but over intervals too short to be be visualized (0 pixels), or meaningfully visualized (1 pixel)
 				//this technique is inappropriate unless the values we are working on have already been smoothed
 				//we exclude the first half second of audio data due to the loud beep that often starts psychology experiments
+				double[] channelVals = valsToDraw[channel];
 				double consecutiveVals;
-				for(int i = GUIConstants.zoomlessPixelsPerSecond/2; i < valsToDraw.length - 1; i++) {
-					consecutiveVals = Math.min(valsToDraw[i], valsToDraw[i + 1]);
-					biggestConsecutivePixelVals = Math.max(consecutiveVals, biggestConsecutivePixelVals);
+				for(int i = (int)(pixelsPerSecond/2); i < channelVals.length - 1; i++) {
+					consecutiveVals = Math.min(channelVals[i], channelVals[i + 1]);
+					biggestConsecutivePixelVals[channel] = Math.max(consecutiveVals, biggestConsecutivePixelVals[channel]);
 				}
-
 			}
+		}
+		return biggestConsecutivePixelVals.clone();
+	}
 
-			//determine yScale for the current component height
-			double yScale = ((height/2) - 1)/(biggestConsecutivePixelVals);
-			if(Double.isInfinite(yScale) || Double.isNaN(yScale)) {
-				System.err.println("yScale is infinite in magnitude, or not a number, using 0 instead");
-				yScale = 0;
-			}
 
-			image = WaveformDisplay.getInstance().createImage(chunkWidthInPixels, height);
-			Graphics2D g2d = (Graphics2D)image.getGraphics();
 
-			g2d.setRenderingHints(MyShapes.getRenderingHints());
-			g2d.setColor(MyColors.waveformBackground);
-			g2d.fillRect(0, 0, chunkWidthInPixels, height); //fill in background color
-			g2d.setColor(MyColors.waveformReferenceLineColor);
-			g2d.drawLine(0, height/2, chunkWidthInPixels, height/2); //draw reference line			
+	/**
+	 * Decides whether a cached chunk is drawn at the same scale as this buffer's chunks.
+	 * 
+	 * Chunks leave the cache when their file is closed, so a cached chunk was drawn by this buffer and normally matches; this guards against one that does not.
+	 * It fixes the scale if no chunk has been rendered yet.
+	 * 
+	 * @param scaleBasis The values the cached chunk draws at full height, one per channel
+	 * @return Whether the cached chunk can be displayed with this buffer's chunks
+	 */
+	private synchronized boolean adoptScale(double[] scaleBasis) {
+		if(scaleBasis.length != numChannels) {
+			return false;
+		}
+		scaleFromStats();
+		for(int channel = 0; channel < numChannels; channel++) {
+			if(biggestConsecutivePixelVals[channel] <= 0) {
+				biggestConsecutivePixelVals[channel] = scaleBasis[channel];
+			}
+		}
+		return Arrays.equals(biggestConsecutivePixelVals, scaleBasis);
+	}
 
-			//draw seconds line
-			double counter = CurAudio.getMaster().framesToSec(CurAudio.firstFrameOfChunk(myNum)); //this works because buffer size is in whole seconds
-			for(int i = 0; i < chunkWidthInPixels; i+= GUIConstants.zoomlessPixelsPerSecond) {
-				g2d.setColor(MyColors.waveformScaleLineColor);
-				g2d.drawLine(i, 0, i, height - 1);
-				if(SysInfo.sys.doubleDraw) {
-					g2d.drawLine(i, 0, i, height - 1);
-				}
-				g2d.setColor(MyColors.waveformScaleTextColor);
-				g2d.drawString(secFormat.format(counter), i + 5, height - 5);
-				counter++;
-			}
-
-			//actually draw the waveform (~5ms)
-			g2d.setColor(MyColors.firstChannelWaveformColor);
-			int topY;
-			int bottomY;
-			final int refLinePos = height/2;
-			for(int i = 0; i < valsToDraw.length; i++) {
-				//apply yScale
-				double scaledSample = valsToDraw[i] * yScale;
-
-				//separately find wave position above and below reference line, in case we support stereo audio display in the future
-				topY = (int)(refLinePos - scaledSample);
-				bottomY = (int)(refLinePos + scaledSample);
-
-				if(SysInfo.sys.antiAliasWaveform) {
-					Composite originalAc = g2d.getComposite();
-					g2d.setComposite(antiAliasingComposite);
-					g2d.drawLine(i + 1, refLinePos, i + 1, topY);
-					g2d.drawLine(i + 1, refLinePos, i + 1, bottomY);
-					g2d.setComposite(originalAc);
-				}
-				g2d.drawLine(i, refLinePos, i, topY);
-				g2d.drawLine(i, refLinePos, i, bottomY);
-				if(SysInfo.sys.doubleDraw) {
-					g2d.drawLine(i, refLinePos, i, topY);
-					g2d.drawLine(i, refLinePos, i, bottomY);
+	/**
+	 * Fixes the scale of each channel from the amplitude statistics if it is not fixed yet and they are available.
+	 */
+	private synchronized void scaleFromStats() {
+		for(int channel = 0; channel < numChannels; channel++) {
+			if(biggestConsecutivePixelVals[channel] <= 0) {
+				AmplitudeStats stats = pyramidBuilder.getStats(channel);
+				if(stats != null) {
+					biggestConsecutivePixelVals[channel] = stats.scaleBasis();
 				}
 			}
 		}
+	}
 
-		private double[] getValsToDraw(int chunkNum) {			
-			//get samples from audio file (~1ms)
-			AudioInputStream ais = null;
-			try {
-				ais = AudioSystem.getAudioInputStream(new File(CurAudio.getCurrentAudioFileAbsolutePath()));
-			} catch (UnsupportedAudioFileException e) {
-				e.printStackTrace();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			int preDataSizeInFrames = 0;
-			long toSkip = (long)(chunkNum * SysInfo.sys.chunkSizeInSeconds * CurAudio.getMaster().frameRate() * (CurAudio.getMaster().frameSizeInBytes()));
-			if(chunkNum > 0) {			
-				preDataSizeInFrames = (int)(CurAudio.getMaster().frameRate() * preDataSeconds);
-				toSkip -= (preDataSizeInFrames * (CurAudio.getMaster().frameSizeInBytes()));
-			}
-			long skipped = -1;
-			try {
-				skipped = ais.skip(toSkip);
-			} catch (IOException e) {
-				e.printStackTrace();
+
+
+	/**
+	 * Chooses the time between seconds lines, a round number of seconds that leaves room for the labels.
+	 * 
+	 * At the zoomless level this is one second.
+	 * 
+	 * @param pixelsPerSecond The zoom
+	 * @return 1, 2, or 5 times a power of ten seconds
+	 */
+	static double tickInterval(double pixelsPerSecond) {
+		final double minSeconds = MIN_TICK_PIXELS / pixelsPerSecond;
+		double interval = Math.pow(10, Math.floor(Math.log10(minSeconds)));
+		while(interval < minSeconds * (1 - 1e-9)) {
+			if(interval * 2 >= minSeconds * (1 - 1e-9)) {
+				return interval * 2;
 			}
-			if(toSkip != skipped) {
-				System.err.println("skipped " + skipped + " instead of " + toSkip);
+			if(interval * 5 >= minSeconds * (1 - 1e-9)) {
+				return interval * 5;
 			}
-			AudioDoubleDataSource adds = new AudioDoubleDataSource(ais);
+			interval *= 10;
+		}
+		return interval;
+	}
+
+	/**
+	 * Changes that may require chunks to be rendered.
+	 */
+	public static enum Update {
+		/** The audio progress entered a different chunk, by playback or by a seek. */
+		PROGRESS,
+		/** The waveform display was resized. */
+		RESIZE,
+		/** The waveform display's zoom changed. */
+		ZOOM,
+		/** The user switched between the waveform and the spectrogram. */
+		VIEW,
+		/** The annotations the user may jump to from the annotation table changed. */
+		TARGETS
+	}
+
+	/**
+	 * What the chunks show.
+	 */
+	public static enum View {
+		/** The amplitude of the (filtered) audio. */
+		WAVEFORM,
+		/** A wide-band spectrogram of the unfiltered audio. */
+		SPECTROGRAM;
 
-			//bandpass filter (~50ms)			
-			BandPassFilter filter = new BandPassFilter(minBand, maxBand);
-			double[] samples = new double[(int) (CurAudio.getMaster().frameRate() * SysInfo.sys.chunkSizeInSeconds) + preDataSizeInFrames];
-			int numSamplesLeft = adds.available();
-			
-			if(SysInfo.sys.bandpassFilter) {
-				filter.apply(adds).getData(samples);
+		/**
+		 * @return The view the user prefers
+		 */
+		public static View current() {
+			return UserPrefs.prefs.getBoolean(UserPrefs.showSpectrogram, UserPrefs.defaultShowSpectrogram) ? SPECTROGRAM : WAVEFORM;
+		}
+	}
+
+	/**
+	 * A chunk together with the generation it was requested in.
+	 */
+	private static class Slot {
+
+		private final int generation;
+		private final WaveformChunk chunk;
+
+		private Slot(int generation, WaveformChunk chunk) {
+			this.generation = generation;
+			this.chunk = chunk;
+		}
+	}
+
+	/**
+	 * The part of a chunk that does not depend on the image height, for every channel.
+	 */
+	private static class ChunkData {
+
+		private final double[][] valsToDraw;
+		//null unless the chunk shows the spectrogram
+		private final float[][][] spectra;
+
+		private ChunkData(double[][] valsToDraw, float[][][] spectra) {
+			this.valsToDraw = valsToDraw;
+			this.spectra = spectra;
+		}
+
+		private long sizeInBytes() {
+			long size = 0;
+			for(double[] channelVals: valsToDraw) {
+				size += 8L * channelVals.length;
 			}
-			else {
-				adds.getData(samples);
-			}
-
-			//make the waveform prettier by smoothing the audio data (~60ms)
-			if(SysInfo.sys.useAudioDataSmoothingForWaveform) {
-				double[] copy = new double[samples.length];
-				System.arraycopy(samples, 0, copy, 0, copy.length);
-				final int window = 20;
-				double biggestInWindow;
-				int start;
-				int end;
-				for(int i = 0; i < samples.length; i++) {
-					biggestInWindow = 0;
-					start = Math.max(0, i - window);
-					end = Math.min(samples.length, i + window);
-					for(int j = start; j < end; j++) {
-						biggestInWindow = Math.max(biggestInWindow, Math.abs(copy[j]));
+			if(spectra != null) {
+				for(float[][] channelSpectra: spectra) {
+					for(float[] column: channelSpectra) {
+						if(column != null) {
+							size += 4L * column.length;
+						}
+					}
+				}
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Names the render workers and keeps them from holding up program exit.
+	 */
+	private static class RenderThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "WaveformRenderer-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * Wrapper class for a chunk of waveform image.
+	 * 
+	 * Static, since chunks outlive their buffer in the cache and must not keep its samples and pyramids alive.
+	 */
+	public static class WaveformChunk {
+
+		private final int myNum;
+		private final ZoomLevel zoom;
+		private final double[] scaleBasis;
+		private final BufferedImage image;
+
+		//only touched on the event dispatch thread
+		private VolatileImage volatileImage;
+
+		/**
+		 * Creates the <code>Image</code> of a chunk of waveform.
+		 * 
+		 * @param chunkNum The chunk number whose image will be created
+		 * @param height The height of the image
+		 * @param view Whether to draw the waveform or the spectrogram
+		 * @param zoom The zoom level to draw at
+		 * @param data The pixel values, and spectra if drawing the spectrogram
+		 * @param scaleBasis The value drawn at full height in each lane
+		 * @param chunkWidthInPixels The width of the image
+		 */
+		private WaveformChunk(int chunkNum, int height, View view, ZoomLevel zoom, ChunkData data, double[] scaleBasis, int chunkWidthInPixels) {
+			myNum = chunkNum;			
+			this.zoom = zoom;
+			final long firstFrame = zoom.firstFrameOfChunk(chunkNum);
+			final double framesPerPixel = zoom.framesPerPixel();
+
+			final double[][] valsToDraw = data.valsToDraw;
+			final int numLanes = valsToDraw.length;
+
+			this.scaleBasis = scaleBasis;
+
+			image = WaveformRenderer.createCompatibleImage(chunkWidthInPixels, height);
+			Graphics2D g2d = image.createGraphics();
+
+			g2d.setRenderingHints(MyShapes.getRenderingHints());
+			g2d.setColor(MyColors.waveformBackground);
+			g2d.fillRect(0, 0, chunkWidthInPixels, height); //fill in background color
+			for(int lane = 0; lane < numLanes; lane++) {
+				final int laneTop = WaveformRenderer.laneTop(lane, numLanes, height);
+				final int laneHeight = WaveformRenderer.laneTop(lane + 1, numLanes, height) - laneTop;
+				if(view == View.SPECTROGRAM) {
+					//the same scale as the waveform, so a full height sine wave is drawn darkest
+					if(data.spectra != null) {
+						Spectrogram.draw(image, laneTop, laneHeight, data.spectra[lane], 20 * Math.log10(scaleBasis[lane]));
 					}
-					samples[i] = biggestInWindow;
 				}
-				copy = null;
+				else {
+					g2d.setColor(MyColors.waveformReferenceLineColor);
+					g2d.drawLine(0, laneTop + laneHeight/2, chunkWidthInPixels, laneTop + laneHeight/2); //draw reference line
+				}
+				if(lane > 0) {
+					g2d.setColor(MyColors.waveformLaneSeparatorColor);
+					g2d.drawLine(0, laneTop, chunkWidthInPixels, laneTop);
+				}
 			}
 
-			//extract some of the samples for representation as pixels
-			double[] valsToDraw = new double[chunkWidthInPixels];
-			final double sampleIncrement = (samples.length - preDataSizeInFrames) / (double)(valsToDraw.length);
-			for(int i = 0; i < valsToDraw.length; i++) {
-				int index = (int) (i * sampleIncrement) + preDataSizeInFrames;
-				if(index > numSamplesLeft - 1) {
+			//draw seconds lines, at round times so they line up across chunks
+			final double frameRate = CurAudio.getMaster().frameRate();
+			final double tickSeconds = tickInterval(zoom.pixelsPerSecond());
+			DecimalFormat secFormat = new DecimalFormat(tickSeconds < 0.01 ? "0.000s" : "0.00s"); //DecimalFormat is not thread-safe
+			long tickNum = (long)Math.ceil(firstFrame / (frameRate * tickSeconds) - 1e-9);
+			while(true) {
+				double tickTime = tickNum * tickSeconds;
+				int i = (int)Math.round((tickTime * frameRate - firstFrame) / framesPerPixel);
+				if(i >= chunkWidthInPixels) {
 					break;
 				}
-				valsToDraw[i] = samples[index];
-			}
-
-			if(SysInfo.sys.useWaveformImageDataSmoothing) {
-				//make the waveform prettier by smoothing the pixels
-				for(int j = 0; j < 1; j++) {
-					double[] copy2 = new double[valsToDraw.length];
-					System.arraycopy(valsToDraw, 0, copy2, 0, valsToDraw.length);
-					for(int i = 1; i < copy2.length - 1; i++) {
-						if(copy2[i] > copy2[i - 1]) {
-							if(copy2[i] > copy2[i + 1]) {
-								valsToDraw[i] = Math.max(copy2[i + 1], copy2[i - 1]);
-							}
-						}
-					}
-					for(int i = 1; i < copy2.length - 1; i++) {
-						if(copy2[i] < copy2[i - 1]) {
-							if(copy2[i] < copy2[i + 1]) {
-								valsToDraw[i] = Math.min(copy2[i + 1], copy2[i - 1]);
-							}
-						}
-					}
-					copy2 = null;
+				g2d.setColor(MyColors.waveformScaleLineColor);
+				g2d.drawLine(i, 0, i, height - 1);
+				if(SysInfo.sys.doubleDraw) {
+					g2d.drawLine(i, 0, i, height - 1);
 				}
+				g2d.setColor(MyColors.waveformScaleTextColor);
+				g2d.drawString(secFormat.format(tickTime), i + 5, height - 5);
+				tickNum++;
 			}
 
-			return valsToDraw;
+			//actually draw the waveform, all columns of a lane in one batch
+			if(view == View.WAVEFORM) {
+				for(int lane = 0; lane < numLanes; lane++) {
+					final int laneTop = WaveformRenderer.laneTop(lane, numLanes, height);
+					final int laneHeight = WaveformRenderer.laneTop(lane + 1, numLanes, height) - laneTop;
+					//determine yScale for the lane's height
+					double yScale = ((laneHeight/2) - 1)/(scaleBasis[lane]);
+					if(Double.isInfinite(yScale) || Double.isNaN(yScale)) {
+						System.err.println("yScale is infinite in magnitude, or not a number, using 0 instead");
+						yScale = 0;
+					}
+					int[] spans = WaveformRenderer.columnSpans(valsToDraw[lane], yScale, laneTop + laneHeight/2, laneTop, laneTop + laneHeight);
+					WaveformRenderer.fillWaveform(image, g2d, spans, WaveformRenderer.laneColor(lane), SysInfo.sys.antiAliasWaveform);
+				}
+			}
+			g2d.dispose();
 		}
 
-
 		/**
-		 * In keeping with the Java API's recommendation, calls <code>Graphics.dispose()</code> on the stored image's <code>Graphics</code> context.
+		 * Estimates the memory held by this chunk's image, for the cache's budget.
+		 * 
+		 * @return The size in bytes, assuming 4 bytes per pixel
 		 */
-		@Override
-		public void finalize() {
-			image.getGraphics().dispose();
+		public long sizeInBytes() {
+			return 4L * image.getWidth() * image.getHeight();
 		}
 
 		/**
@@ -447,6 +1143,15 @@ public class WaveformBuffer extends Buffer {
 			return myNum;
 		}
 
+		/**
+		 * Getter for the zoom level this chunk was drawn at, which its chunk number refers to.
+		 * 
+		 * @return The zoom level
+		 */
+		public ZoomLevel getZoom() {
+			return zoom;
+		}
+
 		/**
 		 * Getter for the <code>Image</code> of this object's chunk of the waveform.
 		 * 
@@ -456,6 +1161,65 @@ public class WaveformBuffer extends Buffer {
 			return image;
 		}
 
+		/**
+		 * Draws this chunk on the waveform display.
+		 * 
+		 * The first draw copies the image into a <code>VolatileImage</code>, which the graphics hardware can draw directly.
+		 * If the <code>VolatileImage</code> loses its contents, e.g. on a display mode change, it is restored from the image.
+		 * Must be called on the event dispatch thread.
+		 * 
+		 * @param g The display's <code>Graphics</code>
+		 * @param x X coordinate of the chunk's left edge
+		 * @param y Y coordinate of the chunk's top edge
+		 */
+		public void draw(Graphics g, int x, int y) {
+			GraphicsConfiguration gc = WaveformDisplay.getInstance().getGraphicsConfiguration();
+			if(gc == null) {
+				g.drawImage(image, x, y, null);
+				return;
+			}
+			for(int attempt = 0; attempt < 3; attempt++) {
+				if(volatileImage == null) {
+					volatileImage = gc.createCompatibleVolatileImage(image.getWidth(), image.getHeight());
+					restoreVolatileImage();
+				}
+				int status = volatileImage.validate(gc);
+				if(status == VolatileImage.IMAGE_INCOMPATIBLE) {
+					volatileImage.flush();
+					volatileImage = gc.createCompatibleVolatileImage(image.getWidth(), image.getHeight());
+					restoreVolatileImage();
+				}
+				else if(status == VolatileImage.IMAGE_RESTORED) {
+					restoreVolatileImage();
+				}
+				g.drawImage(volatileImage, x, y, null);
+				if(volatileImage.contentsLost() == false) {
+					return;
+				}
+			}
+			//the accelerated copy keeps getting lost, draw the image itself this time
+			g.drawImage(image, x, y, null);
+		}
+
+		private void restoreVolatileImage() {
+			Graphics vg = volatileImage.getGraphics();
+			vg.drawImage(image, 0, 0, null);
+			vg.dispose();
+		}
+
+		/**
+		 * Frees the accelerated copy of the image once the display no longer shows this chunk.
+		 * 
+		 * The chunk stays usable, the copy is recreated by the next <code>draw</code>.
+		 * Must be called on the event dispatch thread.
+		 */
+		public void releaseVolatileImage() {
+			if(volatileImage != null) {
+				volatileImage.flush();
+				volatileImage = null;
+			}
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -14,36 +14,47 @@
 
 package components.waveform;
 
-import info.GUIConstants;
 import info.MyColors;
 import info.MyShapes;
 import info.SysInfo;
 
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Stroke;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.VolatileImage;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.text.DecimalFormat;
 
 import javax.swing.JComponent;
-import javax.swing.Timer;
 import javax.swing.plaf.ComponentUI;
 
 import components.MyFrame;
-import components.annotations.Annotation;
+import components.annotations.AnnotationIndex;
 import components.annotations.AnnotationDisplay;
 import components.waveform.WaveformBuffer.WaveformChunk;
 
 import control.CurAudio;
+import control.Start;
+import edu.upenn.psych.memory.precisionplayer.PlaybackClock;
 import edu.upenn.psych.memory.precisionplayer.PrecisionPlayer;
 
 /**
  * This WaveformDisplay is totally autonomous except for changes of zoom factor.
  * 
- * Keep in mind that events other than the repaint timer going off can cause repaints.
+ * Keep in mind that events other than the frame pacer's ticks can cause repaints.
+ * Refreshes are paced to the screen while the audio plays, and otherwise only happen when something the display shows changes, see {@link #requestFrame()}.
+ * 
+ * The display is painted in two layers.
+ * The background, the waveform chunks and the annotations, is kept in an accelerated image and only redrawn where it changed: when the display scrolls, only the strip scrolled into view is drawn.
+ * The overlay, the time, the progress bar, and the accent on the selected annotation, is drawn on top on every paint.
+ * While the background stays put, e.g. near the start or end of the file, refreshes only repaint the rectangles the overlay covered and now covers.
  * 
  * @author Yuvi Masory
  */
@@ -51,11 +62,13 @@ public class WaveformDisplay extends JComponent {
 
 	private final DecimalFormat secFormat = new DecimalFormat("0.000s");
 
-	private final int REFRESH_DELAY = 20; //people prefer 20 over 30
+	//annotation text reaching further right than this may be cut off when the display scrolls
+	private static final int ANNOTATION_TEXT_WIDTH = 300;
 
-	private Timer refreshTimer;
+	//the accent's arrows are the widest part of the overlay
+	private static final int OVERLAY_HALF_WIDTH = 21;
 
-	private int pixelsPerSecond;
+	private volatile FramePacer pacer;
 	
 	private volatile boolean chunkInProgress;
 	
@@ -67,6 +80,17 @@ public class WaveformDisplay extends JComponent {
 	private WaveformChunk previousRefreshChunk;
 	private WaveformChunk curRefreshChunk;
 	private WaveformChunk nextRefreshChunk;
+	private ZoomLevel refreshZoom;
+
+	//the waveform and annotations, as last drawn, and what they were drawn from
+	private VolatileImage backgroundLayer;
+	private int layerOffset;
+	private WaveformChunk layerPreviousChunk;
+	private WaveformChunk layerCurChunk;
+	private WaveformChunk layerNextChunk;
+	private AnnotationIndex layerAnns;
+
+	private int paintedLabelWidth;
 	
 	private static WaveformDisplay instance;
 
@@ -74,7 +98,6 @@ public class WaveformDisplay extends JComponent {
 		setOpaque(true);
 		setBackground(MyColors.waveformBackground);
 		setUI(new ComponentUI() {}); //a little bit of magic so the JComponent will draw the background color without subclassing to a JPanel
-		pixelsPerSecond = GUIConstants.zoomlessPixelsPerSecond;
 		refreshFrame = -1;
 		addMouseListener(new MouseAdapter(){
 			@Override
@@ -86,6 +109,20 @@ public class WaveformDisplay extends JComponent {
 			addMouseListener(new WaveformMouseAdapter(this));
 			addMouseMotionListener(new WaveformMouseAdapter(this));
 		}
+		addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				notifyBuffer(WaveformBuffer.Update.RESIZE);
+			}
+		});
+	}
+
+	private static void notifyBuffer(WaveformBuffer.Update update) {
+		WaveformBuffer buffer = CurAudio.getWaveformBuffer();
+		if(buffer != null) {
+			buffer.displayChanged(update);
+		}
+		requestFrame();
 	}
 
 	public static WaveformDisplay getInstance() {
@@ -99,33 +136,93 @@ public class WaveformDisplay extends JComponent {
 		return instance.getHeight();
 	}
 
+	/**
+	 * Moves the waveform one zoom level in or out.
+	 * 
+	 * The display keeps showing the previous level until the buffer has the chunks of the new one.
+	 * 
+	 * @param in <code>true</code> to zoom in, <code>false</code> to zoom out
+	 */
 	public static void zoomX(boolean in) {
-		if(in) {
-			instance.pixelsPerSecond += GUIConstants.xZoomAmount;
+		ZoomLevel zoom = CurAudio.getZoom();
+		if(zoom == null) {
+			return;
 		}
-		else {
-			if(instance.pixelsPerSecond >= GUIConstants.xZoomAmount + 1) {
-				instance.pixelsPerSecond -= GUIConstants.xZoomAmount;
+		CurAudio.setZoom(in ? zoom.in() : zoom.out());
+		notifyBuffer(WaveformBuffer.Update.ZOOM);
+	}
+
+	/**
+	 * Tells the buffer to redraw the chunks after the user switched between the waveform and the spectrogram.
+	 */
+	public static void viewChanged() {
+		notifyBuffer(WaveformBuffer.Update.VIEW);
+	}
+	
+	/**
+	 * Asks for the display to be refreshed, because something it shows may have changed: the audio position, the chunks in the buffer, the annotations, or the play state.
+	 * 
+	 * Cheap, and safe to call from any thread, whether or not refreshes are running.
+	 */
+	public static void requestFrame() {
+		WaveformDisplay display = instance;
+		if(display != null) {
+			FramePacer curPacer = display.pacer;
+			if(curPacer != null) {
+				curPacer.request();
 			}
 		}
 	}
-	
+
 	public void startRefreshes() {
-		ActionListener refresher = new RefreshListener();
-		refreshTimer = new Timer(REFRESH_DELAY, refresher);
-		refreshTimer.start();
+		pacer = new FramePacer(new RefreshListener());
+		pacer.start();
+		pacer.request();
 	}
 
 	public void stopRefreshes() {
-		if(refreshTimer != null) {
-			refreshTimer.stop();
-			curRefreshChunk = null;
-			previousRefreshChunk = null;
-			nextRefreshChunk = null;
+		FramePacer oldPacer = pacer;
+		if(oldPacer != null) {
+			oldPacer.finish();
+			pacer = null;
+			if(Start.developerMode()) {
+				dumpTelemetry(oldPacer.getTelemetry());
+			}
+			showChunks(null, null, null);
 			repaint();
 		}
 	}
 
+	private static void dumpTelemetry(FrameTelemetry telemetry) {
+		System.out.println(telemetry);
+		File file = new File(System.getProperty("java.io.tmpdir"), "waveform-frames-" + System.currentTimeMillis() + ".csv");
+		try {
+			telemetry.dump(file);
+			System.out.println("frame timings written to " + file);
+		}
+		catch(FileNotFoundException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Switches the chunks that are painted, freeing the accelerated images of those no longer shown.
+	 * 
+	 * Called on the event dispatch thread only.
+	 */
+	private void showChunks(WaveformChunk previous, WaveformChunk cur, WaveformChunk next) {
+		WaveformChunk[] old = {previousRefreshChunk, curRefreshChunk, nextRefreshChunk};
+		for(WaveformChunk chunk: old) {
+			if(chunk != null && chunk != previous && chunk != cur && chunk != next) {
+				chunk.releaseVolatileImage();
+			}
+		}
+		previousRefreshChunk = previous;
+		curRefreshChunk = cur;
+		nextRefreshChunk = next;
+		refreshZoom = cur == null ? null : cur.getZoom();
+	}
+
 
 	@Override
 	public void update(Graphics g) {
@@ -140,7 +237,8 @@ public class WaveformDisplay extends JComponent {
 	public void paintComponent(Graphics g) {
 		super.paintComponent(g); //just so the default background color is painted
 		
-		if(refreshTimer == null || curRefreshChunk == null || refreshTimer.isRunning() == false) {
+		FramePacer curPacer = pacer;
+		if(curPacer == null || curRefreshChunk == null) {
 			//draw reference line
 			g.setColor(MyColors.waveformReferenceLineColor);
 			g.drawLine(0, getHeight()/2, getWidth() - 1, getHeight()/2);
@@ -150,14 +248,109 @@ public class WaveformDisplay extends JComponent {
 			g.drawLine(0, getHeight() - 1, getWidth() - 1, getHeight() - 1);
 			return;
 		}
+
+		long start = System.nanoTime();
+		final int offset = componentOffset();
+		if(drawBackgroundLayer(g, offset) == false) {
+			//the accelerated layer was lost, draw the background directly this time
+			drawBackground(g, offset, 0, getWidth());
+		}
+		drawOverlay((Graphics2D)g, offset);
+		curPacer.getTelemetry().painted(System.nanoTime() - start);
+	}
+
+	/**
+	 * Draws the background layer, bringing it up to date first.
+	 * 
+	 * If only the scroll position changed since the layer was last drawn, the layer is shifted and only the strip that scrolled into view is drawn.
+	 * 
+	 * @param g The display's <code>Graphics</code>
+	 * @param offset The x coordinate of the start of the file
+	 * @return <code>false</code> if the layer could not be drawn
+	 */
+	private boolean drawBackgroundLayer(Graphics g, int offset) {
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+		if(gc == null) {
+			return false;
+		}
+		final int width = getWidth();
+		final int height = getHeight();
+		boolean valid = backgroundLayerMatches();
+		if(backgroundLayer == null || backgroundLayer.getWidth() != width || backgroundLayer.getHeight() != height) {
+			if(backgroundLayer != null) {
+				backgroundLayer.flush();
+			}
+			backgroundLayer = gc.createCompatibleVolatileImage(width, height);
+			valid = false;
+		}
+		int status = backgroundLayer.validate(gc);
+		if(status == VolatileImage.IMAGE_INCOMPATIBLE) {
+			backgroundLayer.flush();
+			backgroundLayer = gc.createCompatibleVolatileImage(width, height);
+			valid = false;
+		}
+		else if(status == VolatileImage.IMAGE_RESTORED) {
+			valid = false;
+		}
+
+		Graphics2D lg = backgroundLayer.createGraphics();
+		final int dx = offset - layerOffset;
+		if(valid && dx != 0 && Math.abs(dx) < width) {
+			lg.copyArea(0, 0, width, height, dx, 0);
+			if(dx > 0) {
+				drawBackground(lg, offset, 0, dx);
+			}
+			else {
+				drawBackground(lg, offset, width + dx, -dx);
+			}
+		}
+		else if(valid == false || dx != 0) {
+			drawBackground(lg, offset, 0, width);
+		}
+		lg.dispose();
+		layerOffset = offset;
+		layerPreviousChunk = previousRefreshChunk;
+		layerCurChunk = curRefreshChunk;
+		layerNextChunk = nextRefreshChunk;
+		layerAnns = AnnotationDisplay.getAnnotationIndex();
+
+		g.drawImage(backgroundLayer, 0, 0, null);
+		if(backgroundLayer.contentsLost()) {
+			layerCurChunk = null;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Determines whether the background layer shows the current chunks and annotations, at any scroll position.
+	 */
+	private boolean backgroundLayerMatches() {
+		return backgroundLayer != null && layerCurChunk == curRefreshChunk && layerPreviousChunk == previousRefreshChunk && layerNextChunk == nextRefreshChunk
+			&& layerAnns == AnnotationDisplay.getAnnotationIndex();
+	}
+
+	/**
+	 * Draws the part of the display that only moves when it scrolls, the waveform chunks and the annotations, in a vertical strip.
+	 * 
+	 * @param g Where to draw
+	 * @param offset The x coordinate of the start of the file
+	 * @param x The left edge of the strip
+	 * @param width The width of the strip
+	 */
+	private void drawBackground(Graphics g, int offset, int x, int width) {
+		Graphics2D g2d = (Graphics2D)g.create();
+		g2d.clipRect(x, 0, width, getHeight());
+		g2d.setColor(getBackground());
+		g2d.fillRect(x, 0, width, getHeight());
 		chunkInProgress = false;
 		
 		//draw buffered waveform image
-		int curChunkXPos = frameToComponentX(CurAudio.firstFrameOfChunk(curRefreshChunk.getNum()));
-		g.drawImage(curRefreshChunk.getImage(), curChunkXPos, 0, null);
+		int curChunkXPos = absoluteX(refreshZoom.firstFrameOfChunk(curRefreshChunk.getNum())) + offset;
+		curRefreshChunk.draw(g2d, curChunkXPos, 0);
 		
 		if(previousRefreshChunk != null) {
-			g.drawImage(previousRefreshChunk.getImage(), curChunkXPos - curRefreshChunk.getImage().getWidth(null), 0, null);
+			previousRefreshChunk.draw(g2d, curChunkXPos - curRefreshChunk.getImage().getWidth(null), 0);
 		}
 		else {
 			if(curRefreshChunk.getNum() != 0) {
@@ -165,41 +358,53 @@ public class WaveformDisplay extends JComponent {
 			}
 		}
 		if(nextRefreshChunk != null) {
-			g.drawImage(nextRefreshChunk.getImage(), curChunkXPos + curRefreshChunk.getImage().getWidth(null), 0, null);
+			nextRefreshChunk.draw(g2d, curChunkXPos + curRefreshChunk.getImage().getWidth(null), 0);
 		}
 		else {
-			if(curRefreshChunk.getNum() != CurAudio.lastChunkNum()) {
+			if(curRefreshChunk.getNum() != refreshZoom.lastChunkNum()) {
 				chunkInProgress = true;
 			}
 		}
 
-		
-		Graphics2D g2d = (Graphics2D)g;
 		g2d.setRenderingHints(MyShapes.getRenderingHints());
 		
-		//draw current time
-		g2d.drawString(secFormat.format(CurAudio.getMaster().framesToSec(refreshFrame)), 10, 20);
-		
-		//draw annotations
-		Annotation[] anns = AnnotationDisplay.getAnnotationsInOrder();
-		for(int i = 0; i < anns.length; i++) {
-			double time = anns[i].getTime();
-			int xPos = frameToComponentX(CurAudio.getMaster().millisToFrames(time));
+		//draw annotations, looking only at those whose line or text is in the strip
+		AnnotationIndex anns = AnnotationDisplay.getAnnotationIndex();
+		final double framesPerPixel = zoom().framesPerPixel();
+		double firstMillis = CurAudio.getMaster().framesToMillis((long)Math.max(0, (x - ANNOTATION_TEXT_WIDTH - offset) * framesPerPixel)) - 1;
+		double lastMillis = CurAudio.getMaster().framesToMillis((long)((x + width - offset + 1) * framesPerPixel)) + 1;
+		for(int i = anns.firstAtOrAfter(firstMillis); i < anns.size() && anns.timeAt(i) <= lastMillis; i++) {
+			int xPos = absoluteX(CurAudio.getMaster().millisToFrames(anns.timeAt(i))) + offset;
 			if(xPos < 0) {
 				continue;
 			}
 			if(xPos > refreshWidth) {
 				break;
 			}
-			String text = anns[i].getText();
+			String text = anns.get(i).getText();
 			g2d.setColor(MyColors.annotationLineColor);
 			g2d.drawLine(xPos, 0, xPos, getHeight() - 1);
 			g2d.setColor(MyColors.annotationTextColor);
 			g2d.drawString(text, xPos + 5, 40);
 		}
+		g2d.dispose();
+	}
+
+	/**
+	 * Draws the part of the display that changes as the audio progresses, the time, the progress bar, or the accent on the annotation under it, and the border.
+	 * 
+	 * @param g2d The display's <code>Graphics</code>
+	 * @param offset The x coordinate of the start of the file
+	 */
+	private void drawOverlay(Graphics2D g2d, int offset) {
+		g2d.setRenderingHints(MyShapes.getRenderingHints());
+		
+		//draw current time
+		g2d.setColor(getForeground());
+		g2d.drawString(timeLabel(refreshFrame), 10, 20);
 		
 		//find progress bar position
-		progressBarXPos = frameToComponentX(refreshFrame);
+		progressBarXPos = absoluteX(refreshFrame) + offset;
 		if(progressBarXPos < 0) {
 			System.err.println("bad val " + progressBarXPos + "/" + (getWidth() - 1));
 		}
@@ -215,8 +420,13 @@ public class WaveformDisplay extends JComponent {
 		//accent selected annotation
 		boolean foundOverlap = false;
 		if(CurAudio.getPlayer().getStatus() != PrecisionPlayer.Status.PLAYING) {
-			for(int i = 0; i < anns.length; i++) {
-				int annX = WaveformDisplay.frameToDisplayXPixel(CurAudio.getMaster().millisToFrames(anns[i].getTime()));
+			//only annotations within a pixel or two of the progress bar can be drawn on it
+			AnnotationIndex anns = AnnotationDisplay.getAnnotationIndex();
+			final double framesPerPixel = zoom().framesPerPixel();
+			double firstMillis = CurAudio.getMaster().framesToMillis((long)((progressBarXPos - offset - 1) * framesPerPixel)) - 1;
+			double lastMillis = CurAudio.getMaster().framesToMillis((long)((progressBarXPos - offset + 2) * framesPerPixel)) + 1;
+			for(int i = anns.firstAtOrAfter(firstMillis); i < anns.size() && anns.timeAt(i) <= lastMillis; i++) {
+				int annX = absoluteX(CurAudio.getMaster().millisToFrames(anns.timeAt(i))) + offset;
 				if(progressBarXPos == annX) {
 					foundOverlap = true;
 					g2d.setPaintMode();
@@ -248,12 +458,38 @@ public class WaveformDisplay extends JComponent {
 		//draw bottom border
 		g2d.setColor(MyColors.unfocusedColor);
 		g2d.drawLine(0, getHeight() - 1, getWidth() - 1, getHeight() - 1);
+	}
 
+	private String timeLabel(long frame) {
+		return secFormat.format(CurAudio.getMaster().framesToSec(frame));
+	}
+
+	/**
+	 * Repaints only the parts of the display the overlay covers, before and after the audio progressed, when the background has not changed.
+	 * 
+	 * Called on the event dispatch thread only.
+	 */
+	private void repaintOverlay() {
+		FontMetrics metrics = getFontMetrics(getFont());
+		int labelWidth = 10 + metrics.stringWidth(timeLabel(refreshFrame)) + 2;
+		paintImmediately(0, 0, Math.max(labelWidth, paintedLabelWidth), 20 + metrics.getDescent() + 1);
+		paintedLabelWidth = labelWidth;
+
+		int barXPos = Math.max(0, Math.min(getWidth() - 1, frameToComponentX(refreshFrame)));
+		int left = Math.min(barXPos, progressBarXPos) - OVERLAY_HALF_WIDTH;
+		int right = Math.max(barXPos, progressBarXPos) + OVERLAY_HALF_WIDTH;
+		paintImmediately(left, 0, right - left + 1, getHeight());
 	}
 
 	
 	private int frameToComponentX(long frame) {
-		int absoluteX = absoluteX(frame);
+		return absoluteX(frame) + componentOffset();
+	}
+
+	/**
+	 * Finds the x coordinate of the start of the file, which is negative once the display has scrolled.
+	 */
+	private int componentOffset() {
 		int absoluteCurX = absoluteX(refreshFrame);
 		
 		int offset = refreshWidth/2 - absoluteCurX;
@@ -261,7 +497,7 @@ public class WaveformDisplay extends JComponent {
 			offset = 0; 
 		}
 		else { //last half window of audio is adjusted
-			int absoluteLength = -1 * (int)Math.ceil(GUIConstants.zoomlessPixelsPerSecond * CurAudio.getMaster().durationInSeconds());
+			int absoluteLength = -1 * zoom().absoluteWidth();
 			if((-absoluteLength) <= refreshWidth) {
 				offset = 0;
 			}
@@ -269,11 +505,22 @@ public class WaveformDisplay extends JComponent {
 				offset = Math.max(offset, absoluteLength + refreshWidth);
 			}
 		}
-		return absoluteX + offset;
+		return offset;
 	}
 	
 	private int absoluteX(long frame) {
-		return (int) (GUIConstants.zoomlessPixelsPerSecond * CurAudio.getMaster().framesToSec(frame));
+		return zoom().frameToAbsoluteX(frame);
+	}
+
+	/**
+	 * The zoom level of the chunks on screen, or the zoom level in <code>CurAudio</code> until there are any, which positions are computed at.
+	 */
+	private ZoomLevel zoom() {
+		ZoomLevel zoom = refreshZoom;
+		if(zoom == null) {
+			zoom = CurAudio.getZoom();
+		}
+		return zoom;
 	}
 	
 	public static int frameToAbsoluteXPixel(long frame) {
@@ -292,7 +539,7 @@ public class WaveformDisplay extends JComponent {
 	
 	public static int displayXPixelToFrame(int xPix) {
 		if(CurAudio.audioOpen()) {
-			return (int) (instance.refreshFrame + (xPix - progressBarXPos) * ((1./GUIConstants.zoomlessPixelsPerSecond) * CurAudio.getMaster().frameRate()));
+			return (int) (instance.refreshFrame + (xPix - progressBarXPos) * instance.zoom().framesPerPixel());
 		}
 		throw new IllegalStateException("audio not open");
 	}
@@ -303,39 +550,55 @@ public class WaveformDisplay extends JComponent {
 
 
 	//one RefreshListener per file, guaranteed
-	protected final class RefreshListener implements ActionListener {
-		private final long maxFramesError;
+	protected final class RefreshListener implements FramePacer.Frame {
 		private final long lastFrame;
 		
 		private long bufferedFrame;
 		private int bufferedWidth;
 		private int bufferedHeight;
-		private int bufferedNumAnns;
+		private AnnotationIndex bufferedAnns;
 		
 		private boolean wasPlaying;
 		private long lastTime;
 
 		protected RefreshListener() {
 			lastFrame = CurAudio.getMaster().durationInFrames() - 1;
-			maxFramesError = CurAudio.getMaster().secondsToFrames(1) / GUIConstants.zoomlessPixelsPerSecond * SysInfo.sys.maxInterpolatedPixels;
 			bufferedFrame = -1;
 			bufferedWidth = -1;
 			bufferedHeight = -1;
-			bufferedNumAnns = -1;
+			bufferedAnns = null;
 			wasPlaying = false;
 			lastTime = 0;
 		}
 
 		
-		public final void actionPerformed(ActionEvent evt) {
+		public final boolean refresh() {
+			if(CurAudio.audioOpen() == false) { //the file is being closed
+				return false;
+			}
 			long realRefreshFrame = CurAudio.getAudioProgress();	
 			refreshWidth = getWidth();
 			refreshHeight = getHeight();		
-			int chunkNum = CurAudio.lookupChunkNum(realRefreshFrame);
-			int numAnns = AnnotationDisplay.getNumAnnotations();
+			ZoomLevel zoom = CurAudio.getZoom();
+			if(zoom == null) { //the file is being closed
+				return false;
+			}
+			AnnotationIndex anns = AnnotationDisplay.getAnnotationIndex();
 			boolean isPlaying = CurAudio.getPlayer().getStatus() == PrecisionPlayer.Status.PLAYING;
+			PlaybackClock clock = CurAudio.getPlayer().getClock();
 			
-			if(SysInfo.sys.interpolateFrames) {
+			if(isPlaying && clock.isAdvancing()) {
+				//the player's latest position sample, carried forward to this moment, needs no guessing
+				long reportedFrame = realRefreshFrame;
+				realRefreshFrame = Math.min(lastFrame, clock.frameAt(System.nanoTime()));
+				refreshFrame = realRefreshFrame;
+				FramePacer curPacer = pacer;
+				if(curPacer != null) {
+					curPacer.getTelemetry().interpolationError(refreshFrame - reportedFrame);
+				}
+				lastTime = SysInfo.sys.nanoInterplation ? System.nanoTime() : System.currentTimeMillis();
+			}
+			else if(SysInfo.sys.interpolateFrames) {
 				long curTime;
 				if(SysInfo.sys.nanoInterplation) {
 					curTime = System.nanoTime();	
@@ -354,6 +617,11 @@ public class WaveformDisplay extends JComponent {
 					if(refreshFrame > lastFrame) {
 						refreshFrame = lastFrame;
 					}
+					FramePacer curPacer = pacer;
+					if(curPacer != null) {
+						curPacer.getTelemetry().interpolationError(refreshFrame - realRefreshFrame);
+					}
+					long maxFramesError = (long)(zoom.framesPerPixel() * SysInfo.sys.maxInterpolatedPixels);
 					if(Math.abs(refreshFrame - realRefreshFrame) > maxFramesError) {
 						if(SysInfo.sys.interpolateFrames == false || Math.abs(refreshFrame - lastFrame) > CurAudio.getMaster().secondsToFrames(SysInfo.sys.interplationToleratedErrorZoneInSec)) {
 							System.err.println("interpolation error greater than " + SysInfo.sys.maxInterpolatedPixels + " pixels: " + Math.abs(refreshFrame - realRefreshFrame) + " (frames)");
@@ -370,33 +638,40 @@ public class WaveformDisplay extends JComponent {
 				refreshFrame = realRefreshFrame;
 			}
 
-			if(chunkInProgress == false && refreshFrame == bufferedFrame && bufferedWidth == refreshWidth && bufferedHeight == refreshHeight && bufferedNumAnns == numAnns) {
-				return;
+			int chunkNum = zoom.lookupChunkNum(realRefreshFrame);
+			if(chunkInProgress == false && refreshFrame == bufferedFrame && bufferedWidth == refreshWidth && bufferedHeight == refreshHeight && bufferedAnns == anns && zoom.equals(refreshZoom)) {
+				return isPlaying;
 			}
 
-			WaveformChunk[] chunks = WaveformBuffer.getWaveformChunks();
-			if(chunks == null) { //occurs only while WaveformBuffer's constructor is being run
-				return;
-			}
-			if(chunks[chunkNum] == null) {
-				return;
+			WaveformChunk chunk = WaveformBuffer.getChunk(chunkNum, zoom);
+			if(chunk == null) { //still rendering, or WaveformBuffer's constructor is being run, the buffer requests a frame when it is done
+				return isPlaying;
 			}			
-			curRefreshChunk = chunks[chunkNum];			
+			WaveformChunk previous = previousRefreshChunk;
+			WaveformChunk next = nextRefreshChunk;
 			if(chunkNum > 0) {
-				previousRefreshChunk = chunks[chunkNum - 1];				
+				previous = WaveformBuffer.getChunk(chunkNum - 1, zoom);				
 			}
-			if(chunkNum < chunks.length - 1) {
-				nextRefreshChunk = chunks[chunkNum + 1];				
+			if(chunkNum < zoom.lastChunkNum()) {
+				next = WaveformBuffer.getChunk(chunkNum + 1, zoom);				
 			}
+			showChunks(previous, chunk, next);
 			
 
 			wasPlaying = isPlaying;
 			bufferedFrame = realRefreshFrame;
 			bufferedWidth = refreshWidth;
 			bufferedHeight = curRefreshChunk.getImage().getHeight(null);
-			bufferedNumAnns = AnnotationDisplay.getNumAnnotations();
+			bufferedAnns = anns;
 			
-			repaint();
+			if(backgroundLayerMatches() && componentOffset() == layerOffset && getWidth() == backgroundLayer.getWidth() && getHeight() == backgroundLayer.getHeight()) {
+				//only the overlay moved
+				repaintOverlay();
+			}
+			else {
+				repaint();
+			}
+			return isPlaying;
 		}
 	};
 }
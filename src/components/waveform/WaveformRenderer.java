@@ -0,0 +1,205 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import info.MyColors;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Draws waveform and spectrogram images in bulk.
+ *
+ * The pixel values of a chunk are converted once into a list of column spans.
+ * When the image stores one <code>int</code> per pixel, as screen-compatible images almost always do, the spans are written straight into its pixels in a single pass.
+ * Otherwise each span is one <code>fillRect</code>.
+ * Either way no antialiasing, composite changes, or line rasterizing happen per column.
+ *
+ * Multichannel audio is drawn in lanes of (almost) equal height stacked from the first channel at the top, see {@link #laneTop(int, int, int)}.
+ */
+class WaveformRenderer {
+
+	private static final AlphaComposite antiAliasingComposite = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, /* larger is darker */ 0.5F);
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private WaveformRenderer() {
+	}
+
+	/**
+	 * Creates an opaque image in the screen's native format, so drawing it on screen needs no conversion.
+	 *
+	 * Without a screen, e.g. when running headless, a plain RGB image is created instead.
+	 */
+	static BufferedImage createCompatibleImage(int width, int height) {
+		if(GraphicsEnvironment.isHeadless() == false) {
+			GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+			return gc.createCompatibleImage(width, height, Transparency.OPAQUE);
+		}
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * Returns the top row of a channel's lane.
+	 *
+	 * @param lane The lane, counting from 0 at the top, or <code>numLanes</code> for the row below the last lane
+	 * @param numLanes The number of lanes, one per channel
+	 * @param height Height of the image
+	 * @return The row
+	 */
+	static int laneTop(int lane, int numLanes, int height) {
+		return (int)((long)lane * height / numLanes);
+	}
+
+	/**
+	 * Returns the color of a channel's waveform, alternating between two colors so neighboring lanes are told apart.
+	 *
+	 * @param lane The lane, counting from 0 at the top
+	 * @return The color
+	 */
+	static Color laneColor(int lane) {
+		return lane % 2 == 0 ? MyColors.firstChannelWaveformColor : MyColors.secondChannelWaveformColor;
+	}
+
+	/**
+	 * Converts pixel values to the vertical span each column of the waveform covers.
+	 *
+	 * @param valsToDraw Pixel values, one per column
+	 * @param yScale Pixels per unit of value
+	 * @param refLinePos Y coordinate of the reference line
+	 * @param top Top row of the lane, spans are clipped to it
+	 * @param bottom Row below the lane, spans are clipped above it
+	 * @return For column <i>i</i>, <code>spans[2i]</code> is the top row and <code>spans[2i + 1]</code> the bottom row, both inclusive
+	 */
+	static int[] columnSpans(double[] valsToDraw, double yScale, int refLinePos, int top, int bottom) {
+		int[] spans = new int[2 * valsToDraw.length];
+		for(int i = 0; i < valsToDraw.length; i++) {
+			double scaledSample = valsToDraw[i] * yScale;
+			//separately find wave position above and below reference line
+			spans[2 * i] = Math.max(top, (int)(refLinePos - scaledSample));
+			spans[2 * i + 1] = Math.min(bottom - 1, (int)(refLinePos + scaledSample));
+		}
+		return spans;
+	}
+
+	/**
+	 * Fills the columns of the waveform.
+	 *
+	 * With <code>antiAlias</code>, each column is also drawn half-transparent one column to its right, as the column-by-column renderer did.
+	 *
+	 * @param image The image to draw on
+	 * @param g2d Graphics of <code>image</code>, used if its pixels cannot be written directly, its composite and hints are restored afterwards
+	 * @param spans Column spans from {@link #columnSpans(double[], double, int, int, int)}
+	 * @param color Color of the waveform
+	 * @param antiAlias Whether to soften the waveform's right edges
+	 */
+	static void fillWaveform(BufferedImage image, Graphics2D g2d, int[] spans, Color color, boolean antiAlias) {
+		if(hasIntPixels(image)) {
+			fillPixels(image, spans, color.getRGB(), antiAlias);
+			return;
+		}
+
+		Object originalAntiAliasing = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+		//spans lie on pixel boundaries, so antialiasing would only slow the fills down
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+		g2d.setColor(color);
+		final int numColumns = spans.length / 2;
+		if(antiAlias) {
+			Composite originalAc = g2d.getComposite();
+			g2d.setComposite(antiAliasingComposite);
+			for(int i = 0; i < numColumns; i++) {
+				g2d.fillRect(i + 1, spans[2 * i], 1, spans[2 * i + 1] - spans[2 * i] + 1);
+			}
+			g2d.setComposite(originalAc);
+		}
+		for(int i = 0; i < numColumns; i++) {
+			g2d.fillRect(i, spans[2 * i], 1, spans[2 * i + 1] - spans[2 * i] + 1);
+		}
+		if(originalAntiAliasing != null) {
+			g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, originalAntiAliasing);
+		}
+	}
+
+	/**
+	 * Replaces part of one column of an image.
+	 *
+	 * @param image The image
+	 * @param x The column
+	 * @param top The first row to replace
+	 * @param rgb The colors of the column, from <code>top</code> down, in the default RGB color model
+	 */
+	static void setColumn(BufferedImage image, int x, int top, int[] rgb) {
+		final int height = Math.min(rgb.length, image.getHeight() - top);
+		if(height <= 0) {
+			return;
+		}
+		if(hasIntPixels(image)) {
+			final int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+			final int stride = ((SinglePixelPackedSampleModel)image.getSampleModel()).getScanlineStride();
+			int index = image.getRaster().getDataBuffer().getOffset() + top * stride + x;
+			for(int y = 0; y < height; y++, index += stride) {
+				pixels[index] = rgb[y] | 0xFF000000;
+			}
+		}
+		else {
+			image.setRGB(x, top, 1, height, rgb, 0, 1);
+		}
+	}
+
+	/**
+	 * Determines whether the pixels of an image are <code>int</code>s in the default RGB color model, which can be written directly.
+	 */
+	private static boolean hasIntPixels(BufferedImage image) {
+		return image.getRaster().getDataBuffer() instanceof DataBufferInt && image.getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB);
+	}
+
+	/**
+	 * Writes the spans into an <code>int</code>-per-pixel image.
+	 */
+	private static void fillPixels(BufferedImage image, int[] spans, int rgb, boolean antiAlias) {
+		final int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		final SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel)image.getSampleModel();
+		final int stride = model.getScanlineStride();
+		final int offset = image.getRaster().getDataBuffer().getOffset();
+		final int width = image.getWidth();
+		final int numColumns = Math.min(spans.length / 2, width);
+		final int opaque = rgb | 0xFF000000;
+		if(antiAlias) {
+			//half way between the pixel and the waveform color
+			final int half = (opaque >>> 1) & 0x7F7F7F7F;
+			for(int i = 0; i < numColumns && i + 1 < width; i++) {
+				for(int y = spans[2 * i], index = offset + y * stride + i + 1; y <= spans[2 * i + 1]; y++, index += stride) {
+					pixels[index] = (((pixels[index] >>> 1) & 0x7F7F7F7F) + half) | 0xFF000000;
+				}
+			}
+		}
+		for(int i = 0; i < numColumns; i++) {
+			for(int y = spans[2 * i], index = offset + y * stride + i; y <= spans[2 * i + 1]; y++, index += stride) {
+				pixels[index] = opaque;
+			}
+		}
+	}
+}
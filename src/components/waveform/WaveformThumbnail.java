@@ -0,0 +1,119 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import info.MyColors;
+import info.SysInfo;
+import info.UserPrefs;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import audio.MappedSampleSource;
+import audio.PcmTranscoder;
+import audio.SampleSource;
+
+/**
+ * Renders the waveform of a whole audio file as one image, without a display or any of the GUI's state.
+ *
+ * The samples go through the same bandpass filter, <code>PeakPyramid</code>, pixel smoothing, and <code>AmplitudeStats</code> scale as the chunks of <code>WaveformBuffer</code>,
+ * so a thumbnail looks like the waveform annotators see, squeezed to the thumbnail's width, with every channel in its own lane.
+ * Building the pyramid and statistics saves their sidecars, so opening the file afterwards in the GUI is fast too.
+ */
+public class WaveformThumbnail {
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private WaveformThumbnail() {
+	}
+
+	/**
+	 * Renders the waveform of an audio file.
+	 *
+	 * Safe to call from several threads at once, on different files.
+	 *
+	 * @param audioFile An audio file in any format an <code>AudioDecoder</code> reads, which is decoded first if the program does not read it directly
+	 * @param width Width of the image, each column covers an equal share of the file
+	 * @param height Height of the image
+	 * @return The image
+	 * @throws IOException If the audio file cannot be read or decoded
+	 */
+	public static BufferedImage render(File audioFile, int width, int height) throws IOException {
+		try {
+			audioFile = PcmTranscoder.sampleFileFor(audioFile);
+		}
+		catch(UnsupportedAudioFileException e) {
+			throw new IOException(e.getMessage());
+		}
+		SampleSource samples = new MappedSampleSource(audioFile);
+		final int numChannels = samples.numChannels();
+		PeakPyramidBuilder builder;
+		try {
+			double minPref = UserPrefs.prefs.getInt(UserPrefs.minBandPass, UserPrefs.defaultMinBandPass);
+			double maxPref = UserPrefs.prefs.getInt(UserPrefs.maxBandPass, UserPrefs.defaultMaxBandPass);
+			double[] bands = WaveformBuffer.bandsFor(minPref, maxPref, samples.frameRate());
+			PeakPyramid.FilterSettings settings = new PeakPyramid.FilterSettings(SysInfo.sys.bandpassFilter, (int)minPref, (int)maxPref);
+			builder = new PeakPyramidBuilder(audioFile, numChannels, samples, bands[0], bands[1], settings);
+			//no need for another thread, the caller is already one of many
+			builder.run();
+		}
+		finally {
+			samples.close();
+		}
+		if(builder.getPyramid(0) == null || builder.getStats(0) == null) {
+			throw new IOException("could not summarize " + audioFile);
+		}
+
+		BufferedImage image = WaveformRenderer.createCompatibleImage(width, height);
+		Graphics2D g2d = image.createGraphics();
+		g2d.setColor(MyColors.waveformBackground);
+		g2d.fillRect(0, 0, width, height);
+		for(int channel = 0; channel < numChannels; channel++) {
+			PeakPyramid pyramid = builder.getPyramid(channel);
+			double[] valsToDraw = new double[width];
+			final double framesPerColumn = pyramid.numFrames() / (double)width;
+			for(int i = 0; i < width; i++) {
+				valsToDraw[i] = pyramid.peak((long)(i * framesPerColumn), (long)((i + 1) * framesPerColumn));
+			}
+			if(SysInfo.sys.useWaveformImageDataSmoothing) {
+				WaveformBuffer.smoothPixels(valsToDraw);
+			}
+
+			final int laneTop = WaveformRenderer.laneTop(channel, numChannels, height);
+			final int laneHeight = WaveformRenderer.laneTop(channel + 1, numChannels, height) - laneTop;
+			double yScale = ((laneHeight/2) - 1)/builder.getStats(channel).scaleBasis();
+			if(Double.isInfinite(yScale) || Double.isNaN(yScale)) {
+				//silent channel
+				yScale = 0;
+			}
+
+			g2d.setColor(MyColors.waveformReferenceLineColor);
+			g2d.drawLine(0, laneTop + laneHeight/2, width, laneTop + laneHeight/2);
+			if(channel > 0) {
+				g2d.setColor(MyColors.waveformLaneSeparatorColor);
+				g2d.drawLine(0, laneTop, width, laneTop);
+			}
+			int[] spans = WaveformRenderer.columnSpans(valsToDraw, yScale, laneTop + laneHeight/2, laneTop, laneTop + laneHeight);
+			WaveformRenderer.fillWaveform(image, g2d, spans, WaveformRenderer.laneColor(channel), SysInfo.sys.antiAliasWaveform);
+		}
+		g2d.dispose();
+		return image;
+	}
+}
@@ -0,0 +1,175 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package components.waveform;
+
+import info.GUIConstants;
+import info.SysInfo;
+
+/**
+ * One zoom level of the waveform, and the division of the audio file into chunks at that level.
+ *
+ * <p>Level 0 is the zoomless waveform, {@link GUIConstants#zoomlessPixelsPerSecond}.
+ * Every level in halves the frames in each pixel, every level out doubles them, from the level that fits the whole file in one chunk down to the level that shows every sample.
+ * Chunks are always {@link #pixelsPerChunk()} pixels wide, so the frames in a chunk change with the level, and so do the chunk numbers.
+ *
+ * <p>Instances are immutable, so a chunk or a paint can hold on to the level it was made for while the user zooms.
+ * Zooming in and back out makes a new instance of the same level, so levels must be compared with {@link #equals(Object)}.
+ */
+public class ZoomLevel {
+
+	private final int level;
+	private final long numFrames;
+	private final double frameRate;
+	private final long framesPerChunk;
+	private final int pixelsPerChunk;
+	private final int numChunks;
+
+	private ZoomLevel(int level, long numFrames, double frameRate) {
+		this.level = level;
+		this.numFrames = numFrames;
+		this.frameRate = frameRate;
+		pixelsPerChunk = GUIConstants.zoomlessPixelsPerSecond * SysInfo.sys.chunkSizeInSeconds;
+		long zoomlessFramesPerChunk = SysInfo.sys.chunkSizeInSeconds * (long)frameRate;
+		framesPerChunk = Math.max(1, Math.round(zoomlessFramesPerChunk * Math.pow(2, -level)));
+		numChunks = (int)Math.max(1, (numFrames + framesPerChunk - 1) / framesPerChunk);
+	}
+
+	/**
+	 * Creates the zoomless level for an audio file.
+	 *
+	 * @param numFrames Length of the audio file
+	 * @param frameRate Frames per second of the audio file
+	 * @return Level 0
+	 */
+	public static ZoomLevel zoomless(long numFrames, double frameRate) {
+		return new ZoomLevel(0, numFrames, frameRate);
+	}
+
+	/**
+	 * @return The next level in, or this level if it already shows every sample
+	 */
+	public ZoomLevel in() {
+		if(framesPerPixel() <= 1) {
+			return this;
+		}
+		return new ZoomLevel(level + 1, numFrames, frameRate);
+	}
+
+	/**
+	 * @return The next level out, or this level if the whole file already fits in one chunk
+	 */
+	public ZoomLevel out() {
+		if(numChunks <= 1) {
+			return this;
+		}
+		return new ZoomLevel(level - 1, numFrames, frameRate);
+	}
+
+	/**
+	 * @return The number of halvings of the zoomless frames per pixel, negative when zoomed out
+	 */
+	public int level() {
+		return level;
+	}
+
+	public double framesPerPixel() {
+		return framesPerChunk / (double)pixelsPerChunk;
+	}
+
+	public double pixelsPerSecond() {
+		return frameRate / framesPerPixel();
+	}
+
+	public int pixelsPerChunk() {
+		return pixelsPerChunk;
+	}
+
+	public long framesPerChunk() {
+		return framesPerChunk;
+	}
+
+	/**
+	 * Returns the chunk that contains the provided frame.
+	 */
+	public int lookupChunkNum(long frame) {
+		return (int)(frame / framesPerChunk);
+	}
+
+	public int lastChunkNum() {
+		return numChunks - 1;
+	}
+
+	/**
+	 * @return The first frame of the chunk, or -1 if there is no such chunk
+	 */
+	public long firstFrameOfChunk(int chunkNum) {
+		if(chunkNum < 0 || chunkNum >= numChunks) {
+			return -1;
+		}
+		return chunkNum * framesPerChunk;
+	}
+
+	/**
+	 * @return The last frame of the chunk, or -1 if there is no such chunk
+	 */
+	public long lastFrameOfChunk(int chunkNum) {
+		if(chunkNum < 0 || chunkNum >= numChunks) {
+			return -1;
+		}
+		return Math.min(numFrames, (chunkNum + 1) * framesPerChunk) - 1;
+	}
+
+	/**
+	 * Returns the x coordinate of a frame, counting from the start of the file.
+	 */
+	public int frameToAbsoluteX(long frame) {
+		return (int)(frame / framesPerPixel());
+	}
+
+	/**
+	 * @return The width of the whole file in pixels
+	 */
+	public int absoluteWidth() {
+		return (int)Math.ceil(numFrames / framesPerPixel());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if(o instanceof ZoomLevel) {
+			ZoomLevel other = (ZoomLevel)o;
+			return level == other.level && numFrames == other.numFrames && frameRate == other.frameRate;
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return level + 31 * (int)(numFrames ^ (numFrames >>> 32)) + 961 * (int)frameRate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "ZoomLevel[" + level + ", " + framesPerPixel() + " frames/px]";
+	}
+}
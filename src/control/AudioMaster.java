@@ -15,6 +15,7 @@
 package control;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -42,6 +43,9 @@ import components.audiofiles.AudioFile;
  * they are different.
  * 
  * <p>
+ * The samples are read from the audio file itself, or from its transcode if it is in a format the program does not read directly, see {@link audio.PcmTranscoder}.
+ * 
+ * <p>
  * The current <code>AudioMaster</code> should be used to perform any and all math conversions
  * related to the open audio file.
  * 
@@ -54,6 +58,7 @@ public class AudioMaster {
 
 	// from constructor
 	private AudioFile audioFile;
+	private File sampleFile;
 
 	// from AudioInputStream
 	private long numSampleFrames;
@@ -70,28 +75,37 @@ public class AudioMaster {
 	// computed
 	private double durationInSeconds;
 
+	/**
+	 * Reads the samples from the audio file itself, which must be a format Java Sound reads directly.
+	 * 
+	 * @param audioFile the file containing the audio
+	 * @see #AudioMaster(AudioFile, File)
+	 */
+	public AudioMaster(AudioFile audioFile) throws FileNotFoundException, UnsupportedAudioFileException, IOException {
+		this(audioFile, audioFile);
+	}
+
 	/**
 	 * Incompatible file types are rejected, forcing error handling on whoever is instantiating the class.
 	 * 
 	 * @param audioFile the file containing the audio
+	 * @param sampleFile the file the samples are read from, <code>audioFile</code> itself or its transcode
 	 * @throws FileNotFoundException
 	 * @throws UnsupportedAudioFileException If Java Sound or some other part of this program can't handle the file
 	 * @throws IOException
 	 */
-	public AudioMaster(AudioFile audioFile) throws FileNotFoundException, UnsupportedAudioFileException, IOException {
+	public AudioMaster(AudioFile audioFile, File sampleFile) throws FileNotFoundException, UnsupportedAudioFileException, IOException {
 		this.audioFile = audioFile;
+		this.sampleFile = sampleFile;
 
 		// open an AudioInputStream
 		AudioInputStream aiStream = AudioSystem.getAudioInputStream(
 				new BufferedInputStream (
-						new FileInputStream(audioFile)));
+						new FileInputStream(sampleFile)));
 		
-		if(aiStream.getFormat().getFrameSize() != 2) {
+		if(aiStream.getFormat().getFrameSize() != 2 * aiStream.getFormat().getChannels()) {
 			throw new UnsupportedAudioFileException("only 16-bit audio is supported");
 		}
-		if(aiStream.getFormat().getChannels() != 1) {
-			throw new UnsupportedAudioFileException("only mono audio is supported");
-		}
 		
 
 		// grab info from AudioInputStream
@@ -207,4 +221,11 @@ public class AudioMaster {
 	public AudioFile getAudioFile() {
 		return audioFile;
 	}
+
+	/**
+	 * @return The 16-bit PCM WAV file the samples of the audio file are read from, the audio file itself or its transcode
+	 */
+	public File getSampleFile() {
+		return sampleFile;
+	}
 }
@@ -16,7 +16,7 @@ package control;
 
 import info.Constants;
 import info.GUIConstants;
-import info.SysInfo;
+import info.UserPrefs;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -25,9 +25,13 @@ import java.util.List;
 import java.util.Stack;
 
 import javax.sound.sampled.UnsupportedAudioFileException;
+import javax.swing.SwingUtilities;
 
 import util.GiveMessage;
 import util.OSPath;
+import audio.PcmTranscoder;
+import audio.SilenceDetector;
+import audio.SpeechIndex;
 
 import components.MyFrame;
 import components.MyMenu;
@@ -38,9 +42,11 @@ import components.audiofiles.AudioFile;
 import components.audiofiles.AudioFileDisplay;
 import components.waveform.WaveformBuffer;
 import components.waveform.WaveformDisplay;
+import components.waveform.ZoomLevel;
 import components.wordpool.WordpoolDisplay;
 import components.wordpool.WordpoolFileParser;
 
+import edu.upenn.psych.memory.javasoundplayer.JavaSoundPlayer;
 import edu.upenn.psych.memory.nativestatelessplayer.NativeStatelessPlayer;
 import edu.upenn.psych.memory.precisionplayer.PrecisionPlayer;
 
@@ -55,19 +61,19 @@ public class CurAudio {
 	private static MyPrecisionListener precisionListener;
 
 	private static File curAudioFile;
+	private static AudioFile decodingFile;
 	private static PrecisionPlayer player;	
-	private static long chunkSize;
+	private static volatile ZoomLevel zoom;
 
 	private static int desiredLoudness = 100;
 
 	private static long framePosition;
-	private static long[] lastFrameArray;
-	private static long[] firstFrameArray;
-	private static int totalNumOfChunks;
 	
 	private static Stack<Long> playHistory = new Stack<Long>();
 
-	private static WaveformBuffer waveformBuffer;
+	private static volatile WaveformBuffer waveformBuffer;
+	private static volatile SpeechIndexBuilder speechIndexBuilder;
+	private static SilenceDetector silenceDetector;
 
 	private static final String audioClosedMessage = "Audio Not Open. You must check first";
 	private static final String badStateString = "ERROR: potential violation of guarantee that either master and player are both null, or neither is";
@@ -87,18 +93,27 @@ public class CurAudio {
 	 */
 	public static void switchFile(AudioFile file) {
 		reset();
+		decodingFile = null;
 		
 		if(file == null) {
 			MyFrame.getInstance().setTitle(GUIConstants.defaultFrameTitle);
 		}
 		else {
+			// formats the program doesn't read directly are decoded first, without blocking the interface
+			File sampleFile = PcmTranscoder.readySampleFile(file);
+			if(sampleFile == null) {
+				switchWhenDecoded(file);
+				MyMenu.updateActions();
+				return;
+			}
+
 			curAudioFile = file;			
 
 			// create AudioMaster and handle bad formats/files
 			master = null;
 			boolean success = false;
 			try {
-				master = new AudioMaster(file);
+				master = new AudioMaster(file, sampleFile);
 				success = true;
 			}
 			catch(FileNotFoundException e) {
@@ -125,19 +140,7 @@ public class CurAudio {
 					GUIConstants.defaultFrameTitle + " - "
 					+ curAudioFile.getPath());
 
-			chunkSize = SysInfo.sys.chunkSizeInSeconds * (long)master.frameRate();
-			totalNumOfChunks = (int)Math.ceil((double)master.durationInFrames()/(double)chunkSize);
-			lastFrameArray = new long[totalNumOfChunks];
-			firstFrameArray = new long[totalNumOfChunks];
-			for(int i = 0; i < firstFrameArray.length; i++) {
-				firstFrameArray[i] = chunkSize * i;
-				if(i == firstFrameArray.length - 1) {
-					lastFrameArray[i] = master.durationInFrames() - 1;	
-				}
-				else {
-					lastFrameArray[i] = (chunkSize) * (i + 1) - 1;			
-				}
-			}
+			zoom = ZoomLevel.zoomless(master.durationInFrames(), master.frameRate());
 
 			// prepare playback			
 			PrecisionPlayer pp = null;
@@ -145,9 +148,9 @@ public class CurAudio {
 				pp = new NativeStatelessPlayer();
 			} 
 			catch (Throwable e1) {
-				e1.printStackTrace();
-				GiveMessage.errorMessage("Cannot load audio system.\nYou may need to reinstall " + Constants.programName + ".");
-				reset();
+				//the native library is missing or was built for another platform, Java Sound is always there
+				System.err.println("native audio system unavailable, playing through Java Sound: " + e1);
+				pp = new JavaSoundPlayer();
 			}
 			precisionListener = new MyPrecisionListener();
 			pp.addListener(precisionListener);
@@ -156,7 +159,7 @@ public class CurAudio {
 			
 			success = false;
 			try {				
-				pp.open(file.getAbsolutePath());
+				pp.open(sampleFile.getAbsolutePath());
 				success = true;
 			} 
 			catch(FileNotFoundException e) {
@@ -177,6 +180,7 @@ public class CurAudio {
 				System.err.println("PrecisionPlayer.open() not successfull. resetting current audio.");
 				return;
 			}
+			updateSilenceSkipping();
 
 			
 			// add words from lst file to display
@@ -208,6 +212,8 @@ public class CurAudio {
 			// start new video buffers
 			waveformBuffer = new WaveformBuffer();
 			waveformBuffer.start();
+			speechIndexBuilder = new SpeechIndexBuilder(sampleFile);
+			speechIndexBuilder.start();
 			
 			WaveformDisplay.getInstance().startRefreshes();
 		}
@@ -216,6 +222,50 @@ public class CurAudio {
 		MyMenu.updateActions();
 	}	
 
+	/**
+	 * Decodes an audio file on another thread, then switches to it, unless the user has switched to another file in the meantime.
+	 * 
+	 * @param file The audio file that needs decoding
+	 */
+	private static void switchWhenDecoded(final AudioFile file) {
+		decodingFile = file;
+		MyFrame.getInstance().setTitle(GUIConstants.defaultFrameTitle + " - decoding " + file.getPath());
+		Thread decoder = new Thread("decoding " + file.getName()) {
+			@Override
+			public void run() {
+				String error = null;
+				try {
+					PcmTranscoder.sampleFileFor(file);
+				}
+				catch(UnsupportedAudioFileException e) {
+					e.printStackTrace();
+					error = "Unsupported audio format!\n" + e.getMessage();
+				}
+				catch(IOException e) {
+					e.printStackTrace();
+					error = "Error decoding audio file!\n" + e.getMessage();
+				}
+				final String message = error;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if(decodingFile != file) {
+							return;
+						}
+						if(message != null) {
+							GiveMessage.errorMessage(message);
+							switchFile(null);
+						}
+						else {
+							switchFile(file);
+						}
+					}
+				});
+			}
+		};
+		decoder.setDaemon(true);
+		decoder.start();
+	}
+
 	/**
 	 * Reset the program's state by killing any threads associated with the current
 	 * audio file and clearing any data in memory associated with the current file.
@@ -229,6 +279,7 @@ public class CurAudio {
 		//stop audio playback
 		if(player != null) {
 			player.stop();
+			player.close();
 		}
 		
 		//try to terminate buffer
@@ -250,21 +301,37 @@ public class CurAudio {
 			}
 		}
 		
+		//the speech index sidecar is only written once the whole file has been streamed, so an unfinished build leaves nothing behind
+		if(speechIndexBuilder != null && speechIndexBuilder.isAlive()) {
+			try {
+				if(speechIndexBuilder.terminateThread(250) == false) {
+					System.err.println("could not stop speech index builder: " + speechIndexBuilder);
+				}
+			}
+			catch(InterruptedException e) {
+				System.err.println("could not stop speech index builder: " + speechIndexBuilder);
+			}
+		}
+		
 		WordpoolDisplay.clearText();
 		WordpoolDisplay.undistinguishAllWords();
 		
 		waveformBuffer = null;
+		speechIndexBuilder = null;
+		
+		//any playback using the detector has been stopped above, and would only stop skipping anyway
+		if(silenceDetector != null) {
+			silenceDetector.close();
+			silenceDetector = null;
+		}
 
 		player = null;		
 		master = null;
 		precisionListener = null;
 
 		curAudioFile = null;
-		lastFrameArray = null;
-		firstFrameArray = null;
-		chunkSize = 0;
+		zoom = null;
 		framePosition = 0;
-		totalNumOfChunks = 0;
 		
 		playHistory.clear();
 		
@@ -282,6 +349,20 @@ public class CurAudio {
 		}
 	}
 	
+	/**
+	 * Returns the position <code>popLastPlayPos()</code> would return, without removing it.
+	 * 
+	 * @return The frame, or -1 if there is none
+	 */
+	public static long peekLastPlayPos() {
+		synchronized(playHistory) {
+			if(playHistory.isEmpty()) {
+				return -1;
+			}
+			return playHistory.peek();
+		}
+	}
+	
 	public static boolean hasLastPlayPos() {
 		return playHistory.isEmpty() == false;
 	}
@@ -295,17 +376,33 @@ public class CurAudio {
 	
 
 	/**
-	 * Returns current waveform chunk index.
+	 * Returns the waveform's current zoom level, which also determines how the audio is divided into chunks.
+	 */
+	public static ZoomLevel getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * Changes the waveform's zoom level, renumbering the chunks.
+	 * 
+	 * The waveform buffer is not told, see {@link WaveformDisplay#zoomX(boolean)}.
+	 */
+	public static void setZoom(ZoomLevel newZoom) {
+		zoom = newZoom;
+	}
+
+	/**
+	 * Returns current waveform chunk index, at the current zoom level.
 	 */
 	public static int lookupChunkNum(long currentFrame) {
-		return (int) (currentFrame / chunkSize);
+		return zoom.lookupChunkNum(currentFrame);
 	}
 
 	/**
-	 * Returns the last waveform chunk index of the current audio file.
+	 * Returns the last waveform chunk index of the current audio file, at the current zoom level.
 	 */
 	public static int lastChunkNum() {
-		return totalNumOfChunks - 1;
+		return zoom.lastChunkNum();
 	}
 
 	/**
@@ -313,10 +410,7 @@ public class CurAudio {
 	 * relative to the entire audio file.
 	 */
 	public static long firstFrameOfChunk(int chunkNum) {
-		if(chunkNum < 0 || chunkNum > firstFrameArray.length - 1) {
-			return -1;
-		}
-		return firstFrameArray[chunkNum];
+		return zoom.firstFrameOfChunk(chunkNum);
 	}
 
 	/**
@@ -324,10 +418,7 @@ public class CurAudio {
 	 * relative to the entire audio file.
 	 */
 	public static long lastFrameOfChunk(int chunkNum) {
-		if(chunkNum < 0 || chunkNum > lastFrameArray.length - 1) {
-			return -1;
-		}
-		return lastFrameArray[chunkNum];
+		return zoom.lastFrameOfChunk(chunkNum);
 	}
 	
 	
@@ -440,6 +531,7 @@ public class CurAudio {
 	public static void setAudioProgressWithoutUpdatingActions(long frame) {
 		if(audioOpen()) {
 			framePosition = frame;
+			notifyWaveformBuffer(frame);
 		} 
 		else {
 			throw new IllegalStateException(audioClosedMessage);
@@ -448,7 +540,14 @@ public class CurAudio {
 	
 	public static void setAudioProgressAndUpdateActions(long frame) {
 		if(audioOpen()) {
+			long previousFrame = framePosition;
 			framePosition = frame;
+			WaveformBuffer buffer = waveformBuffer;
+			if(buffer != null) {
+				//moves made this way are the user's, playback uses setAudioProgressWithoutUpdatingActions()
+				buffer.audioSeeked(previousFrame, frame);
+			}
+			notifyWaveformBuffer(frame);
 			MyMenu.updateActions();
 		} 
 		else {
@@ -456,6 +555,58 @@ public class CurAudio {
 		}
 	}
 
+	private static void notifyWaveformBuffer(long frame) {
+		WaveformBuffer buffer = waveformBuffer;
+		if(buffer != null) {
+			buffer.audioProgressChanged(frame);
+		}
+		WaveformDisplay.requestFrame();
+	}
+
+	/**
+	 * Returns the waveform buffer of the current audio file, so the display can tell it about changes.
+	 * 
+	 * @return The buffer, or <code>null</code> if audio is not open
+	 */
+	public static WaveformBuffer getWaveformBuffer() {
+		return waveformBuffer;
+	}
+
+	/**
+	 * Returns the index of the speech segments of the current audio file, which is built in the background when the file is opened for the first time.
+	 * 
+	 * @return The index, or <code>null</code> if audio is not open or the index is not available yet
+	 */
+	public static SpeechIndex getSpeechIndex() {
+		SpeechIndexBuilder builder = speechIndexBuilder;
+		return builder == null ? null : builder.getIndex();
+	}
+
+	/**
+	 * Makes main playback of the current audio file jump over long silences or not, as the user's preferences say.
+	 * 
+	 * Takes effect at the next play. Does nothing if audio is not open.
+	 */
+	public static void updateSilenceSkipping() {
+		if(silenceDetector != null) {
+			silenceDetector.close();
+			silenceDetector = null;
+		}
+		if(player == null) {
+			return;
+		}
+		if(UserPrefs.prefs.getBoolean(UserPrefs.skipSilence, UserPrefs.defaultSkipSilence)) {
+			int minSilenceMillis = Math.max(SilenceDetector.MIN_SKIPPED_MILLIS, UserPrefs.prefs.getInt(UserPrefs.minSkippedSilence, UserPrefs.defaultMinSkippedSilence));
+			try {
+				silenceDetector = new SilenceDetector(master.getSampleFile(), minSilenceMillis);
+			}
+			catch(IOException e) {
+				System.err.println("could not read audio to skip silence, playing all of it: " + e.getMessage());
+			}
+		}
+		player.setSilenceSkipper(silenceDetector);
+	}
+
 	/**
 	 * Set the desired loudness for current and future audio playback.
 	 * 
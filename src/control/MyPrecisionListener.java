@@ -17,6 +17,7 @@ package control;
 import util.GiveMessage;
 import components.MyMenu;
 import components.MySplitPane;
+import components.waveform.WaveformDisplay;
 
 import edu.upenn.psych.memory.precisionplayer.PrecisionEvent;
 import edu.upenn.psych.memory.precisionplayer.PrecisionListener;
@@ -36,6 +37,7 @@ public class MyPrecisionListener implements PrecisionListener {
 	}
 	
 	public void progress(long frame) {
+		//progress jumps over the silences the player skips, which count as heard
 		lastProgress = frame;
 		if(frame > greatestProgress) {
 			greatestProgress = frame;
@@ -51,6 +53,7 @@ public class MyPrecisionListener implements PrecisionListener {
 				MySplitPane.getInstance().setContinuousLayout(false);
 				break;
 			case PLAYING:
+				WaveformDisplay.requestFrame();
 				MyMenu.updateActions();
 				break;
 			case STOPPED:
@@ -59,6 +62,7 @@ public class MyPrecisionListener implements PrecisionListener {
 				if(lastProgress > pe.getFrame()) {
 					System.err.println("last progress " + lastProgress + " comes after the current pause/stop " + pe.getFrame() + ". isn't that odd?");
 				}
+				WaveformDisplay.requestFrame();
 				MyMenu.updateActions();
 				break;
 			case EOM:
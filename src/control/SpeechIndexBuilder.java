@@ -0,0 +1,130 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package control;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.SwingUtilities;
+
+import audio.MappedSampleSource;
+import audio.SampleSource;
+import audio.SpeechIndex;
+
+import components.MyMenu;
+import components.waveform.Buffer;
+
+/**
+ * Background thread that provides the {@link SpeechIndex} of one audio file.
+ *
+ * A valid sidecar is loaded if there is one. Otherwise the whole file is streamed once, and the index is published and saved for the next time the file is opened.
+ * The actions that jump between speech segments are updated once the index is available.
+ */
+public class SpeechIndexBuilder extends Buffer {
+
+	private static final int BLOCK_FRAMES = 1 << 16;
+
+	private final File audioFile;
+
+	private volatile SpeechIndex index;
+
+	private volatile boolean finish;
+
+	/**
+	 * @param audioFile The 16-bit PCM WAV file to index, next to which the sidecar is stored
+	 */
+	public SpeechIndexBuilder(File audioFile) {
+		this.audioFile = audioFile;
+		finish = false;
+		setName("SpeechIndexBuilder");
+		setPriority(Thread.MIN_PRIORITY);
+	}
+
+	@Override
+	public void run() {
+		SpeechIndex loaded = SpeechIndex.load(audioFile);
+		if(loaded == null) {
+			loaded = build();
+			if(loaded == null) {
+				return;
+			}
+			try {
+				loaded.save(audioFile);
+			}
+			catch(IOException e) {
+				System.err.println("could not save speech index, it will be rebuilt next time: " + e.getMessage());
+			}
+		}
+		index = loaded;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				MyMenu.updateActions();
+			}
+		});
+	}
+
+	/**
+	 * Streams the audio file through a <code>SpeechIndex.Builder</code>.
+	 *
+	 * @return The index, or <code>null</code> if the file cannot be read or the thread was asked to finish first
+	 */
+	private SpeechIndex build() {
+		SampleSource samples;
+		try {
+			samples = new MappedSampleSource(audioFile);
+		}
+		catch(IOException e) {
+			System.err.println("could not index speech of " + audioFile + ": " + e.getMessage());
+			return null;
+		}
+		try {
+			SpeechIndex.Builder builder = new SpeechIndex.Builder(samples.numChannels(), samples.frameRate());
+			double[][] block = new double[samples.numChannels()][BLOCK_FRAMES];
+			long nextFrame = 0;
+			while(nextFrame < samples.numFrames()) {
+				if(finish) {
+					return null;
+				}
+				int numRead = samples.readChannels(nextFrame, block, 0, BLOCK_FRAMES);
+				if(numRead <= 0) {
+					break;
+				}
+				builder.add(block, numRead);
+				nextFrame += numRead;
+			}
+			return builder.build();
+		}
+		finally {
+			samples.close();
+		}
+	}
+
+	/**
+	 * Returns the index of the audio file.
+	 *
+	 * @return The index, or <code>null</code> if it is not available yet
+	 */
+	public SpeechIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void finish() {
+		finish = true;
+	}
+}
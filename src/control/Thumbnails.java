@@ -0,0 +1,137 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package control;
+
+import info.Constants;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import util.OSPath;
+import audio.AudioDecoders;
+
+import components.waveform.WaveformThumbnail;
+
+/**
+ * Command line entry point that renders a PNG waveform thumbnail for every audio file in a directory tree, without opening any windows.
+ *
+ * Each thumbnail is written next to its audio file, with the same name and the extension <code>png</code>.
+ * Files are rendered in parallel, one per processor.
+ *
+ * Usage: <code>java -cp ... control.Thumbnails DIRECTORY [WIDTH HEIGHT]</code>
+ */
+public class Thumbnails {
+
+	private static final int defaultWidth = 2000;
+	private static final int defaultHeight = 200;
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private Thumbnails() {
+	}
+
+	/**
+	 * Program entry point.
+	 *
+	 * @param args The directory to search, optionally followed by the width and height of the thumbnails in pixels
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		//must be set before any AWT class is loaded
+		System.setProperty("java.awt.headless", "true");
+
+		if(args.length != 1 && args.length != 3) {
+			System.err.println("usage: Thumbnails DIRECTORY [WIDTH HEIGHT]");
+			System.exit(2);
+		}
+		File root = new File(args[0]);
+		if(root.isDirectory() == false) {
+			System.err.println("not a directory: " + root);
+			System.exit(2);
+		}
+		final int width;
+		final int height;
+		try {
+			width = args.length == 3 ? Integer.parseInt(args[1]) : defaultWidth;
+			height = args.length == 3 ? Integer.parseInt(args[2]) : defaultHeight;
+		}
+		catch(NumberFormatException e) {
+			System.err.println("width and height must be whole numbers");
+			System.exit(2);
+			return;
+		}
+		if(width <= 0 || height <= 0) {
+			System.err.println("width and height must be positive");
+			System.exit(2);
+		}
+
+		List<File> audioFiles = new ArrayList<File>();
+		findAudioFiles(root, audioFiles);
+		System.out.println(Constants.programName + " making " + audioFiles.size() + " thumbnails of " + width + "x" + height);
+
+		final AtomicInteger numFailed = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		for(final File audioFile: audioFiles) {
+			pool.execute(new Runnable() {
+				public void run() {
+					File png = new File(OSPath.basename(audioFile.getAbsolutePath()) + ".png");
+					try {
+						BufferedImage image = WaveformThumbnail.render(audioFile, width, height);
+						if(ImageIO.write(image, "png", png) == false) {
+							throw new IllegalStateException("no PNG writer available");
+						}
+						System.out.println(png);
+					}
+					catch(Exception e) {
+						numFailed.incrementAndGet();
+						System.err.println("could not make thumbnail of " + audioFile + ": " + e);
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+		if(numFailed.get() > 0) {
+			System.err.println(numFailed.get() + " of " + audioFiles.size() + " thumbnails failed");
+			System.exit(1);
+		}
+	}
+
+	private static void findAudioFiles(File dir, List<File> found) {
+		File[] children = dir.listFiles();
+		if(children == null) {
+			return;
+		}
+		for(File child: children) {
+			if(child.isDirectory()) {
+				findAudioFiles(child, found);
+			}
+			else {
+				if(AudioDecoders.isSupportedName(child.getName())) {
+					found.add(child);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.javasoundplayer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Destination of the frames a <code>JavaSoundPlayer</code> renders, a sound card or a stand-in for one.
+ *
+ * The methods mirror those of <code>SourceDataLine</code> the player needs, in frames rather than bytes.
+ * Writing and reading the position happen in the player's render thread, while <code>stop()</code> may come from any thread.
+ */
+public interface AudioSink {
+
+	/**
+	 * Prepares to render audio. Called before any other method, and again only if it failed.
+	 *
+	 * @param format The format of the frames that will be written, 16-bit signed little-endian PCM
+	 * @param bufferFrames The number of frames the sink should buffer, which is the latency of the output
+	 * @throws LineUnavailableException If there is no output for the format
+	 */
+	public void open(AudioFormat format, int bufferFrames) throws LineUnavailableException;
+
+	/**
+	 * Starts rendering the frames buffered, and those written afterward.
+	 */
+	public void start();
+
+	/**
+	 * Stops rendering at once and discards the frames buffered, which also releases a blocked <code>write()</code>.
+	 */
+	public void stop();
+
+	/**
+	 * Writes frames, blocking until they are all buffered or the sink is stopped.
+	 *
+	 * @param buffer The frames
+	 * @param offset The index of the first byte to write
+	 * @param length The number of bytes to write, a whole number of frames
+	 * @return The number of bytes written
+	 */
+	public int write(byte[] buffer, int offset, int length);
+
+	/**
+	 * @return The number of frames rendered since the sink was opened, which never counts frames discarded by <code>stop()</code>
+	 */
+	public long framePosition();
+
+	/**
+	 * Releases the output.
+	 */
+	public void close();
+}
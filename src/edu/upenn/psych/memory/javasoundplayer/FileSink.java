@@ -0,0 +1,73 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.javasoundplayer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A <code>NullSink</code> that also records every frame written to a file, as headerless PCM in the format the sink was opened with, so tests can check what a player rendered.
+ *
+ * Frames discarded by <code>stop()</code> before they were rendered are recorded too.
+ */
+public class FileSink extends NullSink {
+
+	private final File file;
+	private final OutputStream out;
+	private boolean failed;
+
+	/**
+	 * @param file The file to record to, which is replaced
+	 * @throws IOException If the file cannot be created
+	 */
+	public FileSink(File file) throws IOException {
+		this.file = file;
+		out = new BufferedOutputStream(new FileOutputStream(file));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void consume(byte[] buffer, int offset, int length) {
+		if(failed) {
+			return;
+		}
+		try {
+			out.write(buffer, offset, length);
+		}
+		catch(IOException e) {
+			failed = true;
+			System.err.println("could not record to " + file + ", recording stopped: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Also finishes the file.
+	 */
+	@Override
+	public synchronized void close() {
+		super.close();
+		try {
+			out.close();
+		}
+		catch(IOException e) {
+			System.err.println("could not finish recording " + file + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.javasoundplayer;
+
+import java.nio.ByteBuffer;
+
+import audio.SampleSource;
+
+/**
+ * Ring buffer of whole frames, allocated once, between a <code>SampleSource</code> and an <code>AudioSink</code>.
+ *
+ * Only used by one thread at a time.
+ */
+class FrameRing {
+
+	private final byte[] bytes;
+	private final int frameSize;
+	private final int capacity;
+
+	//the oldest frame held, and the number of frames held, counting from it
+	private int first;
+	private int size;
+
+	/**
+	 * @param capacity The number of frames the ring holds
+	 * @param frameSize The number of bytes in a frame
+	 */
+	FrameRing(int capacity, int frameSize) {
+		this.capacity = capacity;
+		this.frameSize = frameSize;
+		bytes = new byte[capacity * frameSize];
+	}
+
+	void clear() {
+		first = 0;
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int free() {
+		return capacity - size;
+	}
+
+	/**
+	 * Copies frames from a source to the end of the ring, as many as fit before the ring's storage wraps around.
+	 *
+	 * @param source The source
+	 * @param firstFrame The frame of the source to start at
+	 * @param maxFrames The largest number of frames to copy
+	 * @return The number of frames copied, 0 only if the ring is full or the source has no more frames
+	 */
+	int fill(SampleSource source, long firstFrame, int maxFrames) {
+		final int end = (first + size) % capacity;
+		int n = Math.min(maxFrames, Math.min(capacity - size, capacity - end));
+		n = Math.min(n, source.maxViewFrames());
+		if(n <= 0) {
+			return 0;
+		}
+		ByteBuffer view = source.byteView(firstFrame, n);
+		final int copied = view.remaining() / frameSize;
+		view.get(bytes, end * frameSize, copied * frameSize);
+		size += copied;
+		return copied;
+	}
+
+	/**
+	 * Writes the oldest frames to a sink, as many as are stored contiguously, blocking as the sink does.
+	 *
+	 * @param sink The sink
+	 * @param maxFrames The largest number of frames to write
+	 * @return The number of frames the sink took
+	 */
+	int drainTo(AudioSink sink, int maxFrames) {
+		final int n = Math.min(maxFrames, Math.min(size, capacity - first));
+		if(n <= 0) {
+			return 0;
+		}
+		final int written = sink.write(bytes, first * frameSize, n * frameSize) / frameSize;
+		first = (first + written) % capacity;
+		size -= written;
+		return written;
+	}
+}
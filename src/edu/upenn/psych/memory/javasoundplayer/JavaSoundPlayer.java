@@ -0,0 +1,600 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.javasoundplayer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import audio.MappedSampleSource;
+import audio.SampleSource;
+import edu.upenn.psych.memory.precisionplayer.PlaybackClock;
+import edu.upenn.psych.memory.precisionplayer.PrecisionEvent;
+import edu.upenn.psych.memory.precisionplayer.PrecisionEventDispatcher;
+import edu.upenn.psych.memory.precisionplayer.PrecisionListener;
+import edu.upenn.psych.memory.precisionplayer.PrecisionPlayer;
+import edu.upenn.psych.memory.precisionplayer.SilenceSkipper;
+
+/**
+ * A <code>PrecisionPlayer</code> in pure Java, for machines where the native player's library cannot be loaded.
+ *
+ * <p>All playback happens in one render thread, started by <code>open()</code> and kept until <code>close()</code>.
+ * It reads frames from the memory-mapped audio file into a ring buffer allocated once, a little ahead of the output,
+ * and writes them to an <code>AudioSink</code> in small blocks, so nothing is allocated or opened when playback starts and a stop is heard quickly.
+ * The default sink is the sound card, through a <code>SourceDataLine</code> that stays open as long as the player.
+ *
+ * <p>The hearing frame is found from the sink's count of frames rendered, <code>getLongFramePosition()</code> for a line,
+ * and the record the render thread keeps of where in the file each frame written came from, so it stays exact when silences are skipped.
+ *
+ * <p>Only 16-bit PCM WAV files are supported, like the native player.
+ */
+public class JavaSoundPlayer implements PrecisionPlayer {
+
+	//the sink's buffer, which is the output latency, and the blocks it is written in
+	private static final double SINK_BUFFER_SECONDS = 0.04;
+	private static final double BLOCK_SECONDS = 0.005;
+	//how far the ring reads ahead of the sink
+	private static final double RING_SECONDS = 0.25;
+	private static final long PROGRESS_INTERVAL_NANOS = 30 * 1000000L;
+	private static final long DRAIN_POLL_MILLIS = 5;
+	private static final int DEFAULT_POSITION_INTERVAL_MILLIS = 5;
+
+	private volatile PrecisionPlayer.Status status;
+
+	private final List<PrecisionListener> listeners;
+	private final PrecisionEventDispatcher events;
+	private final AudioSink sink;
+	private volatile SilenceSkipper skipper;
+	private final PlaybackClock clock = new PlaybackClock();
+	private final long positionIntervalNanos;
+
+	private SampleSource source;
+	private AudioFormat format;
+	private long lastFrame;
+	private int sinkBufferFrames;
+	private int blockFrames;
+	private FrameRing ring;
+	private volatile boolean sinkOpen;
+	private Thread renderThread;
+
+	//guards the plays handed to the render thread, and the end of main playback
+	private final Object lock = new Object();
+	private Play pending;
+	private Play current;
+	private boolean closed;
+
+
+	/**
+	 * Creates a new player rendering to the default sound card, with status <code>BUSY</code>.
+	 */
+	public JavaSoundPlayer() {
+		this(new LineSink());
+	}
+
+	/**
+	 * Creates a new player rendering to the provided sink, with status <code>BUSY</code>.
+	 *
+	 * @param sink The sink, which the player opens and closes
+	 */
+	public JavaSoundPlayer(AudioSink sink) {
+		this(sink, DEFAULT_POSITION_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Creates a new player rendering to the provided sink, with status <code>BUSY</code>, that publishes the position of main playback at the provided interval.
+	 *
+	 * @param sink The sink, which the player opens and closes
+	 * @param positionIntervalMillis How often the position is published, no more often than blocks are written
+	 */
+	public JavaSoundPlayer(AudioSink sink, int positionIntervalMillis) {
+		this.sink = sink;
+		this.positionIntervalNanos = Math.max(1, positionIntervalMillis) * 1000000L;
+		status = PrecisionPlayer.Status.BUSY;
+		//the dispatcher reads the list while listeners may still be added
+		listeners = new CopyOnWriteArrayList<PrecisionListener>();
+		events = new PrecisionEventDispatcher(listeners, "JavaSoundPlayer events");
+	}
+
+
+	public void open(String fileName) throws FileNotFoundException, IOException, UnsupportedAudioFileException {
+		File audioFile = new File(fileName);
+		if(audioFile.isFile() == false) {
+			throw new FileNotFoundException(fileName);
+		}
+		source = new MappedSampleSource(audioFile);
+		lastFrame = source.numFrames() - 1;
+		format = new AudioFormat((float)source.frameRate(), 16, source.numChannels(), true, false);
+		sinkBufferFrames = Math.max(1, (int)(SINK_BUFFER_SECONDS * source.frameRate()));
+		blockFrames = Math.max(1, (int)(BLOCK_SECONDS * source.frameRate()));
+		ring = new FrameRing(Math.max(sinkBufferFrames, (int)(RING_SECONDS * source.frameRate())), format.getFrameSize());
+
+		//opening the output now keeps it out of the first play's latency
+		openSink();
+
+		renderThread = new Thread(new Renderer(), "JavaSoundPlayer render");
+		renderThread.setDaemon(true);
+		renderThread.setPriority(Thread.MAX_PRIORITY);
+		renderThread.start();
+
+		status = PrecisionPlayer.Status.READY;
+		notifyEvent(PrecisionEvent.EventCode.OPENED, -1, null);
+	}
+
+
+	private void playAt(long startFrame, long endFrame, List<PrecisionListener> players) {
+		if(source == null) {
+			System.err.println("you must open() a player before calling a play function");
+			return;
+		}
+		if(startFrame < 0) {
+			startFrame = 0;
+		}
+		endFrame = Math.min(endFrame, source.numFrames());
+		if(endFrame <= startFrame) {
+			System.err.println("endFrame cannot be <= startFrame (" + endFrame + ", " + startFrame + ")");
+			return;
+		}
+		synchronized(lock) {
+			if(closed) {
+				return;
+			}
+			//a play that has reached its end only has to be cleaned up
+			if((current != null && current.done == false) || pending != null) {
+				System.err.println("I won't start another playback when one is already running");
+				return;
+			}
+			//short intervals are heard in full
+			pending = new Play(startFrame, endFrame, players, players == null ? null : skipper);
+			if(players != null) {
+				status = PrecisionPlayer.Status.PLAYING;
+				//queued before the render thread can queue any progress
+				notifyEvent(PrecisionEvent.EventCode.PLAYING, startFrame, null);
+			}
+			lock.notifyAll();
+		}
+	}
+
+
+	public long stop() {
+		long frame;
+		synchronized(lock) {
+			Play play = pending != null ? pending : current;
+			if(status != PrecisionPlayer.Status.PLAYING || play == null || play.listeners == null) {
+				return -1;
+			}
+			frame = sinkOpen ? play.hearingFrame(sink.framePosition()) : play.startFrame;
+			play.stoppedFrame = frame;
+			play.cancelled = true;
+			if(play == pending) {
+				pending = null;
+			}
+			else {
+				//releases the render thread if it is blocked writing
+				if(sinkOpen) {
+					sink.stop();
+				}
+				while(current == play) {
+					try {
+						lock.wait();
+					}
+					catch(InterruptedException e) {
+						break;
+					}
+				}
+			}
+			status = PrecisionPlayer.Status.READY;
+		}
+		notifyEvent(PrecisionEvent.EventCode.STOPPED, frame, null);
+		return frame;
+	}
+
+
+	/**
+	 * Stops any playback, short intervals included, ends the render thread, and releases the audio file and the sink.
+	 */
+	public void close() {
+		stop();
+		synchronized(lock) {
+			closed = true;
+			pending = null;
+			if(current != null) {
+				current.cancelled = true;
+				if(sinkOpen) {
+					sink.stop();
+				}
+			}
+			lock.notifyAll();
+		}
+		if(renderThread != null) {
+			try {
+				renderThread.join(1000);
+			}
+			catch(InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		if(sinkOpen) {
+			sink.close();
+			sinkOpen = false;
+		}
+		if(source != null) {
+			source.close();
+		}
+		events.shutdown();
+	}
+
+	private boolean openSink() {
+		if(sinkOpen == false) {
+			try {
+				sink.open(format, sinkBufferFrames);
+				sinkOpen = true;
+			}
+			catch(LineUnavailableException e) {
+				System.err.println("could not open audio output, will try again at the next play: " + e.getMessage());
+			}
+			catch(IllegalArgumentException e) {
+				System.err.println("audio output does not support " + format + ": " + e.getMessage());
+			}
+		}
+		return sinkOpen;
+	}
+
+
+	/**
+	 * Takes requests from the play methods and renders them, one at a time.
+	 */
+	private class Renderer implements Runnable {
+
+		public void run() {
+			while(true) {
+				Play play;
+				synchronized(lock) {
+					while(pending == null && closed == false) {
+						try {
+							lock.wait();
+						}
+						catch(InterruptedException e) {
+							return;
+						}
+					}
+					if(closed) {
+						return;
+					}
+					play = pending;
+					pending = null;
+					current = play;
+				}
+				try {
+					if(openSink()) {
+						render(play);
+					}
+					else {
+						fail(play, "Unable to start playback.\nNo audio output is available.");
+					}
+				}
+				catch(Throwable t) {
+					t.printStackTrace();
+					fail(play, t.getMessage());
+				}
+				finally {
+					if(play.listeners != null) {
+						long frame = play.stoppedFrame;
+						if(frame < 0) {
+							frame = sinkOpen ? play.hearingFrame(sink.framePosition()) : play.startFrame;
+						}
+						clock.publishStopped(frame);
+					}
+					if(sinkOpen) {
+						sink.stop();
+					}
+					synchronized(lock) {
+						current = null;
+						lock.notifyAll();
+					}
+				}
+			}
+		}
+
+		private void render(Play play) throws InterruptedException {
+			ring.clear();
+			//discards whatever the last play left, so the sink's count starts here
+			sink.stop();
+			play.begin(sink.framePosition());
+			if(play.cancelled) {
+				return;
+			}
+			sink.start();
+
+			long readFrame = play.startFrame;
+			long endFrame = play.endFrame;
+			//frames written to the sink, and the frame the skipper last resumed at
+			long written = 0;
+			long resumeFrame = readFrame;
+			long[] skip = null;
+			long nextProgress = System.nanoTime();
+			long nextSample = nextProgress;
+			while(play.cancelled == false) {
+				//keeps the ring full, stopping reads at the start of each skip
+				while(readFrame < endFrame && ring.free() > 0) {
+					long readEnd = endFrame;
+					if(play.skipper != null) {
+						if(skip == null) {
+							//the search runs ahead of the reads, not just of what is heard
+							skip = play.skipper.nextSkip(resumeFrame, readFrame);
+						}
+						if(skip != null) {
+							if(readFrame >= skip[0]) {
+								if(readFrame < skip[1] && skip[1] < endFrame) {
+									play.jump(written + ring.size(), skip[1]);
+									readFrame = skip[1];
+									resumeFrame = readFrame;
+								}
+								skip = null;
+								continue;
+							}
+							readEnd = Math.min(readEnd, skip[0]);
+						}
+					}
+					int copied = ring.fill(source, readFrame, (int)Math.min(Integer.MAX_VALUE, readEnd - readFrame));
+					if(copied == 0) {
+						//the file is shorter than it was
+						endFrame = readFrame;
+						break;
+					}
+					readFrame += copied;
+				}
+				if(ring.size() == 0) {
+					break;
+				}
+				int n = ring.drainTo(sink, blockFrames);
+				written += n;
+				if(n == 0 && play.cancelled == false) {
+					Thread.sleep(1);
+				}
+				if(play.listeners != null) {
+					long now = System.nanoTime();
+					if(now >= nextSample) {
+						nextSample = now + positionIntervalNanos;
+						publishPosition(play);
+					}
+					if(now >= nextProgress) {
+						nextProgress = now + PROGRESS_INTERVAL_NANOS;
+						notifyProgress(play);
+					}
+				}
+			}
+
+			//waits for the sink to render the last frames, giving up if it stops counting
+			long lastPlayed = -1;
+			long stalledSince = System.nanoTime();
+			final long maxStallNanos = (long)(4e9 * sinkBufferFrames / source.frameRate()) + 100 * 1000000L;
+			while(play.cancelled == false) {
+				long played = sink.framePosition() - play.basePosition;
+				if(played >= written) {
+					break;
+				}
+				long now = System.nanoTime();
+				if(played != lastPlayed) {
+					lastPlayed = played;
+					stalledSince = now;
+				}
+				else if(now - stalledSince > maxStallNanos) {
+					break;
+				}
+				if(play.listeners != null) {
+					publishPosition(play);
+					if(now >= nextProgress) {
+						nextProgress = now + PROGRESS_INTERVAL_NANOS;
+						notifyProgress(play);
+					}
+				}
+				Thread.sleep(Math.min(DRAIN_POLL_MILLIS, Math.max(1, positionIntervalNanos / 1000000L)));
+			}
+
+			synchronized(lock) {
+				if(play.cancelled == false) {
+					play.stoppedFrame = endFrame;
+					play.done = true;
+					if(play.listeners != null) {
+						status = PrecisionPlayer.Status.READY;
+						notifyEvent(PrecisionEvent.EventCode.EOM, endFrame, null);
+					}
+				}
+			}
+		}
+
+		private void publishPosition(Play play) {
+			long position = sink.framePosition();
+			long now = System.nanoTime();
+			long frame = play.hearingFrame(position);
+			//carried forward no further than the frames heard without a jump
+			clock.publish(frame, now, source.frameRate(), Math.min(play.endFrame, play.lastFrameOfRun()));
+		}
+
+		private void notifyProgress(Play play) {
+			events.progress(play.hearingFrame(sink.framePosition()));
+		}
+
+		private void fail(Play play, String message) {
+			if(play.listeners != null) {
+				synchronized(lock) {
+					if(play.cancelled == false) {
+						status = PrecisionPlayer.Status.READY;
+						notifyEvent(PrecisionEvent.EventCode.ERROR, -1, message);
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * One playback, and where in the file the frames written for it came from.
+	 */
+	private static class Play {
+
+		final long startFrame;
+		final long endFrame;
+		//null for short intervals
+		final List<PrecisionListener> listeners;
+		final SilenceSkipper skipper;
+		volatile boolean cancelled;
+		//the frame main playback stopped or ended at, once it has
+		volatile long stoppedFrame = -1;
+		//set once the last frame has been heard
+		boolean done;
+
+		//the sink's position when the play began, and the frames written from which each run of consecutive file frames starts
+		long basePosition = -1;
+		private final List<long[]> runs = new ArrayList<long[]>();
+
+		Play(long startFrame, long endFrame, List<PrecisionListener> listeners, SilenceSkipper skipper) {
+			this.startFrame = startFrame;
+			this.endFrame = endFrame;
+			this.listeners = listeners;
+			this.skipper = skipper;
+		}
+
+		synchronized void begin(long sinkPosition) {
+			basePosition = sinkPosition;
+			runs.add(new long[] {0, startFrame});
+		}
+
+		/**
+		 * Records that frames written from <code>writtenFrame</code> on come from <code>fileFrame</code> on.
+		 */
+		synchronized void jump(long writtenFrame, long fileFrame) {
+			runs.add(new long[] {writtenFrame, fileFrame});
+		}
+
+		/**
+		 * @param sinkPosition The sink's current position
+		 * @return The frame of the file being heard
+		 */
+		synchronized long hearingFrame(long sinkPosition) {
+			if(basePosition < 0) {
+				return startFrame;
+			}
+			long played = Math.max(0, sinkPosition - basePosition);
+			int i = runs.size() - 1;
+			while(i > 0 && runs.get(i)[0] > played) {
+				i--;
+			}
+			//runs before the one being heard are never needed again
+			if(i > 0) {
+				runs.subList(0, i).clear();
+			}
+			long[] run = runs.get(0);
+			return Math.min(endFrame - 1, run[1] + (played - run[0]));
+		}
+
+		/**
+		 * @return The last frame of the file written before the next jump after the frame last found by <code>hearingFrame()</code>, or <code>Long.MAX_VALUE</code> if no jump has been written
+		 */
+		synchronized long lastFrameOfRun() {
+			if(runs.size() < 2) {
+				return Long.MAX_VALUE;
+			}
+			return runs.get(0)[1] + (runs.get(1)[0] - runs.get(0)[0]) - 1;
+		}
+	}
+
+
+
+	/* simple overridable functions */
+
+
+	public void playAt(long frame) throws IllegalArgumentException {
+		playAt(frame, lastFrame);
+	}
+
+	public void playAt(long startFrame, long endFrame) throws IllegalArgumentException {
+		playAt(startFrame, endFrame, listeners);
+	}
+
+	public void playShortInterval(long startFrame, long endFrame) throws IllegalArgumentException {
+		playAt(startFrame, endFrame, null);
+	}
+
+	public PrecisionPlayer.Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Adds a new listener to receive updates from this player.
+	 *
+	 * @param listener The listener to receive events
+	 */
+	public void addListener(PrecisionListener listener) {
+		listeners.add(listener);
+	}
+
+	/* default/empty but overridable implementations */
+
+
+	/**
+	 * Loudness would have to be applied to the samples, which the program has no use for yet.
+	 */
+	public boolean isLoudnessControlSupported() {
+		return false;
+	}
+
+	public int getLoudness() {
+		return 100;
+	}
+
+	public void setLoudness(int loudness) {}
+	public void queueShortInterval(long startFrame, long endFrame) {}
+	public void queuePlayAt(long frame) {}
+
+
+	/* custom methods */
+
+
+	public PlaybackClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Takes effect at the next play call.
+	 */
+	public void setSilenceSkipper(SilenceSkipper skipper) {
+		this.skipper = skipper;
+	}
+
+	/**
+	 * @return The dispatcher of this player's events, whose counters show whether listeners keep up
+	 */
+	public PrecisionEventDispatcher getEventDispatcher() {
+		return events;
+	}
+
+	/**
+	 * Queues notification for the dispatcher's thread.
+	 *
+	 * @param code The event code
+	 * @param frame The audio frame of the event
+	 */
+	private void notifyEvent(PrecisionEvent.EventCode code, long frame, String errorMessage) {
+		events.dispatch(code, frame, errorMessage);
+	}
+}
@@ -0,0 +1,56 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.javasoundplayer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * An <code>AudioSink</code> that renders to the default sound card through a <code>SourceDataLine</code>.
+ *
+ * The position is the line's <code>getLongFramePosition()</code>, which counts the frames that have left the line's buffer.
+ */
+public class LineSink implements AudioSink {
+
+	private SourceDataLine line;
+
+	public void open(AudioFormat format, int bufferFrames) throws LineUnavailableException {
+		line = AudioSystem.getSourceDataLine(format);
+		line.open(format, bufferFrames * format.getFrameSize());
+	}
+
+	public void start() {
+		line.start();
+	}
+
+	public void stop() {
+		line.stop();
+		line.flush();
+	}
+
+	public int write(byte[] buffer, int offset, int length) {
+		return line.write(buffer, offset, length);
+	}
+
+	public long framePosition() {
+		return line.getLongFramePosition();
+	}
+
+	public void close() {
+		line.close();
+	}
+}
@@ -0,0 +1,113 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.javasoundplayer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An <code>AudioSink</code> that discards frames, rendering them in real time as a sound card would, so a player can run headless.
+ *
+ * The sink holds as many frames as it was opened with, and renders them at the format's frame rate while started.
+ * When it runs out of frames it waits for more, without counting the wait, like a line that underruns.
+ */
+public class NullSink implements AudioSink {
+
+	private double framesPerNano;
+	private int frameSize;
+	private int bufferFrames;
+
+	//frames rendered as of startNanos, and frames written, since the sink was opened
+	private long rendered;
+	private long written;
+	private long startNanos;
+	private boolean started;
+
+	public synchronized void open(AudioFormat format, int bufferFrames) {
+		framesPerNano = format.getFrameRate() / 1e9;
+		frameSize = format.getFrameSize();
+		this.bufferFrames = bufferFrames;
+	}
+
+	public synchronized void start() {
+		if(started == false) {
+			started = true;
+			startNanos = System.nanoTime();
+		}
+	}
+
+	public synchronized void stop() {
+		rendered = framePosition();
+		written = rendered;
+		started = false;
+		notifyAll();
+	}
+
+	public int write(byte[] buffer, int offset, int length) {
+		final int numFrames = length / frameSize;
+		int done = 0;
+		while(done < numFrames) {
+			synchronized(this) {
+				int room = (int)(bufferFrames - (written - framePosition()));
+				if(room > 0) {
+					int n = Math.min(room, numFrames - done);
+					consume(buffer, offset + done * frameSize, n * frameSize);
+					written += n;
+					done += n;
+					continue;
+				}
+				if(started == false) {
+					//nothing will make room until the sink is started, as with a stopped line
+					break;
+				}
+			}
+			try {
+				Thread.sleep(1);
+			}
+			catch(InterruptedException e) {
+				break;
+			}
+		}
+		return done * frameSize;
+	}
+
+	public synchronized long framePosition() {
+		if(started) {
+			long now = System.nanoTime();
+			long position = rendered + (long)((now - startNanos) * framesPerNano);
+			if(position >= written) {
+				//underrun, the clock waits for the next frames
+				rendered = written;
+				startNanos = now;
+				return written;
+			}
+			return position;
+		}
+		return rendered;
+	}
+
+	public synchronized void close() {
+		stop();
+	}
+
+	/**
+	 * Called with every block of frames written, while the sink's lock is held.
+	 *
+	 * @param buffer The frames
+	 * @param offset The index of the first byte written
+	 * @param length The number of bytes written
+	 */
+	protected void consume(byte[] buffer, int offset, int length) {
+	}
+}
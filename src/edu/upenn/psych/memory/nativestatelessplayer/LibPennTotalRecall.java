@@ -24,6 +24,9 @@ import com.sun.jna.Native;
  * 
  * WARNING if using FMOD implementation: streamPosition() must be called frequently in order to cause FMOD's system to update.
  * 
+ * The library keeps a session for one file open between plays, its audio system and stream, so starting playback only has to seek.
+ * Calls are synchronized, so opening a session never releases the stream from under a play in another thread.
+ * 
  * @author Yuvi Masory
  */
 public final class LibPennTotalRecall {
@@ -39,6 +42,24 @@ public final class LibPennTotalRecall {
 	
 	public static final LibPennTotalRecall instance = new LibPennTotalRecall();
 	
+	/**
+	 * Tells native library to prepare a file for playback, closing the session of any other file.
+	 * 
+	 * Optional, <code>startPlayback()</code> opens the session itself when given another file, but the first play is then slower.
+	 * 
+	 * 0 return value indicates success.
+	 * Negative return values indicate an error, with the same codes as <code>startPlayback()</code>.
+	 * 
+	 * @param canonicalPath File path, which must be passed to <code>startPlayback()</code> exactly the same
+	 * @return Return-code, see above
+	 */
+	public synchronized native int openSession(String canonicalPath);
+	
+	/**
+	 * Tells native library to stop any playback and release the current file and audio system.
+	 */
+	public synchronized native void closeSession();
+	
 	/**
 	 * Tells native library to playback audio immediately.
 	 * 
@@ -51,35 +72,36 @@ public final class LibPennTotalRecall {
 	 * 		-2 - no audio devices found
 	 * 		-3 - unable to find or use file
 	 * 		-4 - inconsistent state (e.g. <code>playbackInProgress()</code>)
+	 * 		-5 - unable to seek to <code>startFrame</code>
 	 * 
 	 * @param canonicalPath File path
 	 * @param startFrame First frame of audio in the file to render
 	 * @param endFrame Last frame of audio in the file to render
 	 * @return Return-code, see above
 	 */
-	public native int startPlayback(String canonicalPath, long startFrame, long endFrame);
+	public synchronized native int startPlayback(String canonicalPath, long startFrame, long endFrame);
 	
 
 	/**
 	 * Tells native library to stop audio playback immediately.
 	 * 
-	 * Guarantees <code>playbackInProgress() == false</code> post-condition.
+	 * Guarantees <code>playbackInProgress() == false</code> post-condition. The session stays open.
 	 * 
 	 * @return The hearing frame, relative to start frame, or -1 if audio not playing
 	 */
-	public native long stopPlayback();
+	public synchronized native long stopPlayback();
 	
 	/**
 	 * Asks the native library for the hearing frame.
 	 * 
 	 * @return The hearing frame, relative to start frame, or -1 if audio not playing
 	 */
-	public native long streamPosition();
+	public synchronized native long streamPosition();
 	
 	/**
 	 * Asks the native library whether audio is currently being rendered.
 	 */
-	public native boolean playbackInProgress();
+	public synchronized native boolean playbackInProgress();
 	
 	/**
 	 * Returns the version of the native library being used.
@@ -18,82 +18,76 @@ import info.Constants;
 import info.SysInfo;
 
 import java.io.File;
-import java.util.List;
 
 import behaviors.UpdatingAction;
 
+import edu.upenn.psych.memory.precisionplayer.PlaybackClock;
 import edu.upenn.psych.memory.precisionplayer.PrecisionEvent;
-import edu.upenn.psych.memory.precisionplayer.PrecisionEventLauncher;
-import edu.upenn.psych.memory.precisionplayer.PrecisionListener;
+import edu.upenn.psych.memory.precisionplayer.PrecisionEventDispatcher;
 import edu.upenn.psych.memory.precisionplayer.PrecisionPlayer;
+import edu.upenn.psych.memory.precisionplayer.SilenceSkipper;
 
 public class NativeStatelessPlaybackThread extends Thread {
 	
+	private static final long PROGRESS_INTERVAL_NANOS = 30 * 1000000L;
+	
 	private final long startFrame;
 	private final long endFrame;
-	private final List<PrecisionListener> listeners;
+	//null for short intervals
+	private final PrecisionEventDispatcher events;
 	private final NativeStatelessPlayer myPlayer;
 	private final File audioFile;
+	private final SilenceSkipper skipper;
+	private final PlaybackClock clock;
+	private final double frameRate;
+	private final int positionIntervalMillis;
 	private LibPennTotalRecall myLib;
 	
 	private volatile boolean finish;
+	private volatile long stoppedFrame = -1;
+	
+	//the native stream only plays one range, so skipping silence restarts it, and its positions count from the frame it was last started at
+	private volatile long stretchStartFrame;
+	//held while the native stream is restarted, so stopping never comes in between
+	private final Object stretchLock = new Object();
 	
-	protected NativeStatelessPlaybackThread(LibPennTotalRecall lib, NativeStatelessPlayer player, File file, long startFrame, long endFrame, List<PrecisionListener> listeners) {
+	/**
+	 * @param clock The clock to publish positions to, <code>null</code> for short intervals
+	 * @param frameRate The frame rate of the audio file
+	 * @param positionIntervalMillis How often to read the stream's position and publish it
+	 */
+	protected NativeStatelessPlaybackThread(LibPennTotalRecall lib, NativeStatelessPlayer player, File file, long startFrame, long endFrame, PrecisionEventDispatcher events, SilenceSkipper skipper,
+			PlaybackClock clock, double frameRate, int positionIntervalMillis) {
 		this.audioFile = file;
-		this.listeners = listeners;
+		this.events = events;
 		this.startFrame = startFrame;
 		this.endFrame = endFrame;
 		this.myPlayer = player;
 		this.myLib = lib;
+		this.skipper = skipper;
+		this.clock = clock;
+		this.frameRate = frameRate;
+		this.positionIntervalMillis = positionIntervalMillis;
 		this.finish = false;
+		this.stretchStartFrame = startFrame;
 	}
 
 	@Override
 	public void run() {
+		long heardFrame = startFrame;
 		try {
 //			System.out.println(getClass().getName() + ": " + startFrame + " to " + endFrame);
-			int returnCode = myLib.startPlayback(audioFile.getAbsolutePath(), startFrame, endFrame);
-
-			if(returnCode < 0) {
-				myLib.stopPlayback();
-				String message = "Unable to start playback.\n";
-				switch(returnCode) {
-				case(-2): 
-					message += "No audio device found."; 
-				break;
-				case(-3): 
-					message += "Unable to find or open file."; 
-				break;
-				case(-4):
-					message += "Inconsistent state. Trying to repair";
-				break;
-				case(-5):
-					message += "I/O error.";
-				break;
-				default: 
-					String os = System.getProperty("os.name");
-					if(os != null && os.toLowerCase().contains("linux")) {
-						message += "\n" + Constants.programName + " prefers exclusive access to the sound system.\n" +
-						"Please close all sound-emitting programs and web pages and try again.";
-					}
-					else {
-						message += "Unspecified error."; 						
-					}
-					break;
-				}
-				if(listeners != null) {
-					myPlayer.setStatus(PrecisionPlayer.Status.READY);
-					PrecisionEventLauncher trigger = new PrecisionEventLauncher(PrecisionEvent.EventCode.ERROR, -1, message, listeners);
-					trigger.start();
-					return;
-				}
+			if(startNativePlayback(startFrame) == false) {
+				return;
 			}
 
-
-
+			long[] skip = null;
+			long nextProgress = System.nanoTime();
+			long lastElapsed = -1;
 			while(finish == false) {
 				long framesElapsed = myLib.streamPosition();				
-				long curFrame = framesElapsed + startFrame;				
+				long sampleNanos = System.nanoTime();
+				long curFrame = framesElapsed + stretchStartFrame;
 				if(curFrame >= endFrame) {
 					if(curFrame > Integer.MAX_VALUE) {
 						//apparently this is a result of FMOD code currently not self-stopping, Issue 11
@@ -105,11 +99,37 @@ public class NativeStatelessPlaybackThread extends Thread {
 					}
 				}
 				
-				if(listeners != null) {
-					if(framesElapsed > 0) {
-						for(PrecisionListener ppl: listeners) {
-							ppl.progress(curFrame);
+				if(framesElapsed > 0) {
+					heardFrame = Math.min(curFrame, endFrame);
+					//the stream's position moves a mixer block at a time, so the moment it moves is the moment it is exact
+					if(clock != null && framesElapsed != lastElapsed) {
+						clock.publish(heardFrame, sampleNanos, frameRate, endFrame);
+					}
+					lastElapsed = framesElapsed;
+					//listeners only need about 30 a second, the clock serves anyone who needs more
+					if(events != null && sampleNanos >= nextProgress) {
+						nextProgress = sampleNanos + PROGRESS_INTERVAL_NANOS;
+						UpdatingAction.getStamps().add(System.currentTimeMillis());
+						events.progress(curFrame);
+					}
+				}
+				if(skipper != null && framesElapsed > 0 && finish == false) {
+					if(skip == null) {
+						skip = skipper.nextSkip(stretchStartFrame, curFrame);
+					}
+					if(skip != null && curFrame >= skip[0]) {
+						//a stretch ending at or past endFrame is played out, so EOM still comes from the native stream
+						if(curFrame < skip[1] && skip[1] < endFrame) {
+							if(resumeAt(skip[1]) == false) {
+								return;
+							}
+							heardFrame = skip[1];
+							if(clock != null) {
+								clock.publish(skip[1], System.nanoTime(), frameRate, endFrame);
+							}
+							events.progress(skip[1]);
 						}
+						skip = null;
 					}
 				}
 				if(myLib.playbackInProgress() == false) {
@@ -124,8 +144,7 @@ public class NativeStatelessPlaybackThread extends Thread {
 					break;
 				}
 				try {
-					UpdatingAction.getStamps().add(System.currentTimeMillis());
-					Thread.sleep(30);
+					Thread.sleep(positionIntervalMillis);
 				}
 				catch(InterruptedException e) {
 					e.printStackTrace();
@@ -133,12 +152,12 @@ public class NativeStatelessPlaybackThread extends Thread {
 			}
 			if(finish == false) {
 				myLib.stopPlayback(); //this is EOM. we must still call stopPlayback() to close the native stream 
-				if(listeners != null) {					
+				heardFrame = endFrame;
+				if(events != null) {					
 					//there is no way to guarantee the hearing frame at this line is actually the final frame
 					//however, PrecisionPlayer requires EOM events report that they occur at the final frame, so we oblige
 					myPlayer.setStatus(PrecisionPlayer.Status.READY);
-					PrecisionEventLauncher trigger = new PrecisionEventLauncher(PrecisionEvent.EventCode.EOM, endFrame, null, listeners);
-					trigger.start();
+					events.dispatch(PrecisionEvent.EventCode.EOM, endFrame, null);
 				}
 			}
 		}
@@ -151,13 +170,17 @@ public class NativeStatelessPlaybackThread extends Thread {
 				t2.printStackTrace();
 			}
 
-			if(listeners != null) {
+			if(events != null) {
 				myPlayer.setStatus(PrecisionPlayer.Status.READY);
-				PrecisionEventLauncher trigger = new PrecisionEventLauncher(PrecisionEvent.EventCode.ERROR, -1, t.getMessage(), listeners);
-				trigger.start();
+				events.dispatch(PrecisionEvent.EventCode.ERROR, -1, t.getMessage());
 				t.printStackTrace();
 			}
 		}
+		finally {
+			if(clock != null) {
+				clock.publishStopped(stoppedFrame >= 0 ? stoppedFrame : heardFrame);
+			}
+		}
 
 		if(myLib.playbackInProgress()) {
 			try{
@@ -169,9 +192,77 @@ public class NativeStatelessPlaybackThread extends Thread {
 		}
 	}
 	
+	/**
+	 * Starts the native stream at a frame, reporting errors to listeners.
+	 * 
+	 * @return <code>false</code> iff the stream did not start and listeners have been told so
+	 */
+	private boolean startNativePlayback(long frame) {
+		int returnCode = myLib.startPlayback(audioFile.getAbsolutePath(), frame, endFrame);
+
+		if(returnCode < 0) {
+			myLib.stopPlayback();
+			String message = "Unable to start playback.\n";
+			switch(returnCode) {
+			case(-2): 
+				message += "No audio device found."; 
+			break;
+			case(-3): 
+				message += "Unable to find or open file."; 
+			break;
+			case(-4):
+				message += "Inconsistent state. Trying to repair";
+			break;
+			case(-5):
+				message += "I/O error.";
+			break;
+			default: 
+				String os = System.getProperty("os.name");
+				if(os != null && os.toLowerCase().contains("linux")) {
+					message += "\n" + Constants.programName + " prefers exclusive access to the sound system.\n" +
+					"Please close all sound-emitting programs and web pages and try again.";
+				}
+				else {
+					message += "Unspecified error."; 						
+				}
+				break;
+			}
+			if(events != null) {
+				myPlayer.setStatus(PrecisionPlayer.Status.READY);
+				events.dispatch(PrecisionEvent.EventCode.ERROR, -1, message);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Jumps over a stretch of silence by restarting the native stream, unless playback has been stopped in the meantime.
+	 * 
+	 * @return <code>false</code> iff the stream did not restart and listeners have been told so
+	 */
+	private boolean resumeAt(long frame) {
+		synchronized(stretchLock) {
+			if(finish) {
+				return true;
+			}
+			myLib.stopPlayback();
+			stretchStartFrame = frame;
+			return startNativePlayback(frame);
+		}
+	}
+
+	/**
+	 * Stops the native stream.
+	 * 
+	 * @return The hearing frame, counting from the start of the audio file
+	 */
 	protected long stopPlayback() {
-		finish = true;		
-		long stopFrame = myLib.stopPlayback();
-		return stopFrame;
+		synchronized(stretchLock) {
+			finish = true;
+			long stopFrame = myLib.stopPlayback();
+			stoppedFrame = Math.min(stretchStartFrame + stopFrame, endFrame);
+			return stretchStartFrame + stopFrame;
+		}
 	}
 }
@@ -17,28 +17,36 @@ package edu.upenn.psych.memory.nativestatelessplayer;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
+import edu.upenn.psych.memory.precisionplayer.PlaybackClock;
 import edu.upenn.psych.memory.precisionplayer.PrecisionEvent;
-import edu.upenn.psych.memory.precisionplayer.PrecisionEventLauncher;
+import edu.upenn.psych.memory.precisionplayer.PrecisionEventDispatcher;
 import edu.upenn.psych.memory.precisionplayer.PrecisionListener;
 import edu.upenn.psych.memory.precisionplayer.PrecisionPlayer;
+import edu.upenn.psych.memory.precisionplayer.SilenceSkipper;
 
 public class NativeStatelessPlayer implements PrecisionPlayer {
 	
+	private static final int DEFAULT_POSITION_INTERVAL_MILLIS = 5;
+	
 	private PrecisionPlayer.Status status;
 	
 	private List<PrecisionListener> listeners;
+	private final PrecisionEventDispatcher events;
 	
 	private File audioFile;
 	private long lastFrame;
-	private long previousStartFrame;
+	private double frameRate;
+	private volatile SilenceSkipper skipper;
+	private final PlaybackClock clock = new PlaybackClock();
+	private final int positionIntervalMillis;
 	
 	private NativeStatelessPlaybackThread mainThread;
 	private NativeStatelessPlaybackThread shortThread;
@@ -49,8 +57,20 @@ public class NativeStatelessPlayer implements PrecisionPlayer {
 	 * Creates an new player, with status <code>BUSY</code>.
 	 */
 	public NativeStatelessPlayer() {
+		this(DEFAULT_POSITION_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Creates an new player, with status <code>BUSY</code>, that publishes the position of main playback at the provided interval.
+	 * 
+	 * @param positionIntervalMillis How often the position is read from the native library, every read costs a call through JNA
+	 */
+	public NativeStatelessPlayer(int positionIntervalMillis) {
+		this.positionIntervalMillis = Math.max(1, positionIntervalMillis);
 		status = PrecisionPlayer.Status.BUSY;
-		listeners = new ArrayList<PrecisionListener>();
+		//the dispatcher reads the list while listeners may still be added
+		listeners = new CopyOnWriteArrayList<PrecisionListener>();
+		events = new PrecisionEventDispatcher(listeners, "NativeStatelessPlayer events");
 //		System.out.println("using: " + lib.getLibraryName() + ", revision " + lib.getLibraryRevisionNumber());
 	}
 	
@@ -62,13 +82,17 @@ public class NativeStatelessPlayer implements PrecisionPlayer {
 		
 		AudioInputStream ais = AudioSystem.getAudioInputStream(audioFile);
 		AudioFormat format = ais.getFormat();
-		if(format.getChannels() > 1) {
-			throw new UnsupportedAudioFileException(getClass() + " only supports mono audio at present");
-		}
-		if(format.getFrameSize() != 2) {
+		if(format.getFrameSize() != 2 * format.getChannels()) {
 			throw new UnsupportedAudioFileException(getClass() + " only supports 16-bit audio at present");
 		}
 		lastFrame = ais.getFrameLength() - 1;
+		frameRate = format.getFrameRate();
+		
+		//warms up the audio system and stream now, so the first play is as quick as the rest
+		int returnCode = lib.openSession(audioFile.getAbsolutePath());
+		if(returnCode < 0) {
+			System.err.println("could not open native playback session (" + returnCode + "), will try again at the first play");
+		}
 	}
 	
 	
@@ -84,14 +108,17 @@ public class NativeStatelessPlayer implements PrecisionPlayer {
 			if(audioFile != null) {
 				if((mainThread == null || mainThread.isAlive() == false) && (shortThread == null || shortThread.isAlive() == false)) {
 
-					NativeStatelessPlaybackThread nThread = new NativeStatelessPlaybackThread(lib, this, audioFile, startFrame, endFrame, players);  
+					//short intervals are heard in full
+					SilenceSkipper threadSkipper = players == null ? null : skipper;
+					NativeStatelessPlaybackThread nThread = new NativeStatelessPlaybackThread(lib, this, audioFile, startFrame, endFrame, players == null ? null : events, threadSkipper,
+							players == null ? null : clock, frameRate, positionIntervalMillis);  
 
 					if(players != null) {
-						previousStartFrame = startFrame;
 						mainThread = nThread;
 						status = PrecisionPlayer.Status.PLAYING;
-						mainThread.start();
+						//queued first, so no progress comes before it
 						notifyEvent(PrecisionEvent.EventCode.PLAYING, startFrame, null);
+						mainThread.start();
 					}
 					else {
 						shortThread = nThread;
@@ -116,8 +143,7 @@ public class NativeStatelessPlayer implements PrecisionPlayer {
 		try {
 			if(audioFile != null && status == PrecisionPlayer.Status.PLAYING) {
 				if(mainThread != null) {
-					long framesPlayed = mainThread.stopPlayback();
-					long absoluteFrame = previousStartFrame + framesPlayed;
+					long absoluteFrame = mainThread.stopPlayback();
 					status = PrecisionPlayer.Status.READY;
 					notifyEvent(PrecisionEvent.EventCode.STOPPED, absoluteFrame, null);
 					return absoluteFrame;
@@ -153,8 +179,10 @@ public class NativeStatelessPlayer implements PrecisionPlayer {
 		playAt(frame, lastFrame);
 	}
 	
-	public void kill() {
+	public void close() {
 		stop();
+		lib.closeSession();
+		events.shutdown();
 	}
 
 	public void playAt(long startFrame, long endFrame) throws IllegalArgumentException {
@@ -200,15 +228,32 @@ public class NativeStatelessPlayer implements PrecisionPlayer {
 	/* custom methods */
 	
 	
+	public PlaybackClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Takes effect at the next play call.
+	 */
+	public void setSilenceSkipper(SilenceSkipper skipper) {
+		this.skipper = skipper;
+	}
+
+	/**
+	 * @return The dispatcher of this player's events, whose counters show whether listeners keep up
+	 */
+	public PrecisionEventDispatcher getEventDispatcher() {
+		return events;
+	}
+
 	/**
-	 * Launches notification in a new thread.
+	 * Queues notification for the dispatcher's thread.
 	 * 
 	 * @param code The event code
 	 * @param frame The audio frame of the event
 	 */
 	private void notifyEvent(PrecisionEvent.EventCode code, long frame, String errorMessage) {
-		PrecisionEventLauncher trigger = new PrecisionEventLauncher(code, frame, errorMessage, listeners);
-		trigger.start();
+		events.dispatch(code, frame, errorMessage);
 	}
 
 
@@ -0,0 +1,91 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.precisionplayer;
+
+/**
+ * The latest position of main playback, stamped with the time it was taken, which readers carry forward to the present.
+ *
+ * <p>A <code>PrecisionPlayer</code> publishes a sample every few milliseconds from its playback thread, so the display can find the hearing frame
+ * at the moment it paints without asking the player, whose position may be slow or unsafe to read from other threads.
+ *
+ * <p>Only one thread may publish at a time, which players guarantee by publishing only from the thread playing main playback.
+ * Reading never blocks: a reader that overlaps a publish reads again.
+ */
+public class PlaybackClock {
+
+	//odd while a sample is being written
+	private volatile long sequence;
+
+	private volatile long frame = -1;
+	private volatile long nanoTime;
+	private volatile double framesPerNano;
+	private volatile long limitFrame;
+
+	/**
+	 * Publishes a sample. Called only by the thread playing main playback.
+	 *
+	 * @param frame The frame being heard
+	 * @param nanoTime The <code>System.nanoTime()</code> at which it was heard
+	 * @param framesPerSecond The rate at which the frames are advancing, 0 if playback has stopped
+	 * @param limitFrame The frame past which playback cannot be carried forward, such as the end of playback
+	 */
+	public void publish(long frame, long nanoTime, double framesPerSecond, long limitFrame) {
+		sequence++;
+		this.frame = frame;
+		this.nanoTime = nanoTime;
+		this.framesPerNano = framesPerSecond / 1e9;
+		this.limitFrame = limitFrame;
+		sequence++;
+	}
+
+	/**
+	 * Publishes that playback has stopped at a frame.
+	 *
+	 * @see #publish(long, long, double, long)
+	 */
+	public void publishStopped(long frame) {
+		publish(frame, System.nanoTime(), 0, frame);
+	}
+
+	/**
+	 * Returns the frame heard at a time, carrying the latest sample forward at its rate, but never past its limit.
+	 *
+	 * @param now A <code>System.nanoTime()</code>, normally the present
+	 * @return The frame, the frame playback stopped at if it is not advancing, or -1 if nothing has been published
+	 */
+	public long frameAt(long now) {
+		while(true) {
+			final long before = sequence;
+			final long sampleFrame = frame;
+			final long sampleNanos = nanoTime;
+			final double rate = framesPerNano;
+			final long limit = limitFrame;
+			if((before & 1) == 0 && sequence == before) {
+				if(sampleFrame < 0 || rate == 0) {
+					return sampleFrame;
+				}
+				return Math.min(limit, sampleFrame + (long)(Math.max(0, now - sampleNanos) * rate));
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> iff the latest sample is of playback in progress
+	 */
+	public boolean isAdvancing() {
+		return framesPerNano > 0;
+	}
+}
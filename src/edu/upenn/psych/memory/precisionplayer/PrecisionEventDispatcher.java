@@ -0,0 +1,264 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.precisionplayer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Delivers a <code>PrecisionPlayer</code>'s events and progress notifications to its listeners, in the order they were sent, from one thread of its own.
+ *
+ * <p>Sending only adds to a bounded queue, so playback threads never run listener code and no thread is started per event.
+ * Progress that has not been delivered yet is replaced by newer progress instead of queuing behind it,
+ * and progress sent after main playback has stopped, ended, or failed is dropped until main playback starts again, so listeners never hear of progress after a stop.
+ * Sending never waits: if the queue is full, progress is dropped, and an event is queued anyway after dropping the oldest undelivered progress, if any.
+ * Events are rare and must not be lost, so only progress is bounded, and a listener may send from the dispatcher's own thread.
+ *
+ * <p>The queue depth and the time events wait in it are counted, to show whether listeners keep up.
+ */
+public class PrecisionEventDispatcher {
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private final List<PrecisionListener> listeners;
+	private final String name;
+	private final int capacity;
+
+	//guarded by this
+	private final ArrayDeque<Entry> queue;
+	private Thread thread;
+	private boolean playing;
+	private boolean shutdown;
+
+	private int maxDepth;
+	private long numDelivered;
+	private long numCoalesced;
+	private long numDropped;
+	private long totalLatencyNanos;
+	private long maxLatencyNanos;
+
+	/**
+	 * Creates a dispatcher that queues progress while fewer than 64 notifications are undelivered.
+	 *
+	 * @param listeners The listeners to notify, which may change while the dispatcher runs if the list is safe to read while it changes
+	 * @param name The name of the dispatcher's thread
+	 */
+	public PrecisionEventDispatcher(List<PrecisionListener> listeners, String name) {
+		this(listeners, name, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param listeners The listeners to notify, which may change while the dispatcher runs if the list is safe to read while it changes
+	 * @param name The name of the dispatcher's thread
+	 * @param capacity The number of undelivered notifications beyond which progress is dropped, events are always queued
+	 */
+	public PrecisionEventDispatcher(List<PrecisionListener> listeners, String name, int capacity) {
+		this.listeners = listeners;
+		this.name = name;
+		this.capacity = Math.max(1, capacity);
+		queue = new ArrayDeque<Entry>(this.capacity);
+	}
+
+	/**
+	 * Queues an event for <code>PrecisionListener.stateUpdated()</code>.
+	 *
+	 * @param code The event code
+	 * @param frame The audio frame of the event
+	 * @param errorMessage The message of <code>ERROR</code> events, <code>null</code> otherwise
+	 */
+	public synchronized void dispatch(PrecisionEvent.EventCode code, long frame, String errorMessage) {
+		if(shutdown) {
+			return;
+		}
+		if(queue.size() >= capacity) {
+			dropOldestProgress();
+		}
+		playing = code == PrecisionEvent.EventCode.PLAYING;
+		enqueue(new Entry(code, frame, errorMessage));
+	}
+
+	/**
+	 * Queues a progress notification for <code>PrecisionListener.progress()</code>, or updates the one already waiting at the end of the queue.
+	 *
+	 * @param frame The frame main playback has reached
+	 */
+	public synchronized void progress(long frame) {
+		if(shutdown || playing == false) {
+			return;
+		}
+		Entry last = queue.peekLast();
+		if(last != null && last.code == null) {
+			//keeps the older time, which is how long the listeners have been waiting for progress
+			last.frame = frame;
+			numCoalesced++;
+			return;
+		}
+		if(queue.size() >= capacity) {
+			numDropped++;
+			return;
+		}
+		enqueue(new Entry(null, frame, null));
+	}
+
+	/**
+	 * Delivers what has been queued and ends the dispatcher's thread. Later notifications are ignored.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+		notifyAll();
+	}
+
+	/**
+	 * @return The number of notifications waiting to be delivered
+	 */
+	public synchronized int queueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * @return The largest number of notifications that have waited at once
+	 */
+	public synchronized int maxQueueDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return The number of notifications delivered
+	 */
+	public synchronized long deliveredCount() {
+		return numDelivered;
+	}
+
+	/**
+	 * @return The number of progress notifications replaced by newer ones before delivery
+	 */
+	public synchronized long coalescedCount() {
+		return numCoalesced;
+	}
+
+	/**
+	 * @return The number of progress notifications dropped because the queue was full
+	 */
+	public synchronized long droppedCount() {
+		return numDropped;
+	}
+
+	/**
+	 * @return The mean time from queuing to delivery, in nanoseconds
+	 */
+	public synchronized long meanLatencyNanos() {
+		return numDelivered == 0 ? 0 : totalLatencyNanos / numDelivered;
+	}
+
+	/**
+	 * @return The longest time from queuing to delivery, in nanoseconds
+	 */
+	public synchronized long maxLatencyNanos() {
+		return maxLatencyNanos;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized String toString() {
+		return name + "[depth " + queue.size() + " (max " + maxDepth + "), delivered " + numDelivered + ", coalesced " + numCoalesced + ", dropped " + numDropped +
+		", latency " + meanLatencyNanos() / 1000 + " us (max " + maxLatencyNanos / 1000 + " us)]";
+	}
+
+	private void enqueue(Entry entry) {
+		queue.addLast(entry);
+		maxDepth = Math.max(maxDepth, queue.size());
+		if(thread == null) {
+			thread = new Thread(new Runnable() {
+				public void run() {
+					deliverAll();
+				}
+			}, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		notifyAll();
+	}
+
+	private void dropOldestProgress() {
+		Iterator<Entry> it = queue.iterator();
+		while(it.hasNext()) {
+			if(it.next().code == null) {
+				it.remove();
+				numDropped++;
+				return;
+			}
+		}
+	}
+
+	private void deliverAll() {
+		while(true) {
+			Entry entry;
+			synchronized(this) {
+				while(queue.isEmpty() && shutdown == false) {
+					try {
+						wait();
+					}
+					catch(InterruptedException e) {
+						return;
+					}
+				}
+				entry = queue.pollFirst();
+				if(entry == null) {
+					return;
+				}
+				long latency = System.nanoTime() - entry.queuedNanos;
+				numDelivered++;
+				totalLatencyNanos += latency;
+				maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+			}
+			for(PrecisionListener lis: listeners) {
+				try {
+					if(entry.code == null) {
+						lis.progress(entry.frame);
+					}
+					else {
+						lis.stateUpdated(new PrecisionEvent(entry.code, entry.frame, entry.errorMessage));
+					}
+				}
+				catch(Throwable t) {
+					//one listener's failure must not silence the rest, or later events
+					t.printStackTrace();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * A queued notification, progress if it has no code.
+	 */
+	private static class Entry {
+
+		private final PrecisionEvent.EventCode code;
+		private final String errorMessage;
+		private final long queuedNanos;
+		private long frame;
+
+		private Entry(PrecisionEvent.EventCode code, long frame, String errorMessage) {
+			this.code = code;
+			this.frame = frame;
+			this.errorMessage = errorMessage;
+			queuedNanos = System.nanoTime();
+		}
+	}
+}
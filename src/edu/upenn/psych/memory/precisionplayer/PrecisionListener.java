@@ -28,8 +28,9 @@ public interface PrecisionListener {
 	 * Since many applications give visual indications of audio progress, implementations should seek to give enough
 	 * progress notifications to support a satisfying video framerate, ideally ~30 notifications per second.
 	 * 
-	 * <p>This notification is given in the same thread as main playback.
-	 * If handlers take too long to run, playback may be disturbed.
+	 * <p>This notification is given in the same independent thread as <code>stateUpdated()</code>, in order with the events,
+	 * and never after main playback has stopped or ended.
+	 * If handlers fall behind, only the latest progress is given.
 	 */
 	public void progress(long frames);
 
@@ -38,8 +39,8 @@ public interface PrecisionListener {
 	 * 
 	 * <p>See <code>PrecisionEvent</code> class for documentation.
 	 * 
-	 * <p>This notification is given in an independent thread.
-	 * Handlers may execute lengthy code without disturbing main playback.
+	 * <p>This notification is given in an independent thread, one per player, in the order the events occurred.
+	 * Handlers may execute lengthy code without disturbing main playback, but later notifications wait for them.
 	 */
 	public void stateUpdated(PrecisionEvent pe);
 }
@@ -245,4 +245,37 @@ public interface PrecisionPlayer {
 	 * @return <code>true</code> iff this <code>PrecisionPlayer</code> supports adjustment and querying of playback loudness
 	 */
 	public boolean isLoudnessControlSupported();
+
+	/**
+	 * Makes main playback jump over the stretches of silence found by the provided <code>SilenceSkipper</code>, or play every frame again.
+	 *
+	 * <p>Progress notifications and the return value of <code>stop()</code> remain frames of the audio file, never of the shortened playback.
+	 * Short-interval playback never skips.
+	 *
+	 * <p>Can be called at any point. Implementations may wait until the next play call for it to take effect.
+	 * Implementations that cannot skip silence may ignore it.
+	 *
+	 * @param skipper The source of stretches to skip, or <code>null</code> to play every frame
+	 */
+	public void setSilenceSkipper(SilenceSkipper skipper);
+
+	/**
+	 * Returns the clock to which main playback publishes its position.
+	 *
+	 * <p>Implementations should publish a sample at least as often as they give progress notifications, ideally every few milliseconds,
+	 * and a stopped sample when main playback ends, so readers can find the hearing frame at any moment without calling the player.
+	 * Short-interval playback does not publish.
+	 *
+	 * @return The clock, the same one for the life of the player
+	 */
+	public PlaybackClock getClock();
+
+	/**
+	 * Stops main playback and releases the audio file and any audio output or threads held since <code>open()</code>.
+	 *
+	 * <p>The player cannot be used afterwards. Short-interval playback may be cut off.
+	 *
+	 * <p>Must be implemented in-thread.
+	 */
+	public void close();
 }
@@ -0,0 +1,35 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.precisionplayer;
+
+/**
+ * Finds the stretches of silence that main playback may jump over, for <code>PrecisionPlayers</code> that support skipping silence.
+ *
+ * <p>A player asks for the next stretch repeatedly while it plays, with the frame it is playing, so an implementation can analyze the audio just ahead of the playhead instead of all at once.
+ * Frames skipped are not heard, but they count as played: progress notifications jump from the start of a stretch to its end, and stay in the audio file's frames throughout.
+ * 
+ * <p>Calls come from the playback thread, so implementations should return quickly.
+ */
+public interface SilenceSkipper {
+
+	/**
+	 * Finds the next stretch of silence to skip.
+	 * 
+	 * @param fromFrame The frame playback started or last resumed at, no stretch returned starts before it
+	 * @param playheadFrame The frame currently playing, which the search should run at least a little ahead of
+	 * @return The first frame skipped and the first frame played again afterwards, or <code>null</code> if no stretch has been found yet
+	 */
+	public long[] nextSkip(long fromFrame, long playheadFrame);
+}
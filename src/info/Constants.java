@@ -123,10 +123,24 @@ public class Constants {
 	public static final String wordpoolFileExtension = "txt";
 	
 	/**
-	 * List of extensions of supported audio file formats, all in lower case.
-	 * The program does not guarantee that every sound file with one of these extension is supported.
+	 * Extension of the sidecar files that cache the waveform's peak pyramid next to the audio file.
 	 */
-	public static final String[] audioFormatsLowerCase = {"wav", "wave"};
+	public static final String peakPyramidFileExtension = "peaks";
+	
+	/**
+	 * Extension of the sidecar files that store whole-file amplitude statistics next to the audio file.
+	 */
+	public static final String amplitudeStatsFileExtension = "ampstats";
+
+	/**
+	 * Extension added to the name of an audio file for the 16-bit PCM transcode the program reads it through, if it cannot read it directly.
+	 */
+	public static final String pcmTranscodeFileExtension = "pcm";
+
+	/**
+	 * Extension of the sidecar files that store the index of speech segments next to the audio file.
+	 */
+	public static final String speechIndexFileExtension = "speech";
 
 	/**
 	 * String used by annotators to mark sound intrusions that aren't a word.
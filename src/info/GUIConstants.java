@@ -81,7 +81,7 @@ public class GUIConstants {
 	/**
 	 * Width in pixels of visualization of one second of audio, prior to any zooming.
 	 * 
-	 * This is also used for the width of the time markings on the waveform.
+	 * The time markings on the waveform are one second apart at this zoom, see {@link components.waveform.ZoomLevel}.
 	 */
 	public static final int zoomlessPixelsPerSecond = 200;
 	
@@ -90,11 +90,6 @@ public class GUIConstants {
 	 */
 	public static final int defaultSliderValue = 100;
 	
-	/**
-	 * Number of pixels added/subtracted to zoomlessPixelsPerSecond for each zoom in/out action.
-	 */
-	public static final int xZoomAmount = 40;
-
 	/**
 	 * The title of the <code>MyFrame</code> when audio is closed.
 	 */
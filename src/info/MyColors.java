@@ -50,6 +50,16 @@ public class MyColors {
 	 */
 	public static final Color firstChannelWaveformColor = Color.BLACK;
 	
+	/**
+	 * Color of waveform of second channel of audio, and of every other channel after it.
+	 */
+	public static final Color secondChannelWaveformColor = new Color(0, 0, 128);
+	
+	/**
+	 * Color of line between the lanes of the channels of audio on waveform.
+	 */
+	public static final Color waveformLaneSeparatorColor = unfocusedColor;
+	
 	/**
 	 * Color of background behind waveform.
 	 */
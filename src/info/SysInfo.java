@@ -15,6 +15,7 @@
 package info;
 
 import java.awt.Event;
+import java.awt.GraphicsEnvironment;
 import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
 import java.io.BufferedReader;
@@ -55,8 +56,11 @@ public class SysInfo {
 	public final int maxInterpolatedPixels;
 	public final int jsInternalBufferSize;
 	public final int jsExternalBufferSize;
+	public final int waveformCacheMegabytes;
+	public final int waveformDataCacheMegabytes;
 	
 	public final double interplationToleratedErrorZoneInSec;
+	public final double waveformSmoothingWindowMillis;
 	
 	public final boolean useMnemonics;
 	public final boolean useAWTFileChoosers;
@@ -190,16 +194,16 @@ public class SysInfo {
 		
 		//detect GNOME/KDE in Linux
 		if(isLinux) {
-			String desktopVar = System.getenv("DESKTOP_SESSION").toLowerCase();
+			String desktopVar = System.getenv("DESKTOP_SESSION");
 			if(desktopVar == null) {
 				isGNOME = false;
 				isKDE = false;
 			}
-			else if(desktopVar.contains("gnome")) {
+			else if(desktopVar.toLowerCase().contains("gnome")) {
 				isGNOME = true;
 				isKDE = false;
 			}
-			else if(desktopVar.contains("kde")) {
+			else if(desktopVar.toLowerCase().contains("kde")) {
 				isKDE = true;
 				isGNOME = false;
 			}
@@ -273,7 +277,8 @@ public class SysInfo {
 		
 
 		//modifier key for menu actions, and its name
-		menuKey = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();		
+		//there is no keyboard without a display, e.g. when making thumbnails from the command line
+		menuKey = GraphicsEnvironment.isHeadless() ? Event.CTRL_MASK : Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();		
 		switch(menuKey) {
 			case(Event.CTRL_MASK): menuKeyString = "Control"; break;
 			case(KeyEvent.META_MASK): menuKeyString = (isLinux ? "Meta" : "Command"); break;
@@ -401,7 +406,10 @@ public class SysInfo {
 		
 		
 		//performance optimiziations
-		chunkSizeInSeconds = (int)Math.ceil(Toolkit.getDefaultToolkit().getScreenSize().getWidth() / GUIConstants.zoomlessPixelsPerSecond);
+		double screenWidth = GraphicsEnvironment.isHeadless() ? UserPrefs.defaultWindowWidth : Toolkit.getDefaultToolkit().getScreenSize().getWidth();
+		chunkSizeInSeconds = (int)Math.ceil(screenWidth / GUIConstants.zoomlessPixelsPerSecond);
+		waveformCacheMegabytes = 64; //a few dozen chunks at typical heights
+		waveformDataCacheMegabytes = 16; //hundreds of chunks' pixel values, or dozens of spectrograms
 		
 		//annotation optimizations
 		mouseMode = true;
@@ -415,6 +423,7 @@ public class SysInfo {
 		//pretty waveform 
 		bandpassFilter = true; //essential for making words discernable
 		useAudioDataSmoothingForWaveform = true; //essential for thickening the waveform
+		waveformSmoothingWindowMillis = 0.9; //about 20 samples either side at 44.1 kHz
 		useWaveformImageDataSmoothing = true; //prettier but blockier
 		antiAliasWaveform = false; //no preference for it
 	}
@@ -214,6 +214,24 @@ public class UserPrefs {
 	public static final String useEmacs = "USE_EMACS";
 	public static final boolean defaultUseEmacs = false;
 	
+	/**
+	 * Key for whether the waveform display shows a spectrogram instead of the waveform.
+	 */
+	public static final String showSpectrogram = "SHOW_SPECTROGRAM";
+	public static final boolean defaultShowSpectrogram = false;
+	
+	/**
+	 * Key for whether main playback jumps over long silences.
+	 */
+	public static final String skipSilence = "SKIP_SILENCE";
+	public static final boolean defaultSkipSilence = false;
+	
+	/**
+	 * Key for the length in milliseconds of the shortest silence main playback jumps over.
+	 */
+	public static final String minSkippedSilence = "MIN_SKIPPED_SILENCE";
+	public static final int defaultMinSkippedSilence = 1000;
+	
 	
 	/**
 	 * Private constructor to prevent instantiation.
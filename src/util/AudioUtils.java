@@ -15,52 +15,96 @@
 package util;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
+import audio.SampleSource;
+
 public class AudioUtils {
 	
 	/**
 	 * Creates an <code>AudioInputStream</code> that iterates only over the desired frames.
 	 * 
-	 * The start and end frames are global variables.
+	 * The frames are read directly out of the <code>SampleSource</code>, so no bytes are read and discarded to reach <code>startFrame</code>.
 	 * 
 	 * @param format The format of the desired <code>AudioInputStream</code>
-	 * @param originalAis The <code>AudioInputStream</code> to be "cropped"
-	 * @return An <code>AudioInputStream</code> cropped from the original one
-	 * @throws IOException If an I/O exception occurs
+	 * @param source The samples to be "cropped"
+	 * @param startFrame The first frame of the stream
+	 * @param endFrame The frame after the last frame of the stream, or a negative number to continue until the end of the source
+	 * @return An <code>AudioInputStream</code> cropped from the source
+	 */
+	public static AudioInputStream createAudioInputStream(AudioFormat format, SampleSource source, long startFrame, long endFrame) {
+		startFrame = Math.max(0, Math.min(startFrame, source.numFrames()));
+		if(endFrame < 0 || endFrame > source.numFrames()) {
+			endFrame = source.numFrames();
+		}
+		long length = Math.max(0, endFrame - startFrame);
+		AudioFormat sourceFormat = new AudioFormat((float)source.frameRate(), 16, source.numChannels(), true, false);
+		AudioInputStream sourceAis = new AudioInputStream(new SampleSourceInputStream(source, startFrame, length), sourceFormat, length);
+		if(format.matches(sourceFormat)) {
+			return sourceAis;
+		}
+		return AudioSystem.getAudioInputStream(format, sourceAis);
+	}
+
+
+
+	/**
+	 * <code>InputStream</code> over consecutive frames of a <code>SampleSource</code>, one view at a time.
 	 */
-	protected AudioInputStream createAudioInputStream(AudioFormat format, AudioInputStream originalAis, long startFrame, long endFrame) throws IOException {
-		AudioInputStream outputAis = AudioSystem.getAudioInputStream(format, originalAis);
-		//skip to desired frame
-		if(startFrame > 0 || endFrame > 0) {
-			long bytesToSkip = startFrame * 2;
-			if(bytesToSkip > outputAis.available()) {
-				System.err.println("you are trying to skip over more bytes than are available");
+	private static class SampleSourceInputStream extends InputStream {
+
+		private final SampleSource source;
+		private final long endFrame;
+
+		private long nextViewFrame;
+		private ByteBuffer view;
+
+		private SampleSourceInputStream(SampleSource source, long startFrame, long numFrames) {
+			this.source = source;
+			nextViewFrame = startFrame;
+			endFrame = startFrame + numFrames;
+			view = ByteBuffer.allocate(0);
+		}
+
+		private boolean nextView() {
+			if(nextViewFrame >= endFrame) {
+				return false;
+			}
+			int numFrames = (int)Math.min(source.maxViewFrames(), endFrame - nextViewFrame);
+			view = source.byteView(nextViewFrame, numFrames);
+			nextViewFrame += numFrames;
+			return view.hasRemaining();
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(view.hasRemaining() == false && nextView() == false) {
+				return -1;
+			}
+			return view.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0) {
+				return 0;
 			}
-			else {
-				if(startFrame > 0) {
-					synchronized(outputAis) {
-						long framesActuallySkipped = outputAis.skip(bytesToSkip);
-						if(framesActuallySkipped != bytesToSkip) {
-							System.err.println(framesActuallySkipped + "/" + bytesToSkip + " bytes actually skipped");
-						}
-					}
-				}
-				if(endFrame > 0) {
-					long length = 0;
-					if(endFrame < 0) {
-						length = originalAis.available() - bytesToSkip;
-					}
-					else {
-						length = endFrame - startFrame;
-					}
-					outputAis = new AudioInputStream(outputAis, outputAis.getFormat(), length);
-				}
+			if(view.hasRemaining() == false && nextView() == false) {
+				return -1;
 			}
-		}		
-		return outputAis;
+			int toRead = Math.min(len, view.remaining());
+			view.get(b, off, toRead);
+			return toRead;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return view.remaining();
+		}
 	}
 }
@@ -0,0 +1,144 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Collection of static methods for the files of derived data kept next to an audio file, e.g. peak pyramids.
+ * 
+ * Every sidecar starts with a header of its format's magic number and version, followed by the audio file's size and modification time.
+ * A sidecar is only read if its whole header matches, so one written for an older format or an edited audio file is ignored.
+ * Sidecars are written to a temporary file first and then renamed, so a reader never sees a partial sidecar.
+ */
+public class SidecarFile {
+
+	private static final String partialFileSuffix = ".part";
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private SidecarFile() {
+	}
+
+	/**
+	 * Returns the sidecar with the provided extension for one channel of an audio file.
+	 * 
+	 * The first channel's sidecar is named after the audio file alone, the others also carry the channel's number, counting from 1.
+	 * 
+	 * @param audioFile The audio file
+	 * @param channel The channel, counting from 0
+	 * @param extension The sidecar's extension, without the dot
+	 * @return The sidecar, which may not exist
+	 */
+	public static File of(File audioFile, int channel, String extension) {
+		String channelSuffix = channel == 0 ? "" : ".ch" + (channel + 1);
+		return new File(OSPath.basename(audioFile.getAbsolutePath()) + channelSuffix + "." + extension);
+	}
+
+	/**
+	 * Opens a sidecar for reading its body, if its header matches.
+	 * 
+	 * @param sidecar The sidecar
+	 * @param magic The magic number of the sidecar's format
+	 * @param version The version of the sidecar's format
+	 * @param audioFile The audio file the sidecar was derived from
+	 * @return A stream positioned at the start of the body, which the caller must close, or <code>null</code> if there is no sidecar or it is stale
+	 * @throws IOException If the sidecar cannot be read
+	 */
+	public static DataInputStream openForReading(File sidecar, int magic, int version, File audioFile) throws IOException {
+		if(sidecar.exists() == false) {
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar), BUFFER_SIZE));
+		boolean current = false;
+		try {
+			current = in.readInt() == magic && in.readInt() == version
+					&& in.readLong() == audioFile.length() && in.readLong() == audioFile.lastModified();
+		}
+		finally {
+			if(current == false) {
+				closeQuietly(in);
+			}
+		}
+		return current ? in : null;
+	}
+
+	/**
+	 * Replaces a sidecar with a header and the provided body, through a temporary file.
+	 * 
+	 * @param sidecar The sidecar
+	 * @param magic The magic number of the sidecar's format
+	 * @param version The version of the sidecar's format
+	 * @param audioFile The audio file the sidecar is derived from
+	 * @param body Writes everything after the header
+	 * @throws IOException If the sidecar cannot be written, e.g. because the audio file's directory is read-only
+	 */
+	public static void write(File sidecar, int magic, int version, File audioFile, Body body) throws IOException {
+		File tmp = new File(sidecar.getAbsolutePath() + partialFileSuffix);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE));
+		try {
+			out.writeInt(magic);
+			out.writeInt(version);
+			out.writeLong(audioFile.length());
+			out.writeLong(audioFile.lastModified());
+			body.write(out);
+		}
+		finally {
+			out.close();
+		}
+		sidecar.delete();
+		if(tmp.renameTo(sidecar) == false) {
+			tmp.delete();
+			throw new IOException("could not rename " + tmp + " to " + sidecar);
+		}
+	}
+
+	/**
+	 * Closes a stream from {@link #openForReading(File, int, int, File)}, reporting rather than throwing a failure.
+	 * 
+	 * @param in The stream, or <code>null</code>
+	 */
+	public static void closeQuietly(DataInputStream in) {
+		if(in != null) {
+			try {
+				in.close();
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+
+
+	/**
+	 * The part of a sidecar after the header.
+	 */
+	public static interface Body {
+
+		public void write(DataOutputStream out) throws IOException;
+	}
+}
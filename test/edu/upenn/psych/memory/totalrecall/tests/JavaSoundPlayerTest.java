@@ -0,0 +1,239 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.totalrecall.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import edu.upenn.psych.memory.javasoundplayer.FileSink;
+import edu.upenn.psych.memory.javasoundplayer.JavaSoundPlayer;
+import edu.upenn.psych.memory.precisionplayer.PrecisionEvent;
+import edu.upenn.psych.memory.precisionplayer.PrecisionListener;
+import edu.upenn.psych.memory.precisionplayer.SilenceSkipper;
+
+/**
+ * Plays a generated file through <code>JavaSoundPlayer</code> into a <code>FileSink</code>, without a sound card, and checks what was rendered.
+ *
+ * Every frame of the file holds its own index, so the recording shows exactly which frames were written, in what order.
+ * Checks that an interval is rendered frame for frame, that progress only moves forward and ends in the right EOM frame,
+ * that a skipped stretch is cut out without losing the file's frame numbers, how close <code>stop()</code> and the position clock come to the frame that was playing,
+ * and that notifications arrive in order.
+ */
+public class JavaSoundPlayerTest {
+
+	private static final float rate = 16000;
+	private static final int numFrames = 5 * 16000;
+
+	private static int failures;
+
+	public static void main(String[] args) throws Exception {
+		File wav = File.createTempFile("javasoundplayer", ".wav");
+		File recording = File.createTempFile("javasoundplayer", ".pcm");
+		wav.deleteOnExit();
+		recording.deleteOnExit();
+		writeCountingFile(wav);
+
+		FileSink sink = new FileSink(recording);
+		JavaSoundPlayer player = new JavaSoundPlayer(sink);
+		Recorder recorder = new Recorder();
+		player.addListener(recorder);
+		player.open(wav.getAbsolutePath());
+
+		//an interval, played to the end
+		recorder.reset();
+		player.playAt(8000, 16000);
+		PrecisionEvent eom = recorder.awaitEnd();
+		check("EOM frame", eom.getCode() == PrecisionEvent.EventCode.EOM && eom.getFrame() == 16000);
+		check("progress moves forward within the interval", recorder.isMonotonic(8000, 16000));
+		int recorded = 8000;
+
+		//the same interval skipping frames 10000 to 14000
+		player.setSilenceSkipper(new SilenceSkipper() {
+			private boolean given;
+			public long[] nextSkip(long fromFrame, long playheadFrame) {
+				if(given) {
+					return null;
+				}
+				given = true;
+				return new long[] {10000, 14000};
+			}
+		});
+		recorder.reset();
+		player.playAt(8000, 16000);
+		recorder.awaitEnd();
+		player.setSilenceSkipper(null);
+		check("progress moves forward past the skip", recorder.isMonotonic(8000, 16000));
+		check("no progress inside the skip", recorder.countWithin(10001, 13999) == 0);
+		int skipped = 4000;
+
+		//a stop half a second in
+		recorder.reset();
+		long start = System.nanoTime();
+		player.playAt(32000);
+		Thread.sleep(250);
+		long now = System.nanoTime();
+		long clockFrame = player.getClock().frameAt(now);
+		long clockExpected = 32000 + (long)((now - start) / 1e9 * rate);
+		System.out.println("clock read " + clockFrame + ", " + ((clockFrame - clockExpected) * 1000 / rate) + " ms from the frame due by then");
+		check("clock advancing while playing", player.getClock().isAdvancing());
+		check("clock frame within 20 ms", Math.abs(clockFrame - clockExpected) <= 0.02 * rate);
+		Thread.sleep(250);
+		long expected = 32000 + (long)((System.nanoTime() - start) / 1e9 * rate);
+		long stopFrame = player.stop();
+		System.out.println("stop() returned " + stopFrame + ", " + ((stopFrame - expected) * 1000 / rate) + " ms from the frame due by then");
+		check("stop() frame within 50 ms", Math.abs(stopFrame - expected) <= 0.05 * rate);
+		check("STOPPED event", recorder.awaitEnd().getCode() == PrecisionEvent.EventCode.STOPPED);
+		check("clock stopped at the stop() frame", player.getClock().isAdvancing() == false && player.getClock().frameAt(System.nanoTime()) == stopFrame);
+
+		check("progress only between PLAYING and the end of playback", recorder.outOfOrder() == 0);
+		System.out.println(player.getEventDispatcher());
+		player.close();
+		sink.close();
+
+		int[] frames = readRecording(recording);
+		check("interval rendered frame for frame", runs(frames, 0, 8000, 8000));
+		check("skipping interval rendered without the skip", runs(frames, recorded, 8000, 2000) && runs(frames, recorded + 2000, 14000, 2000));
+		check("stopped playback rendered from its start", runs(frames, recorded + 8000 - skipped, 32000, frames.length - (recorded + 8000 - skipped)));
+		System.out.println(failures == 0 ? "all passed" : failures + " failed");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "pass: " : "FAIL: ") + name);
+		if(passed == false) {
+			failures++;
+		}
+	}
+
+	private static boolean runs(int[] frames, int offset, int firstFrame, int count) {
+		if(count <= 0 || offset + count > frames.length) {
+			return false;
+		}
+		for(int i = 0; i < count; i++) {
+			if(frames[offset + i] != ((firstFrame + i) & 0x7fff)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeCountingFile(File wav) throws IOException {
+		byte[] pcm = new byte[numFrames * 2];
+		for(int i = 0; i < numFrames; i++) {
+			int sample = i & 0x7fff;
+			pcm[2 * i] = (byte)sample;
+			pcm[2 * i + 1] = (byte)(sample >> 8);
+		}
+		AudioFormat format = new AudioFormat(rate, 16, 1, true, false);
+		AudioInputStream ais = new AudioInputStream(new ByteArrayInputStream(pcm), format, numFrames);
+		AudioSystem.write(ais, AudioFileFormat.Type.WAVE, wav);
+	}
+
+	private static int[] readRecording(File recording) throws IOException {
+		byte[] bytes = new byte[(int)recording.length()];
+		InputStream in = new FileInputStream(recording);
+		try {
+			int read = 0;
+			while(read < bytes.length) {
+				read += in.read(bytes, read, bytes.length - read);
+			}
+		}
+		finally {
+			in.close();
+		}
+		int[] frames = new int[bytes.length / 2];
+		for(int i = 0; i < frames.length; i++) {
+			frames[i] = ((bytes[2 * i + 1] << 8) | (bytes[2 * i] & 0xff)) & 0x7fff;
+		}
+		return frames;
+	}
+
+	private static class Recorder implements PrecisionListener {
+
+		private final List<Long> progress = new ArrayList<Long>();
+		private PrecisionEvent end;
+		private boolean started;
+		private int outOfOrder;
+
+		synchronized void reset() {
+			progress.clear();
+			end = null;
+			started = false;
+		}
+
+		public synchronized void progress(long frame) {
+			if(started == false || end != null) {
+				outOfOrder++;
+			}
+			progress.add(frame);
+		}
+
+		public synchronized void stateUpdated(PrecisionEvent pe) {
+			if(pe.getCode() == PrecisionEvent.EventCode.PLAYING) {
+				started = true;
+			}
+			if(pe.getCode() == PrecisionEvent.EventCode.EOM || pe.getCode() == PrecisionEvent.EventCode.STOPPED || pe.getCode() == PrecisionEvent.EventCode.ERROR) {
+				end = pe;
+				notifyAll();
+			}
+		}
+
+		synchronized PrecisionEvent awaitEnd() throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 10000;
+			while(end == null && System.currentTimeMillis() < deadline) {
+				wait(100);
+			}
+			if(end == null) {
+				throw new IllegalStateException("playback never ended");
+			}
+			return end;
+		}
+
+		synchronized boolean isMonotonic(long first, long last) {
+			long previous = first;
+			for(long frame: progress) {
+				if(frame < previous || frame > last) {
+					return false;
+				}
+				previous = frame;
+			}
+			return progress.isEmpty() == false;
+		}
+
+		synchronized int outOfOrder() {
+			return outOfOrder;
+		}
+
+		synchronized int countWithin(long first, long last) {
+			int count = 0;
+			for(long frame: progress) {
+				if(frame >= first && frame <= last) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.totalrecall.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import audio.MappedSampleSource;
+import audio.PeakEnvelope;
+import audio.SampleSource;
+
+/**
+ * Compares <code>PeakEnvelope</code> with the nested loop it replaced in <code>WaveformBuffer</code>, over 60 minutes of audio.
+ *
+ * Usage: <code>PeakEnvelopeBenchmark [file.wav]</code>
+ * Without an argument 60 minutes of 44.1 kHz noise bursts are synthesized.
+ * With an argument the first 60 minutes of the file are used.
+ * Both engines process the audio in waveform-chunk-sized blocks, and their output is checked for equality.
+ */
+public class PeakEnvelopeBenchmark {
+
+	private static final double frameRate = 44100;
+	private static final int minutes = 60;
+	private static final int chunkSeconds = 10;
+	private static final int halfWidth = 20;
+	private static final int rounds = 3;
+
+	public static void main(String[] args) throws IOException {
+		SampleSource source = null;
+		if(args.length > 0) {
+			source = new MappedSampleSource(new File(args[0]));
+		}
+		final double rate = source == null ? frameRate : source.frameRate();
+		final long totalFrames = source == null ? (long)(rate * 60 * minutes) : Math.min(source.numFrames(), (long)(rate * 60 * minutes));
+		final int chunkFrames = (int)(rate * chunkSeconds);
+
+		double[] original = new double[chunkFrames];
+		double[] naive = new double[chunkFrames];
+		double[] deque = new double[chunkFrames];
+		PeakEnvelope envelope = new PeakEnvelope(halfWidth);
+		Random random = new Random(0);
+
+		for(int round = 0; round < rounds; round++) {
+			long naiveNanos = 0;
+			long dequeNanos = 0;
+			for(long first = 0; first < totalFrames; first += chunkFrames) {
+				int length = (int)Math.min(chunkFrames, totalFrames - first);
+				if(source == null) {
+					synthesize(random, original, length);
+				}
+				else {
+					source.read(first, 0, original, 0, length);
+				}
+				System.arraycopy(original, 0, naive, 0, length);
+				System.arraycopy(original, 0, deque, 0, length);
+
+				long start = System.nanoTime();
+				nestedLoop(naive, length, halfWidth);
+				naiveNanos += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				envelope.apply(deque, length);
+				dequeNanos += System.nanoTime() - start;
+
+				for(int i = 0; i < length; i++) {
+					if(naive[i] != deque[i]) {
+						throw new IllegalStateException("envelopes differ at frame " + (first + i) + ": " + naive[i] + " vs " + deque[i]);
+					}
+				}
+			}
+			System.out.println("round " + (round + 1) + ", " + (totalFrames / (long)rate / 60) + " minutes: nested loop " + (naiveNanos / 1000000) + " ms, "
+					+ "PeakEnvelope " + (dequeNanos / 1000000) + " ms, speedup " + String.format("%.1f", naiveNanos / (double)dequeNanos) + "x");
+		}
+		if(source != null) {
+			source.close();
+		}
+	}
+
+	/**
+	 * The smoothing loop formerly found in <code>WaveformBuffer</code>.
+	 */
+	private static void nestedLoop(double[] samples, int length, int window) {
+		double[] copy = new double[length];
+		System.arraycopy(samples, 0, copy, 0, length);
+		double biggestInWindow;
+		int start;
+		int end;
+		for(int i = 0; i < length; i++) {
+			biggestInWindow = 0;
+			start = Math.max(0, i - window);
+			end = Math.min(length, i + window);
+			for(int j = start; j < end; j++) {
+				biggestInWindow = Math.max(biggestInWindow, Math.abs(copy[j]));
+			}
+			samples[i] = biggestInWindow;
+		}
+	}
+
+	/**
+	 * Speech-like bursts of noise separated by near silence.
+	 */
+	private static void synthesize(Random random, double[] samples, int length) {
+		for(int i = 0; i < length; i++) {
+			double gain = (i / 22050) % 3 == 0 ? 0.01 : 0.5;
+			samples[i] = gain * (random.nextDouble() * 2 - 1);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+//    This file is part of Penn TotalRecall <http://memory.psych.upenn.edu/TotalRecall>.
+//
+//    TotalRecall is free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, version 3 only.
+//
+//    TotalRecall is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with TotalRecall.  If not, see <http://www.gnu.org/licenses/>.
+
+package edu.upenn.psych.memory.totalrecall.tests;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.sound.sampled.AudioSystem;
+
+import edu.upenn.psych.memory.nativestatelessplayer.LibPennTotalRecall;
+
+/**
+ * Measures how long libpenntotalrecall takes to start playback, with the audio system and stream set up for every play as before, and with a warm session.
+ *
+ * Usage: <code>PlaybackLatencyBenchmark file.wav</code>
+ * Plays 200 ms from random positions of the file, as replays and mouse highlights do.
+ * Reports the time for <code>startPlayback()</code> to return, until the stream position first moves, which is when the first frames are being rendered,
+ * and for <code>stopPlayback()</code> to return, which used to release the audio system.
+ * On a machine without a sound card, compile the native library with <code>LIBPENNTOTALRECALL_NOSOUND</code> defined.
+ */
+public class PlaybackLatencyBenchmark {
+
+	private static final int plays = 50;
+	private static final double playSeconds = 0.2;
+
+	public static void main(String[] args) throws Exception {
+		if(args.length != 1) {
+			System.err.println("usage: PlaybackLatencyBenchmark file.wav");
+			System.exit(2);
+		}
+		File file = new File(args[0]);
+		String path = file.getAbsolutePath();
+		long numFrames = AudioSystem.getAudioInputStream(file).getFrameLength();
+		long playFrames = (long)(AudioSystem.getAudioFileFormat(file).getFormat().getFrameRate() * playSeconds);
+		LibPennTotalRecall lib = LibPennTotalRecall.instance;
+		System.out.println(lib.getLibraryName() + ", revision " + lib.getLibraryRevisionNumber());
+
+		for(int warm = 0; warm < 2; warm++) {
+			Random random = new Random(0);
+			double[] returnMillis = new double[plays];
+			double[] renderMillis = new double[plays];
+			double[] stopMillis = new double[plays];
+			for(int i = 0; i < plays; i++) {
+				long startFrame = (long)(random.nextDouble() * (numFrames - playFrames));
+				long start = System.nanoTime();
+				int returnCode = lib.startPlayback(path, startFrame, startFrame + playFrames);
+				returnMillis[i] = (System.nanoTime() - start) / 1e6;
+				if(returnCode < 0) {
+					throw new IllegalStateException("startPlayback() returned " + returnCode);
+				}
+				while(lib.streamPosition() <= 0 && lib.playbackInProgress()) {
+					Thread.sleep(0, 100000);
+				}
+				renderMillis[i] = (System.nanoTime() - start) / 1e6;
+				start = System.nanoTime();
+				lib.stopPlayback();
+				if(warm == 0) {
+					//what every play used to pay for, so the next play sets everything up again
+					lib.closeSession();
+				}
+				stopMillis[i] = (System.nanoTime() - start) / 1e6;
+			}
+			System.out.println(warm == 0 ? "new system per play:" : "warm session:");
+			System.out.println("  startPlayback() returns in " + summary(returnMillis));
+			System.out.println("  first frames rendered after " + summary(renderMillis));
+			System.out.println("  stopPlayback() returns in " + summary(stopMillis));
+		}
+		lib.closeSession();
+	}
+
+	private static String summary(double[] millis) {
+		double[] sorted = millis.clone();
+		Arrays.sort(sorted);
+		return String.format("median %.2f ms (90th percentile %.2f ms)", sorted[sorted.length / 2], sorted[(int)(sorted.length * 0.9)]);
+	}
+}